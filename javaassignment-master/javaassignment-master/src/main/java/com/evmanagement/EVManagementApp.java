@@ -2,6 +2,8 @@ package com.evmanagement;
 
 import javax.swing.*;
 import javax.swing.border.EmptyBorder;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
 import java.awt.*;
 import java.awt.event.*;
 import java.awt.geom.Point2D;
@@ -14,6 +16,7 @@ import org.jfree.chart.ChartPanel;
 import org.jfree.chart.JFreeChart;
 import org.jfree.data.category.DefaultCategoryDataset;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Set;
 import org.jxmapviewer.JXMapViewer;
@@ -33,11 +36,17 @@ import org.jxmapviewer.viewer.DefaultWaypoint;
 import java.util.Map;
 import com.evmanagement.util.ChartGenerator;
 import java.util.UUID;
+import java.util.concurrent.ExecutionException;
 import java.awt.CardLayout;
 import java.time.LocalDateTime;
 import java.time.Year;
 import com.evmanagement.util.*;
+import com.evmanagement.routing.ReachabilityGraph;
+import com.evmanagement.routing.ReachabilityGraphs;
+import com.evmanagement.routing.RoutePlan;
+import com.evmanagement.routing.RoutePlanCache;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 public class EVManagementApp extends JFrame {
     private JTabbedPane tabbedPane;
@@ -50,14 +59,21 @@ public class EVManagementApp extends JFrame {
     private JPanel sustainabilityPanel;
     private User currentUser;
     private FileDAO<User> userDAO;
+    private FileDAO<Vehicle> vehicleDAO;
     private ChargingStation currentStation;
     private DefaultListModel<String> stationListModel;
+    private JXMapViewer stationMapViewer;
+    private WaypointPainter<Waypoint> stationWaypointPainter;
+    private JComboBox<String> reviewStationComboBox;
+    private JLabel stationLoadLabel;
+    private final Set<String> shownStationIds = new HashSet<>();
     private JLabel nameLabel;
     private JLabel locationLabel;
     private JLabel ratingLabel;
     private CardLayout analyticsCardLayout;
     private JPanel analyticsCardPanel;
     private JTabbedPane analyticsTabbedPane;
+    private RoutePlanningWorker routePlanningWorker;
 
     public EVManagementApp() {
         setTitle("EV Management System - Nepal");
@@ -67,6 +83,7 @@ public class EVManagementApp extends JFrame {
 
         // Initialize DAO and models
         userDAO = new FileDAO<>("users.dat");
+        vehicleDAO = new FileDAO<>("vehicles.dat", BinaryCodecs.VEHICLE, Durability.forStore("vehicle"));
         stationListModel = new DefaultListModel<>();
 
         // Set modern look and feel
@@ -82,6 +99,7 @@ public class EVManagementApp extends JFrame {
         }
 
         initComponents();
+        startStationLoading();
         showLoginDialog();
     }
 
@@ -222,7 +240,7 @@ public class EVManagementApp extends JFrame {
                     emailField.getText().trim(),
                     phoneField.getText().trim()
                 );
-                saveUserToFile(currentUser);
+                UserPersistenceService.getInstance().flush(currentUser);
                 updateProfilePanel();
                 regDialog.dispose();
             }
@@ -372,11 +390,10 @@ public class EVManagementApp extends JFrame {
 
     private void loadVehiclesFromFile(DefaultListModel<Vehicle> listModel) {
         listModel.clear(); // Clear existing items first
-        try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream("vehicles.dat"))) {
-            List<Vehicle> vehicles = (List<Vehicle>) ois.readObject();
+        try (Stream<Vehicle> vehicles = vehicleDAO.stream()) {
             vehicles.forEach(listModel::addElement);
-            System.out.println("Loaded " + vehicles.size() + " vehicles from file");
-        } catch (IOException | ClassNotFoundException e) {
+            System.out.println("Loaded " + listModel.size() + " vehicles from file");
+        } catch (IOException | UncheckedIOException e) {
             // If file doesn't exist or has problem, just log and continue with empty list
             System.out.println("No existing vehicles file found or error reading it: " + e.getMessage());
         }
@@ -444,12 +461,12 @@ public class EVManagementApp extends JFrame {
     }
 
     private void saveVehiclesToFile(DefaultListModel<Vehicle> listModel) {
-        try (ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream("vehicles.dat"))) {
+        try {
             List<Vehicle> vehicles = new ArrayList<>();
             for (int i = 0; i < listModel.size(); i++) {
                 vehicles.add(listModel.get(i));
             }
-            oos.writeObject(vehicles);
+            vehicleDAO.saveToFile(vehicles);
             System.out.println("Saved " + vehicles.size() + " vehicles to file");
         } catch (IOException e) {
             System.err.println("Error saving vehicles to file: " + e.getMessage());
@@ -578,24 +595,11 @@ public class EVManagementApp extends JFrame {
         mapViewer.setZoom(7);
         mapViewer.setAddressLocation(nepal);
 
-        // Initialize station list model and load stations
-        stationListModel = new DefaultListModel<>();
-        List<ChargingStation> stations = loadStationsFromFiles();
-        for (ChargingStation station : stations) {
-            stationListModel.addElement(station.getName());
-        }
-
-        // Create waypoints for all stations
-        Set<Waypoint> waypoints = new HashSet<>();
-        for (ChargingStation station : stations) {
-            waypoints.add(new DefaultWaypoint(
-                new GeoPosition(station.getLatitude(), station.getLongitude())
-            ));
-        }
-
-        // Configure waypoint painter
+        // Stations and their waypoints are filled in by startStationLoading
+        stationMapViewer = mapViewer;
         WaypointPainter<Waypoint> waypointPainter = new WaypointPainter<>();
-        waypointPainter.setWaypoints(waypoints);
+        waypointPainter.setWaypoints(new HashSet<>());
+        stationWaypointPainter = waypointPainter;
 
         // Add map interactions
         MouseAdapter mouseAdapter = new MouseAdapter() {
@@ -641,7 +645,7 @@ public class EVManagementApp extends JFrame {
         stationList.addListSelectionListener(e -> {
             if (!e.getValueIsAdjusting()) {
                 String selectedName = stationList.getSelectedValue();
-                ChargingStation selected = findChargingStationByName(selectedName, stations);
+                ChargingStation selected = findChargingStationByName(selectedName, getStations());
                 if (selected != null) {
                     currentStation = selected;
                     updateStationDetails(selected);
@@ -657,17 +661,19 @@ public class EVManagementApp extends JFrame {
         });
 
         // Create station info panel
-        JPanel infoPanel = new JPanel(new GridLayout(3, 1, 5, 5));
+        JPanel infoPanel = new JPanel(new GridLayout(4, 1, 5, 5));
         nameLabel = new JLabel();
         locationLabel = new JLabel();
         ratingLabel = new JLabel();
+        stationLoadLabel = new JLabel();
         infoPanel.add(nameLabel);
         infoPanel.add(locationLabel);
         infoPanel.add(ratingLabel);
+        infoPanel.add(stationLoadLabel);
 
         // Add components to details panel
         JButton addStationButton = new JButton("Add Station");
-        addStationButton.addActionListener(e -> showAddStationDialog(mapViewer, waypointPainter));
+        addStationButton.addActionListener(e -> showAddStationDialog());
         
         detailsPanel.add(addStationButton, BorderLayout.NORTH);
         detailsPanel.add(new JScrollPane(stationList), BorderLayout.CENTER);
@@ -681,7 +687,7 @@ public class EVManagementApp extends JFrame {
         return panel;
     }
 
-    private void showAddStationDialog(JXMapViewer mapViewer, WaypointPainter<Waypoint> waypointPainter) {
+    private void showAddStationDialog() {
         JDialog dialog = new JDialog(this, "Add Charging Station", true);
         dialog.setLayout(new GridBagLayout());
         dialog.setSize(300, 200);
@@ -733,20 +739,9 @@ public class EVManagementApp extends JFrame {
                     name, location, latitude, longitude, 50.0, 10.0
                 );
                 
-                // Save station to file
+                // Save station to file; the repository listener adds it to the list and map
                 saveStationToFile(newStation);
                 
-                // Update station list model
-                stationListModel.addElement(name);
-                
-                // Add new waypoint to map
-                Set<Waypoint> waypoints = new HashSet<>(waypointPainter.getWaypoints());
-                waypoints.add(new DefaultWaypoint(new GeoPosition(latitude, longitude)));
-                waypointPainter.setWaypoints(waypoints);
-                
-                // Refresh map
-                mapViewer.repaint();
-                
                 dialog.dispose();
             } catch (NumberFormatException ex) {
                 JOptionPane.showMessageDialog(dialog,
@@ -767,30 +762,78 @@ public class EVManagementApp extends JFrame {
             .orElse(null);
     }
 
-    private List<ChargingStation> loadStationsFromFiles() {
-        List<ChargingStation> stations = new ArrayList<>();
-        File stationsDir = new File("stations");
-        
-        if (stationsDir.exists() && stationsDir.isDirectory()) {
-            File[] files = stationsDir.listFiles((dir, name) -> name.endsWith(".dat"));
-            if (files != null) {
-                for (File file : files) {
-                    try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(file))) {
-                        ChargingStation station = (ChargingStation) ois.readObject();
-                        stations.add(station);
-                    } catch (Exception e) {
-                        e.printStackTrace();
-                    }
+    private List<ChargingStation> getStations() {
+        try {
+            return StationRepository.getDefault().getAll();
+        } catch (IOException e) {
+            e.printStackTrace();
+            return new ArrayList<>();
+        }
+    }
+
+    // Decode stations off the EDT and add them to the views chunk by chunk
+    private void startStationLoading() {
+        try {
+            StationRepository repository = StationRepository.getDefault();
+            // Stations are changed on the EDT, so changes from other processes are too
+            repository.setChangeExecutor(SwingUtilities::invokeLater);
+            repository.addChangeListener((stationId, type) -> {
+                if (type == null) {
+                    // A station was added, or everything was reloaded
+                    List<ChargingStation> added = stationId == null
+                        ? repository.getAll()
+                        : Collections.singletonList(repository.get(stationId));
+                    SwingUtilities.invokeLater(() -> addStationsToViews(added));
                 }
+            });
+            stationLoadLabel.setText("Loading stations...");
+            repository.loadAsync(chunk -> SwingUtilities.invokeLater(() -> addStationsToViews(chunk)))
+                .whenComplete((stats, error) -> SwingUtilities.invokeLater(() -> {
+                    if (error != null) {
+                        error.printStackTrace();
+                        stationLoadLabel.setText("Could not load stations");
+                    } else {
+                        stationLoadLabel.setText(String.format("%d stations loaded in %.0f ms",
+                            stats.getStations(), stats.getTotalMillis()));
+                    }
+                }));
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void addStationsToViews(List<ChargingStation> stations) {
+        Set<Waypoint> waypoints = new HashSet<>(stationWaypointPainter.getWaypoints());
+        boolean added = false;
+        for (ChargingStation station : stations) {
+            if (station == null || !shownStationIds.add(station.getStationId())) {
+                continue;
             }
+            stationListModel.addElement(station.getName());
+            reviewStationComboBox.addItem(station.getName());
+            waypoints.add(new DefaultWaypoint(
+                new GeoPosition(station.getLatitude(), station.getLongitude())
+            ));
+            added = true;
+        }
+        if (added) {
+            stationWaypointPainter.setWaypoints(waypoints);
+            stationMapViewer.repaint();
+        }
+    }
+
+    private KdTree<ChargingStation> getStationIndex() {
+        try {
+            return StationRepository.getDefault().getSpatialIndex();
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
         }
-        
-        return stations;
     }
 
     private void updateStationListModel(DefaultListModel<String> model) {
         model.clear();
-        List<ChargingStation> stations = loadStationsFromFiles();
+        List<ChargingStation> stations = getStations();
         for (ChargingStation station : stations) {
             model.addElement(station.getName());
         }
@@ -805,34 +848,8 @@ public class EVManagementApp extends JFrame {
     }
 
     private ChargingStation findNearestStation(double lat, double lon) {
-        List<ChargingStation> stations = loadStationsFromFiles();
-        ChargingStation nearest = null;
-        double minDistance = Double.MAX_VALUE;
-        
-        for (ChargingStation station : stations) {
-            double distance = calculateDistance(
-                lat, lon, 
-                station.getLatitude(), 
-                station.getLongitude()
-            );
-            if (distance < minDistance) {
-                minDistance = distance;
-                nearest = station;
-            }
-        }
-        return nearest;
-    }
-
-    private double calculateDistance(double lat1, double lon1, double lat2, double lon2) {
-        // Haversine formula
-        final int R = 6371; // Earth's radius in kilometers
-        double latDistance = Math.toRadians(lat2 - lat1);
-        double lonDistance = Math.toRadians(lon2 - lon1);
-        double a = Math.sin(latDistance / 2) * Math.sin(latDistance / 2)
-                + Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2))
-                * Math.sin(lonDistance / 2) * Math.sin(lonDistance / 2);
-        double c = 2 * Math.atan2(Math.sqrt(a), Math.sqrt(1 - a));
-        return R * c;
+        KdTree<ChargingStation> index = getStationIndex();
+        return index != null ? index.nearest(lat, lon) : null;
     }
 
     private void updateVehicleComboBox(JComboBox<String> comboBox) {
@@ -864,35 +881,50 @@ public class EVManagementApp extends JFrame {
         gbc.gridx = 1; gbc.gridy = 0;
         inputPanel.add(vehicleComboBox, gbc);
 
-        // Start coordinates
+        // Start place or coordinates
         gbc.gridx = 0; gbc.gridy = 1;
+        inputPanel.add(new JLabel("Start Place:"), gbc);
+        JTextField startPlaceField = new JTextField(10);
+        gbc.gridx = 1;
+        inputPanel.add(startPlaceField, gbc);
+
+        gbc.gridx = 0; gbc.gridy = 2;
         inputPanel.add(new JLabel("Start Latitude:"), gbc);
         JTextField startLatField = new JTextField(10);
         gbc.gridx = 1;
         inputPanel.add(startLatField, gbc);
 
-        gbc.gridx = 0; gbc.gridy = 2;
+        gbc.gridx = 0; gbc.gridy = 3;
         inputPanel.add(new JLabel("Start Longitude:"), gbc);
         JTextField startLonField = new JTextField(10);
         gbc.gridx = 1;
         inputPanel.add(startLonField, gbc);
 
-        // End coordinates
-        gbc.gridx = 0; gbc.gridy = 3;
+        // End place or coordinates
+        gbc.gridx = 0; gbc.gridy = 4;
+        inputPanel.add(new JLabel("End Place:"), gbc);
+        JTextField endPlaceField = new JTextField(10);
+        gbc.gridx = 1;
+        inputPanel.add(endPlaceField, gbc);
+
+        gbc.gridx = 0; gbc.gridy = 5;
         inputPanel.add(new JLabel("End Latitude:"), gbc);
         JTextField endLatField = new JTextField(10);
         gbc.gridx = 1;
         inputPanel.add(endLatField, gbc);
 
-        gbc.gridx = 0; gbc.gridy = 4;
+        gbc.gridx = 0; gbc.gridy = 6;
         inputPanel.add(new JLabel("End Longitude:"), gbc);
         JTextField endLonField = new JTextField(10);
         gbc.gridx = 1;
         inputPanel.add(endLonField, gbc);
 
+        addPlaceCompletion(startPlaceField, startLatField, startLonField);
+        addPlaceCompletion(endPlaceField, endLatField, endLonField);
+
         // Plan Route button
         JButton planButton = new JButton("Plan Route");
-        gbc.gridx = 0; gbc.gridy = 5; gbc.gridwidth = 2;
+        gbc.gridx = 0; gbc.gridy = 7; gbc.gridwidth = 2;
         inputPanel.add(planButton, gbc);
 
         // Results panel
@@ -909,6 +941,36 @@ public class EVManagementApp extends JFrame {
         mapViewer.setZoom(7);
         mapViewer.setAddressLocation(new GeoPosition(27.7172, 85.3240)); // Default to Nepal
 
+        // Planning runs in the background; editing the trip cancels a search still running
+        JLabel planningLabel = new JLabel(" ");
+        resultsPanel.add(planningLabel, BorderLayout.NORTH);
+        Runnable cancelPlanning = () -> {
+            if (routePlanningWorker != null && !routePlanningWorker.isDone()) {
+                routePlanningWorker.cancel(true);
+                planningLabel.setText("Planning cancelled");
+            }
+        };
+        DocumentListener tripChanged = new DocumentListener() {
+            @Override
+            public void insertUpdate(DocumentEvent e) {
+                cancelPlanning.run();
+            }
+
+            @Override
+            public void removeUpdate(DocumentEvent e) {
+                cancelPlanning.run();
+            }
+
+            @Override
+            public void changedUpdate(DocumentEvent e) {
+            }
+        };
+        for (JTextField field : new JTextField[] {startPlaceField, startLatField, startLonField,
+                endPlaceField, endLatField, endLonField}) {
+            field.getDocument().addDocumentListener(tripChanged);
+        }
+        vehicleComboBox.addActionListener(e -> cancelPlanning.run());
+
         planButton.addActionListener(e -> {
             if (currentUser == null) {
                 JOptionPane.showMessageDialog(panel, 
@@ -919,6 +981,12 @@ public class EVManagementApp extends JFrame {
             }
 
             try {
+                // A known place name wins over the coordinate fields
+                Gazetteer.Place startPlace = Gazetteer.getDefault().lookup(startPlaceField.getText());
+                Gazetteer.Place endPlace = Gazetteer.getDefault().lookup(endPlaceField.getText());
+                if (startPlace != null) showPlace(startPlace, startLatField, startLonField);
+                if (endPlace != null) showPlace(endPlace, endLatField, endLonField);
+
                 double startLat = Double.parseDouble(startLatField.getText());
                 double startLon = Double.parseDouble(startLonField.getText());
                 double endLat = Double.parseDouble(endLatField.getText());
@@ -942,153 +1010,16 @@ public class EVManagementApp extends JFrame {
                 // Create route
                 Route route = new Route(
                     UUID.randomUUID().toString(),
-                    String.format("%.4f,%.4f", startLat, startLon),
-                    String.format("%.4f,%.4f", endLat, endLon),
+                    startPlace != null ? startPlace.getName() : String.format("%.4f,%.4f", startLat, startLon),
+                    endPlace != null ? endPlace.getName() : String.format("%.4f,%.4f", endLat, endLon),
                     selectedVehicle
                 );
 
-                // Calculate route with available charging stations
-                List<ChargingStation> stations = loadStationsFromFiles();
-                route.calculateRoute(stations, true);
-
-                // Calculate total distance using Haversine formula
-                double totalDistance = calculateDistance(startLat, startLon, endLat, endLon);
-                
-                // Find all stations near the route path
-                List<ChargingStation> nearbyStations = findStationsNearRoute(
-                    startLat, startLon, endLat, endLon, stations, 20.0 // 20km radius
-                );
-                
-                // Calculate distances to charging stops
-                List<ChargingStation> chargingStops = route.getChargingStops();
-                if (!chargingStops.isEmpty()) {
-                    // Distance to first charging stop
-                    totalDistance = calculateDistance(startLat, startLon, 
-                        chargingStops.get(0).getLatitude(), 
-                        chargingStops.get(0).getLongitude());
-                    
-                    // Distance between charging stops
-                    for (int i = 0; i < chargingStops.size() - 1; i++) {
-                        ChargingStation current = chargingStops.get(i);
-                        ChargingStation next = chargingStops.get(i + 1);
-                        totalDistance += calculateDistance(
-                            current.getLatitude(), current.getLongitude(),
-                            next.getLatitude(), next.getLongitude()
-                        );
-                    }
-                    
-                    // Distance from last charging stop to destination
-                    ChargingStation lastStop = chargingStops.get(chargingStops.size() - 1);
-                    totalDistance += calculateDistance(
-                        lastStop.getLatitude(), lastStop.getLongitude(),
-                        endLat, endLon
-                    );
-                }
-
-                // Update map
-                Set<GeoPosition> waypoints = new HashSet<>();
-                waypoints.add(new GeoPosition(startLat, startLon));
-                waypoints.add(new GeoPosition(endLat, endLon));
-                
-                // Add all nearby stations to markers (with different color for non-stop stations)
-                List<Waypoint> markers = new ArrayList<>();
-                for (ChargingStation station : nearbyStations) {
-                    GeoPosition stationPos = new GeoPosition(
-                        station.getLatitude(), 
-                        station.getLongitude()
-                    );
-                    waypoints.add(stationPos);
-                    // Use custom waypoint to differentiate between stops and nearby stations
-                    if (chargingStops.contains(station)) {
-                        markers.add(new ColorWaypoint(stationPos, Color.RED)); // Stops are red
-                    } else {
-                        markers.add(new ColorWaypoint(stationPos, Color.BLUE)); // Other stations are blue
-                    }
-                }
-
-                // Create a track from waypoints
-                List<GeoPosition> track = new ArrayList<>(waypoints);
-                
-                // Create custom painter for different colored waypoints
-                WaypointPainter<Waypoint> waypointPainter = new WaypointPainter<Waypoint>() {
-                    @Override
-                    protected void doPaint(Graphics2D g, JXMapViewer map, int width, int height) {
-                        for (Waypoint waypoint : getWaypoints()) {
-                            if (waypoint instanceof ColorWaypoint) {
-                                ColorWaypoint colorWaypoint = (ColorWaypoint) waypoint;
-                                Point2D point = map.getTileFactory().geoToPixel(
-                                    colorWaypoint.getPosition(), map.getZoom());
-                                
-                                int x = (int) point.getX() - map.getViewportBounds().x;
-                                int y = (int) point.getY() - map.getViewportBounds().y;
-                                
-                                g.setColor(colorWaypoint.getColor());
-                                g.fillOval(x - 5, y - 5, 10, 10);
-                                g.setColor(Color.BLACK);
-                                g.drawOval(x - 5, y - 5, 10, 10);
-                            }
-                        }
-                    }
-                };
-                
-                waypointPainter.setWaypoints(new HashSet<>(markers));
-                mapViewer.setOverlayPainter(new CompoundPainter<>(
-                    new RoutePainter(track),
-                    waypointPainter
-                ));
-
-                // Zoom to fit route
-                mapViewer.zoomToBestFit(new HashSet<>(track), 0.7);
-
-                // Update route details with accurate distances
-                StringBuilder details = new StringBuilder();
-                details.append(String.format("Total Distance: %.2f km%n", totalDistance));
-                details.append(String.format("Estimated Time: %.2f hours%n", totalDistance / 60.0));
-                details.append(String.format("Energy Required: %.2f kWh%n", 
-                    totalDistance * (selectedVehicle.getEfficiency())));
-                details.append("\nRequired Charging Stops:\n");
-                
-                if (chargingStops.isEmpty()) {
-                    details.append("No charging stops needed\n");
-                } else {
-                    for (int i = 0; i < chargingStops.size(); i++) {
-                        ChargingStation station = chargingStops.get(i);
-                        double distanceFromStart = 0;
-                        if (i == 0) {
-                            distanceFromStart = calculateDistance(startLat, startLon,
-                                station.getLatitude(), station.getLongitude());
-                        } else {
-                            ChargingStation prevStation = chargingStops.get(i - 1);
-                            distanceFromStart = calculateDistance(
-                                prevStation.getLatitude(), prevStation.getLongitude(),
-                                station.getLatitude(), station.getLongitude()
-                            );
-                        }
-                        details.append(String.format("- %s (%s) - %.2f km from previous point%n", 
-                            station.getName(), 
-                            station.getLocation(),
-                            distanceFromStart
-                        ));
-                    }
-                }
-                
-                details.append("\nOther Nearby Charging Stations:\n");
-                List<ChargingStation> otherStations = nearbyStations.stream()
-                    .filter(station -> !chargingStops.contains(station))
-                    .collect(Collectors.toList());
-                    
-                if (otherStations.isEmpty()) {
-                    details.append("No other stations within 20km of route\n");
-                } else {
-                    for (ChargingStation station : otherStations) {
-                        details.append(String.format("- %s (%s)%n", 
-                            station.getName(), 
-                            station.getLocation()
-                        ));
-                    }
-                }
-                
-                routeDetails.setText(details.toString());
+                cancelPlanning.run();
+                planningLabel.setText("Planning...");
+                routePlanningWorker = new RoutePlanningWorker(route, new GeoPosition(startLat, startLon),
+                    new GeoPosition(endLat, endLon), panel, mapViewer, routeDetails, planningLabel);
+                routePlanningWorker.execute();
 
             } catch (NumberFormatException ex) {
                 JOptionPane.showMessageDialog(panel,
@@ -1111,47 +1042,332 @@ public class EVManagementApp extends JFrame {
         return panel;
     }
 
-    private List<ChargingStation> findStationsNearRoute(
-            double startLat, double startLon, 
-            double endLat, double endLon, 
-            List<ChargingStation> stations,
-            double maxDistance) {
-        
-        List<ChargingStation> nearbyStations = new ArrayList<>();
-        
-        // Calculate route vector
-        double routeDistance = calculateDistance(startLat, startLon, endLat, endLon);
-        double vectorX = endLat - startLat;
-        double vectorY = endLon - startLon;
-        
-        for (ChargingStation station : stations) {
-            // Calculate perpendicular distance from station to route line
-            double stationLat = station.getLatitude();
-            double stationLon = station.getLongitude();
+    // Suggests gazetteer places while typing; picking one fills in its coordinates
+    private void addPlaceCompletion(JTextField placeField, JTextField latField, JTextField lonField) {
+        JPopupMenu suggestions = new JPopupMenu();
+        suggestions.setFocusable(false);
+        boolean[] picking = {false};
+
+        Runnable update = () -> {
+            suggestions.setVisible(false);
+            suggestions.removeAll();
+            String text = placeField.getText();
+            if (picking[0] || text.trim().isEmpty() || !placeField.isShowing()) {
+                return;
+            }
+            for (Gazetteer.Place place : Gazetteer.getDefault().complete(text, 8)) {
+                JMenuItem item = new JMenuItem(place.getName());
+                item.addActionListener(e -> {
+                    picking[0] = true;
+                    placeField.setText(place.getName());
+                    picking[0] = false;
+                    showPlace(place, latField, lonField);
+                });
+                suggestions.add(item);
+            }
+            if (suggestions.getComponentCount() > 0) {
+                suggestions.show(placeField, 0, placeField.getHeight());
+            }
+        };
+        placeField.getDocument().addDocumentListener(new DocumentListener() {
+            @Override
+            public void insertUpdate(DocumentEvent e) {
+                SwingUtilities.invokeLater(update);
+            }
+
+            @Override
+            public void removeUpdate(DocumentEvent e) {
+                SwingUtilities.invokeLater(update);
+            }
+
+            @Override
+            public void changedUpdate(DocumentEvent e) {
+            }
+        });
+        placeField.addActionListener(e -> {
+            suggestions.setVisible(false);
+            Gazetteer.Place place = Gazetteer.getDefault().lookup(placeField.getText());
+            if (place != null) {
+                showPlace(place, latField, lonField);
+            }
+        });
+    }
+
+    private void showPlace(Gazetteer.Place place, JTextField latField, JTextField lonField) {
+        latField.setText(String.format("%.4f", place.getLatitude()));
+        lonField.setText(String.format("%.4f", place.getLongitude()));
+    }
+
+    // Stations within maxDistance km of the polyline, found through the spatial index
+    private List<ChargingStation> findStationsNearRoute(List<GeoPosition> path, double maxDistance) {
+        KdTree<ChargingStation> index = getStationIndex();
+        if (index == null) {
+            return new ArrayList<>();
+        }
+        return new CorridorSearch<>(index, ChargingStation::getLatitude, ChargingStation::getLongitude)
+            .find(path, maxDistance);
+    }
+    
+    /**
+     * Plans a route off the event dispatch thread, including loading the graph,
+     * the corridor search and building the markers. The fastest plan is shown
+     * as soon as it is found, then replaced by the fastest of the time/cost
+     * trade-offs once those are known. Cancelling interrupts the search.
+     */
+    private class RoutePlanningWorker extends SwingWorker<Void, RoutePlanningWorker.Result> {
+        private final Route route;
+        private final GeoPosition start;
+        private final GeoPosition end;
+        private final JPanel panel;
+        private final JXMapViewer mapViewer;
+        private final JTextArea routeDetails;
+        private final JLabel planningLabel;
+        private final long started = System.nanoTime();
+        private boolean zoomed;
+
+        RoutePlanningWorker(Route route, GeoPosition start, GeoPosition end, JPanel panel, JXMapViewer mapViewer,
+                            JTextArea routeDetails, JLabel planningLabel) {
+            this.route = route;
+            this.start = start;
+            this.end = end;
+            this.panel = panel;
+            this.mapViewer = mapViewer;
+            this.routeDetails = routeDetails;
+            this.planningLabel = planningLabel;
+        }
+
+        @Override
+        protected Void doInBackground() throws Exception {
+            // Plan over the precomputed graph for the vehicle's range class, or reuse
+            // an earlier plan of the same trip
+            ReachabilityGraph graph = ReachabilityGraphs.getDefault().forVehicle(route.getVehicleProfile());
+            RoutePlanCache cache = RoutePlanCache.getDefault();
+
+            // The fastest plan takes one search, so show it first
+            RoutePlan fastest = route.calculateRoute(graph, cache, true);
+            publish(describe(Collections.singletonList(fastest), false));
+
+            // Then every time/cost trade-off; the route takes the fastest of them
+            List<RoutePlan> tradeOffs = route.calculateTradeOffs(graph, cache);
+            publish(describe(tradeOffs, true));
+            return null;
+        }
+
+        @Override
+        protected void process(List<Result> results) {
+            if (isCancelled()) {
+                return;
+            }
+            Result result = results.get(results.size() - 1);
+
+            // Create custom painter for different colored waypoints
+            WaypointPainter<Waypoint> waypointPainter = new WaypointPainter<Waypoint>() {
+                @Override
+                protected void doPaint(Graphics2D g, JXMapViewer map, int width, int height) {
+                    for (Waypoint waypoint : getWaypoints()) {
+                        if (waypoint instanceof ColorWaypoint) {
+                            ColorWaypoint colorWaypoint = (ColorWaypoint) waypoint;
+                            Point2D point = map.getTileFactory().geoToPixel(
+                                colorWaypoint.getPosition(), map.getZoom());
+                            
+                            int x = (int) point.getX() - map.getViewportBounds().x;
+                            int y = (int) point.getY() - map.getViewportBounds().y;
+                            
+                            g.setColor(colorWaypoint.getColor());
+                            g.fillOval(x - 5, y - 5, 10, 10);
+                            g.setColor(Color.BLACK);
+                            g.drawOval(x - 5, y - 5, 10, 10);
+                        }
+                    }
+                }
+            };
+            waypointPainter.setWaypoints(result.markers);
+            mapViewer.setOverlayPainter(new CompoundPainter<>(
+                new RoutePainter(result.track),
+                waypointPainter
+            ));
+
+            // Zoom to fit route, once so the map does not jump when the plan improves
+            if (!zoomed) {
+                mapViewer.zoomToBestFit(new HashSet<>(result.track), 0.7);
+                zoomed = true;
+            }
+            routeDetails.setText(result.details);
+            planningLabel.setText(result.complete
+                ? String.format("%d plan(s) in %.0f ms", result.plans, result.millis)
+                : String.format("Fastest plan in %.0f ms, looking for cheaper ones...", result.millis));
+        }
+
+        @Override
+        protected void done() {
+            if (isCancelled()) {
+                return;
+            }
+            try {
+                get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                planningLabel.setText("Planning failed");
+                JOptionPane.showMessageDialog(panel,
+                    "Error calculating route: " + e.getCause().getMessage(),
+                    "Route Error",
+                    JOptionPane.ERROR_MESSAGE);
+            }
+        }
+
+        // Everything shown for a plan, worked out before it reaches the EDT
+        private Result describe(List<RoutePlan> tradeOffs, boolean complete) {
+            double startLat = start.getLatitude();
+            double startLon = start.getLongitude();
+            double endLat = end.getLatitude();
+            double endLon = end.getLongitude();
+
+            // Calculate total distance using Haversine formula
+            double totalDistance = GeoMath.distanceKm(startLat, startLon, endLat, endLon);
             
-            // Use cross product to find perpendicular distance
-            double crossProduct = Math.abs(
-                vectorX * (stationLon - startLon) - 
-                vectorY * (stationLat - startLat)
-            );
-            double perpendicularDistance = crossProduct / routeDistance;
+            // Calculate distances to charging stops
+            List<ChargingStop> chargingStops = route.getChargingStops();
+            Set<String> stopIds = chargingStops.stream()
+                .map(ChargingStop::getStationId)
+                .collect(Collectors.toSet());
+
+            // Find all stations near the route path: start, each stop, destination
+            List<GeoPosition> path = new ArrayList<>();
+            path.add(new GeoPosition(startLat, startLon));
+            for (ChargingStop stop : chargingStops) {
+                path.add(new GeoPosition(stop.getLatitude(), stop.getLongitude()));
+            }
+            path.add(new GeoPosition(endLat, endLon));
+            List<ChargingStation> nearbyStations = findStationsNearRoute(path, 20.0); // 20km corridor
+            if (!chargingStops.isEmpty()) {
+                // Distance to first charging stop
+                totalDistance = GeoMath.distanceKm(startLat, startLon, 
+                    chargingStops.get(0).getLatitude(), 
+                    chargingStops.get(0).getLongitude());
+                
+                // Distance between charging stops
+                for (int i = 0; i < chargingStops.size() - 1; i++) {
+                    ChargingStop current = chargingStops.get(i);
+                    ChargingStop next = chargingStops.get(i + 1);
+                    totalDistance += GeoMath.distanceKm(
+                        current.getLatitude(), current.getLongitude(),
+                        next.getLatitude(), next.getLongitude()
+                    );
+                }
+                
+                // Distance from last charging stop to destination
+                ChargingStop lastStop = chargingStops.get(chargingStops.size() - 1);
+                totalDistance += GeoMath.distanceKm(
+                    lastStop.getLatitude(), lastStop.getLongitude(),
+                    endLat, endLon
+                );
+            }
+
+            // Add all nearby stations to markers (with different color for non-stop stations)
+            List<Waypoint> markers = new ArrayList<>();
+            for (ChargingStation station : nearbyStations) {
+                GeoPosition stationPos = new GeoPosition(
+                    station.getLatitude(), 
+                    station.getLongitude()
+                );
+                // Use custom waypoint to differentiate between stops and nearby stations
+                if (stopIds.contains(station.getStationId())) {
+                    markers.add(new ColorWaypoint(stationPos, Color.RED)); // Stops are red
+                } else {
+                    markers.add(new ColorWaypoint(stationPos, Color.BLUE)); // Other stations are blue
+                }
+            }
+
+            // The track follows the route: start, each stop in order, destination
+            List<GeoPosition> track = route.getWaypoints();
             
-            // Check if station is within maxDistance km of route
-            if (perpendicularDistance <= maxDistance) {
-                // Also check if station is reasonably close to the route segment
-                double distanceFromStart = calculateDistance(startLat, startLon, stationLat, stationLon);
-                double distanceFromEnd = calculateDistance(endLat, endLon, stationLat, stationLon);
+            // Update route details with accurate distances
+            StringBuilder details = new StringBuilder();
+            details.append(String.format("Total Distance: %.2f km%n", totalDistance));
+            details.append(String.format("Estimated Time: %.2f hours%n", route.getEstimatedTime()));
+            details.append(String.format("Energy Required: %.2f kWh%n", route.getEstimatedEnergy()));
+            details.append("\nRequired Charging Stops:\n");
+            
+            if (chargingStops.isEmpty()) {
+                details.append("No charging stops needed\n");
+            } else {
+                for (int i = 0; i < chargingStops.size(); i++) {
+                    ChargingStop stop = chargingStops.get(i);
+                    double distanceFromStart = 0;
+                    if (i == 0) {
+                        distanceFromStart = GeoMath.distanceKm(startLat, startLon,
+                            stop.getLatitude(), stop.getLongitude());
+                    } else {
+                        ChargingStop prevStop = chargingStops.get(i - 1);
+                        distanceFromStart = GeoMath.distanceKm(
+                            prevStop.getLatitude(), prevStop.getLongitude(),
+                            stop.getLatitude(), stop.getLongitude()
+                        );
+                    }
+                    details.append(String.format("- %s (%s) - %.2f km from previous point%n", 
+                        stop.getStationName(), 
+                        stop.getLocation(),
+                        distanceFromStart
+                    ));
+                }
+            }
+            if (!tradeOffs.isEmpty() && tradeOffs.get(0).getWaitingHours() > 0) {
+                details.append(String.format("Waiting for stations to open: %.2f hours%n",
+                    tradeOffs.get(0).getWaitingHours()));
+            }
+
+            if (tradeOffs.size() > 1) {
+                details.append("\nTime / Cost Trade-offs:\n");
+                for (RoutePlan plan : tradeOffs) {
+                    details.append(String.format("- %.2f hours, cost %.2f, %d stops%n",
+                        plan.getTotalHours(),
+                        plan.getChargingCost(),
+                        plan.getStops().size()
+                    ));
+                }
+            }
+
+            details.append("\nOther Nearby Charging Stations:\n");
+            List<ChargingStation> otherStations = nearbyStations.stream()
+                .filter(station -> !stopIds.contains(station.getStationId()))
+                .collect(Collectors.toList());
                 
-                if (distanceFromStart <= routeDistance + maxDistance && 
-                    distanceFromEnd <= routeDistance + maxDistance) {
-                    nearbyStations.add(station);
+            if (otherStations.isEmpty()) {
+                details.append("No other stations within 20km of route\n");
+            } else {
+                for (ChargingStation station : otherStations) {
+                    details.append(String.format("- %s (%s)%n", 
+                        station.getName(), 
+                        station.getLocation()
+                    ));
                 }
             }
+            
+            return new Result(track, new HashSet<>(markers), details.toString(), tradeOffs.size(), complete,
+                (System.nanoTime() - started) / 1e6);
+        }
+
+        private class Result {
+            private final List<GeoPosition> track;
+            private final Set<Waypoint> markers;
+            private final String details;
+            private final int plans;
+            private final boolean complete; // trade-offs included
+            private final double millis; // since planning started
+
+            Result(List<GeoPosition> track, Set<Waypoint> markers, String details, int plans, boolean complete,
+                   double millis) {
+                this.track = track;
+                this.markers = markers;
+                this.details = details;
+                this.plans = plans;
+                this.complete = complete;
+                this.millis = millis;
+            }
         }
-        
-        return nearbyStations;
     }
-    
+
     // Custom Waypoint class for different colors
     private static class ColorWaypoint extends DefaultWaypoint {
         private final Color color;
@@ -1340,16 +1556,12 @@ public class EVManagementApp extends JFrame {
         JPanel selectionPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
         JComboBox<String> stationComboBox = new JComboBox<>();
         JList<String> reviewsList = new JList<>();
+        reviewStationComboBox = stationComboBox;
         
-        updateStationComboBox(stationComboBox);
         stationComboBox.addActionListener(e -> {
             String selectedName = (String) stationComboBox.getSelectedItem();
             if (selectedName != null) {
-                List<ChargingStation> stations = loadStationsFromFiles();
-                currentStation = stations.stream()
-                    .filter(s -> s.getName().equals(selectedName))
-                    .findFirst()
-                    .orElse(null);
+                currentStation = findChargingStationByName(selectedName, getStations());
                 if (currentStation != null) {
                     reviewsList.setListData(currentStation.getReviews().toArray(new String[0]));
                 }
@@ -1398,16 +1610,21 @@ public class EVManagementApp extends JFrame {
 
     private void updateStationComboBox(JComboBox<String> comboBox) {
         comboBox.removeAllItems();
-        List<ChargingStation> stations = loadStationsFromFiles();
+        List<ChargingStation> stations = getStations();
         for (ChargingStation station : stations) {
             comboBox.addItem(station.getName());
         }
     }
 
     private void saveStationReviewsToFile(ChargingStation station) {
-        try (ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(station.getStationId() + "_reviews.dat"))) {
-            oos.writeObject(station.getReviews());
-            oos.writeObject(station.getRatings());
+        try {
+            DurableFileWriter.getInstance().write(new File(station.getStationId() + "_reviews.dat"),
+                Durability.forStore("reviews"), out -> {
+                    ObjectOutputStream oos = new ObjectOutputStream(out);
+                    oos.writeObject(station.getReviews());
+                    oos.writeObject(station.getRatings());
+                    oos.flush();
+                });
         } catch (IOException e) {
             e.printStackTrace();
         }
@@ -1479,8 +1696,8 @@ public class EVManagementApp extends JFrame {
     }
 
     private User loadUserFromFile(String username) {
-        try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(username + ".dat"))) {
-            return (User) ois.readObject();
+        try {
+            return UserPersistenceService.getInstance().loadUser(username);
         } catch (IOException | ClassNotFoundException e) {
             e.printStackTrace();
             return null;
@@ -1488,18 +1705,12 @@ public class EVManagementApp extends JFrame {
     }
 
     private void saveUserToFile(User user) {
-        try (ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(user.getUsername() + ".dat"))) {
-            oos.writeObject(user);
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
+        UserPersistenceService.getInstance().markDirty(user);
     }
 
     private void saveStationToFile(ChargingStation station) {
-        File dir = new File("stations");
-        if (!dir.exists()) dir.mkdir();
-        try (ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(new File(dir, station.getStationId() + ".dat")))) {
-            oos.writeObject(station);
+        try {
+            StationRepository.getDefault().save(station);
         } catch (IOException e) {
             e.printStackTrace();
         }
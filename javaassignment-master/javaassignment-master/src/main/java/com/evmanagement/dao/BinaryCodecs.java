@@ -0,0 +1,64 @@
+package com.evmanagement.dao;
+
+import com.evmanagement.model.ChargingStation;
+import com.evmanagement.model.Route;
+import com.evmanagement.model.User;
+import com.evmanagement.model.Vehicle;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Hand-written binary codecs for the persisted model types. The field layout
+ * lives next to the fields themselves (writeTo/readFrom on each model class);
+ * bump {@link #SCHEMA_VERSION} whenever that layout changes and branch on the
+ * version in readFrom.
+ */
+public final class BinaryCodecs {
+    // 1: initial layout
+    // 2: users store a trip count; trips live in TripHistoryStore segments
+    // 3: routes keep ChargingStop and VehicleProfile snapshots instead of full copies
+    public static final int SCHEMA_VERSION = 3;
+
+    public static final Codec<Vehicle> VEHICLE = new Codec<Vehicle>() {
+        @Override
+        public int getSchemaVersion() { return SCHEMA_VERSION; }
+        @Override
+        public void encode(Vehicle value, DataOutput out) throws IOException { value.writeTo(out); }
+        @Override
+        public Vehicle decode(DataInput in, int version) throws IOException { return Vehicle.readFrom(in, version); }
+    };
+
+    public static final Codec<ChargingStation> CHARGING_STATION = new Codec<ChargingStation>() {
+        @Override
+        public int getSchemaVersion() { return SCHEMA_VERSION; }
+        @Override
+        public void encode(ChargingStation value, DataOutput out) throws IOException { value.writeTo(out); }
+        @Override
+        public ChargingStation decode(DataInput in, int version) throws IOException {
+            return ChargingStation.readFrom(in, version);
+        }
+    };
+
+    public static final Codec<Route> ROUTE = new Codec<Route>() {
+        @Override
+        public int getSchemaVersion() { return SCHEMA_VERSION; }
+        @Override
+        public void encode(Route value, DataOutput out) throws IOException { value.writeTo(out); }
+        @Override
+        public Route decode(DataInput in, int version) throws IOException { return Route.readFrom(in, version); }
+    };
+
+    public static final Codec<User> USER = new Codec<User>() {
+        @Override
+        public int getSchemaVersion() { return SCHEMA_VERSION; }
+        @Override
+        public void encode(User value, DataOutput out) throws IOException { value.writeTo(out); }
+        @Override
+        public User decode(DataInput in, int version) throws IOException { return User.readFrom(in, version); }
+    };
+
+    private BinaryCodecs() {
+    }
+}
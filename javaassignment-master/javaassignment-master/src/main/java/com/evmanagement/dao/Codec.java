@@ -0,0 +1,18 @@
+package com.evmanagement.dao;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Encodes and decodes one record type for {@link FileDAO}. The schema version
+ * returned by {@link #getSchemaVersion()} is written into every file header and
+ * handed back to {@link #decode} so older files can still be read.
+ */
+public interface Codec<T> {
+    int getSchemaVersion();
+
+    void encode(T value, DataOutput out) throws IOException;
+
+    T decode(DataInput in, int schemaVersion) throws IOException;
+}
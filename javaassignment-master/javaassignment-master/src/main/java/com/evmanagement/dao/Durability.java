@@ -0,0 +1,29 @@
+package com.evmanagement.dao;
+
+/**
+ * How hard a store works to get a write onto stable storage before the call
+ * returns. Every level replaces files atomically, so a crash never leaves a
+ * half-written file behind; the levels differ only in when data is fsynced.
+ */
+public enum Durability {
+    // Atomic rename only; survives a process crash but not a power loss
+    NONE,
+    // fsync batched with other writes in the same commit window
+    GROUP,
+    // fsync before returning
+    SYNC;
+
+    public static final String DEFAULT_PROPERTY = "evm.durability";
+
+    // Level for one store, e.g. -Devm.durability.user=SYNC, falling back to -Devm.durability
+    public static Durability forStore(String store) {
+        String value = System.getProperty(DEFAULT_PROPERTY + "." + store,
+            System.getProperty(DEFAULT_PROPERTY, GROUP.name()));
+        try {
+            return valueOf(value.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            System.err.println("Unknown durability level '" + value + "' for " + store + ", using GROUP");
+            return GROUP;
+        }
+    }
+}
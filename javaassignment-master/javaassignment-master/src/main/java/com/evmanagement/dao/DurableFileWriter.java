@@ -0,0 +1,312 @@
+package com.evmanagement.dao;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Crash-safe file writes shared by every store. A whole-file write goes to a
+ * temp file in the target's directory and is renamed over the target, so
+ * readers see either the old or the new contents. With {@link Durability#GROUP}
+ * the fsyncs of all writes arriving within one commit window are done together
+ * by a single committer thread; repeated writes to the same file in a window
+ * are coalesced and only the newest one is synced and renamed. Writes are
+ * ordered by when they started, so a slow writer finishing last cannot put
+ * back contents an overlapping, later write has replaced.
+ */
+public class DurableFileWriter {
+    public static final long DEFAULT_GROUP_COMMIT_MS = 5;
+
+    private static DurableFileWriter instance;
+
+    private final long groupCommitMs;
+    private final Object lock = new Object();
+    private Map<String, PendingCommit> pending = new LinkedHashMap<>();
+    private final Map<String, Long> newestWrites = new HashMap<>(); // sequence of the newest temp per target
+    private final Map<String, Integer> runningWrites = new HashMap<>(); // group writes per target not yet done
+    private Thread committer;
+    private final AtomicLong sequence = new AtomicLong();
+
+    // Statistics
+    private final AtomicLong writes = new AtomicLong();
+    private final AtomicLong fsyncs = new AtomicLong();
+    private final AtomicLong commitBatches = new AtomicLong();
+    private final AtomicLong coalescedWrites = new AtomicLong();
+
+    public DurableFileWriter(long groupCommitMs) {
+        this.groupCommitMs = groupCommitMs;
+    }
+
+    public static synchronized DurableFileWriter getInstance() {
+        if (instance == null) {
+            instance = new DurableFileWriter(Long.getLong("evm.io.groupCommitMs", DEFAULT_GROUP_COMMIT_MS));
+        }
+        return instance;
+    }
+
+    public interface OutputWriter {
+        // Write the complete file contents; the stream is closed afterwards
+        void writeTo(FileOutputStream out) throws IOException;
+    }
+
+    public interface SyncAction {
+        void sync() throws IOException;
+    }
+
+    // Replace target with whatever body writes
+    public void write(File target, Durability durability, OutputWriter body) throws IOException {
+        String key = target.getAbsolutePath();
+        long writeSequence;
+        synchronized (lock) {
+            // Numbered and counted together, so a target is only forgotten once no older write can still arrive
+            writeSequence = sequence.incrementAndGet();
+            if (durability == Durability.GROUP) {
+                runningWrites.merge(key, 1, Integer::sum);
+            }
+        }
+        try {
+            writeAndCommit(target, durability, body, writeSequence);
+        } finally {
+            if (durability == Durability.GROUP) {
+                finished(key);
+            }
+        }
+    }
+
+    private void writeAndCommit(File target, Durability durability, OutputWriter body, long writeSequence)
+            throws IOException {
+        writes.incrementAndGet();
+        File dir = target.getAbsoluteFile().getParentFile();
+        if (!dir.exists()) dir.mkdirs();
+        File temp = File.createTempFile("." + target.getName() + ".", ".tmp", dir);
+        try {
+            try (FileOutputStream out = new FileOutputStream(temp)) {
+                body.writeTo(out);
+                out.flush();
+                if (durability == Durability.SYNC) {
+                    out.getChannel().force(true);
+                    fsyncs.incrementAndGet();
+                }
+            }
+            if (durability == Durability.GROUP) {
+                await(enqueue(target, temp, writeSequence, null));
+                return;
+            }
+            replace(temp, target);
+            if (durability == Durability.SYNC) {
+                syncDirectory(dir);
+            }
+        } finally {
+            Files.deleteIfExists(temp.toPath());
+        }
+    }
+
+    // Make in-place changes to target durable, e.g. appends or a mapped buffer
+    public void sync(File target, Durability durability, SyncAction action) throws IOException {
+        switch (durability) {
+            case NONE:
+                return;
+            case SYNC:
+                action.sync();
+                fsyncs.incrementAndGet();
+                return;
+            default:
+                await(enqueue(target, null, 0, action));
+        }
+    }
+
+    // fsync the file's current contents according to the durability level
+    public void force(File target, Durability durability) throws IOException {
+        sync(target, durability, () -> {
+            try (FileChannel channel = FileChannel.open(target.toPath(), StandardOpenOption.WRITE)) {
+                channel.force(false);
+            }
+        });
+    }
+
+    // Once none of a target's writes is running, its newest sequence orders nothing any more
+    private void finished(String key) {
+        synchronized (lock) {
+            if (runningWrites.merge(key, -1, Integer::sum) == 0) {
+                runningWrites.remove(key);
+                newestWrites.remove(key);
+            }
+        }
+    }
+
+    private CompletableFuture<Void> enqueue(File target, File temp, long writeSequence, SyncAction action) {
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        String key = target.getAbsolutePath();
+        synchronized (lock) {
+            PendingCommit commit = pending.get(key);
+            if (commit == null) {
+                commit = new PendingCommit(target);
+                pending.put(key, commit);
+            } else {
+                coalescedWrites.incrementAndGet();
+            }
+            Long newest = newestWrites.get(key);
+            if (temp != null && (newest == null || writeSequence > newest)) {
+                // The newer temp file supersedes any earlier one; the earlier writer deletes its own.
+                // An older one arriving late is dropped, and its writer waits for the newer commit.
+                commit.temp = temp;
+                newestWrites.put(key, writeSequence);
+            }
+            if (action != null) {
+                commit.actions.add(action);
+            }
+            commit.waiters.add(done);
+            if (committer == null) {
+                committer = new Thread(this::commitLoop, "durable-group-commit");
+                committer.setDaemon(true);
+                committer.start();
+            }
+            lock.notifyAll();
+        }
+        return done;
+    }
+
+    private void commitLoop() {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                synchronized (lock) {
+                    while (pending.isEmpty()) {
+                        lock.wait();
+                    }
+                }
+                // Let concurrent writers join this window
+                Thread.sleep(groupCommitMs);
+                Map<String, PendingCommit> batch;
+                synchronized (lock) {
+                    batch = pending;
+                    pending = new LinkedHashMap<>();
+                }
+                commit(batch.values());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            // Let the next write start a new committer, and fail whatever this one left
+            Map<String, PendingCommit> abandoned;
+            synchronized (lock) {
+                committer = null;
+                abandoned = pending;
+                pending = new LinkedHashMap<>();
+            }
+            IOException stopped = new IOException("Group commit thread stopped");
+            for (PendingCommit commit : abandoned.values()) {
+                for (CompletableFuture<Void> waiter : commit.waiters) {
+                    waiter.completeExceptionally(stopped);
+                }
+            }
+        }
+    }
+
+    private void commit(Iterable<PendingCommit> batch) {
+        commitBatches.incrementAndGet();
+        Set<File> dirs = new LinkedHashSet<>();
+        List<PendingCommit> committed = new ArrayList<>();
+        for (PendingCommit commit : batch) {
+            try {
+                if (commit.temp != null) {
+                    try (FileChannel channel = FileChannel.open(commit.temp.toPath(), StandardOpenOption.WRITE)) {
+                        channel.force(true);
+                    }
+                    fsyncs.incrementAndGet();
+                    replace(commit.temp, commit.target);
+                    dirs.add(commit.target.getAbsoluteFile().getParentFile());
+                }
+                for (SyncAction action : commit.actions) {
+                    action.sync();
+                    fsyncs.incrementAndGet();
+                }
+                committed.add(commit);
+            } catch (IOException e) {
+                for (CompletableFuture<Void> waiter : commit.waiters) {
+                    waiter.completeExceptionally(e);
+                }
+            }
+        }
+        for (File dir : dirs) {
+            syncDirectory(dir);
+        }
+        for (PendingCommit commit : committed) {
+            for (CompletableFuture<Void> waiter : commit.waiters) {
+                waiter.complete(null);
+            }
+        }
+    }
+
+    private static void await(CompletableFuture<Void> done) throws IOException {
+        try {
+            done.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for group commit", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+
+    private static void replace(File temp, File target) throws IOException {
+        try {
+            Files.move(temp.toPath(), target.toPath(),
+                StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    // Persist the rename itself; not every platform can open a directory for this
+    private void syncDirectory(File dir) {
+        try (FileChannel channel = FileChannel.open(dir.toPath(), StandardOpenOption.READ)) {
+            channel.force(true);
+            fsyncs.incrementAndGet();
+        } catch (IOException e) {
+            // Best effort
+        }
+    }
+
+    private static class PendingCommit {
+        private final File target;
+        private File temp;
+        private final List<SyncAction> actions = new ArrayList<>();
+        private final List<CompletableFuture<Void>> waiters = new ArrayList<>();
+
+        PendingCommit(File target) {
+            this.target = target;
+        }
+    }
+
+    // Getters
+    public long getGroupCommitMs() { return groupCommitMs; }
+    public long getWrites() { return writes.get(); }
+    public long getFsyncs() { return fsyncs.get(); }
+    public long getCommitBatches() { return commitBatches.get(); }
+    public long getCoalescedWrites() { return coalescedWrites.get(); }
+
+    // Targets whose newest write is still remembered
+    int getTrackedTargets() {
+        synchronized (lock) {
+            return newestWrites.size();
+        }
+    }
+}
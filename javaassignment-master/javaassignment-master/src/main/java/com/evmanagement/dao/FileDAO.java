@@ -1,20 +1,244 @@
 package com.evmanagement.dao;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 public class FileDAO<T> {
+    // Header of codec-encoded files: [int magic][int schema version][long record count]
+    // [long committed length]; files written before the length have the older magic
+    private static final int CODEC_MAGIC = 0x45564443; // "EVDC"
+    private static final int UNCOMMITTED_CODEC_MAGIC = 0x45564442; // "EVDB"
+    private static final int HEADER_COUNT_OFFSET = 8;
+
     private final String filePath;
+    private final Codec<T> codec;
+    private final Durability durability;
 
     public FileDAO(String filePath) {
+        this(filePath, null);
+    }
+
+    public FileDAO(String filePath, Codec<T> codec) {
+        this(filePath, codec, Durability.forStore("default"));
+    }
+
+    public FileDAO(String filePath, Codec<T> codec, Durability durability) {
         this.filePath = filePath;
+        this.codec = codec;
+        this.durability = durability;
     }
 
     public void saveToFile(List<T> items) throws IOException {
-        try (ObjectOutputStream oos = new ObjectOutputStream(
-                new FileOutputStream(filePath))) {
-            oos.writeObject(new ArrayList<>(items));
+        if (codec != null) {
+            saveAll(items);
+            return;
+        }
+        DurableFileWriter.getInstance().write(new File(filePath), durability, out -> {
+            ObjectOutputStream oos = new ObjectOutputStream(out);
+            oos.writeObject(items instanceof Serializable ? items : new ArrayList<>(items));
+            oos.flush();
+        });
+    }
+
+    // Replace the file with the given records, encoding them one at a time
+    public void saveAll(Iterable<T> items) throws IOException {
+        requireCodec();
+        DurableFileWriter.getInstance().write(new File(filePath), durability, out -> writeCodecFile(out, items));
+    }
+
+    // Replace the file with records already encoded by encode(), so the write never reads the objects
+    public void saveEncoded(List<byte[]> records) throws IOException {
+        requireCodec();
+        DurableFileWriter.getInstance().write(new File(filePath), durability, file -> writeCodecFile(file, out -> {
+            for (byte[] record : records) {
+                out.write(record);
+            }
+            return records.size();
+        }));
+    }
+
+    // One record as this file's codec encodes it
+    public byte[] encode(T item) throws IOException {
+        requireCodec();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(1024);
+        DataOutputStream out = new DataOutputStream(bytes);
+        codec.encode(item, out);
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    private interface RecordWriter {
+        // Write the records and return how many there were
+        long writeRecords(DataOutputStream out) throws IOException;
+    }
+
+    private void writeCodecFile(FileOutputStream file, Iterable<T> items) throws IOException {
+        writeCodecFile(file, out -> {
+            long count = 0;
+            for (T item : items) {
+                codec.encode(item, out);
+                count++;
+            }
+            return count;
+        });
+    }
+
+    private void writeCodecFile(FileOutputStream file, RecordWriter records) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file));
+        out.writeInt(CODEC_MAGIC);
+        out.writeInt(codec.getSchemaVersion());
+        out.writeLong(0);
+        out.writeLong(0);
+        long count = records.writeRecords(out);
+        out.flush();
+        // The count and length are only known at the end; patch them into the header
+        writeCommitted(file.getChannel(), count, file.getChannel().position());
+    }
+
+    private static void writeCommitted(FileChannel channel, long count, long length) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(2 * Long.BYTES).putLong(0, count).putLong(Long.BYTES, length);
+        channel.write(header, HEADER_COUNT_OFFSET);
+    }
+
+    // Add records to the end of the file without reading the existing ones
+    public void appendAll(Iterable<T> items) throws IOException {
+        requireCodec();
+        File file = new File(filePath);
+        if (!file.exists() || file.length() == 0) {
+            saveAll(items);
+            return;
+        }
+        if (readSchemaVersion() != codec.getSchemaVersion()) {
+            // Legacy, older-schema or pre-length file: re-encode it once so every
+            // record shares one schema and the header carries the committed length
+            rewriteWithCurrentSchema();
+        }
+        appendRecords(items);
+    }
+
+    // Records are appended and synced first and the header count and length
+    // are updated last. Bytes past the committed length are what a crash in
+    // between left behind; they are cut off before appending again.
+    private void appendRecords(Iterable<T> items) throws IOException {
+        File file = new File(filePath);
+        long count;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.seek(HEADER_COUNT_OFFSET);
+            count = raf.readLong();
+            long committed = raf.readLong();
+            if (raf.length() > committed) {
+                raf.setLength(committed);
+            }
+        }
+        long appended = 0;
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(file, true)))) {
+            for (T item : items) {
+                codec.encode(item, out);
+                appended++;
+            }
+        }
+        if (appended > 0) {
+            DurableFileWriter.getInstance().force(file, durability);
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                writeCommitted(raf.getChannel(), count + appended, raf.length());
+            }
+            DurableFileWriter.getInstance().force(file, durability);
+        }
+    }
+
+    private void rewriteWithCurrentSchema() throws IOException {
+        DurableFileWriter.getInstance().write(new File(filePath), durability, out -> {
+            try (Stream<T> items = stream()) {
+                writeCodecFile(out, items::iterator);
+            }
+        });
+    }
+
+    // Number of records; codec files answer from the header without decoding anything
+    public long count() throws IOException, ClassNotFoundException {
+        File file = new File(filePath);
+        if (!file.exists()) {
+            return 0;
+        }
+        if (codec != null) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 16))) {
+                if (isCodecMagic(in.readInt())) {
+                    in.readInt();
+                    return in.readLong();
+                }
+            }
+        }
+        return loadFromFile().size();
+    }
+
+    /**
+     * Lazily decoded records. Codec files are read one record at a time so
+     * memory use does not depend on the file size; Java serialization files
+     * can only be read whole. The stream holds the file open until closed.
+     */
+    public Stream<T> stream() throws IOException {
+        File file = new File(filePath);
+        if (!file.exists()) {
+            return Stream.empty();
+        }
+        BufferedInputStream in = new BufferedInputStream(new FileInputStream(file));
+        try {
+            if (codec == null || !startsWithCodecMagic(in)) {
+                in.close();
+                return loadFromFile().stream();
+            }
+            DataInputStream data = new DataInputStream(in);
+            int magic = data.readInt();
+            int schemaVersion = data.readInt();
+            long count = data.readLong();
+            skipCommittedLength(data, magic);
+            Iterator<T> records = new Iterator<T>() {
+                private long read;
+
+                @Override
+                public boolean hasNext() {
+                    return read < count;
+                }
+
+                @Override
+                public T next() {
+                    if (!hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+                    try {
+                        T item = codec.decode(data, schemaVersion);
+                        read++;
+                        return item;
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+            };
+            return StreamSupport.stream(Spliterators.spliterator(records, count,
+                    Spliterator.ORDERED | Spliterator.NONNULL), false)
+                .onClose(() -> {
+                    try {
+                        in.close();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+        } catch (ClassNotFoundException e) {
+            throw new IOException(e);
+        } catch (IOException | RuntimeException e) {
+            in.close();
+            throw e;
         }
     }
 
@@ -24,21 +248,83 @@ public class FileDAO<T> {
         if (!file.exists()) {
             return new ArrayList<>();
         }
-        
-        try (ObjectInputStream ois = new ObjectInputStream(
-                new FileInputStream(filePath))) {
-            return (List<T>) ois.readObject();
+
+        try (BufferedInputStream in = new BufferedInputStream(new FileInputStream(filePath))) {
+            if (codec != null && startsWithCodecMagic(in)) {
+                DataInputStream data = new DataInputStream(in);
+                int magic = data.readInt();
+                int schemaVersion = data.readInt();
+                long count = data.readLong();
+                skipCommittedLength(data, magic);
+                List<T> items = new ArrayList<>((int) Math.min(count, Integer.MAX_VALUE));
+                for (long i = 0; i < count; i++) {
+                    items.add(codec.decode(data, schemaVersion));
+                }
+                return items;
+            }
+
+            // Java serialization, as written before codecs were introduced
+            try (ObjectInputStream ois = new ObjectInputStream(in)) {
+                Object value = ois.readObject();
+                if (value instanceof List) {
+                    return (List<T>) value;
+                }
+                return new ArrayList<>(Collections.singletonList((T) value));
+            }
+        }
+    }
+
+    private int readSchemaVersion() throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(filePath), 16))) {
+            return in.readInt() == CODEC_MAGIC ? in.readInt() : -1;
+        }
+    }
+
+    private static boolean isCodecMagic(int magic) {
+        return magic == CODEC_MAGIC || magic == UNCOMMITTED_CODEC_MAGIC;
+    }
+
+    private static void skipCommittedLength(DataInputStream in, int magic) throws IOException {
+        if (magic == CODEC_MAGIC) {
+            in.readLong();
+        }
+    }
+
+    private void requireCodec() {
+        if (codec == null) {
+            throw new UnsupportedOperationException("Batched writes need a codec: " + filePath);
         }
     }
 
-    public void saveToTextFile(List<String> lines) throws IOException {
-        try (BufferedWriter writer = new BufferedWriter(
-                new FileWriter(filePath))) {
+    private static boolean startsWithCodecMagic(BufferedInputStream in) throws IOException {
+        in.mark(4);
+        byte[] head = new byte[4];
+        int read = in.readNBytes(head, 0, 4);
+        in.reset();
+        return read == 4 && isCodecMagic(new DataInputStream(new ByteArrayInputStream(head)).readInt());
+    }
+
+    public String getFilePath() {
+        return filePath;
+    }
+
+    public Codec<T> getCodec() {
+        return codec;
+    }
+
+    public Durability getDurability() {
+        return durability;
+    }
+
+    public void saveToTextFile(Iterable<String> lines) throws IOException {
+        DurableFileWriter.getInstance().write(new File(filePath), durability, out -> {
+            BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(out));
             for (String line : lines) {
                 writer.write(line);
                 writer.newLine();
             }
-        }
+            writer.flush();
+        });
     }
 
     public List<String> loadFromTextFile() throws IOException {
@@ -58,4 +344,20 @@ public class FileDAO<T> {
         }
         return lines;
     }
-} 
\ No newline at end of file
+
+    // Lines read on demand; close the stream to release the file
+    public Stream<String> streamTextLines() throws IOException {
+        File file = new File(filePath);
+        if (!file.exists()) {
+            return Stream.empty();
+        }
+        BufferedReader reader = new BufferedReader(new FileReader(file));
+        return reader.lines().onClose(() -> {
+            try {
+                reader.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+}
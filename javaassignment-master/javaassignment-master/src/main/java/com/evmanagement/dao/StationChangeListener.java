@@ -0,0 +1,7 @@
+package com.evmanagement.dao;
+
+// Notified after a station changes. The type is null when the whole station was
+// added or reloaded, and the station ID is null after a full reload.
+public interface StationChangeListener {
+    void stationChanged(String stationId, StationJournal.ChangeType type);
+}
@@ -0,0 +1,473 @@
+package com.evmanagement.dao;
+
+import com.evmanagement.model.ChargingStation;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only change journal for a single charging station. Each mutation is
+ * written as one small checksummed record to stations/<id>.journal; once the
+ * journal grows past the compaction threshold the station's snapshot in the
+ * {@link StationStore} is rewritten and the journal is truncated. Recovery is
+ * snapshot plus journal replay.
+ */
+public class StationJournal {
+    public static final String STATIONS_DIR = "stations";
+    public static final String JOURNAL_SUFFIX = ".journal";
+    public static final int DEFAULT_COMPACTION_THRESHOLD = 500;
+
+    private static final Map<String, StationJournal> journals = new ConcurrentHashMap<>();
+    private static final List<StationChangeListener> listeners = new CopyOnWriteArrayList<>();
+    // Set in the type byte of records whose text has an int length; older ones used writeUTF
+    private static final int LONG_TEXT = 0x40;
+    private static Durability durability = Durability.forStore("station");
+    private static int compactionThreshold =
+        Integer.getInteger("evm.station.compactionThreshold", DEFAULT_COMPACTION_THRESHOLD);
+
+    private final String stationId;
+    private final File journalFile;
+    private int entryCount = -1; // counted lazily on first append, which also trims a torn tail
+    // The first appliedLength bytes of the journal file with this key are reflected in memory
+    private long appliedLength;
+    private Object appliedFileKey;
+
+    private StationJournal(String stationId) {
+        this.stationId = stationId;
+        this.journalFile = new File(STATIONS_DIR, stationId + JOURNAL_SUFFIX);
+    }
+
+    public static StationJournal forStation(String stationId) {
+        return journals.computeIfAbsent(stationId, StationJournal::new);
+    }
+
+    public static void addChangeListener(StationChangeListener listener) {
+        listeners.add(listener);
+    }
+
+    public static void removeChangeListener(StationChangeListener listener) {
+        listeners.remove(listener);
+    }
+
+    public static void setCompactionThreshold(int threshold) {
+        compactionThreshold = threshold;
+    }
+
+    public static int getCompactionThreshold() {
+        return compactionThreshold;
+    }
+
+    public static void setDurability(Durability level) {
+        durability = level;
+    }
+
+    // Listeners hear of the change only once it is durable; a failed append throws instead
+    public synchronized void append(ChargingStation station, long sequence, Entry entry) throws IOException {
+        if (entryCount < 0) {
+            entryCount = trimTornTail();
+        }
+        File dir = journalFile.getParentFile();
+        if (!dir.exists()) dir.mkdirs();
+        // Our own append is already applied, unless another process wrote in between
+        boolean current = journalFile.length() == appliedLength
+            && (appliedLength == 0 || Objects.equals(fileKey(), appliedFileKey));
+        Files.write(journalFile.toPath(), encode(sequence, entry),
+            StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        if (current) {
+            appliedLength = journalFile.length();
+            appliedFileKey = fileKey();
+        }
+        DurableFileWriter.getInstance().force(journalFile, durability);
+        entryCount++;
+        if (entryCount >= compactionThreshold) {
+            try {
+                compact(station);
+            } catch (IOException e) {
+                // The change is in the journal; the next append tries compacting again
+                e.printStackTrace();
+            }
+        }
+        for (StationChangeListener listener : listeners) {
+            listener.stationChanged(stationId, entry.getType());
+        }
+    }
+
+    // Rewrite the full snapshot and start a fresh journal
+    public synchronized void compact(ChargingStation station) throws IOException {
+        writeSnapshot(station);
+        Files.deleteIfExists(journalFile.toPath());
+        entryCount = 0;
+        appliedLength = 0;
+        appliedFileKey = null;
+    }
+
+    // Apply every journal entry newer than the snapshot; returns the number applied
+    public synchronized int replay(ChargingStation station) {
+        int applied = 0;
+        for (Record record : read(0)) {
+            if (station.applyJournalEntry(record.sequence, record.entry)) {
+                applied++;
+            }
+        }
+        return applied;
+    }
+
+    // Records written since the last read or local append, i.e. by another
+    // process; our own appends cost a stat and no read. A journal compacted
+    // and recreated since is read from the start.
+    public synchronized List<Record> readNew() {
+        try {
+            if (!journalFile.exists()) {
+                appliedLength = 0;
+                appliedFileKey = null;
+                return Collections.emptyList();
+            }
+            boolean sameFile = Objects.equals(fileKey(), appliedFileKey) && journalFile.length() >= appliedLength;
+            return read(sameFile ? appliedLength : 0);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return Collections.emptyList();
+        }
+    }
+
+    // Intact records from the given offset on; marks them as applied
+    private List<Record> read(long from) {
+        List<Record> records = new ArrayList<>();
+        if (!journalFile.exists()) {
+            return records;
+        }
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(journalFile)))) {
+            Object key = fileKey();
+            long length = journalFile.length();
+            long offset = from;
+            in.skipBytes((int) from);
+            Record record;
+            while ((record = readRecord(in, length - offset)) != null) {
+                offset += record.size;
+                records.add(record);
+            }
+            appliedLength = offset;
+            appliedFileKey = key;
+        } catch (IOException | ClassNotFoundException e) {
+            e.printStackTrace();
+        }
+        return records;
+    }
+
+    private Object fileKey() throws IOException {
+        return Files.readAttributes(journalFile.toPath(), BasicFileAttributes.class).fileKey();
+    }
+
+    public static void writeSnapshot(ChargingStation station) throws IOException {
+        StationStore store = StationStore.getDefault();
+        store.put(station);
+        store.commit();
+    }
+
+    // Bring stations loaded from their snapshots up to date; the stations
+    // directory is listed once rather than probing for a journal per station
+    public static void replayAll(List<ChargingStation> stations) {
+        Set<String> journaled = journaledStationIds();
+        if (journaled.isEmpty()) {
+            return;
+        }
+        for (ChargingStation station : stations) {
+            if (journaled.contains(station.getStationId())) {
+                forStation(station.getStationId()).replay(station);
+            }
+        }
+    }
+
+    // IDs of every station that currently has a journal, from one directory listing
+    public static Set<String> journaledStationIds() {
+        Set<String> journaled = new HashSet<>();
+        File[] files = new File(STATIONS_DIR).listFiles((dir, name) -> name.endsWith(JOURNAL_SUFFIX));
+        if (files != null) {
+            for (File file : files) {
+                String name = file.getName();
+                journaled.add(name.substring(0, name.length() - JOURNAL_SUFFIX.length()));
+            }
+        }
+        return journaled;
+    }
+
+    // Load a legacy snapshot file and bring it up to date from its journal
+    public static ChargingStation recover(File snapshotFile) throws IOException, ClassNotFoundException {
+        try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(snapshotFile))) {
+            ChargingStation station = (ChargingStation) ois.readObject();
+            forStation(station.getStationId()).replay(station);
+            return station;
+        }
+    }
+
+    // Counts the intact records and cuts off whatever follows them. Replay stops
+    // at a torn or corrupt record, so anything appended after one would be lost.
+    private int trimTornTail() throws IOException {
+        if (!journalFile.exists()) {
+            return 0;
+        }
+        int count = 0;
+        long length = journalFile.length();
+        long intact = 0;
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(journalFile)))) {
+            Record record;
+            while ((record = readRecord(in, length - intact)) != null) {
+                intact += record.size;
+                count++;
+            }
+        } catch (ClassNotFoundException e) {
+            throw new IOException(e);
+        }
+        if (intact < length) {
+            try (RandomAccessFile raf = new RandomAccessFile(journalFile, "rw")) {
+                raf.setLength(intact);
+            }
+            DurableFileWriter.getInstance().force(journalFile, durability);
+        }
+        return count;
+    }
+
+    public String getStationId() { return stationId; }
+    public File getJournalFile() { return journalFile; }
+
+    // Record layout: [int length][int crc32][payload], payload = [long seq][byte type][fields]
+    private static byte[] encode(long sequence, Entry entry) throws IOException {
+        ByteArrayOutputStream payload = new ByteArrayOutputStream(64);
+        DataOutputStream out = new DataOutputStream(payload);
+        out.writeLong(sequence);
+        boolean text = entry.type == ChangeType.REVIEW || entry.type == ChangeType.REMOVE_PORT;
+        out.writeByte(entry.type.ordinal() | (text ? LONG_TEXT : 0));
+        switch (entry.type) {
+            case AVAILABILITY:
+                out.writeBoolean(entry.flag);
+                break;
+            case PRICING:
+                out.writeDouble(entry.number);
+                break;
+            case OCCUPANCY:
+                writeTime(out, entry.time);
+                out.writeInt(entry.count);
+                break;
+            case REVIEW:
+                BinaryIO.writeString(out, entry.text);
+                out.writeInt(entry.count);
+                break;
+            case REMOVE_PORT:
+                BinaryIO.writeString(out, entry.text);
+                break;
+            case MAINTENANCE_WINDOW:
+                writeTime(out, entry.time);
+                writeTime(out, entry.endTime);
+                break;
+            default:
+                // Rarely changed structured values are stored as serialized objects
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                try (ObjectOutputStream oos = new ObjectOutputStream(bytes)) {
+                    oos.writeObject(entry.value);
+                }
+                out.writeInt(bytes.size());
+                bytes.writeTo(out);
+        }
+        out.flush();
+
+        CRC32 crc = new CRC32();
+        crc.update(payload.toByteArray());
+        ByteArrayOutputStream record = new ByteArrayOutputStream(payload.size() + 8);
+        DataOutputStream recordOut = new DataOutputStream(record);
+        recordOut.writeInt(payload.size());
+        recordOut.writeInt((int) crc.getValue());
+        payload.writeTo(recordOut);
+        recordOut.flush();
+        return record.toByteArray();
+    }
+
+    // The next record, or null at the end or at a torn or corrupt record; remaining is the bytes left in the file
+    private static Record readRecord(DataInputStream in, long remaining) throws IOException, ClassNotFoundException {
+        int length;
+        int checksum;
+        byte[] payload;
+        try {
+            length = in.readInt();
+            checksum = in.readInt();
+            // A garbage length is not allocated
+            if (length <= 0 || length > remaining - 8) {
+                return null;
+            }
+            payload = new byte[length];
+            in.readFully(payload);
+        } catch (EOFException e) {
+            // A torn tail from an interrupted append is ignored
+            return null;
+        }
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        if ((int) crc.getValue() != checksum) {
+            return null;
+        }
+
+        DataInputStream data = new DataInputStream(new ByteArrayInputStream(payload));
+        long sequence = data.readLong();
+        int typeByte = data.readByte();
+        boolean longText = (typeByte & LONG_TEXT) != 0;
+        ChangeType type = ChangeType.values()[typeByte & ~LONG_TEXT];
+        Entry entry;
+        switch (type) {
+            case AVAILABILITY:
+                entry = Entry.availability(data.readBoolean());
+                break;
+            case PRICING:
+                entry = Entry.pricing(data.readDouble());
+                break;
+            case OCCUPANCY:
+                entry = Entry.occupancy(readTime(data), data.readInt());
+                break;
+            case REVIEW:
+                entry = Entry.review(readText(data, longText), data.readInt());
+                break;
+            case REMOVE_PORT:
+                entry = Entry.removePort(readText(data, longText));
+                break;
+            case MAINTENANCE_WINDOW:
+                entry = Entry.maintenanceWindow(readTime(data), readTime(data));
+                break;
+            default:
+                byte[] bytes = new byte[data.readInt()];
+                data.readFully(bytes);
+                try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+                    entry = new Entry(type, false, 0.0, 0, null, null, null, ois.readObject());
+                }
+        }
+        return new Record(sequence, entry, 8 + length);
+    }
+
+    private static String readText(DataInputStream in, boolean longText) throws IOException {
+        return longText ? BinaryIO.readString(in) : in.readUTF();
+    }
+
+    private static void writeTime(DataOutputStream out, LocalDateTime time) throws IOException {
+        out.writeLong(time.toEpochSecond(ZoneOffset.UTC));
+        out.writeInt(time.getNano());
+    }
+
+    private static LocalDateTime readTime(DataInputStream in) throws IOException {
+        long seconds = in.readLong();
+        int nanos = in.readInt();
+        return LocalDateTime.ofEpochSecond(seconds, nanos, ZoneOffset.UTC);
+    }
+
+    public static class Record {
+        private final long sequence;
+        private final Entry entry;
+        private final int size; // in the file, with length and checksum
+
+        Record(long sequence, Entry entry, int size) {
+            this.sequence = sequence;
+            this.entry = entry;
+            this.size = size;
+        }
+
+        public long getSequence() { return sequence; }
+        public Entry getEntry() { return entry; }
+    }
+
+    public enum ChangeType {
+        AVAILABILITY,
+        PRICING,
+        OCCUPANCY,
+        REVIEW,
+        ADD_PORT,
+        REMOVE_PORT,
+        OPERATING_HOURS,
+        MAINTENANCE_WINDOW,
+        PAYMENT_OPTIONS,
+        EMERGENCY_CONTACT
+    }
+
+    public static class Entry {
+        private final ChangeType type;
+        private final boolean flag;
+        private final double number;
+        private final int count;
+        private final String text;
+        private final LocalDateTime time;
+        private final LocalDateTime endTime;
+        private final Object value;
+
+        private Entry(ChangeType type, boolean flag, double number, int count, String text,
+                      LocalDateTime time, LocalDateTime endTime, Object value) {
+            this.type = type;
+            this.flag = flag;
+            this.number = number;
+            this.count = count;
+            this.text = text;
+            this.time = time;
+            this.endTime = endTime;
+            this.value = value;
+        }
+
+        public static Entry availability(boolean available) {
+            return new Entry(ChangeType.AVAILABILITY, available, 0.0, 0, null, null, null, null);
+        }
+
+        public static Entry pricing(double pricePerKWh) {
+            return new Entry(ChangeType.PRICING, false, pricePerKWh, 0, null, null, null, null);
+        }
+
+        public static Entry occupancy(LocalDateTime timestamp, int occupancy) {
+            return new Entry(ChangeType.OCCUPANCY, false, 0.0, occupancy, null, timestamp, null, null);
+        }
+
+        public static Entry review(String review, int rating) {
+            return new Entry(ChangeType.REVIEW, false, 0.0, rating, review, null, null, null);
+        }
+
+        public static Entry addPort(ChargingStation.ChargingPort port) {
+            return new Entry(ChangeType.ADD_PORT, false, 0.0, 0, null, null, null, port);
+        }
+
+        public static Entry removePort(String portId) {
+            return new Entry(ChangeType.REMOVE_PORT, false, 0.0, 0, portId, null, null, null);
+        }
+
+        public static Entry operatingHours(ChargingStation.OperatingHours hours) {
+            return new Entry(ChangeType.OPERATING_HOURS, false, 0.0, 0, null, null, null, hours);
+        }
+
+        public static Entry maintenanceWindow(LocalDateTime start, LocalDateTime end) {
+            return new Entry(ChangeType.MAINTENANCE_WINDOW, false, 0.0, 0, null, start, end, null);
+        }
+
+        public static Entry paymentOptions(ChargingStation.PaymentOptions options) {
+            return new Entry(ChangeType.PAYMENT_OPTIONS, false, 0.0, 0, null, null, null, options);
+        }
+
+        public static Entry emergencyContact(ChargingStation.EmergencyContact contact) {
+            return new Entry(ChangeType.EMERGENCY_CONTACT, false, 0.0, 0, null, null, null, contact);
+        }
+
+        public ChangeType getType() { return type; }
+        public boolean getFlag() { return flag; }
+        public double getNumber() { return number; }
+        public int getCount() { return count; }
+        public String getText() { return text; }
+        public LocalDateTime getTime() { return time; }
+        public LocalDateTime getEndTime() { return endTime; }
+        public Object getValue() { return value; }
+    }
+}
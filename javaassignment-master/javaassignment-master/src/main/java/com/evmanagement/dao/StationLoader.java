@@ -0,0 +1,130 @@
+package com.evmanagement.dao;
+
+import com.evmanagement.model.ChargingStation;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Decodes every station in a {@link StationStore} on a bounded worker pool.
+ * The live records are copied out of the store in one go, so that concurrent
+ * puts and rebuilds cannot renumber them under the workers, then split into fixed-size chunks and each decoded chunk is handed
+ * to the consumer as soon as it is ready, so callers can show stations before
+ * the whole store has been read. Chunks may arrive out of store order.
+ */
+public class StationLoader {
+    public static final int DEFAULT_CHUNK_SIZE = 64;
+    public static final int DEFAULT_MAX_THREADS = 4;
+
+    private final StationStore store;
+    private final int threads;
+    private final int chunkSize;
+
+    public StationLoader(StationStore store) {
+        this(store,
+            Integer.getInteger("evm.station.loaderThreads",
+                Math.min(DEFAULT_MAX_THREADS, Runtime.getRuntime().availableProcessors())),
+            Integer.getInteger("evm.station.loadChunkSize", DEFAULT_CHUNK_SIZE));
+    }
+
+    public StationLoader(StationStore store, int threads, int chunkSize) {
+        this.store = store;
+        this.threads = Math.max(1, threads);
+        this.chunkSize = Math.max(1, chunkSize);
+    }
+
+    // Chunks are delivered one at a time on the calling thread
+    public LoadStats load(Consumer<List<ChargingStation>> onChunk) throws IOException {
+        long start = System.nanoTime();
+        List<byte[]> blobs = store.readLiveBlobs();
+        int count = blobs.size();
+        Set<String> journaled = StationJournal.journaledStationIds();
+
+        AtomicInteger threadNumber = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "station-loader-" + threadNumber.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        ExecutorCompletionService<List<ChargingStation>> completion = new ExecutorCompletionService<>(pool);
+        try {
+            int chunks = 0;
+            for (int from = 0; from < count; from += chunkSize) {
+                int begin = from;
+                int end = Math.min(count, from + chunkSize);
+                completion.submit(() -> decodeChunk(blobs.subList(begin, end), journaled));
+                chunks++;
+            }
+
+            int loaded = 0;
+            long firstChunkNanos = 0;
+            for (int i = 0; i < chunks; i++) {
+                List<ChargingStation> chunk = completion.take().get();
+                if (i == 0) {
+                    firstChunkNanos = System.nanoTime() - start;
+                }
+                loaded += chunk.size();
+                onChunk.accept(chunk);
+            }
+            return new LoadStats(loaded, chunks, threads, firstChunkNanos, System.nanoTime() - start);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Station loading interrupted", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private static List<ChargingStation> decodeChunk(List<byte[]> blobs, Set<String> journaled) throws IOException {
+        List<ChargingStation> chunk = new ArrayList<>(blobs.size());
+        for (byte[] blob : blobs) {
+            ChargingStation station = StationStore.decode(blob);
+            if (journaled.contains(station.getStationId())) {
+                StationJournal.forStation(station.getStationId()).replay(station);
+            }
+            chunk.add(station);
+        }
+        return chunk;
+    }
+
+    public static class LoadStats {
+        private final int stations;
+        private final int chunks;
+        private final int threads;
+        private final long firstChunkNanos;
+        private final long totalNanos;
+
+        LoadStats(int stations, int chunks, int threads, long firstChunkNanos, long totalNanos) {
+            this.stations = stations;
+            this.chunks = chunks;
+            this.threads = threads;
+            this.firstChunkNanos = firstChunkNanos;
+            this.totalNanos = totalNanos;
+        }
+
+        public int getStations() { return stations; }
+        public int getChunks() { return chunks; }
+        public int getThreads() { return threads; }
+        public double getFirstChunkMillis() { return firstChunkNanos / 1e6; }
+        public double getTotalMillis() { return totalNanos / 1e6; }
+
+        @Override
+        public String toString() {
+            return String.format("Loaded %d stations in %d chunks on %d threads (first chunk %.1f ms, total %.1f ms)",
+                stations, chunks, threads, getFirstChunkMillis(), getTotalMillis());
+        }
+    }
+}
@@ -0,0 +1,331 @@
+package com.evmanagement.dao;
+
+import com.evmanagement.model.ChargingStation;
+import com.evmanagement.util.KdTree;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * In-memory view of every charging station, keyed by station ID. Stations are
+ * loaded from the {@link StationStore} once, in parallel; afterwards the
+ * stations directory is watched and only the stations whose journal or legacy
+ * file changed are brought up to date, reading only the journal records another
+ * process appended. Those are applied on the change executor, which should be
+ * the thread that mutates stations (the EDT in the app). The version counter increases on every change so callers
+ * can tell cheaply whether anything they derived from the stations is stale.
+ */
+public class StationRepository implements Closeable {
+    private static final long SETTLE_MS = 50;
+
+    private static StationRepository defaultRepository;
+
+    private final File stationsDir;
+    private final StationStore store;
+    private final Map<String, ChargingStation> stations = new LinkedHashMap<>();
+    private final AtomicLong version = new AtomicLong();
+    private long structureVersion; // changes only when stations are added, removed or reloaded
+    private KdTree<ChargingStation> spatialIndex;
+    private long indexedStructureVersion = -1;
+    private final List<StationChangeListener> listeners = new CopyOnWriteArrayList<>();
+    private final StationChangeListener journalListener = this::journalAppended;
+    private volatile Executor changeExecutor = Runnable::run;
+    private boolean loaded;
+    private Set<String> savedDuringLoad; // while a load runs; its copies of these are older
+    private WatchService watchService;
+    private Thread watcher;
+
+    public StationRepository(File stationsDir, StationStore store) {
+        this.stationsDir = stationsDir;
+        this.store = store;
+    }
+
+    // The default repository starts out empty; call load or loadAsync to fill it
+    public static synchronized StationRepository getDefault() throws IOException {
+        if (defaultRepository == null) {
+            StationRepository repository = new StationRepository(
+                new File(StationJournal.STATIONS_DIR), StationStore.getDefault());
+            repository.startWatching();
+            defaultRepository = repository;
+        }
+        return defaultRepository;
+    }
+
+    public StationLoader.LoadStats load() throws IOException {
+        return load(chunk -> { });
+    }
+
+    // Full load: every live snapshot in the store plus its journal. Stations
+    // become visible chunk by chunk; ones deleted from the store are dropped,
+    // while ones saved since the load began are kept.
+    public StationLoader.LoadStats load(Consumer<List<ChargingStation>> onChunk) throws IOException {
+        Set<String> saved = new HashSet<>();
+        synchronized (this) {
+            savedDuringLoad = saved;
+        }
+        StationLoader.LoadStats stats;
+        try {
+            stats = new StationLoader(store).load(chunk -> {
+                synchronized (this) {
+                    for (ChargingStation station : chunk) {
+                        if (!saved.contains(station.getStationId())) {
+                            stations.put(station.getStationId(), station);
+                        }
+                    }
+                    structureVersion++;
+                }
+                onChunk.accept(chunk);
+            });
+        } finally {
+            synchronized (this) {
+                if (savedDuringLoad == saved) {
+                    savedDuringLoad = null;
+                }
+            }
+        }
+        synchronized (this) {
+            stations.keySet().removeIf(stationId -> store.indexOf(stationId) == null);
+            loaded = true;
+        }
+        changed(null, null);
+        return stats;
+    }
+
+    public CompletableFuture<StationLoader.LoadStats> loadAsync(Consumer<List<ChargingStation>> onChunk) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return load(onChunk);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, r -> {
+            Thread t = new Thread(r, "station-repository-load");
+            t.setDaemon(true);
+            t.start();
+        });
+    }
+
+    public synchronized boolean isLoaded() {
+        return loaded;
+    }
+
+    public synchronized List<ChargingStation> getAll() {
+        return new ArrayList<>(stations.values());
+    }
+
+    public synchronized ChargingStation get(String stationId) {
+        return stations.get(stationId);
+    }
+
+    public synchronized ChargingStation findByName(String name) {
+        if (name == null) return null;
+        for (ChargingStation station : stations.values()) {
+            if (name.equals(station.getName())) {
+                return station;
+            }
+        }
+        return null;
+    }
+
+    public synchronized int size() {
+        return stations.size();
+    }
+
+    // Persist a new or replaced station and make it visible immediately
+    public void save(ChargingStation station) throws IOException {
+        StationJournal.writeSnapshot(station);
+        synchronized (this) {
+            stations.put(station.getStationId(), station);
+            if (savedDuringLoad != null) {
+                savedDuringLoad.add(station.getStationId());
+            }
+        }
+        changed(station.getStationId(), null);
+    }
+
+    public long getVersion() {
+        return version.get();
+    }
+
+    // Spatial index over all stations, rebuilt lazily after stations are added or reloaded;
+    // availability and pricing changes are visible through the indexed station objects
+    public synchronized KdTree<ChargingStation> getSpatialIndex() {
+        if (spatialIndex == null || indexedStructureVersion != structureVersion) {
+            spatialIndex = new KdTree<>(stations.values(), ChargingStation::getLatitude, ChargingStation::getLongitude);
+            indexedStructureVersion = structureVersion;
+        }
+        return spatialIndex;
+    }
+
+    // Where remote journal changes are applied to the in-memory stations
+    public void setChangeExecutor(Executor executor) {
+        this.changeExecutor = executor;
+    }
+
+    public void addChangeListener(StationChangeListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeChangeListener(StationChangeListener listener) {
+        listeners.remove(listener);
+    }
+
+    public synchronized void startWatching() throws IOException {
+        if (watcher != null) {
+            return;
+        }
+        if (!stationsDir.exists()) stationsDir.mkdirs();
+        watchService = FileSystems.getDefault().newWatchService();
+        stationsDir.toPath().register(watchService,
+            StandardWatchEventKinds.ENTRY_CREATE,
+            StandardWatchEventKinds.ENTRY_MODIFY);
+        // Mutations made in this process are applied in memory already; they only bump the version
+        StationJournal.addChangeListener(journalListener);
+        watcher = new Thread(this::watchLoop, "station-repository-watcher");
+        watcher.setDaemon(true);
+        watcher.start();
+    }
+
+    private void watchLoop() {
+        try {
+            while (true) {
+                WatchKey key = watchService.take();
+                // Let a burst of writes settle so each file is handled once
+                Thread.sleep(SETTLE_MS);
+                Set<String> changedFiles = new LinkedHashSet<>();
+                boolean overflow = false;
+                do {
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                            overflow = true;
+                        } else {
+                            changedFiles.add(((Path) event.context()).getFileName().toString());
+                        }
+                    }
+                    key.reset();
+                } while ((key = watchService.poll()) != null);
+
+                try {
+                    if (overflow) {
+                        load();
+                    } else {
+                        reload(changedFiles);
+                    }
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // Repository closed
+        }
+    }
+
+    private void reload(Set<String> changedFiles) throws IOException {
+        boolean storeChanged = false;
+        for (String name : changedFiles) {
+            if (name.endsWith(StationJournal.JOURNAL_SUFFIX)) {
+                String stationId = name.substring(0, name.length() - StationJournal.JOURNAL_SUFFIX.length());
+                ChargingStation station = get(stationId);
+                if (station == null) {
+                    storeChanged = true;
+                } else {
+                    applyRemoteChanges(station, StationJournal.forStation(stationId).readNew());
+                }
+            } else if (name.endsWith(".dat")) {
+                // A legacy station file dropped into the directory
+                if (StationStoreMigrator.migrate(stationsDir, store) > 0) {
+                    storeChanged = true;
+                }
+            } else if (name.equals(StationStore.DEFAULT_STORE_FILE)) {
+                storeChanged = true;
+            }
+        }
+        if (storeChanged && isLoaded()) {
+            // Before the first load finishes, the loader picks these up itself
+            loadNewStations();
+        }
+    }
+
+    private void applyRemoteChanges(ChargingStation station, List<StationJournal.Record> records) {
+        if (records.isEmpty()) {
+            return;
+        }
+        changeExecutor.execute(() -> {
+            boolean applied = false;
+            for (StationJournal.Record record : records) {
+                applied |= station.applyJournalEntry(record.getSequence(), record.getEntry());
+            }
+            if (applied) {
+                changed(station.getStationId(), null);
+            }
+        });
+    }
+
+    // Pick up records appended to the store that are not in memory yet
+    private void loadNewStations() throws IOException {
+        for (String stationId : store.getStationIds()) {
+            if (get(stationId) != null) {
+                continue;
+            }
+            ChargingStation station = store.get(stationId);
+            if (station == null) {
+                continue;
+            }
+            StationJournal.forStation(stationId).replay(station);
+            synchronized (this) {
+                stations.put(stationId, station);
+            }
+            changed(stationId, null);
+        }
+    }
+
+    private void journalAppended(String stationId, StationJournal.ChangeType type) {
+        if (get(stationId) != null) {
+            changed(stationId, type);
+        }
+    }
+
+    private void changed(String stationId, StationJournal.ChangeType type) {
+        if (type == null) {
+            synchronized (this) {
+                structureVersion++;
+            }
+        }
+        version.incrementAndGet();
+        for (StationChangeListener listener : listeners) {
+            listener.stationChanged(stationId, type);
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        StationJournal.removeChangeListener(journalListener);
+        if (watchService != null) {
+            watchService.close();
+            watcher.interrupt();
+            watcher = null;
+            watchService = null;
+        }
+    }
+}
@@ -0,0 +1,600 @@
+package com.evmanagement.dao;
+
+import com.evmanagement.model.ChargingStation;
+
+import java.io.*;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Single memory-mapped file holding every charging station.
+ *
+ * Layout: a fixed header, then {@code capacity} fixed-size records (the offset
+ * index), then a heap of variable-length blobs. Each record keeps the fields
+ * needed for map and distance queries inline, so those can be answered without
+ * decoding the station, plus the offset and length of the station's blob. A
+ * blob is the station id followed by the station in the binary station codec.
+ * Version 1 stores used Java serialization and are re-encoded when opened.
+ *
+ * Puts and removes change the mapped file in place. Anything that rewrites
+ * the layout (creating, upgrading or rebuilding the store) writes a complete
+ * new file beside it and renames it over the store, so a crash leaves either
+ * the old or the new layout. A rebuild renumbers the records, so readers take
+ * the read lock and writers the write lock.
+ *
+ * Windows refuses to resize or rename over a file while any mapping of it is
+ * live, and a mapping otherwise lives until it is garbage collected, so the
+ * store releases its mapping explicitly before growing or replacing the file.
+ */
+public class StationStore implements Closeable {
+    public static final String DEFAULT_STORE_FILE = "stations.store";
+
+    private static final int MAGIC = 0x45565353; // "EVSS"
+    private static final int VERSION = 2;
+    private static final int JAVA_SERIALIZATION_VERSION = 1;
+    private static final int HEADER_SIZE = 64;
+    private static final int RECORD_SIZE = 64;
+    private static final int INITIAL_CAPACITY = 256;
+    private static final long INITIAL_BLOB_SPACE = 256 * 1024;
+
+    // Header offsets
+    private static final int H_MAGIC = 0;
+    private static final int H_VERSION = 4;
+    private static final int H_COUNT = 8;
+    private static final int H_CAPACITY = 12;
+    private static final int H_BLOB_END = 16;
+    private static final int H_LIVE_BLOB_BYTES = 24;
+
+    // Record offsets
+    private static final int R_LATITUDE = 0;
+    private static final int R_LONGITUDE = 8;
+    private static final int R_CHARGING_RATE = 16;
+    private static final int R_PRICE = 24;
+    private static final int R_BLOB_OFFSET = 32;
+    private static final int R_BLOB_LENGTH = 40;
+    private static final int R_FLAGS = 44;
+
+    private static final byte FLAG_AVAILABLE = 1;
+    private static final byte FLAG_DELETED = 2;
+
+    private static StationStore defaultStore;
+
+    private final File file;
+    private Durability durability = Durability.forStore("station");
+    private RandomAccessFile raf;
+    private FileChannel channel;
+    private volatile MappedByteBuffer buffer; // replaced under the write lock, and null while released
+    private final Object mapping = new Object(); // held while forcing or releasing the buffer
+    private final Map<String, Integer> indexById;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private StationStore(File file) throws IOException {
+        this.file = file;
+        this.indexById = new HashMap<>();
+        if (!file.exists() || file.length() == 0) {
+            replace(INITIAL_CAPACITY, INITIAL_BLOB_SPACE, new ArrayList<>(), new ArrayList<>());
+        } else {
+            map();
+            if (buffer.getInt(H_MAGIC) != MAGIC) {
+                throw new IOException("Not a station store: " + file);
+            }
+            int version = buffer.getInt(H_VERSION);
+            if (version != VERSION && version != JAVA_SERIALIZATION_VERSION) {
+                throw new IOException("Unsupported station store version " + version);
+            }
+            buildIndex();
+            if (version == JAVA_SERIALIZATION_VERSION) {
+                upgrade();
+            }
+        }
+    }
+
+    public static StationStore open(File file) throws IOException {
+        return new StationStore(file);
+    }
+
+    // The application's store, created and populated from the legacy
+    // stations/*.dat layout on first use
+    public static synchronized StationStore getDefault() throws IOException {
+        if (defaultStore == null) {
+            File stationsDir = new File(StationJournal.STATIONS_DIR);
+            StationStore store = open(new File(stationsDir, DEFAULT_STORE_FILE));
+            StationStoreMigrator.migrate(stationsDir, store);
+            defaultStore = store;
+        }
+        return defaultStore;
+    }
+
+    private void map() throws IOException {
+        raf = new RandomAccessFile(file, "rw");
+        channel = raf.getChannel();
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+    }
+
+    // Force and release the mapping; callers hold the write lock or own the store
+    private void unmap() {
+        synchronized (mapping) {
+            MappedByteBuffer mapped = buffer;
+            if (mapped == null) {
+                return;
+            }
+            mapped.force();
+            buffer = null;
+            release(mapped);
+        }
+    }
+
+    private void unmapAndClose() throws IOException {
+        unmap();
+        if (channel != null) {
+            channel.close();
+            raf.close();
+            channel = null;
+        }
+    }
+
+    // Unmap now rather than when collected. Nothing may touch the buffer or its views afterwards.
+    private static void release(MappedByteBuffer mapped) {
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            unsafeClass.getMethod("invokeCleaner", ByteBuffer.class).invoke(theUnsafe.get(null), mapped);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // Left to the garbage collector, as before Java 9
+        }
+    }
+
+    // Write a new layout holding the given records and blobs beside the store,
+    // rename it over the store and map it. The old mapping and file are closed
+    // first; should the write fail, the old file is mapped again.
+    private void replace(int capacity, long blobSpace, List<byte[]> records, List<byte[]> blobs) throws IOException {
+        unmapAndClose();
+        try {
+            DurableFileWriter.getInstance().write(file, durability,
+                out -> writeLayout(out.getChannel(), capacity, blobSpace, records, blobs));
+        } finally {
+            if (file.exists()) {
+                map();
+                buildIndex();
+            }
+        }
+    }
+
+    private static void writeLayout(FileChannel out, int capacity, long blobSpace,
+                                    List<byte[]> records, List<byte[]> blobs) throws IOException {
+        long blobStart = blobRegionStart(capacity);
+        ByteBuffer index = ByteBuffer.allocate((int) blobStart);
+        long blobEnd = blobStart;
+        for (int i = 0; i < records.size(); i++) {
+            index.position(recordOffset(i));
+            index.put(records.get(i));
+            index.putLong(recordOffset(i) + R_BLOB_OFFSET, blobEnd);
+            index.putInt(recordOffset(i) + R_BLOB_LENGTH, blobs.get(i).length);
+            blobEnd += blobs.get(i).length;
+        }
+        index.putInt(H_MAGIC, MAGIC);
+        index.putInt(H_VERSION, VERSION);
+        index.putInt(H_COUNT, records.size());
+        index.putInt(H_CAPACITY, capacity);
+        index.putLong(H_BLOB_END, blobEnd);
+        index.putLong(H_LIVE_BLOB_BYTES, blobEnd - blobStart);
+        index.clear();
+        writeFully(out, index);
+        for (byte[] blob : blobs) {
+            writeFully(out, ByteBuffer.wrap(blob));
+        }
+        // Reserve the rest of the blob heap
+        long size = Math.max(blobStart + blobSpace, blobEnd);
+        if (size > blobEnd) {
+            out.write(ByteBuffer.allocate(1), size - 1);
+        }
+    }
+
+    private static void writeFully(FileChannel out, ByteBuffer source) throws IOException {
+        while (source.hasRemaining()) {
+            out.write(source);
+        }
+    }
+
+    // Re-encode a version 1 store with the binary codec
+    private void upgrade() throws IOException {
+        List<byte[]> records = new ArrayList<>();
+        List<byte[]> blobs = new ArrayList<>();
+        long liveBytes = 0;
+        for (ChargingStation station : loadAll()) {
+            byte[] blob = encodeBlob(station);
+            ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+            writeRecord(record, 0, station, 0, blob.length);
+            records.add(record.array());
+            blobs.add(blob);
+            liveBytes += blob.length;
+        }
+        replace(Math.max(INITIAL_CAPACITY, capacity()), Math.max(INITIAL_BLOB_SPACE, liveBytes * 2), records, blobs);
+    }
+
+    private void buildIndex() {
+        indexById.clear();
+        int count = size();
+        for (int i = 0; i < count; i++) {
+            if (!isDeleted(i)) {
+                indexById.put(getStationId(i), i);
+            }
+        }
+    }
+
+    private static long blobRegionStart(int capacity) {
+        return HEADER_SIZE + (long) capacity * RECORD_SIZE;
+    }
+
+    private static int recordOffset(int index) {
+        return HEADER_SIZE + index * RECORD_SIZE;
+    }
+
+    // Insert or replace a station; replaced blobs become garbage until compact()
+    public void put(ChargingStation station) throws IOException {
+        byte[] blob = encodeBlob(station);
+        lock.writeLock().lock();
+        try {
+            put(station, blob);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void put(ChargingStation station, byte[] blob) throws IOException {
+        if (indexById.get(station.getStationId()) == null && size() >= capacity()) {
+            rebuild(capacity() * 2, blob.length);
+        }
+        ensureBlobSpace(blob.length);
+
+        // Look up again: a rebuild renumbers the records
+        Integer existing = indexById.get(station.getStationId());
+        int index;
+        if (existing != null) {
+            index = existing;
+            int oldLength = buffer.getInt(recordOffset(index) + R_BLOB_LENGTH);
+            buffer.putLong(H_LIVE_BLOB_BYTES, liveBlobBytes() - oldLength);
+        } else {
+            index = size();
+            buffer.putInt(H_COUNT, index + 1);
+            indexById.put(station.getStationId(), index);
+        }
+
+        long blobEnd = buffer.getLong(H_BLOB_END);
+        ByteBuffer target = buffer.duplicate();
+        target.position((int) blobEnd);
+        target.put(blob);
+        buffer.putLong(H_BLOB_END, blobEnd + blob.length);
+        buffer.putLong(H_LIVE_BLOB_BYTES, liveBlobBytes() + blob.length);
+        writeRecord(buffer, recordOffset(index), station, blobEnd, blob.length);
+    }
+
+    private void ensureBlobSpace(int length) throws IOException {
+        if (buffer.getLong(H_BLOB_END) + length <= buffer.capacity()) {
+            return;
+        }
+        if (garbageBytes() > liveBlobBytes()) {
+            rebuild(capacity(), length);
+        }
+        long required = buffer.getLong(H_BLOB_END) + length;
+        if (required > buffer.capacity()) {
+            grow(required);
+        }
+    }
+
+    public boolean remove(String stationId) {
+        lock.writeLock().lock();
+        try {
+            Integer index = indexById.remove(stationId);
+            if (index == null) {
+                return false;
+            }
+            int offset = recordOffset(index);
+            buffer.put(offset + R_FLAGS, (byte) (buffer.get(offset + R_FLAGS) | FLAG_DELETED));
+            buffer.putLong(H_LIVE_BLOB_BYTES, liveBlobBytes() - buffer.getInt(offset + R_BLOB_LENGTH));
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private static void writeRecord(ByteBuffer target, int offset, ChargingStation station,
+                                    long blobOffset, int blobLength) {
+        target.putDouble(offset + R_LATITUDE, station.getLatitude());
+        target.putDouble(offset + R_LONGITUDE, station.getLongitude());
+        target.putDouble(offset + R_CHARGING_RATE, station.getChargingRate());
+        target.putDouble(offset + R_PRICE, station.getPricePerKWh());
+        target.putLong(offset + R_BLOB_OFFSET, blobOffset);
+        target.putInt(offset + R_BLOB_LENGTH, blobLength);
+        target.put(offset + R_FLAGS, station.isAvailable() ? FLAG_AVAILABLE : 0);
+    }
+
+    // Extend the blob heap in place, keeping the record area as it is
+    private void grow(long minimumSize) throws IOException {
+        long size = Math.max(minimumSize, (long) buffer.capacity() * 2);
+        unmap();
+        try {
+            raf.setLength(size);
+        } finally {
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+        }
+    }
+
+    // Rewrite the file with the given record capacity, dropping garbage blobs
+    private void rebuild(int newCapacity, int extraBlobSpace) throws IOException {
+        int count = size();
+        List<byte[]> blobs = new ArrayList<>();
+        List<byte[]> records = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            if (isDeleted(i)) continue;
+            blobs.add(readBlobBytes(i));
+            byte[] record = new byte[RECORD_SIZE];
+            ByteBuffer source = buffer.duplicate();
+            source.position(recordOffset(i));
+            source.get(record);
+            records.add(record);
+        }
+
+        long liveBytes = 0;
+        for (byte[] blob : blobs) liveBytes += blob.length;
+        long blobSpace = Math.max(INITIAL_BLOB_SPACE, (liveBytes + extraBlobSpace) * 2);
+        replace(newCapacity, blobSpace, records, blobs);
+    }
+
+    public void compact() throws IOException {
+        lock.writeLock().lock();
+        try {
+            rebuild(Math.max(INITIAL_CAPACITY, capacity()), 0);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Without the read lock: it runs on the group committer, which a rebuild waits for
+    // under the write lock. The mapping is forced before it is released, so there is
+    // nothing to do while it is.
+    public void flush() {
+        synchronized (mapping) {
+            if (buffer != null) {
+                buffer.force();
+            }
+        }
+    }
+
+    // Make the latest changes durable according to the store's durability level
+    public void commit() throws IOException {
+        DurableFileWriter.getInstance().sync(file, durability, this::flush);
+    }
+
+    public void setDurability(Durability durability) {
+        this.durability = durability;
+    }
+
+    // Record accessors (no deserialization)
+    public int size() { return readInt(H_COUNT); }
+    public int capacity() { return readInt(H_CAPACITY); }
+    public long liveBlobBytes() { return readLong(H_LIVE_BLOB_BYTES); }
+    public long garbageBytes() {
+        lock.readLock().lock();
+        try {
+            return buffer.getLong(H_BLOB_END) - blobRegionStart(capacity()) - liveBlobBytes();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public double getLatitude(int index) { return readDouble(recordOffset(index) + R_LATITUDE); }
+    public double getLongitude(int index) { return readDouble(recordOffset(index) + R_LONGITUDE); }
+    public double getChargingRate(int index) { return readDouble(recordOffset(index) + R_CHARGING_RATE); }
+    public double getPricePerKWh(int index) { return readDouble(recordOffset(index) + R_PRICE); }
+    public boolean isAvailable(int index) { return (readFlags(index) & FLAG_AVAILABLE) != 0; }
+    public boolean isDeleted(int index) { return (readFlags(index) & FLAG_DELETED) != 0; }
+
+    private int readInt(int offset) {
+        lock.readLock().lock();
+        try {
+            return buffer.getInt(offset);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private long readLong(int offset) {
+        lock.readLock().lock();
+        try {
+            return buffer.getLong(offset);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private double readDouble(int offset) {
+        lock.readLock().lock();
+        try {
+            return buffer.getDouble(offset);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private byte readFlags(int index) {
+        lock.readLock().lock();
+        try {
+            return buffer.get(recordOffset(index) + R_FLAGS);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public String getStationId(int index) {
+        lock.readLock().lock();
+        try {
+            ByteBuffer blob = blobView(index);
+            byte[] id = new byte[blob.getShort() & 0xFFFF];
+            blob.get(id);
+            return new String(id, StandardCharsets.UTF_8);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public Integer indexOf(String stationId) {
+        lock.readLock().lock();
+        try {
+            return indexById.get(stationId);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public ChargingStation load(int index) throws IOException {
+        lock.readLock().lock();
+        try {
+            return decode(blobView(index), buffer.getInt(H_VERSION));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // A blob copied by readLiveBlobs
+    public static ChargingStation decode(byte[] blob) throws IOException {
+        return decode(ByteBuffer.wrap(blob), VERSION);
+    }
+
+    private static ChargingStation decode(ByteBuffer blob, int version) throws IOException {
+        blob.position(blob.position() + 2 + (blob.getShort(blob.position()) & 0xFFFF));
+        if (version == JAVA_SERIALIZATION_VERSION) {
+            try (ObjectInputStream ois = new ObjectInputStream(new ByteBufferInputStream(blob))) {
+                return (ChargingStation) ois.readObject();
+            } catch (ClassNotFoundException e) {
+                throw new IOException(e);
+            }
+        }
+        DataInputStream in = new DataInputStream(new ByteBufferInputStream(blob));
+        return BinaryCodecs.CHARGING_STATION.decode(in, in.readInt());
+    }
+
+    // The blob of every live station, copied under one read lock so that no
+    // put or rebuild lands part-way through; decoding them needs no lock
+    public List<byte[]> readLiveBlobs() {
+        lock.readLock().lock();
+        try {
+            int count = size();
+            List<byte[]> blobs = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                if (!isDeleted(i)) {
+                    blobs.add(readBlobBytes(i));
+                }
+            }
+            return blobs;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public List<String> getStationIds() {
+        lock.readLock().lock();
+        try {
+            return new ArrayList<>(indexById.keySet());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public ChargingStation get(String stationId) throws IOException {
+        lock.readLock().lock();
+        try {
+            Integer index = indexById.get(stationId);
+            return index == null ? null : load(index);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public List<ChargingStation> loadAll() throws IOException {
+        lock.readLock().lock();
+        try {
+            int count = size();
+            List<ChargingStation> stations = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                if (!isDeleted(i)) {
+                    stations.add(load(i));
+                }
+            }
+            return stations;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Callers hold the read or write lock
+    private ByteBuffer blobView(int index) {
+        int offset = recordOffset(index);
+        ByteBuffer view = buffer.duplicate();
+        int start = (int) buffer.getLong(offset + R_BLOB_OFFSET);
+        view.limit(start + buffer.getInt(offset + R_BLOB_LENGTH));
+        view.position(start);
+        return view;
+    }
+
+    private byte[] readBlobBytes(int index) {
+        ByteBuffer view = blobView(index);
+        byte[] bytes = new byte[view.remaining()];
+        view.get(bytes);
+        return bytes;
+    }
+
+    private static byte[] encodeBlob(ChargingStation station) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        byte[] id = station.getStationId().getBytes(StandardCharsets.UTF_8);
+        out.writeShort(id.length);
+        out.write(id);
+        out.writeInt(BinaryCodecs.CHARGING_STATION.getSchemaVersion());
+        BinaryCodecs.CHARGING_STATION.encode(station, out);
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    public File getFile() { return file; }
+
+    @Override
+    public void close() throws IOException {
+        lock.writeLock().lock();
+        try {
+            unmapAndClose();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private static class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer source;
+
+        ByteBufferInputStream(ByteBuffer source) {
+            this.source = source;
+        }
+
+        @Override
+        public int read() {
+            return source.hasRemaining() ? source.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (!source.hasRemaining()) return -1;
+            int n = Math.min(len, source.remaining());
+            source.get(b, off, n);
+            return n;
+        }
+    }
+}
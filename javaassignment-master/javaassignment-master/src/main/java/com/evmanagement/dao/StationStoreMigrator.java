@@ -0,0 +1,47 @@
+package com.evmanagement.dao;
+
+import com.evmanagement.model.ChargingStation;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * One-time migration from the legacy one-file-per-station layout
+ * (stations/<id>.dat) into a {@link StationStore}. Migrated files are moved
+ * to stations/migrated/ so the migration never runs twice for the same file.
+ */
+public class StationStoreMigrator {
+    public static final String MIGRATED_DIR = "migrated";
+
+    private StationStoreMigrator() {
+    }
+
+    public static int migrate(File stationsDir, StationStore store) throws IOException {
+        File[] files = stationsDir.listFiles((dir, name) -> name.endsWith(".dat"));
+        if (files == null || files.length == 0) {
+            return 0;
+        }
+
+        File migratedDir = new File(stationsDir, MIGRATED_DIR);
+        if (!migratedDir.exists()) migratedDir.mkdirs();
+
+        int migrated = 0;
+        for (File file : files) {
+            try {
+                // Journals stay in place; the stored sequence keeps replay idempotent
+                ChargingStation station = StationJournal.recover(file);
+                store.put(station);
+                Files.move(file.toPath(), new File(migratedDir, file.getName()).toPath(),
+                    StandardCopyOption.REPLACE_EXISTING);
+                migrated++;
+            } catch (IOException | ClassNotFoundException e) {
+                System.err.println("Could not migrate station file " + file + ": " + e.getMessage());
+            }
+        }
+        store.flush();
+        System.out.println("Migrated " + migrated + " station files into " + store.getFile());
+        return migrated;
+    }
+}
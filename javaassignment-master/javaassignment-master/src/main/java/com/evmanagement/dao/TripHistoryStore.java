@@ -0,0 +1,278 @@
+package com.evmanagement.dao;
+
+import com.evmanagement.model.Route;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Append-only, time-ordered trip history for one user, kept in fixed-size
+ * segments under <username>.trips/. New trips are appended to the newest
+ * segment; readers page whole segments in only when they need them, so
+ * loading a user never touches the trip history.
+ *
+ * Segment layout: [int magic][int schema version], then one
+ * [int length][route codec bytes] record per trip. A torn record left by an
+ * interrupted append is cut off before the next append.
+ */
+public class TripHistoryStore {
+    public static final int DEFAULT_TRIPS_PER_SEGMENT = 256;
+
+    private static final int SEGMENT_MAGIC = 0x45565453; // "EVTS"
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final String MIGRATION_MARKER = "legacy-migration";
+    private static final int SEGMENT_HEADER_SIZE = 8;
+
+    private final File directory;
+    private final int tripsPerSegment;
+    private final Durability durability = Durability.forStore("trips");
+    private int lastSegmentTrips = -1; // counted lazily on first append
+
+    public TripHistoryStore(String username) {
+        this(new File(username + ".trips"), DEFAULT_TRIPS_PER_SEGMENT);
+    }
+
+    public TripHistoryStore(File directory, int tripsPerSegment) {
+        this.directory = directory;
+        this.tripsPerSegment = tripsPerSegment;
+    }
+
+    public synchronized void append(Route trip) throws IOException {
+        appendAll(Collections.singletonList(trip));
+    }
+
+    public synchronized void appendAll(List<Route> trips) throws IOException {
+        if (trips.isEmpty()) {
+            return;
+        }
+        if (!directory.exists()) directory.mkdirs();
+
+        int segment = Math.max(0, getSegmentCount() - 1);
+        if (lastSegmentTrips < 0) {
+            File last = segmentFile(segment);
+            if (getSegmentCount() == 0) {
+                lastSegmentTrips = 0;
+            } else {
+                int intact = trimTornTail(last);
+                if (last.length() > 0 && readSchemaVersion(last) != BinaryCodecs.ROUTE.getSchemaVersion()) {
+                    // Never mix schema versions in one segment; start a new one
+                    lastSegmentTrips = tripsPerSegment;
+                } else {
+                    lastSegmentTrips = intact;
+                }
+            }
+        }
+
+        int next = 0;
+        while (next < trips.size()) {
+            if (lastSegmentTrips >= tripsPerSegment) {
+                segment++;
+                lastSegmentTrips = 0;
+            }
+            File file = segmentFile(segment);
+            boolean newSegment = !file.exists() || file.length() == 0;
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                    new FileOutputStream(file, true)))) {
+                if (newSegment) {
+                    out.writeInt(SEGMENT_MAGIC);
+                    out.writeInt(BinaryCodecs.ROUTE.getSchemaVersion());
+                }
+                while (next < trips.size() && lastSegmentTrips < tripsPerSegment) {
+                    ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+                    DataOutputStream record = new DataOutputStream(bytes);
+                    BinaryCodecs.ROUTE.encode(trips.get(next), record);
+                    record.flush();
+                    out.writeInt(bytes.size());
+                    bytes.writeTo(out);
+                    lastSegmentTrips++;
+                    next++;
+                }
+            }
+            DurableFileWriter.getInstance().force(file, durability);
+        }
+    }
+
+    /**
+     * Append trips kept in a user file written before segmented storage. The
+     * trip count at the start is recorded in a marker first, so a migration
+     * interrupted part-way resumes after the trips it already appended and
+     * one that finished is never repeated. Returns the number of stored trips.
+     */
+    public synchronized int migrate(List<Route> legacyTrips) throws IOException {
+        File marker = new File(directory, MIGRATION_MARKER);
+        int start;
+        if (marker.exists()) {
+            try (DataInputStream in = new DataInputStream(new FileInputStream(marker))) {
+                start = in.readInt();
+            }
+        } else {
+            int existing = countTrips();
+            DurableFileWriter.getInstance().write(marker, durability,
+                out -> new DataOutputStream(out).writeInt(existing));
+            start = existing;
+        }
+        int migrated = countTrips() - start;
+        if (migrated < legacyTrips.size()) {
+            appendAll(legacyTrips.subList(Math.max(0, migrated), legacyTrips.size()));
+        }
+        return countTrips();
+    }
+
+    // Trips in every segment, counted without decoding them
+    public synchronized int countTrips() throws IOException {
+        int count = 0;
+        for (File segment : listSegments()) {
+            count += countTrips(segment);
+        }
+        return count;
+    }
+
+    public int getSegmentCount() {
+        return listSegments().length;
+    }
+
+    // Trips in one segment, oldest first
+    public List<Route> loadSegment(int index) throws IOException {
+        File file = segmentFile(index);
+        List<Route> trips = new ArrayList<>();
+        long remaining = file.length() - SEGMENT_HEADER_SIZE;
+        if (remaining < 0) {
+            // Missing, or a header torn by an interrupted append
+            return trips;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != SEGMENT_MAGIC) {
+                throw new IOException("Not a trip segment: " + file);
+            }
+            int schemaVersion = in.readInt();
+            byte[] record;
+            while ((record = readRecord(in, remaining)) != null) {
+                remaining -= 4 + record.length;
+                trips.add(BinaryCodecs.ROUTE.decode(
+                    new DataInputStream(new ByteArrayInputStream(record)), schemaVersion));
+            }
+        }
+        return trips;
+    }
+
+    // Page through the whole history one segment at a time, oldest first
+    public void forEachSegment(Consumer<List<Route>> consumer) throws IOException {
+        int segments = getSegmentCount();
+        for (int i = 0; i < segments; i++) {
+            consumer.accept(loadSegment(i));
+        }
+    }
+
+    public List<Route> loadAll() throws IOException {
+        List<Route> trips = new ArrayList<>();
+        forEachSegment(trips::addAll);
+        return trips;
+    }
+
+    // The most recent trips, newest last, reading only the segments needed
+    public List<Route> loadRecent(int limit) throws IOException {
+        List<Route> recent = new ArrayList<>();
+        for (int i = getSegmentCount() - 1; i >= 0 && recent.size() < limit; i--) {
+            List<Route> segment = loadSegment(i);
+            recent.addAll(0, segment.subList(Math.max(0, segment.size() - (limit - recent.size())), segment.size()));
+        }
+        return recent;
+    }
+
+    public boolean isEmpty() {
+        return getSegmentCount() == 0;
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    private File[] listSegments() {
+        File[] files = directory.listFiles((dir, name) ->
+            name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX));
+        if (files == null) {
+            return new File[0];
+        }
+        Arrays.sort(files);
+        return files;
+    }
+
+    private File segmentFile(int index) {
+        return new File(directory, String.format("%s%06d%s", SEGMENT_PREFIX, index, SEGMENT_SUFFIX));
+    }
+
+    private static int readSchemaVersion(File file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            in.readInt();
+            return in.readInt();
+        }
+    }
+
+    private static int countTrips(File file) throws IOException {
+        return new Scan(file).trips;
+    }
+
+    // Cut a segment back to its last complete record; returns the trips left
+    private int trimTornTail(File file) throws IOException {
+        Scan scan = new Scan(file);
+        if (scan.intactLength < file.length()) {
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                raf.setLength(scan.intactLength);
+            }
+            DurableFileWriter.getInstance().force(file, durability);
+        }
+        return scan.trips;
+    }
+
+    private static byte[] readRecord(DataInputStream in, long remaining) throws IOException {
+        try {
+            int length = in.readInt();
+            // A garbage length from a torn append is not allocated
+            if (length <= 0 || length > remaining - 4) {
+                return null;
+            }
+            byte[] record = new byte[length];
+            in.readFully(record);
+            return record;
+        } catch (EOFException e) {
+            // End of segment, or a torn tail from an interrupted append
+            return null;
+        }
+    }
+
+    // Complete records in a segment and the length of the file they fill
+    private static class Scan {
+        private int trips;
+        private long intactLength;
+
+        Scan(File file) throws IOException {
+            long length = file.length();
+            if (length < SEGMENT_HEADER_SIZE) {
+                return;
+            }
+            intactLength = SEGMENT_HEADER_SIZE;
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+                in.skipBytes(SEGMENT_HEADER_SIZE);
+                while (true) {
+                    int recordLength;
+                    try {
+                        recordLength = in.readInt();
+                    } catch (EOFException e) {
+                        break;
+                    }
+                    if (recordLength <= 0 || recordLength > length - intactLength - 4) {
+                        break;
+                    }
+                    in.skipBytes(recordLength);
+                    intactLength += 4 + recordLength;
+                    trips++;
+                }
+            }
+        }
+    }
+}
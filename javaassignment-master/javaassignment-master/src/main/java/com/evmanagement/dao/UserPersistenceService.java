@@ -0,0 +1,238 @@
+package com.evmanagement.dao;
+
+import com.evmanagement.model.User;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Write-behind persistence for users. Mutations only mark a user dirty; a
+ * background flusher writes each dirty user once per interval, or sooner when
+ * the number of pending mutations reaches the configured threshold.
+ *
+ * Every write, immediate flushes included, runs on the flusher thread, so two
+ * writes of one user never overlap or land out of order. The flusher encodes
+ * a user while holding its lock, which the user's mutators hold too, and
+ * writes the bytes after letting go of it.
+ */
+public class UserPersistenceService {
+    public static final long DEFAULT_FLUSH_INTERVAL_MS = 2000;
+    public static final int DEFAULT_MAX_PENDING_MUTATIONS = 50;
+    private static final long SHUTDOWN_WAIT_SECONDS = 30;
+
+    private static UserPersistenceService instance;
+
+    private final long flushIntervalMs;
+    private final int maxPendingMutations;
+    private final Map<String, User> dirtyUsers;
+    private final Map<String, Integer> dirtyMutations; // mutations each dirty user has pending
+    private final ScheduledExecutorService flusher;
+    private final Object writesAfterShutdown = new Object();
+    private int pendingMutations;
+
+    // Statistics
+    private final AtomicLong mutationsReceived = new AtomicLong();
+    private final AtomicLong writesPerformed = new AtomicLong();
+    private final AtomicLong writesAvoided = new AtomicLong();
+    private final AtomicLong writeFailures = new AtomicLong();
+
+    public UserPersistenceService(long flushIntervalMs, int maxPendingMutations) {
+        this.flushIntervalMs = flushIntervalMs;
+        this.maxPendingMutations = maxPendingMutations;
+        this.dirtyUsers = new LinkedHashMap<>();
+        this.dirtyMutations = new HashMap<>();
+        this.flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "user-write-behind");
+            t.setDaemon(true);
+            return t;
+        });
+        flusher.scheduleWithFixedDelay(this::writeDirty, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+        Runtime.getRuntime().addShutdownHook(new Thread(this::shutdown, "user-write-behind-shutdown"));
+    }
+
+    public static synchronized UserPersistenceService getInstance() {
+        if (instance == null) {
+            instance = new UserPersistenceService(
+                Long.getLong("evm.user.flushIntervalMs", DEFAULT_FLUSH_INTERVAL_MS),
+                Integer.getInteger("evm.user.maxPendingMutations", DEFAULT_MAX_PENDING_MUTATIONS)
+            );
+        }
+        return instance;
+    }
+
+    // Call on the thread that changed the user, once the change is complete
+    public void markDirty(User user) {
+        mutationsReceived.incrementAndGet();
+        boolean flushNow;
+        synchronized (this) {
+            if (dirtyUsers.put(user.getUsername(), user) != null) {
+                // Already waiting for a flush, this mutation rides along with it
+                writesAvoided.incrementAndGet();
+            }
+            dirtyMutations.merge(user.getUsername(), 1, Integer::sum);
+            pendingMutations++;
+            flushNow = pendingMutations >= maxPendingMutations;
+        }
+        if (flushNow) {
+            try {
+                flusher.execute(this::writeDirty);
+            } catch (RejectedExecutionException e) {
+                // Shutting down; the final flush writes it
+            }
+        }
+    }
+
+    // Write a single user now, e.g. right after registration; returns once it is written
+    public void flush(User user) {
+        onFlusher(() -> {
+            synchronized (this) {
+                take(user.getUsername());
+            }
+            if (!writeUser(user)) {
+                keepDirty(user);
+            }
+        });
+    }
+
+    // Write every dirty user now; returns once they are written
+    public void flushAll() {
+        onFlusher(this::writeDirty);
+    }
+
+    // Runs on the flusher thread, or once that has finished under writesAfterShutdown
+    private void writeDirty() {
+        List<User> batch;
+        synchronized (this) {
+            if (dirtyUsers.isEmpty()) {
+                return;
+            }
+            batch = new ArrayList<>(dirtyUsers.values());
+            dirtyUsers.clear();
+            dirtyMutations.clear();
+            pendingMutations = 0;
+        }
+        for (User user : batch) {
+            if (!writeUser(user)) {
+                keepDirty(user);
+            }
+        }
+    }
+
+    private void take(String username) {
+        dirtyUsers.remove(username);
+        Integer mutations = dirtyMutations.remove(username);
+        if (mutations != null) {
+            pendingMutations -= mutations;
+        }
+    }
+
+    // Keep a user whose write failed dirty, so the next flush retries it
+    private synchronized void keepDirty(User user) {
+        dirtyUsers.putIfAbsent(user.getUsername(), user);
+    }
+
+    // Run the task on the flusher thread and wait for it. Once the flusher has
+    // shut down and finished, the caller runs it, one such task at a time.
+    private void onFlusher(Runnable task) {
+        Future<?> done;
+        try {
+            done = flusher.submit(task);
+        } catch (RejectedExecutionException e) {
+            if (awaitFlusher()) {
+                synchronized (writesAfterShutdown) {
+                    task.run();
+                }
+            }
+            return;
+        }
+        try {
+            done.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            e.getCause().printStackTrace();
+        }
+    }
+
+    private boolean awaitFlusher() {
+        try {
+            return flusher.awaitTermination(SHUTDOWN_WAIT_SECONDS, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    // Each user lives in <username>.dat, written with the binary user codec
+    public static FileDAO<User> userDAO(String username) {
+        return new FileDAO<>(username + ".dat", BinaryCodecs.USER, Durability.forStore("user"));
+    }
+
+    // Load a user header, moving any legacy in-file trip history into segments
+    public User loadUser(String username) throws IOException, ClassNotFoundException {
+        if (!new File(username + ".dat").exists()) {
+            return null;
+        }
+        List<User> users = userDAO(username).loadFromFile();
+        if (users.isEmpty()) {
+            return null;
+        }
+        User user = users.get(0);
+        if (user.migrateLegacyTrips()) {
+            flush(user);
+        }
+        return user;
+    }
+
+    private boolean writeUser(User user) {
+        try {
+            FileDAO<User> dao = userDAO(user.getUsername());
+            byte[] snapshot;
+            synchronized (user) {
+                snapshot = dao.encode(user);
+            }
+            dao.saveEncoded(Collections.singletonList(snapshot));
+            writesPerformed.incrementAndGet();
+            return true;
+        } catch (IOException e) {
+            writeFailures.incrementAndGet();
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    // Waits for a flush already running, then writes whatever is still dirty
+    public void shutdown() {
+        flusher.shutdown();
+        if (awaitFlusher()) {
+            synchronized (writesAfterShutdown) {
+                writeDirty();
+            }
+        }
+    }
+
+    public synchronized boolean isDirty(User user) {
+        return dirtyUsers.containsKey(user.getUsername());
+    }
+
+    // Getters
+    public long getFlushIntervalMs() { return flushIntervalMs; }
+    public int getMaxPendingMutations() { return maxPendingMutations; }
+    public long getMutationsReceived() { return mutationsReceived.get(); }
+    public long getWritesPerformed() { return writesPerformed.get(); }
+    public long getWritesAvoided() { return writesAvoided.get(); }
+    public long getWriteFailures() { return writeFailures.get(); }
+}
@@ -1,12 +1,15 @@
 package com.evmanagement.model;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.io.Serializable;
 import java.time.LocalDateTime;
 import java.time.YearMonth;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.List;
-import java.util.ArrayList;
+import com.evmanagement.dao.BinaryIO;
 
 public class Analytics implements Serializable {
     private static final long serialVersionUID = -2507850679237932194L;
@@ -17,7 +20,6 @@ public class Analytics implements Serializable {
     private Map<String, Double> usageStats;
     private Map<String, Double> efficiencyMetrics;
     private Map<String, Double> chargingStats;
-    private List<Route> tripHistory;
     private Map<YearMonth, Map<String, Double>> annualStats;
 
     public Analytics(User user) {
@@ -27,7 +29,6 @@ public class Analytics implements Serializable {
         this.usageStats = new HashMap<>();
         this.efficiencyMetrics = new HashMap<>();
         this.chargingStats = new HashMap<>();
-        this.tripHistory = new ArrayList<>();
         this.annualStats = new HashMap<>();
         initializeData();
     }
@@ -63,7 +64,6 @@ public class Analytics implements Serializable {
     }
 
     public void addTrip(Route trip) {
-        tripHistory.add(trip);
         updateMetrics(trip);
     }
 
@@ -102,11 +102,11 @@ public class Analytics implements Serializable {
         costSavings.put("petrolCostYearly", costSavings.get("petrolCost") * 12);
 
         // Update charging stats if charging stops were used
-        List<ChargingStation> chargingStops = trip.getChargingStops();
+        List<ChargingStop> chargingStops = trip.getChargingStops();
         if (!chargingStops.isEmpty()) {
             chargingStats.put("sessions", chargingStats.get("sessions") + chargingStops.size());
             double totalChargingTime = chargingStops.stream()
-                .mapToDouble(station -> station.calculateChargingTime(trip.getVehicle().getBatteryCapacity() * 0.8))
+                .mapToDouble(ChargingStop::getChargingTime)
                 .sum();
             chargingStats.put("avgTime", 
                 (chargingStats.get("avgTime") * (chargingStats.get("sessions") - 1) + totalChargingTime) 
@@ -122,13 +122,46 @@ public class Analytics implements Serializable {
         monthStats.put("costSaved", petrolCost - evCost);
     }
 
+    // Recompute from the full history, paging in one segment at a time
     public void refreshData() {
         initializeData();
-        for (Route trip : tripHistory) {
-            updateMetrics(trip);
+        try {
+            user.getTripHistoryStore().forEachSegment(segment -> segment.forEach(this::updateMetrics));
+        } catch (IOException e) {
+            e.printStackTrace();
         }
     }
 
+    // Binary codec (see BinaryCodecs)
+    public void writeTo(DataOutput out) throws IOException {
+        BinaryIO.writeDoubleMap(out, environmentalImpact);
+        BinaryIO.writeDoubleMap(out, costSavings);
+        BinaryIO.writeDoubleMap(out, usageStats);
+        BinaryIO.writeDoubleMap(out, efficiencyMetrics);
+        BinaryIO.writeDoubleMap(out, chargingStats);
+        out.writeInt(annualStats.size());
+        for (Map.Entry<YearMonth, Map<String, Double>> entry : annualStats.entrySet()) {
+            out.writeInt(entry.getKey().getYear());
+            out.writeByte(entry.getKey().getMonthValue());
+            BinaryIO.writeDoubleMap(out, entry.getValue());
+        }
+    }
+
+    public static Analytics readFrom(DataInput in, int version, User user) throws IOException {
+        Analytics analytics = new Analytics(user);
+        analytics.environmentalImpact = BinaryIO.readDoubleMap(in);
+        analytics.costSavings = BinaryIO.readDoubleMap(in);
+        analytics.usageStats = BinaryIO.readDoubleMap(in);
+        analytics.efficiencyMetrics = BinaryIO.readDoubleMap(in);
+        analytics.chargingStats = BinaryIO.readDoubleMap(in);
+        int months = in.readInt();
+        for (int i = 0; i < months; i++) {
+            YearMonth yearMonth = YearMonth.of(in.readInt(), in.readByte());
+            analytics.annualStats.put(yearMonth, BinaryIO.readDoubleMap(in));
+        }
+        return analytics;
+    }
+
     // Getters
     public Map<String, Double> getEnvironmentalImpact() {
         return new HashMap<>(environmentalImpact);
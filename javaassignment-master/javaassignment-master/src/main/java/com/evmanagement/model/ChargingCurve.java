@@ -0,0 +1,210 @@
+package com.evmanagement.model;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The power a vehicle accepts while charging, as a function of its state of
+ * charge: piecewise linear between breakpoints, usually flat up to about half
+ * charge and tapering off towards full. Curves are read from a tab-separated
+ * file of vehicle name (manufacturer and model, or vehicle ID) and
+ * {@code percent:kW} breakpoints: {@code evm.chargingCurves} if set, otherwise
+ * the bundled charging-curves.tsv. Vehicles not listed get a typical curve
+ * peaking at {@code evm.charging.peakCRate} (default 1.5) times their
+ * capacity.
+ *
+ * Charging time is looked up in a table of cumulative hours from empty,
+ * computed once per station power (the car draws the lower of the two), so
+ * the time between any two charge levels is two lookups and a subtraction.
+ */
+public final class ChargingCurve {
+    private static final String DEFAULT_FILE = "src/main/resources/charging-curves.tsv";
+    private static final String RESOURCE = "/charging-curves.tsv";
+    private static final double PEAK_C_RATE = Double.parseDouble(System.getProperty("evm.charging.peakCRate", "1.5"));
+    private static final int TABLE_STEPS = 1000;
+    private static final int SUBSTEPS = 8;
+
+    private static Map<String, ChargingCurve> knownCurves;
+    private static final Map<String, ChargingCurve> vehicleCurves = new ConcurrentHashMap<>();
+
+    private final double capacity; // in kWh
+    private final double[] soc; // breakpoints, 0 to 1
+    private final double[] kW;
+    private final Map<Double, Table> tables = new ConcurrentHashMap<>();
+
+    public ChargingCurve(double capacity, double[] soc, double[] kW) {
+        if (soc.length < 2 || soc.length != kW.length || soc[0] != 0.0 || soc[soc.length - 1] != 1.0) {
+            throw new IllegalArgumentException("Charging curve needs breakpoints from 0 to 100% charge");
+        }
+        for (int i = 0; i < soc.length; i++) {
+            if ((i > 0 && soc[i] <= soc[i - 1]) || !(kW[i] > 0)) {
+                throw new IllegalArgumentException("Charging curve breakpoints must rise, with positive power");
+            }
+        }
+        this.capacity = capacity;
+        this.soc = soc.clone();
+        this.kW = kW.clone();
+    }
+
+    // Full power from 10% to 50%, then down to a tenth of it at full charge
+    public static ChargingCurve typical(double capacity) {
+        double peak = Math.max(1.0, capacity * PEAK_C_RATE);
+        return new ChargingCurve(capacity, new double[] {0.0, 0.1, 0.5, 0.8, 1.0},
+            new double[] {0.7 * peak, peak, peak, 0.45 * peak, 0.1 * peak});
+    }
+
+    // The vehicle's listed curve, scaled to its capacity, or a typical one
+    public static ChargingCurve forVehicle(VehicleProfile vehicle) {
+        String key = vehicle.getVehicleId() + "\t" + vehicle.getName() + "\t" + vehicle.getBatteryCapacity();
+        return vehicleCurves.computeIfAbsent(key, k -> {
+            Map<String, ChargingCurve> known = getKnownCurves();
+            ChargingCurve listed = known.get(normalize(vehicle.getVehicleId()));
+            if (listed == null) {
+                listed = known.get(normalize(vehicle.getName()));
+            }
+            return listed != null ? listed.withCapacity(vehicle.getBatteryCapacity())
+                : typical(vehicle.getBatteryCapacity());
+        });
+    }
+
+    private static synchronized Map<String, ChargingCurve> getKnownCurves() {
+        if (knownCurves == null) {
+            try {
+                knownCurves = read();
+            } catch (IOException e) {
+                e.printStackTrace();
+                knownCurves = new HashMap<>();
+            }
+        }
+        return knownCurves;
+    }
+
+    private static Map<String, ChargingCurve> read() throws IOException {
+        File file = new File(System.getProperty("evm.chargingCurves", DEFAULT_FILE));
+        if (file.exists()) {
+            try (InputStream in = new FileInputStream(file)) {
+                return read(in);
+            }
+        }
+        try (InputStream in = ChargingCurve.class.getResourceAsStream(RESOURCE)) {
+            if (in == null) {
+                throw new IOException("No charging curves at " + file + " or on the classpath");
+            }
+            return read(in);
+        }
+    }
+
+    // Curves by normalized vehicle name; capacities are filled in per vehicle
+    public static Map<String, ChargingCurve> read(InputStream in) throws IOException {
+        Map<String, ChargingCurve> curves = new HashMap<>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        String line;
+        int lineNumber = 0;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            if (line.trim().isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            String[] fields = line.split("\t");
+            try {
+                String[] points = fields[1].trim().split("\\s+");
+                double[] soc = new double[points.length];
+                double[] kW = new double[points.length];
+                for (int i = 0; i < points.length; i++) {
+                    String[] point = points[i].split(":");
+                    soc[i] = Double.parseDouble(point[0]) / 100.0;
+                    kW[i] = Double.parseDouble(point[1]);
+                }
+                curves.put(normalize(fields[0]), new ChargingCurve(0.0, soc, kW));
+            } catch (RuntimeException e) {
+                throw new IOException("Bad charging curve line " + lineNumber + ": " + line, e);
+            }
+        }
+        return curves;
+    }
+
+    private static String normalize(String name) {
+        return name == null ? "" : name.trim().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT);
+    }
+
+    public ChargingCurve withCapacity(double capacity) {
+        return new ChargingCurve(capacity, soc, kW);
+    }
+
+    // Power the vehicle accepts at a state of charge (fraction of capacity)
+    public double powerAt(double stateOfCharge) {
+        double s = Math.max(0.0, Math.min(1.0, stateOfCharge));
+        int i = 1;
+        while (i < soc.length - 1 && soc[i] < s) i++;
+        return kW[i - 1] + (kW[i] - kW[i - 1]) * (s - soc[i - 1]) / (soc[i] - soc[i - 1]);
+    }
+
+    // Hours to charge between two states of charge at a station of the given power
+    public double hours(double stationKW, double fromSoc, double toSoc) {
+        return table(stationKW).hours(fromSoc, toSoc);
+    }
+
+    public Table table(double stationKW) {
+        return tables.computeIfAbsent(stationKW, Table::new);
+    }
+
+    // Getters
+    public double getCapacity() { return capacity; }
+    public double getPeakPower() { return Arrays.stream(kW).max().getAsDouble(); }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof ChargingCurve)) return false;
+        ChargingCurve curve = (ChargingCurve) o;
+        return Double.compare(capacity, curve.capacity) == 0
+            && Arrays.equals(soc, curve.soc) && Arrays.equals(kW, curve.kW);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * (31 * Double.hashCode(capacity) + Arrays.hashCode(soc)) + Arrays.hashCode(kW);
+    }
+
+    // Cumulative charging hours from empty at one station power
+    public final class Table {
+        private final double[] hoursFromEmpty = new double[TABLE_STEPS + 1];
+        private final double fastestHoursPerKWh;
+
+        Table(double stationKW) {
+            double stepKWh = capacity / TABLE_STEPS;
+            for (int k = 0; k < TABLE_STEPS; k++) {
+                double stepHours = 0.0;
+                for (int j = 0; j < SUBSTEPS; j++) {
+                    double power = Math.min(stationKW, powerAt((k + (j + 0.5) / SUBSTEPS) / TABLE_STEPS));
+                    stepHours += stepKWh / SUBSTEPS / power;
+                }
+                hoursFromEmpty[k + 1] = hoursFromEmpty[k] + stepHours;
+            }
+            // No stretch of the curve charges faster, so usable as a lower bound
+            this.fastestHoursPerKWh = 1.0 / Math.min(stationKW, getPeakPower());
+        }
+
+        public double hours(double fromSoc, double toSoc) {
+            return toSoc > fromSoc ? at(toSoc) - at(fromSoc) : 0.0;
+        }
+
+        private double at(double stateOfCharge) {
+            double x = Math.max(0.0, Math.min(1.0, stateOfCharge)) * TABLE_STEPS;
+            int k = Math.min((int) x, TABLE_STEPS - 1);
+            return hoursFromEmpty[k] + (hoursFromEmpty[k + 1] - hoursFromEmpty[k]) * (x - k);
+        }
+
+        public double getFastestHoursPerKWh() { return fastestHoursPerKWh; }
+    }
+}
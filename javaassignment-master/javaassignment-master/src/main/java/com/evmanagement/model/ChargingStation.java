@@ -5,12 +5,16 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Arrays;
 import java.time.LocalDateTime;
 import java.time.LocalTime;
 import java.time.DayOfWeek;
-import java.io.FileOutputStream;
+import java.time.ZoneOffset;
+import java.io.DataInput;
+import java.io.DataOutput;
 import java.io.IOException;
-import java.io.ObjectOutputStream;
+import com.evmanagement.dao.BinaryIO;
+import com.evmanagement.dao.StationJournal;
 
 public class ChargingStation implements Serializable {
     private static final long serialVersionUID = 110048258295059597L;
@@ -32,6 +36,7 @@ public class ChargingStation implements Serializable {
     private MaintenanceSchedule maintenance;
     private PaymentOptions paymentOptions;
     private EmergencyContact emergencyContact;
+    private long journalSequence; // last journal entry contained in this snapshot
 
     public ChargingStation(String stationId, String name, String location, 
                           double latitude, double longitude, double chargingRate, 
@@ -69,60 +74,68 @@ public class ChargingStation implements Serializable {
 
     public void updateAvailability(boolean available) {
         this.isAvailable = available;
-        saveStationData();
+        recordChange(StationJournal.Entry.availability(available));
     }
 
     public void updatePricing(double newPrice) {
         this.pricePerKWh = newPrice;
-        saveStationData();
+        recordChange(StationJournal.Entry.pricing(newPrice));
     }
 
     public void addChargingPort(ChargingPort port) {
         chargingPorts.add(port);
-        saveStationData();
+        recordChange(StationJournal.Entry.addPort(port));
     }
 
     public void removeChargingPort(String portId) {
         chargingPorts.removeIf(port -> port.getId().equals(portId));
-        saveStationData();
+        recordChange(StationJournal.Entry.removePort(portId));
     }
 
     public void setOperatingHours(OperatingHours hours) {
         this.operatingHours = hours;
-        saveStationData();
+        recordChange(StationJournal.Entry.operatingHours(hours));
     }
 
     public void scheduleMaintenanceWindow(LocalDateTime start, LocalDateTime end) {
+        applyMaintenanceWindow(start, end);
+        recordChange(StationJournal.Entry.maintenanceWindow(start, end));
+    }
+
+    private void applyMaintenanceWindow(LocalDateTime start, LocalDateTime end) {
         if (maintenance == null) {
             maintenance = new MaintenanceSchedule();
         }
         maintenance.addMaintenanceWindow(start, end);
-        saveStationData();
     }
 
     public void setPaymentOptions(PaymentOptions options) {
         this.paymentOptions = options;
-        saveStationData();
+        recordChange(StationJournal.Entry.paymentOptions(options));
     }
 
     public void setEmergencyContact(EmergencyContact contact) {
         this.emergencyContact = contact;
-        saveStationData();
+        recordChange(StationJournal.Entry.emergencyContact(contact));
     }
 
     public void updateOccupancy(LocalDateTime timestamp, int occupancy) {
+        applyOccupancy(timestamp, occupancy);
+        recordChange(StationJournal.Entry.occupancy(timestamp, occupancy));
+    }
+
+    private void applyOccupancy(LocalDateTime timestamp, int occupancy) {
         occupancyHistory.put(timestamp, occupancy);
         if (occupancyHistory.size() > 1000) { // Limit history size
             LocalDateTime oldest = occupancyHistory.keySet().stream().min(LocalDateTime::compareTo).get();
             occupancyHistory.remove(oldest);
         }
-        saveStationData();
     }
 
     public void addReview(String review, int rating) {
         reviews.add(review);
         ratings.add(rating);
-        saveStationData();
+        recordChange(StationJournal.Entry.review(review, rating));
     }
 
     public double getAverageRating() {
@@ -131,27 +144,245 @@ public class ChargingStation implements Serializable {
     }
 
     public double calculateChargingTime(double requiredKWh) {
-        // Find fastest available charging port
+        return requiredKWh / getMaxChargingPower();
+    }
+
+    // Power of the fastest available charging port, or the station's rate without ports
+    public double getMaxChargingPower() {
         return chargingPorts.stream()
             .filter(ChargingPort::isAvailable)
-            .mapToDouble(port -> requiredKWh / port.getPower())
-            .min()
-            .orElse(requiredKWh / chargingRate);
+            .mapToDouble(ChargingPort::getPower)
+            .max()
+            .orElse(chargingRate);
     }
 
     public double calculateChargingCost(double kWhCharged) {
         return kWhCharged * pricePerKWh;
     }
 
-    private void saveStationData() {
-        try (ObjectOutputStream oos = new ObjectOutputStream(
-                new FileOutputStream("stations/" + stationId + ".dat"))) {
-            oos.writeObject(this);
+    // Data persistence (one small journal append per change). A change the
+    // journal could not take stays in memory only and is not announced.
+    private void recordChange(StationJournal.Entry entry) {
+        journalSequence++;
+        try {
+            StationJournal.forStation(stationId).append(this, journalSequence, entry);
         } catch (IOException e) {
             e.printStackTrace();
         }
     }
 
+    // Replays a journal entry without journaling it again; entries already
+    // contained in the snapshot are skipped so replay is idempotent
+    public boolean applyJournalEntry(long sequence, StationJournal.Entry entry) {
+        if (sequence <= journalSequence) {
+            return false;
+        }
+        switch (entry.getType()) {
+            case AVAILABILITY:
+                this.isAvailable = entry.getFlag();
+                break;
+            case PRICING:
+                this.pricePerKWh = entry.getNumber();
+                break;
+            case OCCUPANCY:
+                applyOccupancy(entry.getTime(), entry.getCount());
+                break;
+            case REVIEW:
+                reviews.add(entry.getText());
+                ratings.add(entry.getCount());
+                break;
+            case ADD_PORT:
+                chargingPorts.add((ChargingPort) entry.getValue());
+                break;
+            case REMOVE_PORT:
+                chargingPorts.removeIf(port -> port.getId().equals(entry.getText()));
+                break;
+            case OPERATING_HOURS:
+                this.operatingHours = (OperatingHours) entry.getValue();
+                break;
+            case MAINTENANCE_WINDOW:
+                applyMaintenanceWindow(entry.getTime(), entry.getEndTime());
+                break;
+            case PAYMENT_OPTIONS:
+                this.paymentOptions = (PaymentOptions) entry.getValue();
+                break;
+            case EMERGENCY_CONTACT:
+                this.emergencyContact = (EmergencyContact) entry.getValue();
+                break;
+        }
+        this.journalSequence = sequence;
+        return true;
+    }
+
+    // Binary codec (see BinaryCodecs)
+    public void writeTo(DataOutput out) throws IOException {
+        BinaryIO.writeString(out, stationId);
+        BinaryIO.writeString(out, name);
+        BinaryIO.writeString(out, location);
+        out.writeDouble(latitude);
+        out.writeDouble(longitude);
+        out.writeBoolean(isAvailable);
+        out.writeDouble(chargingRate);
+        out.writeDouble(pricePerKWh);
+        out.writeLong(journalSequence);
+        BinaryIO.writeStringList(out, reviews);
+        out.writeInt(ratings.size());
+        for (Integer rating : ratings) {
+            out.writeInt(rating);
+        }
+
+        out.writeInt(amenities.size());
+        for (Map.Entry<String, Object> amenity : amenities.entrySet()) {
+            BinaryIO.writeString(out, amenity.getKey());
+            Object value = amenity.getValue();
+            if (value instanceof Boolean) {
+                out.writeByte(0);
+                out.writeBoolean((Boolean) value);
+            } else if (value instanceof Number) {
+                out.writeByte(1);
+                out.writeDouble(((Number) value).doubleValue());
+            } else {
+                out.writeByte(2);
+                BinaryIO.writeString(out, value != null ? value.toString() : null);
+            }
+        }
+
+        out.writeInt(chargingPorts.size());
+        for (ChargingPort port : chargingPorts) {
+            BinaryIO.writeString(out, port.id);
+            out.writeByte(port.type.ordinal());
+            out.writeDouble(port.power);
+            out.writeBoolean(port.available);
+            BinaryIO.writeString(out, port.connectorType);
+        }
+
+        out.writeInt(occupancyHistory.size());
+        for (Map.Entry<LocalDateTime, Integer> entry : occupancyHistory.entrySet()) {
+            BinaryIO.writeDateTime(out, entry.getKey());
+            out.writeInt(entry.getValue());
+        }
+
+        out.writeBoolean(operatingHours != null);
+        if (operatingHours != null) {
+            out.writeByte(operatingHours.schedule.size());
+            for (Map.Entry<DayOfWeek, OperatingHours.TimeRange> day : operatingHours.schedule.entrySet()) {
+                out.writeByte(day.getKey().getValue());
+                out.writeInt(day.getValue().open.toSecondOfDay());
+                out.writeInt(day.getValue().close.toSecondOfDay());
+            }
+        }
+
+        out.writeBoolean(maintenance != null);
+        if (maintenance != null) {
+            out.writeInt(maintenance.windows.size());
+            for (MaintenanceSchedule.MaintenanceWindow window : maintenance.windows) {
+                BinaryIO.writeDateTime(out, window.start);
+                BinaryIO.writeDateTime(out, window.end);
+            }
+        }
+
+        out.writeBoolean(paymentOptions != null);
+        if (paymentOptions != null) {
+            out.writeBoolean(paymentOptions.creditCard);
+            out.writeBoolean(paymentOptions.debitCard);
+            out.writeBoolean(paymentOptions.mobilePay);
+            out.writeBoolean(paymentOptions.rfidCard);
+            BinaryIO.writeStringList(out, paymentOptions.supportedPaymentApps);
+        }
+
+        out.writeBoolean(emergencyContact != null);
+        if (emergencyContact != null) {
+            BinaryIO.writeString(out, emergencyContact.name);
+            BinaryIO.writeString(out, emergencyContact.phone);
+            BinaryIO.writeString(out, emergencyContact.email);
+            out.writeBoolean(emergencyContact.available24x7);
+        }
+    }
+
+    public static ChargingStation readFrom(DataInput in, int version) throws IOException {
+        String stationId = BinaryIO.readString(in);
+        String name = BinaryIO.readString(in);
+        String location = BinaryIO.readString(in);
+        double latitude = in.readDouble();
+        double longitude = in.readDouble();
+        boolean available = in.readBoolean();
+        double chargingRate = in.readDouble();
+        double pricePerKWh = in.readDouble();
+        ChargingStation station = new ChargingStation(stationId, name, location,
+            latitude, longitude, chargingRate, pricePerKWh);
+        station.isAvailable = available;
+        station.journalSequence = in.readLong();
+        station.reviews = BinaryIO.readStringList(in);
+        int ratingCount = in.readInt();
+        for (int i = 0; i < ratingCount; i++) {
+            station.ratings.add(in.readInt());
+        }
+
+        station.amenities.clear();
+        int amenityCount = in.readInt();
+        for (int i = 0; i < amenityCount; i++) {
+            String key = BinaryIO.readString(in);
+            switch (in.readByte()) {
+                case 0:
+                    station.amenities.put(key, in.readBoolean());
+                    break;
+                case 1:
+                    station.amenities.put(key, in.readDouble());
+                    break;
+                default:
+                    station.amenities.put(key, BinaryIO.readString(in));
+            }
+        }
+
+        station.chargingPorts.clear();
+        int portCount = in.readInt();
+        for (int i = 0; i < portCount; i++) {
+            ChargingPort port = new ChargingPort(BinaryIO.readString(in),
+                ChargingType.values()[in.readByte()], in.readDouble());
+            port.available = in.readBoolean();
+            port.connectorType = BinaryIO.readString(in);
+            station.chargingPorts.add(port);
+        }
+
+        int occupancyCount = in.readInt();
+        for (int i = 0; i < occupancyCount; i++) {
+            station.occupancyHistory.put(BinaryIO.readDateTime(in), in.readInt());
+        }
+
+        if (in.readBoolean()) {
+            station.operatingHours = new OperatingHours();
+            int days = in.readByte();
+            for (int i = 0; i < days; i++) {
+                station.operatingHours.setHours(DayOfWeek.of(in.readByte()),
+                    LocalTime.ofSecondOfDay(in.readInt()), LocalTime.ofSecondOfDay(in.readInt()));
+            }
+        }
+
+        if (in.readBoolean()) {
+            station.maintenance = new MaintenanceSchedule();
+            int windows = in.readInt();
+            for (int i = 0; i < windows; i++) {
+                station.maintenance.addMaintenanceWindow(BinaryIO.readDateTime(in), BinaryIO.readDateTime(in));
+            }
+        }
+
+        if (in.readBoolean()) {
+            PaymentOptions options = new PaymentOptions();
+            options.creditCard = in.readBoolean();
+            options.debitCard = in.readBoolean();
+            options.mobilePay = in.readBoolean();
+            options.rfidCard = in.readBoolean();
+            options.supportedPaymentApps = BinaryIO.readStringList(in);
+            station.paymentOptions = options;
+        }
+
+        if (in.readBoolean()) {
+            station.emergencyContact = new EmergencyContact(BinaryIO.readString(in),
+                BinaryIO.readString(in), BinaryIO.readString(in), in.readBoolean());
+        }
+        return station;
+    }
+
     // Getters
     public String getStationId() { return stationId; }
     public String getName() { return name; }
@@ -169,6 +400,7 @@ public class ChargingStation implements Serializable {
     public MaintenanceSchedule getMaintenance() { return maintenance; }
     public PaymentOptions getPaymentOptions() { return paymentOptions; }
     public EmergencyContact getEmergencyContact() { return emergencyContact; }
+    public long getJournalSequence() { return journalSequence; }
 
     public static class ChargingPort implements Serializable {
         private String id;
@@ -213,8 +445,19 @@ public class ChargingStation implements Serializable {
         }
     }
 
+    /**
+     * Opening hours per day of week. Queries go through a bitmap of the
+     * minutes of the week the station is open, compiled on first use, so they
+     * take constant time whatever the schedule. Queries by minute of the week
+     * are to the minute; isOpen is exact, also within an opening or closing
+     * minute.
+     */
     public static class OperatingHours implements Serializable {
+        private static final long serialVersionUID = -6437097263492957420L;
+        public static final int MINUTES_PER_WEEK = 7 * 24 * 60;
+
         private Map<DayOfWeek, TimeRange> schedule;
+        private transient volatile long[] openMinutes;
 
         public OperatingHours() {
             this.schedule = new HashMap<>();
@@ -222,16 +465,102 @@ public class ChargingStation implements Serializable {
 
         public void setHours(DayOfWeek day, LocalTime open, LocalTime close) {
             schedule.put(day, new TimeRange(open, close));
+            openMinutes = null;
+        }
+
+        // Copy that later changes to these hours do not reach
+        public OperatingHours copy() {
+            OperatingHours copy = new OperatingHours();
+            copy.schedule.putAll(schedule);
+            copy.openMinutes = openMinutes;
+            return copy;
         }
 
         public boolean isOpen(LocalDateTime dateTime) {
-            TimeRange range = schedule.get(dateTime.getDayOfWeek());
-            if (range == null) return false;
+            int minute = minuteOfWeek(dateTime);
             LocalTime time = dateTime.toLocalTime();
-            return !time.isBefore(range.open) && !time.isAfter(range.close);
+            if (time.getSecond() == 0 && time.getNano() == 0) {
+                return isOpenAt(minute);
+            }
+            // Part way into a minute: open throughout it if it and the next minute of the same day
+            // are; otherwise the station may open or close within it, so compare with the day's hours
+            if (minute % (24 * 60) < 24 * 60 - 1 && isOpenAt(minute) && isOpenAt(minute + 1)) {
+                return true;
+            }
+            TimeRange range = schedule.get(dateTime.getDayOfWeek());
+            return range != null && !time.isBefore(range.open) && !time.isAfter(range.close);
+        }
+
+        // Minute 0 is Monday 00:00
+        public boolean isOpenAt(int minuteOfWeek) {
+            return (compiled()[minuteOfWeek >>> 6] & (1L << minuteOfWeek)) != 0;
+        }
+
+        // Minutes from the given minute of the week until the station is open: 0 if it is, -1 if it never opens
+        public int minutesUntilOpen(int minuteOfWeek) {
+            long[] bits = compiled();
+            for (int k = 0; k <= bits.length; k++) {
+                int word = ((minuteOfWeek >>> 6) + k) % bits.length;
+                long mask = bits[word];
+                if (k == 0) {
+                    mask &= -1L << minuteOfWeek;
+                }
+                if (mask != 0) {
+                    int minute = (word << 6) + Long.numberOfTrailingZeros(mask);
+                    // Past the end of the week it opens again next week
+                    return minute >= minuteOfWeek ? minute - minuteOfWeek : minute + MINUTES_PER_WEEK - minuteOfWeek;
+                }
+            }
+            return -1;
+        }
+
+        // Minutes from the given minute of the week until the station closes: 0 if it is closed, -1 if it never does
+        public int minutesUntilClosed(int minuteOfWeek) {
+            long[] bits = compiled();
+            for (int k = 0; k <= bits.length; k++) {
+                int word = ((minuteOfWeek >>> 6) + k) % bits.length;
+                long mask = ~bits[word];
+                if (word == bits.length - 1 && MINUTES_PER_WEEK % 64 != 0) {
+                    // Past the last minute of the week is not closed, just not there
+                    mask &= (1L << (MINUTES_PER_WEEK % 64)) - 1;
+                }
+                if (k == 0) {
+                    mask &= -1L << minuteOfWeek;
+                }
+                if (mask != 0) {
+                    int minute = (word << 6) + Long.numberOfTrailingZeros(mask);
+                    return minute >= minuteOfWeek ? minute - minuteOfWeek : minute + MINUTES_PER_WEEK - minuteOfWeek;
+                }
+            }
+            return -1;
+        }
+
+        public static int minuteOfWeek(LocalDateTime dateTime) {
+            return (dateTime.getDayOfWeek().getValue() - 1) * 24 * 60 + dateTime.getHour() * 60 + dateTime.getMinute();
+        }
+
+        private long[] compiled() {
+            long[] bits = openMinutes;
+            if (bits == null) {
+                bits = new long[(MINUTES_PER_WEEK + 63) >>> 6];
+                for (Map.Entry<DayOfWeek, TimeRange> day : schedule.entrySet()) {
+                    int dayStart = (day.getKey().getValue() - 1) * 24 * 60;
+                    TimeRange range = day.getValue();
+                    // A minute is open if it starts within the range, both ends included
+                    int first = (range.open.toSecondOfDay() + 59) / 60;
+                    int last = range.close.toSecondOfDay() / 60;
+                    for (int minute = dayStart + first; minute <= dayStart + last; minute++) {
+                        bits[minute >>> 6] |= 1L << minute;
+                    }
+                }
+                openMinutes = bits;
+            }
+            return bits;
         }
 
         private static class TimeRange implements Serializable {
+            private static final long serialVersionUID = -295304812828033742L;
+
             private LocalTime open;
             private LocalTime close;
 
@@ -242,8 +571,16 @@ public class ChargingStation implements Serializable {
         }
     }
 
+    /**
+     * Maintenance windows, kept as given and compiled on first use into sorted,
+     * merged intervals of epoch seconds, so a query is a binary search; times
+     * are to the second.
+     */
     public static class MaintenanceSchedule implements Serializable {
+        private static final long serialVersionUID = 724451395092585320L;
+
         private List<MaintenanceWindow> windows;
+        private transient volatile long[] intervals; // start, end pairs
 
         public MaintenanceSchedule() {
             this.windows = new ArrayList<>();
@@ -251,14 +588,98 @@ public class ChargingStation implements Serializable {
 
         public void addMaintenanceWindow(LocalDateTime start, LocalDateTime end) {
             windows.add(new MaintenanceWindow(start, end));
+            intervals = null;
+        }
+
+        // Copy that later windows added to this schedule do not reach
+        public MaintenanceSchedule copy() {
+            MaintenanceSchedule copy = new MaintenanceSchedule();
+            copy.windows.addAll(windows);
+            copy.intervals = intervals;
+            return copy;
         }
 
         public boolean isUnderMaintenance(LocalDateTime dateTime) {
-            return windows.stream()
-                .anyMatch(window -> window.includes(dateTime));
+            return secondsUntilClear(epochSecond(dateTime)) > 0;
+        }
+
+        // Seconds from the given epoch second until no window covers it; 0 if none does
+        public long secondsUntilClear(long epochSecond) {
+            long[] pairs = compiled();
+            // Last window starting at or before the time
+            int lo = 0;
+            int hi = pairs.length / 2 - 1;
+            while (lo <= hi) {
+                int mid = (lo + hi) >>> 1;
+                if (pairs[2 * mid] <= epochSecond) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid - 1;
+                }
+            }
+            if (hi < 0 || epochSecond > pairs[2 * hi + 1]) {
+                return 0;
+            }
+            return pairs[2 * hi + 1] - epochSecond + 1;
+        }
+
+        // Seconds from the given epoch second until the next window starts: 0 if one covers it, -1 if none is to come
+        public long secondsUntilNextWindow(long epochSecond) {
+            if (secondsUntilClear(epochSecond) > 0) {
+                return 0;
+            }
+            long[] pairs = compiled();
+            // First window starting after the time
+            int lo = 0;
+            int hi = pairs.length / 2;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (pairs[2 * mid] <= epochSecond) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            return lo < pairs.length / 2 ? pairs[2 * lo] - epochSecond : -1;
+        }
+
+        // Seconds since 1970-01-01T00:00 in the same local time as the windows
+        public static long epochSecond(LocalDateTime dateTime) {
+            return dateTime.toEpochSecond(ZoneOffset.UTC);
+        }
+
+        private long[] compiled() {
+            long[] pairs = intervals;
+            if (pairs == null) {
+                long[][] sorted = new long[windows.size()][];
+                for (int i = 0; i < sorted.length; i++) {
+                    MaintenanceWindow window = windows.get(i);
+                    sorted[i] = new long[] {epochSecond(window.start), epochSecond(window.end)};
+                }
+                Arrays.sort(sorted, (a, b) -> Long.compare(a[0], b[0]));
+                pairs = new long[2 * sorted.length];
+                int count = 0;
+                for (long[] window : sorted) {
+                    if (window[1] < window[0]) {
+                        continue; // ends before it starts, so never covers anything
+                    }
+                    if (count > 0 && window[0] <= pairs[2 * count - 1] + 1) {
+                        pairs[2 * count - 1] = Math.max(pairs[2 * count - 1], window[1]);
+                    } else {
+                        pairs[2 * count] = window[0];
+                        pairs[2 * count + 1] = window[1];
+                        count++;
+                    }
+                }
+                pairs = Arrays.copyOf(pairs, 2 * count);
+                intervals = pairs;
+            }
+            return pairs;
         }
 
         private static class MaintenanceWindow implements Serializable {
+            private static final long serialVersionUID = 4861646647280468070L;
+
             private LocalDateTime start;
             private LocalDateTime end;
 
@@ -0,0 +1,85 @@
+package com.evmanagement.model;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.Serializable;
+import com.evmanagement.dao.BinaryIO;
+
+/**
+ * A charging stop on a route: the station it refers to plus the handful of
+ * values the trip needs, frozen at planning time. Live station state
+ * (reviews, ports, occupancy) is looked up by station ID when required.
+ */
+public final class ChargingStop implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final String stationId;
+    private final String stationName;
+    private final String location;
+    private final double latitude;
+    private final double longitude;
+    private final double pricePerKWh;
+    private final double chargingRate; // in kW
+    private final double energyKWh; // energy charged at this stop
+    private final double cost;
+    private final double chargingTime; // in hours, on the fastest available port at planning time
+
+    public ChargingStop(String stationId, String stationName, String location,
+                        double latitude, double longitude, double pricePerKWh, double chargingRate,
+                        double energyKWh, double cost, double chargingTime) {
+        this.stationId = stationId;
+        this.stationName = stationName;
+        this.location = location;
+        this.latitude = latitude;
+        this.longitude = longitude;
+        this.pricePerKWh = pricePerKWh;
+        this.chargingRate = chargingRate;
+        this.energyKWh = energyKWh;
+        this.cost = cost;
+        this.chargingTime = chargingTime;
+    }
+
+    public static ChargingStop of(ChargingStation station, double energyKWh) {
+        return of(station, energyKWh, station.calculateChargingTime(energyKWh));
+    }
+
+    // With the charging time worked out from the vehicle's curve
+    public static ChargingStop of(ChargingStation station, double energyKWh, double chargingTime) {
+        return new ChargingStop(station.getStationId(), station.getName(), station.getLocation(),
+            station.getLatitude(), station.getLongitude(), station.getPricePerKWh(), station.getChargingRate(),
+            energyKWh, station.calculateChargingCost(energyKWh), chargingTime);
+    }
+
+    // Getters
+    public String getStationId() { return stationId; }
+    public String getStationName() { return stationName; }
+    public String getLocation() { return location; }
+    public double getLatitude() { return latitude; }
+    public double getLongitude() { return longitude; }
+    public double getPricePerKWh() { return pricePerKWh; }
+    public double getChargingRate() { return chargingRate; }
+    public double getEnergyKWh() { return energyKWh; }
+    public double getCost() { return cost; }
+    public double getChargingTime() { return chargingTime; }
+
+    // Binary codec (see BinaryCodecs)
+    public void writeTo(DataOutput out) throws IOException {
+        BinaryIO.writeString(out, stationId);
+        BinaryIO.writeString(out, stationName);
+        BinaryIO.writeString(out, location);
+        out.writeDouble(latitude);
+        out.writeDouble(longitude);
+        out.writeDouble(pricePerKWh);
+        out.writeDouble(chargingRate);
+        out.writeDouble(energyKWh);
+        out.writeDouble(cost);
+        out.writeDouble(chargingTime);
+    }
+
+    public static ChargingStop readFrom(DataInput in, int version) throws IOException {
+        return new ChargingStop(BinaryIO.readString(in), BinaryIO.readString(in), BinaryIO.readString(in),
+            in.readDouble(), in.readDouble(), in.readDouble(), in.readDouble(),
+            in.readDouble(), in.readDouble(), in.readDouble());
+    }
+}
@@ -1,19 +1,33 @@
 package com.evmanagement.model;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 import java.util.*;
 import java.time.LocalDateTime;
 import org.jxmapviewer.viewer.GeoPosition;
+import com.evmanagement.dao.BinaryIO;
+import com.evmanagement.routing.ReachabilityGraph;
+import com.evmanagement.routing.RoutePlan;
+import com.evmanagement.routing.RoutePlanCache;
+import com.evmanagement.routing.RoutePlanner;
+import com.evmanagement.util.EnergyModel;
+import com.evmanagement.util.Gazetteer;
+import com.evmanagement.util.GeoMath;
 
 public class Route implements Serializable {
+    private static final long serialVersionUID = 1148229510514443201L;
+
     private String routeId;
     private String startLocation;
     private String endLocation;
     private double distance; // in kilometers
-    private List<ChargingStation> chargingStops;
+    private List<ChargingStop> stops;
     private double estimatedEnergy; // in kWh
     private double estimatedTime; // in hours
-    private Vehicle vehicle;
+    private VehicleProfile vehicleProfile;
     private int harshBrakingEvents;
     private double duration; // actual duration in hours
     private double averageSpeed; // km/h
@@ -28,11 +42,15 @@ public class Route implements Serializable {
     private Map<String, Double> costBreakdown;
 
     public Route(String routeId, String startLocation, String endLocation, Vehicle vehicle) {
+        this(routeId, startLocation, endLocation, vehicle != null ? VehicleProfile.of(vehicle) : null);
+    }
+
+    public Route(String routeId, String startLocation, String endLocation, VehicleProfile vehicleProfile) {
         this.routeId = routeId;
         this.startLocation = startLocation;
         this.endLocation = endLocation;
-        this.vehicle = vehicle;
-        this.chargingStops = new ArrayList<>();
+        this.vehicleProfile = vehicleProfile;
+        this.stops = new ArrayList<>();
         this.harshBrakingEvents = 0;
         this.duration = 0.0;
         this.averageSpeed = 0.0;
@@ -44,97 +62,133 @@ public class Route implements Serializable {
     }
 
     public void calculateRoute(List<ChargingStation> availableStations, boolean optimizeForTime) {
+        calculateRoute(new ReachabilityGraph(availableStations, vehicleProfile.getUsableRange()), optimizeForTime);
+    }
+
+    public void calculateRoute(ReachabilityGraph stationGraph, boolean optimizeForTime) {
         // Get coordinates
         GeoPosition start = getGeoPosition(startLocation);
         GeoPosition end = getGeoPosition(endLocation);
-        
-        // Calculate base route
-        this.distance = calculateDistance(
+
+        RoutePlan plan = new RoutePlanner(stationGraph).plan(
             start.getLatitude(), start.getLongitude(),
-            end.getLatitude(), end.getLongitude()
+            end.getLatitude(), end.getLongitude(),
+            vehicleProfile,
+            optimizeForTime ? RoutePlanner.Objective.TIME : RoutePlanner.Objective.COST,
+            1.0, getDepartureTime()
         );
-        
-        // Initialize route metrics
-        double remainingRange = vehicle.getRange();
-        double currentLat = start.getLatitude();
-        double currentLon = start.getLongitude();
-        
+        if (plan == null) {
+            throw new RuntimeException("No suitable charging station found");
+        }
+        applyPlan(plan);
+    }
+
+    // As above, answered from the cache when this trip was planned before
+    public RoutePlan calculateRoute(ReachabilityGraph stationGraph, RoutePlanCache cache, boolean optimizeForTime) {
+        GeoPosition start = getGeoPosition(startLocation);
+        GeoPosition end = getGeoPosition(endLocation);
+
+        RoutePlan plan = cache.plan(stationGraph,
+            start.getLatitude(), start.getLongitude(),
+            end.getLatitude(), end.getLongitude(),
+            vehicleProfile,
+            optimizeForTime ? RoutePlanner.Objective.TIME : RoutePlanner.Objective.COST,
+            getDepartureTime()
+        );
+        if (plan == null) {
+            throw new RuntimeException("No suitable charging station found");
+        }
+        applyPlan(plan);
+        return plan;
+    }
+
+    // Every time/cost trade-off, fastest first; the route takes the fastest one
+    public List<RoutePlan> calculateTradeOffs(ReachabilityGraph stationGraph) {
+        GeoPosition start = getGeoPosition(startLocation);
+        GeoPosition end = getGeoPosition(endLocation);
+
+        return applyFastest(new RoutePlanner(stationGraph).paretoFront(
+            start.getLatitude(), start.getLongitude(),
+            end.getLatitude(), end.getLongitude(),
+            vehicleProfile, getDepartureTime()
+        ));
+    }
+
+    // As above, answered from the cache when this trip was planned before
+    public List<RoutePlan> calculateTradeOffs(ReachabilityGraph stationGraph, RoutePlanCache cache) {
+        GeoPosition start = getGeoPosition(startLocation);
+        GeoPosition end = getGeoPosition(endLocation);
+
+        return applyFastest(cache.paretoFront(stationGraph,
+            start.getLatitude(), start.getLongitude(),
+            end.getLatitude(), end.getLongitude(),
+            vehicleProfile, getDepartureTime()
+        ));
+    }
+
+    // Stations are planned against their hours from when the trip starts, or now
+    public LocalDateTime getDepartureTime() {
+        return startTime != null ? startTime : LocalDateTime.now();
+    }
+
+    private List<RoutePlan> applyFastest(List<RoutePlan> plans) {
+        if (plans.isEmpty()) {
+            throw new RuntimeException("No suitable charging station found");
+        }
+        applyPlan(plans.get(0));
+        return plans;
+    }
+
+    public void applyPlan(RoutePlan plan) {
+        GeoPosition start = getGeoPosition(startLocation);
+        GeoPosition end = getGeoPosition(endLocation);
+
         // Clear existing charging stops
-        chargingStops.clear();
+        stops.clear();
         waypoints.clear();
-        
-        // Add start point
+
+        // Start, each charging stop, destination
         waypoints.add(start);
-        
-        // Find optimal charging stops
-        while (remainingRange < distance) {
-            ChargingStation nextStop = findOptimalChargingStop(
-                currentLat, currentLon,
-                end.getLatitude(), end.getLongitude(),
-                remainingRange,
-                availableStations,
-                optimizeForTime
-            );
-            
-            if (nextStop != null) {
-                chargingStops.add(nextStop);
-                waypoints.add(new GeoPosition(nextStop.getLatitude(), nextStop.getLongitude()));
-                remainingRange = vehicle.getRange();
-                currentLat = nextStop.getLatitude();
-                currentLon = nextStop.getLongitude();
-            } else {
-                throw new RuntimeException("No suitable charging station found");
-            }
+        for (RoutePlan.Stop stop : plan.getStops()) {
+            ChargingStation station = stop.getStation();
+            stops.add(ChargingStop.of(station, stop.getEnergyKWh(), stop.getChargingHours()));
+            waypoints.add(new GeoPosition(station.getLatitude(), station.getLongitude()));
         }
-        
-        // Add end point
         waypoints.add(end);
-        
+
+        // Distance actually driven, via the charging stops
+        this.distance = plan.getDrivingKm();
+
         // Calculate route metrics
         calculateRouteMetrics();
     }
 
-    private ChargingStation findOptimalChargingStop(
-            double currentLat, double currentLon,
-            double destLat, double destLon,
-            double remainingRange,
-            List<ChargingStation> stations,
-            boolean optimizeForTime) {
-        
-        ChargingStation optimalStation = null;
-        double optimalScore = Double.MAX_VALUE;
-        
-        for (ChargingStation station : stations) {
-            if (!station.isAvailable()) continue;
-            
-            double distanceToStation = calculateDistance(
-                currentLat, currentLon,
-                station.getLatitude(), station.getLongitude()
-            );
-            
-            if (distanceToStation > remainingRange) continue;
-            
-            double distanceToDestination = calculateDistance(
-                station.getLatitude(), station.getLongitude(),
-                destLat, destLon
-            );
-            
-            // Calculate score based on optimization preference
-            double score;
-            if (optimizeForTime) {
-                double chargingTime = calculateChargingTime(station);
-                score = distanceToStation + (chargingTime * 50.0/3600.0); // Convert hours to km equivalent
-            } else {
-                score = distanceToStation + (station.getPricePerKWh() * 10.0); // Weight price in score
-            }
-            
-            if (score < optimalScore) {
-                optimalScore = score;
-                optimalStation = station;
-            }
+    /**
+     * Keep the stops before {@code stopIndex} and continue with the plan, which
+     * must start from where the route leaves the last kept stop (or from the
+     * start) and end at the destination.
+     */
+    public void replanFrom(int stopIndex, RoutePlan plan) {
+        GeoPosition end = waypoints.get(waypoints.size() - 1);
+        stops.subList(stopIndex, stops.size()).clear();
+        waypoints.subList(stopIndex + 1, waypoints.size()).clear();
+
+        // Distance up to the last kept stop, then the new legs
+        double keptKm = 0.0;
+        for (int i = 1; i < waypoints.size(); i++) {
+            GeoPosition from = waypoints.get(i - 1);
+            GeoPosition to = waypoints.get(i);
+            keptKm += GeoMath.distanceKm(from.getLatitude(), from.getLongitude(), to.getLatitude(), to.getLongitude());
         }
-        
-        return optimalStation;
+        for (RoutePlan.Stop stop : plan.getStops()) {
+            ChargingStation station = stop.getStation();
+            stops.add(ChargingStop.of(station, stop.getEnergyKWh(), stop.getChargingHours()));
+            waypoints.add(new GeoPosition(station.getLatitude(), station.getLongitude()));
+        }
+        waypoints.add(end);
+        this.distance = keptKm + plan.getDrivingKm();
+
+        calculateRouteMetrics();
     }
 
     private void calculateRouteMetrics() {
@@ -156,15 +210,31 @@ public class Route implements Serializable {
     }
 
     private double calculateTotalEnergyRequirement() {
+        // Add weather factor (simplified)
+        double weatherFactor = (weather != null) ? weather.getEnergyImpactFactor() : 1.0;
+
+        // With an elevation grid, integrate the climbs and descents along the waypoints
+        EnergyModel model = EnergyModel.getDefault();
+        if (model != null && waypoints.size() > 1) {
+            double[] lat = new double[waypoints.size()];
+            double[] lon = new double[waypoints.size()];
+            for (int i = 0; i < lat.length; i++) {
+                lat[i] = waypoints.get(i).getLatitude();
+                lon[i] = waypoints.get(i).getLongitude();
+            }
+            EnergyModel.Energy energy = model.integrate(lat, lon, lat.length,
+                vehicleProfile.getEfficiency() / 100.0 * weatherFactor);
+            metrics.put("climbingEnergy", energy.getClimbingKWh());
+            metrics.put("descentEnergySaved", energy.getSavedKWh());
+            return energy.getTotalKWh();
+        }
+
         // Base energy requirement
-        double baseEnergy = distance * (vehicle.getEfficiency() / 100.0);
+        double baseEnergy = distance * (vehicleProfile.getEfficiency() / 100.0);
         
         // Add elevation factor (simplified)
         double elevationFactor = 1.0 + (elevation / 1000.0) * 0.1;
         
-        // Add weather factor (simplified)
-        double weatherFactor = (weather != null) ? weather.getEnergyImpactFactor() : 1.0;
-        
         return baseEnergy * elevationFactor * weatherFactor;
     }
 
@@ -174,20 +244,16 @@ public class Route implements Serializable {
         // Driving time (assume average speed of 60 km/h)
         totalTime += distance / 60.0;
         
-        // Charging time
-        for (ChargingStation station : chargingStops) {
-            totalTime += calculateChargingTime(station);
+        // Charging time, as planned along the vehicle's charging curve
+        for (ChargingStop stop : stops) {
+            totalTime += stop.getChargingTime();
         }
         
         return totalTime;
     }
 
-    private double calculateChargingTime(ChargingStation station) {
-        // Calculate required charge
-        double requiredCharge = vehicle.getBatteryCapacity() * 0.8; // Charge to 80%
-        
-        // Calculate charging time in hours
-        return requiredCharge / station.getChargingRate();
+    private double chargeAmount() {
+        return vehicleProfile.getBatteryCapacity() * 0.8; // Charge to 80%
     }
 
     private void calculateCosts() {
@@ -195,9 +261,8 @@ public class Route implements Serializable {
         double chargingCost = 0.0;
         
         // Calculate energy costs
-        for (ChargingStation station : chargingStops) {
-            double chargeAmount = vehicle.getBatteryCapacity() * 0.8; // 80% charge
-            chargingCost += station.calculateChargingCost(chargeAmount);
+        for (ChargingStop stop : stops) {
+            chargingCost += stop.getCost();
         }
         
         // Store cost breakdown
@@ -206,29 +271,12 @@ public class Route implements Serializable {
         costBreakdown.put("total", energyCost + chargingCost);
     }
 
-    private double calculateDistance(double lat1, double lon1, double lat2, double lon2) {
-        // Haversine formula for calculating distance between two points
-        final int R = 6371; // Earth's radius in kilometers
-
-        double latDistance = Math.toRadians(lat2 - lat1);
-        double lonDistance = Math.toRadians(lon2 - lon1);
-        double a = Math.sin(latDistance / 2) * Math.sin(latDistance / 2)
-                + Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2))
-                * Math.sin(lonDistance / 2) * Math.sin(lonDistance / 2);
-        double c = 2 * Math.atan2(Math.sqrt(a), Math.sqrt(1 - a));
-        
-        return R * c;
-    }
-
-    // Simplified location conversion (in real app, would use geocoding service)
     private double getLocationLatitude(String location) {
-        // Kathmandu's latitude as default
-        return 27.7172;
+        return getGeoPosition(location).getLatitude();
     }
 
     private double getLocationLongitude(String location) {
-        // Kathmandu's longitude as default
-        return 85.3240;
+        return getGeoPosition(location).getLongitude();
     }
 
     // Getters
@@ -236,12 +284,13 @@ public class Route implements Serializable {
     public String getStartLocation() { return startLocation; }
     public String getEndLocation() { return endLocation; }
     public double getDistance() { return distance; }
-    public List<ChargingStation> getChargingStops() { 
-        return new ArrayList<>(chargingStops); 
+    public List<ChargingStop> getChargingStops() { 
+        return new ArrayList<>(stops); 
     }
     public double getEstimatedEnergy() { return estimatedEnergy; }
     public double getEstimatedTime() { return estimatedTime; }
-    public Vehicle getVehicle() { return vehicle; }
+    public VehicleProfile getVehicleProfile() { return vehicleProfile; }
+    public String getVehicleId() { return vehicleProfile != null ? vehicleProfile.getVehicleId() : null; }
     public Map<String, Double> getMetrics() { return new HashMap<>(metrics); }
     public List<GeoPosition> getWaypoints() { return new ArrayList<>(waypoints); }
     public Map<String, Double> getCostBreakdown() { return new HashMap<>(costBreakdown); }
@@ -249,6 +298,145 @@ public class Route implements Serializable {
     public LocalDateTime getStartTime() { return startTime; }
     public LocalDateTime getEndTime() { return endTime; }
 
+    // Binary codec (see BinaryCodecs)
+    public void writeTo(DataOutput out) throws IOException {
+        BinaryIO.writeString(out, routeId);
+        BinaryIO.writeString(out, startLocation);
+        BinaryIO.writeString(out, endLocation);
+        out.writeDouble(distance);
+        out.writeDouble(estimatedEnergy);
+        out.writeDouble(estimatedTime);
+        out.writeBoolean(vehicleProfile != null);
+        if (vehicleProfile != null) {
+            vehicleProfile.writeTo(out);
+        }
+        out.writeInt(stops.size());
+        for (ChargingStop stop : stops) {
+            stop.writeTo(out);
+        }
+        out.writeInt(harshBrakingEvents);
+        out.writeDouble(duration);
+        out.writeDouble(averageSpeed);
+        out.writeInt(drivingEvents.size());
+        for (DrivingEvent event : drivingEvents) {
+            out.writeByte(event.type.ordinal());
+            out.writeDouble(event.timestamp);
+            BinaryIO.writeDoubleMap(out, event.parameters);
+        }
+        BinaryIO.writeDateTime(out, startTime);
+        BinaryIO.writeDateTime(out, endTime);
+        out.writeByte(status != null ? status.ordinal() : -1);
+        BinaryIO.writeDoubleMap(out, metrics);
+        out.writeInt(waypoints.size());
+        for (GeoPosition position : waypoints) {
+            out.writeDouble(position.getLatitude());
+            out.writeDouble(position.getLongitude());
+        }
+        out.writeBoolean(weather != null);
+        if (weather != null) {
+            BinaryIO.writeString(out, weather.condition);
+            out.writeDouble(weather.temperature);
+            out.writeDouble(weather.windSpeed);
+        }
+        out.writeDouble(elevation);
+        BinaryIO.writeDoubleMap(out, costBreakdown);
+    }
+
+    public static Route readFrom(DataInput in, int version) throws IOException {
+        String routeId = BinaryIO.readString(in);
+        String startLocation = BinaryIO.readString(in);
+        String endLocation = BinaryIO.readString(in);
+        double distance = in.readDouble();
+        double estimatedEnergy = in.readDouble();
+        double estimatedTime = in.readDouble();
+        VehicleProfile profile = null;
+        if (in.readBoolean()) {
+            // Before version 3 the whole vehicle was embedded
+            profile = version >= 3 ? VehicleProfile.readFrom(in, version)
+                : VehicleProfile.of(Vehicle.readFrom(in, version));
+        }
+
+        Route route = new Route(routeId, startLocation, endLocation, profile);
+        route.distance = distance;
+        route.estimatedEnergy = estimatedEnergy;
+        route.estimatedTime = estimatedTime;
+        int stops = in.readInt();
+        for (int i = 0; i < stops; i++) {
+            route.stops.add(version >= 3 ? ChargingStop.readFrom(in, version)
+                : route.legacyStop(ChargingStation.readFrom(in, version)));
+        }
+        route.harshBrakingEvents = in.readInt();
+        route.duration = in.readDouble();
+        route.averageSpeed = in.readDouble();
+        int events = in.readInt();
+        for (int i = 0; i < events; i++) {
+            DrivingEvent event = new DrivingEvent(DrivingEventType.values()[in.readByte()], in.readDouble());
+            event.parameters = BinaryIO.readDoubleMap(in);
+            route.drivingEvents.add(event);
+        }
+        route.startTime = BinaryIO.readDateTime(in);
+        route.endTime = BinaryIO.readDateTime(in);
+        int status = in.readByte();
+        route.status = status >= 0 ? RouteStatus.values()[status] : null;
+        route.metrics = BinaryIO.readDoubleMap(in);
+        int waypointCount = in.readInt();
+        for (int i = 0; i < waypointCount; i++) {
+            route.waypoints.add(new GeoPosition(in.readDouble(), in.readDouble()));
+        }
+        if (in.readBoolean()) {
+            route.weather = new Weather(BinaryIO.readString(in), in.readDouble(), in.readDouble());
+        }
+        route.elevation = in.readDouble();
+        route.costBreakdown = BinaryIO.readDoubleMap(in);
+        return route;
+    }
+
+    // Older routes embedded full station and vehicle copies; keep only the snapshots
+    private ChargingStop legacyStop(ChargingStation station) {
+        return ChargingStop.of(station, vehicleProfile != null ? chargeAmount() : 0.0);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        ObjectInputStream.GetField fields = in.readFields();
+        routeId = (String) fields.get("routeId", null);
+        startLocation = (String) fields.get("startLocation", null);
+        endLocation = (String) fields.get("endLocation", null);
+        distance = fields.get("distance", 0.0);
+        estimatedEnergy = fields.get("estimatedEnergy", 0.0);
+        estimatedTime = fields.get("estimatedTime", 0.0);
+        harshBrakingEvents = fields.get("harshBrakingEvents", 0);
+        duration = fields.get("duration", 0.0);
+        averageSpeed = fields.get("averageSpeed", 0.0);
+        drivingEvents = (List<DrivingEvent>) fields.get("drivingEvents", new ArrayList<>());
+        startTime = (LocalDateTime) fields.get("startTime", null);
+        endTime = (LocalDateTime) fields.get("endTime", null);
+        status = (RouteStatus) fields.get("status", null);
+        metrics = (Map<String, Double>) fields.get("metrics", new HashMap<>());
+        waypoints = (List<GeoPosition>) fields.get("waypoints", new ArrayList<>());
+        weather = (Weather) fields.get("weather", null);
+        elevation = fields.get("elevation", 0.0);
+        costBreakdown = (Map<String, Double>) fields.get("costBreakdown", new HashMap<>());
+
+        if (fields.defaulted("vehicleProfile")) {
+            Vehicle vehicle = (Vehicle) fields.get("vehicle", null);
+            vehicleProfile = vehicle != null ? VehicleProfile.of(vehicle) : null;
+        } else {
+            vehicleProfile = (VehicleProfile) fields.get("vehicleProfile", null);
+        }
+        if (fields.defaulted("stops")) {
+            stops = new ArrayList<>();
+            List<ChargingStation> legacyStops = (List<ChargingStation>) fields.get("chargingStops", null);
+            if (legacyStops != null) {
+                for (ChargingStation station : legacyStops) {
+                    stops.add(legacyStop(station));
+                }
+            }
+        } else {
+            stops = (List<ChargingStop>) fields.get("stops", null);
+        }
+    }
+
     public void addDrivingEvent(DrivingEvent event) {
         drivingEvents.add(event);
         if (event.getType() == DrivingEventType.HARSH_BRAKING) {
@@ -383,9 +571,36 @@ public class Route implements Serializable {
         }
     }
 
+    // A place name from the offline gazetteer, or "latitude,longitude"
     private GeoPosition getGeoPosition(String location) {
-        // In a real application, this would use a geocoding service
-        // For now, return default coordinates for Nepal
-        return new GeoPosition(27.7172, 85.3240);
+        Gazetteer.Place place = Gazetteer.getDefault().lookup(location);
+        if (place != null) {
+            return new GeoPosition(place.getLatitude(), place.getLongitude());
+        }
+        GeoPosition position = parseCoordinates(location);
+        if (position != null) {
+            return position;
+        }
+        throw new IllegalArgumentException("Unknown location: " + location);
+    }
+
+    private static GeoPosition parseCoordinates(String location) {
+        if (location == null) {
+            return null;
+        }
+        String[] parts = location.split(",");
+        if (parts.length != 2) {
+            return null;
+        }
+        try {
+            double latitude = Double.parseDouble(parts[0].trim());
+            double longitude = Double.parseDouble(parts[1].trim());
+            if (Math.abs(latitude) > 90 || Math.abs(longitude) > 180) {
+                return null;
+            }
+            return new GeoPosition(latitude, longitude);
+        } catch (NumberFormatException e) {
+            return null;
+        }
     }
 } 
\ No newline at end of file
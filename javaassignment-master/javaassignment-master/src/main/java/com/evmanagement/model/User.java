@@ -5,10 +5,13 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.HashMap;
-import java.io.IOException;
-import java.io.ObjectOutputStream;
-import java.io.FileOutputStream;
 import java.time.LocalDate;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import com.evmanagement.dao.BinaryIO;
+import com.evmanagement.dao.TripHistoryStore;
+import com.evmanagement.dao.UserPersistenceService;
 
 public class User implements Serializable {
     private static final long serialVersionUID = -1737014625941125425L;
@@ -19,7 +22,10 @@ public class User implements Serializable {
     private String email;
     private String phoneNumber;
     private List<Vehicle> vehicles;
-    private List<Route> tripHistory;
+    private List<Route> tripHistory; // legacy in-file history, moved into segments on load
+    private int tripCount;
+    private transient TripHistoryStore tripStore;
+    private transient List<Route> loadedTrips; // paged in on first use
     private Map<String, List<Route>> favoriteRoutes;
     private double totalCarbonSaved; // in kg CO2
     private double totalEnergySaved; // in kWh
@@ -46,18 +52,18 @@ public class User implements Serializable {
     }
 
     // Enhanced vehicle management
-    public void addVehicle(Vehicle vehicle) {
+    public synchronized void addVehicle(Vehicle vehicle) {
         vehicle.setOwnerUserId(this.userId);
         vehicles.add(vehicle);
         saveUserData();
     }
 
-    public void removeVehicle(Vehicle vehicle) {
+    public synchronized void removeVehicle(Vehicle vehicle) {
         vehicles.remove(vehicle);
         saveUserData();
     }
 
-    public void updateVehicle(Vehicle oldVehicle, Vehicle newVehicle) {
+    public synchronized void updateVehicle(Vehicle oldVehicle, Vehicle newVehicle) {
         int index = vehicles.indexOf(oldVehicle);
         if (index != -1) {
             newVehicle.setOwnerUserId(this.userId);
@@ -66,7 +72,7 @@ public class User implements Serializable {
         }
     }
     
-    public void updateVehicle(Vehicle updatedVehicle) {
+    public synchronized void updateVehicle(Vehicle updatedVehicle) {
         // Find the vehicle with the same ID and update it
         for (int i = 0; i < vehicles.size(); i++) {
             if (vehicles.get(i).getVehicleId().equals(updatedVehicle.getVehicleId())) {
@@ -79,8 +85,17 @@ public class User implements Serializable {
     }
 
     // Enhanced trip management
-    public void addTrip(Route trip) {
-        tripHistory.add(trip);
+    public synchronized void addTrip(Route trip) {
+        try {
+            getTripHistoryStore().append(trip);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
+        tripCount++;
+        if (loadedTrips != null) {
+            loadedTrips.add(trip);
+        }
         analytics.addTrip(trip);
         updateEnvironmentalImpact(
             trip.getDistance() * 0.2, // Approximate CO2 savings in kg
@@ -89,18 +104,18 @@ public class User implements Serializable {
         saveUserData();
     }
 
-    public void addFavoriteRoute(String name, Route route) {
+    public synchronized void addFavoriteRoute(String name, Route route) {
         favoriteRoutes.computeIfAbsent(name, k -> new ArrayList<>()).add(route);
         saveUserData();
     }
 
-    public void removeFavoriteRoute(String name) {
+    public synchronized void removeFavoriteRoute(String name) {
         favoriteRoutes.remove(name);
         saveUserData();
     }
 
     // User preferences management
-    public void setPreference(String key, String value) {
+    public synchronized void setPreference(String key, String value) {
         preferences.put(key, value);
         saveUserData();
     }
@@ -109,27 +124,103 @@ public class User implements Serializable {
         return preferences.getOrDefault(key, "");
     }
 
-    public void updateLoginDate() {
+    public synchronized void updateLoginDate() {
         this.lastLoginDate = LocalDate.now();
         saveUserData();
     }
 
     // Profile update methods
-    public void updateProfile(String fullName, String email, String phoneNumber) {
+    public synchronized void updateProfile(String fullName, String email, String phoneNumber) {
         this.fullName = fullName;
         this.email = email;
         this.phoneNumber = phoneNumber;
         saveUserData();
     }
 
-    // Data persistence
+    // Data persistence (coalesced and written in the background, encoded while holding this user's lock)
     private void saveUserData() {
-        try (ObjectOutputStream oos = new ObjectOutputStream(
-                new FileOutputStream(username + ".dat"))) {
-            oos.writeObject(this);
-        } catch (IOException e) {
-            e.printStackTrace();
+        UserPersistenceService.getInstance().markDirty(this);
+    }
+
+    // Trip history storage
+    public TripHistoryStore getTripHistoryStore() {
+        if (tripStore == null) {
+            tripStore = new TripHistoryStore(username);
+        }
+        return tripStore;
+    }
+
+    // Moves trips from files written before segmented storage into segments;
+    // returns true if the user header needs rewriting
+    public synchronized boolean migrateLegacyTrips() throws IOException {
+        if (tripHistory == null || tripHistory.isEmpty()) {
+            return false;
+        }
+        tripCount = getTripHistoryStore().migrate(tripHistory);
+        tripHistory = new ArrayList<>();
+        return true;
+    }
+
+    // Binary codec (see BinaryCodecs)
+    public synchronized void writeTo(DataOutput out) throws IOException {
+        BinaryIO.writeString(out, userId);
+        BinaryIO.writeString(out, username);
+        BinaryIO.writeString(out, fullName);
+        BinaryIO.writeString(out, email);
+        BinaryIO.writeString(out, phoneNumber);
+        out.writeInt(vehicles.size());
+        for (Vehicle vehicle : vehicles) {
+            vehicle.writeTo(out);
+        }
+        out.writeInt(tripCount);
+        out.writeInt(favoriteRoutes.size());
+        for (Map.Entry<String, List<Route>> favorite : favoriteRoutes.entrySet()) {
+            BinaryIO.writeString(out, favorite.getKey());
+            out.writeInt(favorite.getValue().size());
+            for (Route route : favorite.getValue()) {
+                route.writeTo(out);
+            }
         }
+        out.writeDouble(totalCarbonSaved);
+        out.writeDouble(totalEnergySaved);
+        BinaryIO.writeStringMap(out, preferences);
+        BinaryIO.writeDate(out, registrationDate);
+        BinaryIO.writeDate(out, lastLoginDate);
+        analytics.writeTo(out);
+    }
+
+    public static User readFrom(DataInput in, int version) throws IOException {
+        User user = new User(BinaryIO.readString(in), BinaryIO.readString(in),
+            BinaryIO.readString(in), BinaryIO.readString(in), BinaryIO.readString(in));
+        int vehicleCount = in.readInt();
+        for (int i = 0; i < vehicleCount; i++) {
+            user.vehicles.add(Vehicle.readFrom(in, version));
+        }
+        if (version >= 2) {
+            user.tripCount = in.readInt();
+        } else {
+            int tripCount = in.readInt();
+            for (int i = 0; i < tripCount; i++) {
+                user.tripHistory.add(Route.readFrom(in, version));
+            }
+        }
+        int favoriteCount = in.readInt();
+        for (int i = 0; i < favoriteCount; i++) {
+            String name = BinaryIO.readString(in);
+            int routeCount = in.readInt();
+            List<Route> routes = new ArrayList<>(routeCount);
+            for (int j = 0; j < routeCount; j++) {
+                routes.add(Route.readFrom(in, version));
+            }
+            user.favoriteRoutes.put(name, routes);
+        }
+        user.totalCarbonSaved = in.readDouble();
+        user.totalEnergySaved = in.readDouble();
+        user.preferences = BinaryIO.readStringMap(in);
+        user.registrationDate = BinaryIO.readDate(in);
+        user.lastLoginDate = BinaryIO.readDate(in);
+        user.analytics = Analytics.readFrom(in, version, user);
+        return user;
     }
 
     // Getters and setters
@@ -153,7 +244,28 @@ public class User implements Serializable {
     }
 
     public List<Vehicle> getVehicles() { return new ArrayList<>(vehicles); }
-    public List<Route> getTripHistory() { return new ArrayList<>(tripHistory); }
+    public List<Route> getTripHistory() {
+        if (loadedTrips == null) {
+            try {
+                loadedTrips = getTripHistoryStore().loadAll();
+            } catch (IOException e) {
+                e.printStackTrace();
+                return new ArrayList<>();
+            }
+        }
+        return new ArrayList<>(loadedTrips);
+    }
+
+    public List<Route> getRecentTrips(int limit) {
+        try {
+            return getTripHistoryStore().loadRecent(limit);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return new ArrayList<>();
+        }
+    }
+
+    public int getTripCount() { return tripCount; }
     public Map<String, List<Route>> getFavoriteRoutes() { return new HashMap<>(favoriteRoutes); }
     public double getTotalCarbonSaved() { return totalCarbonSaved; }
     public double getTotalEnergySaved() { return totalEnergySaved; }
@@ -162,7 +274,7 @@ public class User implements Serializable {
     public LocalDate getLastLoginDate() { return lastLoginDate; }
     public Map<String, String> getPreferences() { return new HashMap<>(preferences); }
 
-    public void updateEnvironmentalImpact(double carbonSaved, double energySaved) {
+    public synchronized void updateEnvironmentalImpact(double carbonSaved, double energySaved) {
         this.totalCarbonSaved += carbonSaved;
         this.totalEnergySaved += energySaved;
         saveUserData();
@@ -1,9 +1,15 @@
 package com.evmanagement.model;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.io.Serializable;
 import java.time.LocalDate;
+import com.evmanagement.dao.BinaryIO;
 
 public class Vehicle implements Serializable {
+    private static final long serialVersionUID = 6071074248377290105L;
+    
     private String vehicleId;
     private String model;
     private String manufacturer;
@@ -86,6 +92,41 @@ public class Vehicle implements Serializable {
     public String getOwnerUserId() { return ownerUserId; }
     public void setOwnerUserId(String ownerUserId) { this.ownerUserId = ownerUserId; }
     
+    // Binary codec (see BinaryCodecs)
+    public void writeTo(DataOutput out) throws IOException {
+        BinaryIO.writeString(out, vehicleId);
+        BinaryIO.writeString(out, model);
+        BinaryIO.writeString(out, manufacturer);
+        out.writeInt(year);
+        BinaryIO.writeString(out, licensePlate);
+        BinaryIO.writeString(out, color);
+        out.writeDouble(batteryCapacity);
+        out.writeDouble(currentCharge);
+        out.writeDouble(efficiency);
+        BinaryIO.writeDate(out, lastServiceDate);
+        out.writeInt(totalMileage);
+        BinaryIO.writeString(out, ownerUserId);
+    }
+
+    public static Vehicle readFrom(DataInput in, int version) throws IOException {
+        String vehicleId = BinaryIO.readString(in);
+        String model = BinaryIO.readString(in);
+        String manufacturer = BinaryIO.readString(in);
+        int year = in.readInt();
+        String licensePlate = BinaryIO.readString(in);
+        String color = BinaryIO.readString(in);
+        double batteryCapacity = in.readDouble();
+        double currentCharge = in.readDouble();
+        double efficiency = in.readDouble();
+        Vehicle vehicle = new Vehicle(vehicleId, model, manufacturer, year, licensePlate, color,
+            batteryCapacity, efficiency);
+        vehicle.setCurrentCharge(currentCharge);
+        vehicle.lastServiceDate = BinaryIO.readDate(in);
+        vehicle.totalMileage = in.readInt();
+        vehicle.ownerUserId = BinaryIO.readString(in);
+        return vehicle;
+    }
+
     @Override
     public String toString() {
         return String.format("%s %s (%d) - %s", manufacturer, model, year, licensePlate);
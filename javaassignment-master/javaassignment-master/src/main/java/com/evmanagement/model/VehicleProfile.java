@@ -0,0 +1,64 @@
+package com.evmanagement.model;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.Serializable;
+import com.evmanagement.dao.BinaryIO;
+
+/**
+ * The vehicle figures a route is planned with, copied when the route is
+ * created. The vehicle itself is referenced by ID only.
+ */
+public final class VehicleProfile implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final String vehicleId;
+    private final String name;
+    private final double batteryCapacity; // in kWh
+    private final double efficiency; // kWh per 100km
+    private final double range; // in kilometers
+
+    public VehicleProfile(String vehicleId, String name, double batteryCapacity, double efficiency, double range) {
+        this.vehicleId = vehicleId;
+        this.name = name;
+        this.batteryCapacity = batteryCapacity;
+        this.efficiency = efficiency;
+        this.range = range;
+    }
+
+    public static VehicleProfile of(Vehicle vehicle) {
+        return new VehicleProfile(vehicle.getVehicleId(),
+            vehicle.getManufacturer() + " " + vehicle.getModel(),
+            vehicle.getBatteryCapacity(), vehicle.getEfficiency(), vehicle.getRange());
+    }
+
+    // Range the battery supports at the rated efficiency, if that is the lower figure
+    public double getUsableRange() {
+        if (batteryCapacity > 0 && efficiency > 0) {
+            return Math.min(range, batteryCapacity / efficiency * 100.0);
+        }
+        return range;
+    }
+
+    // Getters
+    public String getVehicleId() { return vehicleId; }
+    public String getName() { return name; }
+    public double getBatteryCapacity() { return batteryCapacity; }
+    public double getEfficiency() { return efficiency; }
+    public double getRange() { return range; }
+
+    // Binary codec (see BinaryCodecs)
+    public void writeTo(DataOutput out) throws IOException {
+        BinaryIO.writeString(out, vehicleId);
+        BinaryIO.writeString(out, name);
+        out.writeDouble(batteryCapacity);
+        out.writeDouble(efficiency);
+        out.writeDouble(range);
+    }
+
+    public static VehicleProfile readFrom(DataInput in, int version) throws IOException {
+        return new VehicleProfile(BinaryIO.readString(in), BinaryIO.readString(in),
+            in.readDouble(), in.readDouble(), in.readDouble());
+    }
+}
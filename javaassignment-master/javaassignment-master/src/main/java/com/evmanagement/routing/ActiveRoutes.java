@@ -0,0 +1,273 @@
+package com.evmanagement.routing;
+
+import com.evmanagement.dao.StationChangeListener;
+import com.evmanagement.dao.StationJournal;
+import com.evmanagement.dao.StationRepository;
+import com.evmanagement.model.ChargingStop;
+import com.evmanagement.model.Route;
+import com.evmanagement.model.VehicleProfile;
+import com.evmanagement.util.GeoMath;
+import org.jxmapviewer.viewer.GeoPosition;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Routes that are planned or in progress, indexed by the stations they stop
+ * at. When a station's availability or price changes, only the routes that
+ * stop there are re-planned, and only from that stop on: the stops before it
+ * are kept, and the search starts where the route leaves the previous stop,
+ * with the charge it has there, at the time it would leave it.
+ *
+ * A change only queues the routes it affects; they are re-planned on a
+ * background thread, which also calls the listeners, so the thread that
+ * changed the station is not held up by the searches.
+ *
+ * Routes that do not stop at the station are left alone, even if the change
+ * would now give them a better plan.
+ */
+public class ActiveRoutes implements StationChangeListener {
+    // Notified after a route was re-planned; plan is null if the destination can no longer be reached
+    public interface ReplanListener {
+        void replanned(Route route, int fromStop, RoutePlan plan);
+    }
+
+    private static ActiveRoutes defaultRoutes;
+
+    private final ReachabilityGraphs graphs;
+    private final Map<String, Tracked> routes = new HashMap<>();
+    private final Map<String, Set<String>> routesByStation = new HashMap<>();
+    private final List<ReplanListener> listeners = new CopyOnWriteArrayList<>();
+    private final Map<String, Set<String>> pending = new LinkedHashMap<>(); // route ID to changed stations
+    private final ExecutorService replanner = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "route-replanner");
+        t.setDaemon(true);
+        return t;
+    });
+    private boolean draining;
+    private long replanned;
+    private long unreachable;
+
+    public ActiveRoutes(ReachabilityGraphs graphs) {
+        this.graphs = graphs;
+    }
+
+    public static synchronized ActiveRoutes getDefault() throws IOException {
+        if (defaultRoutes == null) {
+            defaultRoutes = new ActiveRoutes(ReachabilityGraphs.getDefault());
+            StationRepository.getDefault().addChangeListener(defaultRoutes);
+        }
+        return defaultRoutes;
+    }
+
+    public synchronized void track(Route route, RoutePlanner.Objective objective) {
+        untrack(route.getRouteId());
+        Tracked tracked = new Tracked(route, objective);
+        routes.put(route.getRouteId(), tracked);
+        index(tracked);
+    }
+
+    public synchronized void untrack(String routeId) {
+        Tracked tracked = routes.remove(routeId);
+        if (tracked != null) {
+            unindex(tracked);
+        }
+    }
+
+    // IDs of the tracked routes that stop at a station
+    public synchronized Set<String> routesUsing(String stationId) {
+        Set<String> routeIds = routesByStation.get(stationId);
+        return routeIds != null ? new HashSet<>(routeIds) : new HashSet<>();
+    }
+
+    public void addReplanListener(ReplanListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeReplanListener(ReplanListener listener) {
+        listeners.remove(listener);
+    }
+
+    @Override
+    public synchronized void stationChanged(String stationId, StationJournal.ChangeType type) {
+        if (stationId == null
+            || (type != StationJournal.ChangeType.AVAILABILITY && type != StationJournal.ChangeType.PRICING)) {
+            return;
+        }
+        Set<String> affected = routesByStation.get(stationId);
+        if (affected == null) {
+            return;
+        }
+        for (String routeId : affected) {
+            pending.computeIfAbsent(routeId, id -> new HashSet<>()).add(stationId);
+        }
+        if (!draining) {
+            draining = true;
+            replanner.execute(this::replanPending);
+        }
+    }
+
+    private void replanPending() {
+        while (true) {
+            Map<String, Set<String>> batch;
+            synchronized (this) {
+                if (pending.isEmpty()) {
+                    draining = false;
+                    return;
+                }
+                batch = new LinkedHashMap<>(pending);
+                pending.clear();
+            }
+            for (Map.Entry<String, Set<String>> route : batch.entrySet()) {
+                try {
+                    replan(route.getKey(), route.getValue());
+                } catch (RuntimeException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+    // Re-plan a route from the first of its stops at a changed station
+    private void replan(String routeId, Set<String> stationIds) {
+        Tracked tracked;
+        Route route;
+        int fromStop;
+        GeoPosition from;
+        GeoPosition end;
+        double startSoc;
+        LocalDateTime departure;
+        synchronized (this) {
+            tracked = routes.get(routeId);
+            if (tracked == null) {
+                return;
+            }
+            route = tracked.route;
+            if (route.getStatus() == Route.RouteStatus.COMPLETED || route.getStatus() == Route.RouteStatus.CANCELLED) {
+                untrack(routeId);
+                return;
+            }
+            List<ChargingStop> stops = route.getChargingStops();
+            fromStop = 0;
+            while (fromStop < stops.size() && !stationIds.contains(stops.get(fromStop).getStationId())) fromStop++;
+            if (fromStop == stops.size()) {
+                return;
+            }
+            List<GeoPosition> waypoints = route.getWaypoints();
+            from = waypoints.get(fromStop);
+            end = waypoints.get(waypoints.size() - 1);
+            startSoc = chargeBefore(route, fromStop);
+            departure = departureBefore(route, fromStop);
+        }
+
+        ReachabilityGraph graph;
+        try {
+            graph = graphs.forVehicle(route.getVehicleProfile());
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
+        // The graph may hear about the change after this does
+        for (String stationId : stationIds) {
+            int station = graph.indexOf(stationId);
+            if (station >= 0) {
+                graph.setAvailable(stationId, graph.getStation(station).isAvailable());
+            }
+        }
+
+        RoutePlan plan = new RoutePlanner(graph).plan(from.getLatitude(), from.getLongitude(),
+            end.getLatitude(), end.getLongitude(), route.getVehicleProfile(), tracked.objective,
+            startSoc, departure);
+        synchronized (this) {
+            if (routes.get(routeId) != tracked) {
+                // Untracked, or tracked afresh, while this was planning
+                return;
+            }
+            if (plan != null) {
+                unindex(tracked);
+                route.replanFrom(fromStop, plan);
+                index(tracked);
+                replanned++;
+            } else {
+                unreachable++;
+            }
+        }
+        for (ReplanListener listener : listeners) {
+            listener.replanned(route, fromStop, plan);
+        }
+    }
+
+    // Fraction of capacity left on leaving the stop before stopIndex, or the start
+    private static double chargeBefore(Route route, int stopIndex) {
+        VehicleProfile vehicle = route.getVehicleProfile();
+        List<GeoPosition> waypoints = route.getWaypoints();
+        List<ChargingStop> stops = route.getChargingStops();
+        double soc = 1.0;
+        for (int i = 0; i < stopIndex; i++) {
+            GeoPosition from = waypoints.get(i);
+            ChargingStop stop = stops.get(i);
+            soc -= GeoMath.distanceKm(from.getLatitude(), from.getLongitude(), stop.getLatitude(), stop.getLongitude())
+                / vehicle.getUsableRange();
+            soc = Math.min(1.0, soc + stop.getEnergyKWh() / vehicle.getBatteryCapacity());
+        }
+        return Math.max(0.0, soc);
+    }
+
+    // When the route leaves the stop before stopIndex, or the start: driving at the
+    // planner's average speed and charging for as long as each kept stop was planned
+    private static LocalDateTime departureBefore(Route route, int stopIndex) {
+        List<GeoPosition> waypoints = route.getWaypoints();
+        List<ChargingStop> stops = route.getChargingStops();
+        double hours = 0.0;
+        for (int i = 0; i < stopIndex; i++) {
+            GeoPosition from = waypoints.get(i);
+            ChargingStop stop = stops.get(i);
+            hours += GeoMath.distanceKm(from.getLatitude(), from.getLongitude(), stop.getLatitude(), stop.getLongitude())
+                / RoutePlanner.AVERAGE_SPEED_KMH;
+            hours += stop.getChargingTime();
+        }
+        return route.getDepartureTime().plusSeconds(Math.round(hours * 3600));
+    }
+
+    private void index(Tracked tracked) {
+        for (ChargingStop stop : tracked.route.getChargingStops()) {
+            routesByStation.computeIfAbsent(stop.getStationId(), id -> new HashSet<>()).add(tracked.route.getRouteId());
+        }
+    }
+
+    private void unindex(Tracked tracked) {
+        for (ChargingStop stop : tracked.route.getChargingStops()) {
+            Set<String> routeIds = routesByStation.get(stop.getStationId());
+            if (routeIds != null && routeIds.remove(tracked.route.getRouteId()) && routeIds.isEmpty()) {
+                routesByStation.remove(stop.getStationId());
+            }
+        }
+    }
+
+    public synchronized int size() {
+        return routes.size();
+    }
+
+    // Getters
+    public synchronized long getReplannedCount() { return replanned; }
+    public synchronized long getUnreachableCount() { return unreachable; }
+
+    private static class Tracked {
+        private final Route route;
+        private final RoutePlanner.Objective objective;
+
+        Tracked(Route route, RoutePlanner.Objective objective) {
+            this.route = route;
+            this.objective = objective;
+        }
+    }
+}
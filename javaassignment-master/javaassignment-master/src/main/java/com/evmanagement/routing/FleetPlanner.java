@@ -0,0 +1,310 @@
+package com.evmanagement.routing;
+
+import com.evmanagement.model.VehicleProfile;
+import com.evmanagement.util.DistanceMatrix;
+import com.evmanagement.util.GeoMath;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * Plans routes for many vehicles at once on a fixed pool of
+ * {@code evm.fleet.plannerThreads} workers (default: one per processor).
+ *
+ * A batch is planned against one snapshot of the graph of each range class it
+ * needs, taken when the batch is submitted, so stations added, closed or
+ * repriced during the batch do not make its plans disagree; the snapshot
+ * holds its own copy of every station attribute planning reads. Each worker
+ * plans on its own copy of that snapshot. The distances from every station
+ * to every destination in the batch are measured up front, one
+ * {@link DistanceMatrix} per range class, rather than once per request by
+ * each worker. Results are streamed in the order they complete; a request
+ * that fails is reported in its result rather than failing the batch.
+ */
+public class FleetPlanner implements Closeable {
+    private final ReachabilityGraphs graphs;
+    private final int threads;
+    private final ExecutorService pool;
+
+    private long planned;
+    private long unreachable;
+    private long failed;
+    private long totalLatencyNanos;
+    private long maxLatencyNanos;
+    private long batchedRequests; // requests of completed batches
+    private long busyNanos;
+
+    public FleetPlanner(ReachabilityGraphs graphs) {
+        this(graphs, Integer.getInteger("evm.fleet.plannerThreads", Runtime.getRuntime().availableProcessors()));
+    }
+
+    public FleetPlanner(ReachabilityGraphs graphs, int threads) {
+        this.graphs = graphs;
+        this.threads = Math.max(1, threads);
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.pool = Executors.newFixedThreadPool(this.threads, r -> {
+            Thread t = new Thread(r, "fleet-planner-" + threadNumber.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Submits every request and returns their results as they complete. The
+     * stream blocks while waiting for the next result and must be consumed on
+     * one thread.
+     */
+    public Stream<Result> plan(List<Request> requests) throws IOException {
+        Map<Integer, ReachabilityGraph> snapshots = new HashMap<>();
+        Map<Integer, List<Request>> byRangeClass = new HashMap<>();
+        for (Request request : requests) {
+            int rangeClassKm = ReachabilityGraphs.rangeClass(request.vehicle);
+            if (!snapshots.containsKey(rangeClassKm)) {
+                snapshots.put(rangeClassKm, graphs.forRange(rangeClassKm).snapshot());
+            }
+            byRangeClass.computeIfAbsent(rangeClassKm, k -> new ArrayList<>()).add(request);
+        }
+        Map<Integer, Destinations> destinations = new HashMap<>();
+        for (Map.Entry<Integer, List<Request>> group : byRangeClass.entrySet()) {
+            destinations.put(group.getKey(), new Destinations(snapshots.get(group.getKey()), group.getValue()));
+        }
+        Map<Thread, Map<Integer, ReachabilityGraph>> workerGraphs = new ConcurrentHashMap<>();
+
+        long submitted = System.nanoTime();
+        AtomicInteger remaining = new AtomicInteger(requests.size());
+        ExecutorCompletionService<Result> completion = new ExecutorCompletionService<>(pool);
+        for (Request request : requests) {
+            completion.submit(() -> {
+                int rangeClassKm = ReachabilityGraphs.rangeClass(request.vehicle);
+                ReachabilityGraph graph = workerGraphs
+                    .computeIfAbsent(Thread.currentThread(), t -> new HashMap<>())
+                    .computeIfAbsent(rangeClassKm, k -> snapshots.get(k).snapshot());
+                Result result = plan(graph, request, destinations.get(rangeClassKm).distancesTo(request), submitted);
+                record(result);
+                if (remaining.decrementAndGet() == 0) {
+                    batchCompleted(requests.size(), System.nanoTime() - submitted);
+                }
+                return result;
+            });
+        }
+        return IntStream.range(0, requests.size()).mapToObj(i -> next(completion));
+    }
+
+    private Result plan(ReachabilityGraph graph, Request request, double[] distanceToEnd, long submitted) {
+        long started = System.nanoTime();
+        try {
+            RoutePlan plan = new RoutePlanner(graph).plan(request.startLat, request.startLon,
+                request.endLat, request.endLon, request.vehicle, request.objective, 1.0, request.departure,
+                distanceToEnd);
+            long finished = System.nanoTime();
+            return new Result(request, plan, null, finished - submitted, finished - started);
+        } catch (RuntimeException e) {
+            long finished = System.nanoTime();
+            return new Result(request, null, e, finished - submitted, finished - started);
+        }
+    }
+
+    private static Result next(ExecutorCompletionService<Result> completion) {
+        try {
+            return completion.take().get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Fleet planning interrupted", e);
+        } catch (ExecutionException e) {
+            // plan(...) reports failures in the result, so only errors get here
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    private synchronized void record(Result result) {
+        if (result.error != null) {
+            failed++;
+        } else if (result.plan == null) {
+            unreachable++;
+        } else {
+            planned++;
+        }
+        totalLatencyNanos += result.latencyNanos;
+        maxLatencyNanos = Math.max(maxLatencyNanos, result.latencyNanos);
+    }
+
+    private synchronized void batchCompleted(int requests, long batchNanos) {
+        batchedRequests += requests;
+        busyNanos += batchNanos;
+    }
+
+    public synchronized Stats getStats() {
+        return new Stats(planned, unreachable, failed, threads, totalLatencyNanos, maxLatencyNanos,
+            batchedRequests, busyNanos);
+    }
+
+    @Override
+    public void close() {
+        pool.shutdownNow();
+    }
+
+    // Distances from each station of one snapshot to the batch's distinct destinations
+    private static class Destinations {
+        private final DistanceMatrix matrix;
+        private final Map<Request, Integer> rows = new IdentityHashMap<>();
+
+        Destinations(ReachabilityGraph graph, List<Request> requests) {
+            Map<List<Double>, Integer> distinct = new HashMap<>();
+            List<Double> lats = new ArrayList<>();
+            List<Double> lons = new ArrayList<>();
+            for (Request request : requests) {
+                rows.put(request, distinct.computeIfAbsent(Arrays.asList(request.endLat, request.endLon), k -> {
+                    lats.add(request.endLat);
+                    lons.add(request.endLon);
+                    return lats.size() - 1;
+                }));
+            }
+            GeoMath.Points ends = new GeoMath.Points(
+                lats.stream().mapToDouble(Double::doubleValue).toArray(),
+                lons.stream().mapToDouble(Double::doubleValue).toArray());
+            matrix = DistanceMatrix.compute(ends, graph.getPoints());
+        }
+
+        double[] distancesTo(Request request) {
+            float[] row = new float[matrix.columns()];
+            matrix.row(rows.get(request), row);
+            double[] distances = new double[row.length];
+            for (int i = 0; i < row.length; i++) {
+                distances[i] = row[i];
+            }
+            return distances;
+        }
+    }
+
+    public static class Request {
+        private final VehicleProfile vehicle;
+        private final double startLat;
+        private final double startLon;
+        private final double endLat;
+        private final double endLon;
+        private final RoutePlanner.Objective objective;
+        private final LocalDateTime departure; // null ignores opening hours and maintenance
+
+        public Request(VehicleProfile vehicle, double startLat, double startLon, double endLat, double endLon,
+                       RoutePlanner.Objective objective) {
+            this(vehicle, startLat, startLon, endLat, endLon, objective, null);
+        }
+
+        public Request(VehicleProfile vehicle, double startLat, double startLon, double endLat, double endLon,
+                       RoutePlanner.Objective objective, LocalDateTime departure) {
+            this.vehicle = vehicle;
+            this.startLat = startLat;
+            this.startLon = startLon;
+            this.endLat = endLat;
+            this.endLon = endLon;
+            this.objective = objective;
+            this.departure = departure;
+        }
+
+        // Getters
+        public VehicleProfile getVehicle() { return vehicle; }
+        public double getStartLat() { return startLat; }
+        public double getStartLon() { return startLon; }
+        public double getEndLat() { return endLat; }
+        public double getEndLon() { return endLon; }
+        public RoutePlanner.Objective getObjective() { return objective; }
+        public LocalDateTime getDeparture() { return departure; }
+    }
+
+    public static class Result {
+        private final Request request;
+        private final RoutePlan plan; // null if unreachable or failed
+        private final RuntimeException error;
+        private final long latencyNanos; // from submission, including time queued
+        private final long planningNanos;
+
+        Result(Request request, RoutePlan plan, RuntimeException error, long latencyNanos, long planningNanos) {
+            this.request = request;
+            this.plan = plan;
+            this.error = error;
+            this.latencyNanos = latencyNanos;
+            this.planningNanos = planningNanos;
+        }
+
+        public boolean isReachable() {
+            return plan != null;
+        }
+
+        public double getLatencyMillis() { return latencyNanos / 1e6; }
+        public double getPlanningMillis() { return planningNanos / 1e6; }
+
+        // Getters
+        public Request getRequest() { return request; }
+        public RoutePlan getPlan() { return plan; }
+        public RuntimeException getError() { return error; }
+    }
+
+    public static class Stats {
+        private final long planned;
+        private final long unreachable;
+        private final long failed;
+        private final int threads;
+        private final long totalLatencyNanos;
+        private final long maxLatencyNanos;
+        private final long batchedRequests;
+        private final long busyNanos;
+
+        Stats(long planned, long unreachable, long failed, int threads, long totalLatencyNanos,
+              long maxLatencyNanos, long batchedRequests, long busyNanos) {
+            this.planned = planned;
+            this.unreachable = unreachable;
+            this.failed = failed;
+            this.threads = threads;
+            this.totalLatencyNanos = totalLatencyNanos;
+            this.maxLatencyNanos = maxLatencyNanos;
+            this.batchedRequests = batchedRequests;
+            this.busyNanos = busyNanos;
+        }
+
+        public long getRequests() {
+            return planned + unreachable + failed;
+        }
+
+        public double getMeanLatencyMillis() {
+            return getRequests() == 0 ? 0.0 : totalLatencyNanos / 1e6 / getRequests();
+        }
+
+        public double getMaxLatencyMillis() {
+            return maxLatencyNanos / 1e6;
+        }
+
+        // Requests per second over the time completed batches took
+        public double getThroughput() {
+            return busyNanos == 0 ? 0.0 : batchedRequests / (busyNanos / 1e9);
+        }
+
+        // Getters
+        public long getPlanned() { return planned; }
+        public long getUnreachable() { return unreachable; }
+        public long getFailed() { return failed; }
+        public int getThreads() { return threads; }
+
+        @Override
+        public String toString() {
+            return String.format("%d requests on %d threads (%d planned, %d unreachable, %d failed), "
+                    + "latency mean %.1f ms, max %.1f ms, %.1f requests/s",
+                getRequests(), threads, planned, unreachable, failed,
+                getMeanLatencyMillis(), getMaxLatencyMillis(), getThroughput());
+        }
+    }
+}
@@ -0,0 +1,520 @@
+package com.evmanagement.routing;
+
+import com.evmanagement.dao.BinaryIO;
+import com.evmanagement.model.ChargingStation;
+import com.evmanagement.util.GeoMath;
+import com.evmanagement.util.KdTree;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+/**
+ * Which stations can be driven to from which on a full charge. Stations are
+ * nodes; an edge joins two stations no more than the range apart.
+ *
+ * Edges are held in compressed sparse row form: one array of targets and one
+ * of distances for the whole graph, with each node's edges a contiguous run
+ * sorted by distance. Distances are stored as 16-bit multiples of range/65535,
+ * rounded up, so they never understate a leg. Stations added after the graph
+ * was built get their own rows, and the rows of their new neighbours are
+ * copied and patched, until the graph is next rebuilt. Availability is a mask
+ * that can be flipped without touching the edges.
+ *
+ * The station attributes planning needs (power, price, opening hours and
+ * maintenance) are copied into arrays when a station is added or updated, so
+ * a search never reads a station another thread is changing.
+ */
+public class ReachabilityGraph {
+    private static final int MAGIC = 0x45565247; // "EVRG"
+    private static final int VERSION = 1;
+    private static final int UNITS = 65535;
+    private static final int CHUNK_BYTES = 1 << 16;
+
+    private final double rangeKm;
+    private final double scale; // km per distance unit
+    private final List<ChargingStation> stations;
+    private final Map<String, Integer> indexById = new HashMap<>();
+    private GeoMath.Points points;
+    private KdTree<Integer> index;
+    private final BitSet unavailable = new BitSet();
+    private double[] maxChargingPower;
+    private double[] pricePerKWh;
+    private ChargingStation.OperatingHours[] operatingHours;
+    private ChargingStation.MaintenanceSchedule[] maintenance;
+
+    // Compressed rows for the nodes present when the graph was built
+    private final int[] offsets;
+    private final int[] targets;
+    private final char[] distances;
+    // Rows of nodes added or given new neighbours since
+    private final Map<Integer, Edges> patchedRows = new HashMap<>();
+
+    public ReachabilityGraph(List<ChargingStation> stations, double rangeKm) {
+        this.rangeKm = rangeKm;
+        this.scale = rangeKm / UNITS;
+        this.stations = new ArrayList<>(stations);
+        refreshCoordinates();
+        int n = this.stations.size();
+        growAttributes(n);
+        for (int i = 0; i < n; i++) {
+            ChargingStation station = this.stations.get(i);
+            indexById.put(station.getStationId(), i);
+            unavailable.set(i, !station.isAvailable());
+            copyAttributes(i, station);
+        }
+
+        Edges[] rows = new Edges[n];
+        IntStream.range(0, n).parallel()
+            .forEach(i -> rows[i] = edgesFrom(points.getLatitude(i), points.getLongitude(i), i));
+        offsets = new int[n + 1];
+        for (int i = 0; i < n; i++) {
+            offsets[i + 1] = offsets[i] + rows[i].size();
+        }
+        targets = new int[offsets[n]];
+        distances = new char[offsets[n]];
+        for (int i = 0; i < n; i++) {
+            System.arraycopy(rows[i].targets, 0, targets, offsets[i], rows[i].size());
+            System.arraycopy(rows[i].units, 0, distances, offsets[i], rows[i].size());
+        }
+    }
+
+    private ReachabilityGraph(double rangeKm, List<ChargingStation> stations,
+                              int[] offsets, int[] targets, char[] distances) {
+        this.rangeKm = rangeKm;
+        this.scale = rangeKm / UNITS;
+        this.stations = stations;
+        this.offsets = offsets;
+        this.targets = targets;
+        this.distances = distances;
+        growAttributes(stations.size());
+        for (int i = 0; i < stations.size(); i++) {
+            indexById.put(stations.get(i).getStationId(), i);
+            unavailable.set(i, !stations.get(i).isAvailable());
+            copyAttributes(i, stations.get(i));
+        }
+        refreshCoordinates();
+    }
+
+    // Shares the edges and coordinates, which are never changed in place; copies the rest
+    private ReachabilityGraph(ReachabilityGraph graph) {
+        this.rangeKm = graph.rangeKm;
+        this.scale = graph.scale;
+        this.stations = new ArrayList<>(graph.stations);
+        this.indexById.putAll(graph.indexById);
+        this.points = graph.points;
+        this.index = graph.index;
+        this.unavailable.or(graph.unavailable);
+        this.maxChargingPower = graph.maxChargingPower.clone();
+        this.pricePerKWh = graph.pricePerKWh.clone();
+        this.operatingHours = graph.operatingHours.clone();
+        this.maintenance = graph.maintenance.clone();
+        this.offsets = graph.offsets;
+        this.targets = graph.targets;
+        this.distances = graph.distances;
+        this.patchedRows.putAll(graph.patchedRows);
+    }
+
+    /**
+     * A copy that later changes to this graph do not reach. The edge arrays are
+     * shared, so it is cheap; planning on a copy per thread also keeps threads
+     * off this graph's lock.
+     */
+    public synchronized ReachabilityGraph snapshot() {
+        return new ReachabilityGraph(this);
+    }
+
+    // Stations reachable from station i, nearest first
+    public synchronized Edges neighbours(int i) {
+        Edges patched = patchedRows.get(i);
+        if (patched != null) {
+            return patched;
+        }
+        return new Edges(targets, distances, offsets[i], offsets[i + 1], scale);
+    }
+
+    // Stations within range of an arbitrary position, nearest first
+    public synchronized Edges edgesFrom(double lat, double lon) {
+        return edgesFrom(lat, lon, -1);
+    }
+
+    // Distances in km from a position to every station
+    public synchronized double[] distancesFrom(double lat, double lon) {
+        double[] out = new double[stations.size()];
+        points.distancesFrom(lat, lon, out);
+        return out;
+    }
+
+    private Edges edgesFrom(double lat, double lon, int self) {
+        List<Integer> reachable = index.withinRadius(lat, lon, rangeKm);
+        long[] packed = new long[reachable.size()];
+        int count = 0;
+        for (int j : reachable) {
+            if (j != self) {
+                double distance = GeoMath.distanceKm(lat, lon, points.getLatitude(j), points.getLongitude(j));
+                packed[count++] = ((long) toUnits(distance) << 32) | j;
+            }
+        }
+        Arrays.sort(packed, 0, count);
+        int[] edgeTargets = new int[count];
+        char[] edgeUnits = new char[count];
+        for (int k = 0; k < count; k++) {
+            edgeTargets[k] = (int) packed[k];
+            edgeUnits[k] = (char) (packed[k] >>> 32);
+        }
+        return new Edges(edgeTargets, edgeUnits, 0, count, scale);
+    }
+
+    // Add a station that was not known when the graph was built
+    public synchronized void addStation(ChargingStation station) {
+        addStations(Collections.singletonList(station));
+    }
+
+    // Add several at once, rebuilding the coordinates and index only once
+    public synchronized void addStations(Collection<ChargingStation> candidates) {
+        int first = stations.size();
+        for (ChargingStation station : candidates) {
+            if (!indexById.containsKey(station.getStationId())) {
+                int added = stations.size();
+                indexById.put(station.getStationId(), added);
+                unavailable.set(added, !station.isAvailable());
+                growAttributes(added + 1);
+                copyAttributes(added, station);
+                stations.add(station);
+            }
+        }
+        if (stations.size() == first) {
+            return;
+        }
+        refreshCoordinates();
+
+        // Rows of the new stations already hold the edges among themselves;
+        // the other neighbours' rows are patched once with all their new edges
+        Map<Integer, List<Long>> newEdges = new HashMap<>();
+        for (int added = first; added < stations.size(); added++) {
+            Edges row = edgesFrom(points.getLatitude(added), points.getLongitude(added), added);
+            patchedRows.put(added, row);
+            for (int k = row.from; k < row.to; k++) {
+                if (row.targets[k] < first) {
+                    newEdges.computeIfAbsent(row.targets[k], neighbour -> new ArrayList<>())
+                        .add(((long) row.units[k] << 32) | added);
+                }
+            }
+        }
+        for (Map.Entry<Integer, List<Long>> edges : newEdges.entrySet()) {
+            long[] packed = edges.getValue().stream().mapToLong(Long::longValue).sorted().toArray();
+            patchedRows.put(edges.getKey(), neighbours(edges.getKey()).with(packed));
+        }
+    }
+
+    /**
+     * Bring one station up to date: a new station is added, and a known one
+     * has its object, availability and planning attributes refreshed. Call it
+     * on the thread that changed the station. Returns false if the station
+     * has moved, which the edges cannot follow; the graph must be rebuilt.
+     */
+    public synchronized boolean updateStation(ChargingStation station) {
+        Integer i = indexById.get(station.getStationId());
+        if (i == null) {
+            addStation(station);
+            return true;
+        }
+        if (station.getLatitude() != points.getLatitude(i) || station.getLongitude() != points.getLongitude(i)) {
+            return false;
+        }
+        stations.set(i, station);
+        unavailable.set(i, !station.isAvailable());
+        copyAttributes(i, station);
+        return true;
+    }
+
+    public synchronized void setAvailable(String stationId, boolean available) {
+        Integer i = indexById.get(stationId);
+        if (i != null) {
+            unavailable.set(i, !available);
+        }
+    }
+
+    public synchronized boolean isAvailable(int i) {
+        return !unavailable.get(i);
+    }
+
+    // Index of a station, or -1 if the graph does not contain it
+    public synchronized int indexOf(String stationId) {
+        Integer i = indexById.get(stationId);
+        return i != null ? i : -1;
+    }
+
+    public synchronized int size() {
+        return stations.size();
+    }
+
+    public synchronized ChargingStation getStation(int i) {
+        return stations.get(i);
+    }
+
+    public synchronized double getMaxChargingPower(int i) {
+        return maxChargingPower[i];
+    }
+
+    public synchronized double getPricePerKWh(int i) {
+        return pricePerKWh[i];
+    }
+
+    // Copies of the station's schedules, null if it has none
+    public synchronized ChargingStation.OperatingHours getOperatingHours(int i) {
+        return operatingHours[i];
+    }
+
+    public synchronized ChargingStation.MaintenanceSchedule getMaintenance(int i) {
+        return maintenance[i];
+    }
+
+    public synchronized double getLatitude(int i) {
+        return points.getLatitude(i);
+    }
+
+    public synchronized double getLongitude(int i) {
+        return points.getLongitude(i);
+    }
+
+    public synchronized long getEdgeCount() {
+        long count = targets.length;
+        for (Map.Entry<Integer, Edges> row : patchedRows.entrySet()) {
+            int i = row.getKey();
+            count += row.getValue().size() - (i < offsets.length - 1 ? offsets[i + 1] - offsets[i] : 0);
+        }
+        return count;
+    }
+
+    public synchronized int getPatchedRowCount() {
+        return patchedRows.size();
+    }
+
+    public double getRangeKm() {
+        return rangeKm;
+    }
+
+    // Station coordinates in index order
+    public synchronized GeoMath.Points getPoints() {
+        return points;
+    }
+
+    private void refreshCoordinates() {
+        points = GeoMath.Points.of(stations, ChargingStation::getLatitude, ChargingStation::getLongitude);
+        List<Integer> ids = new ArrayList<>(stations.size());
+        for (int i = 0; i < stations.size(); i++) ids.add(i);
+        index = new KdTree<>(ids, points::getLatitude, points::getLongitude);
+    }
+
+    private void growAttributes(int size) {
+        int capacity = maxChargingPower == null ? 0 : maxChargingPower.length;
+        if (size > capacity) {
+            capacity = Math.max(size, capacity * 2);
+            maxChargingPower = maxChargingPower == null ? new double[capacity] : Arrays.copyOf(maxChargingPower, capacity);
+            pricePerKWh = pricePerKWh == null ? new double[capacity] : Arrays.copyOf(pricePerKWh, capacity);
+            operatingHours = operatingHours == null ? new ChargingStation.OperatingHours[capacity]
+                : Arrays.copyOf(operatingHours, capacity);
+            maintenance = maintenance == null ? new ChargingStation.MaintenanceSchedule[capacity]
+                : Arrays.copyOf(maintenance, capacity);
+        }
+    }
+
+    private void copyAttributes(int i, ChargingStation station) {
+        maxChargingPower[i] = station.getMaxChargingPower();
+        pricePerKWh[i] = station.getPricePerKWh();
+        operatingHours[i] = station.getOperatingHours() != null ? station.getOperatingHours().copy() : null;
+        maintenance[i] = station.getMaintenance() != null ? station.getMaintenance().copy() : null;
+    }
+
+    private int toUnits(double km) {
+        return (int) Math.min(UNITS, Math.ceil(km / scale));
+    }
+
+    // Persisted form: header, station IDs with their coordinates, then the rows.
+    // Patched rows are folded in, so a reloaded graph is fully compressed again.
+    public synchronized void writeTo(DataOutput out) throws IOException {
+        int n = stations.size();
+        int[] rowOffsets = new int[n + 1];
+        for (int i = 0; i < n; i++) {
+            rowOffsets[i + 1] = rowOffsets[i] + neighbours(i).size();
+        }
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeDouble(rangeKm);
+        out.writeInt(n);
+        for (int i = 0; i < n; i++) {
+            BinaryIO.writeString(out, stations.get(i).getStationId());
+            out.writeDouble(points.getLatitude(i));
+            out.writeDouble(points.getLongitude(i));
+        }
+        writeInts(out, rowOffsets, 0, n + 1);
+        for (int i = 0; i < n; i++) {
+            Edges row = neighbours(i);
+            writeInts(out, row.targets, row.from, row.size());
+        }
+        for (int i = 0; i < n; i++) {
+            Edges row = neighbours(i);
+            writeChars(out, row.units, row.from, row.size());
+        }
+    }
+
+    /**
+     * Reads a persisted graph and attaches the current station objects. Returns
+     * null when the file is for another range, or a station in it has since been
+     * removed or moved; stations added since are attached incrementally.
+     */
+    public static ReachabilityGraph readFrom(DataInput in, double rangeKm,
+                                             Map<String, ChargingStation> current) throws IOException {
+        if (in.readInt() != MAGIC || in.readInt() != VERSION || in.readDouble() != rangeKm) {
+            return null;
+        }
+        int n = in.readInt();
+        List<ChargingStation> stations = new ArrayList<>(n);
+        boolean stale = false;
+        for (int i = 0; i < n; i++) {
+            ChargingStation station = current.get(BinaryIO.readString(in));
+            double lat = in.readDouble();
+            double lon = in.readDouble();
+            if (station == null || station.getLatitude() != lat || station.getLongitude() != lon) {
+                stale = true;
+            }
+            stations.add(station);
+        }
+        if (stale) {
+            return null;
+        }
+        int[] offsets = new int[n + 1];
+        readInts(in, offsets, n + 1);
+        int[] targets = new int[offsets[n]];
+        readInts(in, targets, targets.length);
+        char[] distances = new char[offsets[n]];
+        readChars(in, distances, distances.length);
+
+        ReachabilityGraph graph = new ReachabilityGraph(rangeKm, stations, offsets, targets, distances);
+        graph.addStations(current.values());
+        return graph;
+    }
+
+    // Large arrays go through a byte chunk rather than one call per element
+    private static void writeInts(DataOutput out, int[] values, int from, int count) throws IOException {
+        byte[] chunk = new byte[CHUNK_BYTES];
+        for (int done = 0; done < count; ) {
+            int batch = Math.min(count - done, CHUNK_BYTES / Integer.BYTES);
+            ByteBuffer.wrap(chunk).asIntBuffer().put(values, from + done, batch);
+            out.write(chunk, 0, batch * Integer.BYTES);
+            done += batch;
+        }
+    }
+
+    private static void writeChars(DataOutput out, char[] values, int from, int count) throws IOException {
+        byte[] chunk = new byte[CHUNK_BYTES];
+        for (int done = 0; done < count; ) {
+            int batch = Math.min(count - done, CHUNK_BYTES / Character.BYTES);
+            ByteBuffer.wrap(chunk).asCharBuffer().put(values, from + done, batch);
+            out.write(chunk, 0, batch * Character.BYTES);
+            done += batch;
+        }
+    }
+
+    private static void readInts(DataInput in, int[] values, int count) throws IOException {
+        byte[] chunk = new byte[CHUNK_BYTES];
+        for (int done = 0; done < count; ) {
+            int batch = Math.min(count - done, CHUNK_BYTES / Integer.BYTES);
+            in.readFully(chunk, 0, batch * Integer.BYTES);
+            ByteBuffer.wrap(chunk).asIntBuffer().get(values, done, batch);
+            done += batch;
+        }
+    }
+
+    private static void readChars(DataInput in, char[] values, int count) throws IOException {
+        byte[] chunk = new byte[CHUNK_BYTES];
+        for (int done = 0; done < count; ) {
+            int batch = Math.min(count - done, CHUNK_BYTES / Character.BYTES);
+            in.readFully(chunk, 0, batch * Character.BYTES);
+            ByteBuffer.wrap(chunk).asCharBuffer().get(values, done, batch);
+            done += batch;
+        }
+    }
+
+    /**
+     * One node's edges, nearest first: positions from (inclusive) to to
+     * (exclusive) of the target and distance arrays.
+     */
+    public static class Edges {
+        private final int[] targets;
+        private final char[] units;
+        private final int from;
+        private final int to;
+        private final double scale;
+
+        Edges(int[] targets, char[] units, int from, int to, double scale) {
+            this.targets = targets;
+            this.units = units;
+            this.from = from;
+            this.to = to;
+            this.scale = scale;
+        }
+
+        public int size() {
+            return to - from;
+        }
+
+        public int target(int k) {
+            return targets[k];
+        }
+
+        public double distanceKm(int k) {
+            return units[k] * scale;
+        }
+
+        // Position of the first edge longer than km
+        public int firstBeyond(double km) {
+            int lo = from;
+            int hi = to;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (distanceKm(mid) <= km) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            return lo;
+        }
+
+        // Copy of this row merged with more edges, packed as distance units << 32 | target
+        // and sorted, kept in distance order
+        Edges with(long[] packed) {
+            int size = size() + packed.length;
+            int[] newTargets = new int[size];
+            char[] newUnits = new char[size];
+            int at = from;
+            int next = 0;
+            for (int k = 0; k < size; k++) {
+                if (next == packed.length || (at < to && units[at] <= (char) (packed[next] >>> 32))) {
+                    newTargets[k] = targets[at];
+                    newUnits[k] = units[at++];
+                } else {
+                    newTargets[k] = (int) packed[next];
+                    newUnits[k] = (char) (packed[next++] >>> 32);
+                }
+            }
+            return new Edges(newTargets, newUnits, 0, size, scale);
+        }
+
+        // Getters
+        public int getFrom() { return from; }
+        public int getTo() { return to; }
+    }
+}
@@ -0,0 +1,260 @@
+package com.evmanagement.routing;
+
+import com.evmanagement.dao.BinaryCodecs;
+import com.evmanagement.dao.Durability;
+import com.evmanagement.dao.DurableFileWriter;
+import com.evmanagement.dao.FileDAO;
+import com.evmanagement.dao.StationChangeListener;
+import com.evmanagement.dao.StationJournal;
+import com.evmanagement.dao.StationRepository;
+import com.evmanagement.model.ChargingStation;
+import com.evmanagement.model.Vehicle;
+import com.evmanagement.model.VehicleProfile;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.stream.Stream;
+
+/**
+ * One {@link ReachabilityGraph} per vehicle range class, kept next to the
+ * station store as {@code reachability-<km>km.graph}. Vehicles are grouped
+ * into classes of {@code evm.routing.rangeClassKm} (default 50 km) by usable
+ * range, rounded up, so a handful of graphs serve every vehicle.
+ *
+ * A graph is read from its file when first asked for, or built and written if
+ * there is none or it no longer matches the stations. Stations added later are
+ * patched into the loaded graphs, and changes that matter to planning update
+ * the graphs' copies of the station, so planning only attaches the start and destination. Run {@link #main} to
+ * build the files ahead of time.
+ *
+ * Reading or building a graph happens outside this object's lock, so station
+ * changes are not held up behind it; changes arriving meanwhile are applied to
+ * the new graph before it is handed out.
+ */
+public class ReachabilityGraphs implements StationChangeListener {
+    private static final int RANGE_CLASS_KM = Integer.getInteger("evm.routing.rangeClassKm", 50);
+    private static final String VEHICLES_FILE = "vehicles.dat";
+    private static final Set<StationJournal.ChangeType> PLANNING_CHANGES = EnumSet.of(
+        StationJournal.ChangeType.AVAILABILITY,
+        StationJournal.ChangeType.PRICING,
+        StationJournal.ChangeType.ADD_PORT,
+        StationJournal.ChangeType.REMOVE_PORT,
+        StationJournal.ChangeType.OPERATING_HOURS,
+        StationJournal.ChangeType.MAINTENANCE_WINDOW);
+
+    private static ReachabilityGraphs defaultGraphs;
+
+    private final StationRepository repository;
+    private final File directory;
+    private final Durability durability = Durability.forStore("graph");
+    private final Map<Integer, ReachabilityGraph> graphs = new HashMap<>();
+    private final Map<Integer, CompletableFuture<ReachabilityGraph>> building = new HashMap<>();
+    // Stations changed while each graph was being built; null once everything was reloaded
+    private final Map<Integer, Set<String>> changedWhileBuilding = new HashMap<>();
+
+    public ReachabilityGraphs(StationRepository repository, File directory) {
+        this.repository = repository;
+        this.directory = directory;
+    }
+
+    public static synchronized ReachabilityGraphs getDefault() throws IOException {
+        if (defaultGraphs == null) {
+            StationRepository repository = StationRepository.getDefault();
+            defaultGraphs = new ReachabilityGraphs(repository, new File(StationJournal.STATIONS_DIR));
+            repository.addChangeListener(defaultGraphs);
+        }
+        return defaultGraphs;
+    }
+
+    public static int rangeClass(VehicleProfile vehicle) {
+        return rangeClass(vehicle.getUsableRange());
+    }
+
+    public static int rangeClass(double rangeKm) {
+        return Math.max(1, (int) Math.ceil(rangeKm / RANGE_CLASS_KM)) * RANGE_CLASS_KM;
+    }
+
+    public ReachabilityGraph forVehicle(VehicleProfile vehicle) throws IOException {
+        return forRange(rangeClass(vehicle));
+    }
+
+    public ReachabilityGraph forRange(int rangeClassKm) throws IOException {
+        CompletableFuture<ReachabilityGraph> build;
+        boolean builder = false;
+        synchronized (this) {
+            ReachabilityGraph graph = graphs.get(rangeClassKm);
+            if (graph != null) {
+                return graph;
+            }
+            build = building.get(rangeClassKm);
+            if (build == null) {
+                build = new CompletableFuture<>();
+                building.put(rangeClassKm, build);
+                changedWhileBuilding.put(rangeClassKm, new LinkedHashSet<>());
+                builder = true;
+            }
+        }
+        if (!builder) {
+            return await(build);
+        }
+        try {
+            ReachabilityGraph graph = load(rangeClassKm);
+            synchronized (this) {
+                building.remove(rangeClassKm);
+                if (catchUp(graph, changedWhileBuilding.remove(rangeClassKm))) {
+                    graphs.put(rangeClassKm, graph);
+                }
+            }
+            build.complete(graph);
+            return graph;
+        } catch (IOException | RuntimeException e) {
+            synchronized (this) {
+                building.remove(rangeClassKm);
+                changedWhileBuilding.remove(rangeClassKm);
+            }
+            build.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    // Wait for another thread's build of the same range class
+    private static ReachabilityGraph await(CompletableFuture<ReachabilityGraph> build) throws IOException {
+        try {
+            return build.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    private ReachabilityGraph load(int rangeClassKm) throws IOException {
+        ReachabilityGraph graph = read(rangeClassKm);
+        if (graph == null) {
+            graph = new ReachabilityGraph(repository.getAll(), rangeClassKm);
+            save(rangeClassKm, graph);
+        } else if (graph.getPatchedRowCount() > 0) {
+            // Stations were added since the file was written; fold them in
+            save(rangeClassKm, graph);
+        }
+        return graph;
+    }
+
+    // Apply changes made during a build; false if the graph cannot follow them
+    private boolean catchUp(ReachabilityGraph graph, Set<String> changed) {
+        if (changed == null) {
+            return false;
+        }
+        for (String stationId : changed) {
+            ChargingStation station = repository.get(stationId);
+            if (station != null && !graph.updateStation(station)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Build a range class from scratch and replace its file
+    public synchronized ReachabilityGraph rebuild(int rangeClassKm) throws IOException {
+        ReachabilityGraph graph = new ReachabilityGraph(repository.getAll(), rangeClassKm);
+        save(rangeClassKm, graph);
+        graphs.put(rangeClassKm, graph);
+        return graph;
+    }
+
+    @Override
+    public synchronized void stationChanged(String stationId, StationJournal.ChangeType type) {
+        if (stationId == null) {
+            // Everything was reloaded: re-read the graphs so they hold the new station objects
+            graphs.clear();
+            changedWhileBuilding.replaceAll((rangeClassKm, changed) -> null);
+            return;
+        }
+        if (type == null || PLANNING_CHANGES.contains(type)) {
+            for (Set<String> changed : changedWhileBuilding.values()) {
+                if (changed != null) {
+                    changed.add(stationId);
+                }
+            }
+        }
+        ChargingStation station = repository.get(stationId);
+        if (station == null) {
+            return;
+        }
+        if (type == null || PLANNING_CHANGES.contains(type)) {
+            // Added, reloaded from another process's changes, or changed in a way planning sees
+            graphs.values().removeIf(graph -> !graph.updateStation(station));
+        }
+    }
+
+    private ReachabilityGraph read(int rangeClassKm) throws IOException {
+        File file = fileFor(rangeClassKm);
+        if (!file.exists()) {
+            return null;
+        }
+        Map<String, ChargingStation> current = new HashMap<>();
+        for (ChargingStation station : repository.getAll()) {
+            current.put(station.getStationId(), station);
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16))) {
+            return ReachabilityGraph.readFrom(in, rangeClassKm, current);
+        }
+    }
+
+    private void save(int rangeClassKm, ReachabilityGraph graph) throws IOException {
+        if (!repository.isLoaded()) {
+            // A graph of a partly loaded repository is fine to plan with but not to keep
+            return;
+        }
+        if (!directory.exists()) directory.mkdirs();
+        DurableFileWriter.getInstance().write(fileFor(rangeClassKm), durability, file -> {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file, 1 << 16));
+            graph.writeTo(out);
+            out.flush();
+        });
+    }
+
+    private File fileFor(int rangeClassKm) {
+        return new File(directory, "reachability-" + rangeClassKm + "km.graph");
+    }
+
+    // Offline precomputation. Arguments are ranges in km; without any, the
+    // range classes of every vehicle in vehicles.dat are built.
+    public static void main(String[] args) throws IOException {
+        StationRepository repository = StationRepository.getDefault();
+        System.out.println(repository.load());
+
+        Set<Integer> classes = new TreeSet<>();
+        for (String arg : args) {
+            classes.add(rangeClass(Double.parseDouble(arg)));
+        }
+        if (classes.isEmpty()) {
+            try (Stream<Vehicle> vehicles = new FileDAO<>(VEHICLES_FILE, BinaryCodecs.VEHICLE).stream()) {
+                vehicles.forEach(vehicle -> classes.add(rangeClass(VehicleProfile.of(vehicle))));
+            }
+        }
+
+        ReachabilityGraphs graphs = new ReachabilityGraphs(repository, new File(StationJournal.STATIONS_DIR));
+        for (int rangeClassKm : classes) {
+            long started = System.nanoTime();
+            ReachabilityGraph graph = graphs.rebuild(rangeClassKm);
+            System.out.printf("%d km: %d stations, %d edges in %.0f ms%n", rangeClassKm,
+                graph.size(), graph.getEdgeCount(), (System.nanoTime() - started) / 1e6);
+        }
+        repository.close();
+    }
+}
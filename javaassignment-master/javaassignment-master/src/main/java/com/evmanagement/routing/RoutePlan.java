@@ -0,0 +1,78 @@
+package com.evmanagement.routing;
+
+import com.evmanagement.model.ChargingStation;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Result of a {@link RoutePlanner} search: where to stop, how much to charge
+ * at each stop, and what the whole trip costs in time and money.
+ */
+public class RoutePlan {
+    private final List<Stop> stops;
+    private final double drivingKm;
+    private final double drivingHours;
+    private final double chargingHours;
+    private final double waitingHours; // for stations to open or finish maintenance
+    private final double chargingCost;
+    private final int expandedStates;
+
+    RoutePlan(List<Stop> stops, double drivingKm, double drivingHours, double chargingHours,
+              double waitingHours, double chargingCost, int expandedStates) {
+        this.stops = Collections.unmodifiableList(new ArrayList<>(stops));
+        this.drivingKm = drivingKm;
+        this.drivingHours = drivingHours;
+        this.chargingHours = chargingHours;
+        this.waitingHours = waitingHours;
+        this.chargingCost = chargingCost;
+        this.expandedStates = expandedStates;
+    }
+
+    public double getTotalHours() {
+        return drivingHours + chargingHours + waitingHours;
+    }
+
+    // Getters
+    public List<Stop> getStops() { return stops; }
+    public double getDrivingKm() { return drivingKm; }
+    public double getDrivingHours() { return drivingHours; }
+    public double getChargingHours() { return chargingHours; }
+    public double getWaitingHours() { return waitingHours; }
+    public double getChargingCost() { return chargingCost; }
+    public int getExpandedStates() { return expandedStates; }
+
+    @Override
+    public String toString() {
+        return String.format("%d stops, %.1f km, %.2f h (%.2f h charging, %.2f h waiting), cost %.2f",
+            stops.size(), drivingKm, getTotalHours(), chargingHours, waitingHours, chargingCost);
+    }
+
+    public static class Stop {
+        private final ChargingStation station;
+        private final double arrivalSoc; // fraction of battery capacity
+        private final double departureSoc;
+        private final double energyKWh;
+        private final double chargingHours;
+        private final double waitingHours;
+
+        Stop(ChargingStation station, double arrivalSoc, double departureSoc, double energyKWh, double chargingHours,
+             double waitingHours) {
+            this.station = station;
+            this.arrivalSoc = arrivalSoc;
+            this.departureSoc = departureSoc;
+            this.energyKWh = energyKWh;
+            this.chargingHours = chargingHours;
+            this.waitingHours = waitingHours;
+        }
+
+        // Getters
+        public ChargingStation getStation() { return station; }
+        public double getArrivalSoc() { return arrivalSoc; }
+        public double getDepartureSoc() { return departureSoc; }
+        public double getEnergyKWh() { return energyKWh; }
+        public double getChargingHours() { return chargingHours; }
+        public double getWaitingHours() { return waitingHours; }
+    }
+}
@@ -0,0 +1,278 @@
+package com.evmanagement.routing;
+
+import com.evmanagement.dao.StationChangeListener;
+import com.evmanagement.dao.StationJournal;
+import com.evmanagement.dao.StationRepository;
+import com.evmanagement.model.ChargingCurve;
+import com.evmanagement.model.VehicleProfile;
+import com.evmanagement.util.GeoMath;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Least recently used cache of planning results, so planning the same trip
+ * again does not search again. Start and destination are snapped to a grid of
+ * {@code evm.routing.planCacheGridMeters} (default 100 m), and the key adds
+ * the vehicle's battery figures, the objective and a station version that only counts changes which can alter a plan
+ * (availability, pricing, ports, opening hours, maintenance, added stations).
+ * Departure times are rounded down to slots of
+ * {@code evm.routing.planCacheSlotMinutes} (default 15), so trips leaving
+ * within a slot share the plan found for the first of them.
+ * Such a change drops every entry, since a station that is not on a cached
+ * plan may be the one that now makes a better plan.
+ *
+ * Entries are weighed by the plans and stops they hold, and the least
+ * recently used ones are evicted past {@code evm.routing.planCacheWeight}
+ * (default 20000).
+ */
+public class RoutePlanCache implements StationChangeListener {
+    private static final int GRID_METERS = Integer.getInteger("evm.routing.planCacheGridMeters", 100);
+    private static final int MAX_WEIGHT = Integer.getInteger("evm.routing.planCacheWeight", 20000);
+    private static final int SLOT_MINUTES = Integer.getInteger("evm.routing.planCacheSlotMinutes", 15);
+    private static final Set<StationJournal.ChangeType> PLAN_CHANGES = EnumSet.of(
+        StationJournal.ChangeType.AVAILABILITY,
+        StationJournal.ChangeType.PRICING,
+        StationJournal.ChangeType.ADD_PORT,
+        StationJournal.ChangeType.REMOVE_PORT,
+        StationJournal.ChangeType.OPERATING_HOURS,
+        StationJournal.ChangeType.MAINTENANCE_WINDOW);
+
+    private static final long NO_SLOT = Long.MIN_VALUE; // departure time ignored
+
+    private static RoutePlanCache defaultCache;
+
+    private final double gridDegrees;
+    private final int maxWeight;
+    private final Map<Key, List<RoutePlan>> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long stationVersion;
+    private int weight;
+
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long invalidations;
+
+    public RoutePlanCache() {
+        this(GRID_METERS, MAX_WEIGHT);
+    }
+
+    public RoutePlanCache(double gridMeters, int maxWeight) {
+        this.gridDegrees = gridMeters / 1000.0 / GeoMath.KM_PER_DEGREE;
+        this.maxWeight = maxWeight;
+    }
+
+    public static synchronized RoutePlanCache getDefault() throws IOException {
+        if (defaultCache == null) {
+            defaultCache = new RoutePlanCache();
+            StationRepository.getDefault().addChangeListener(defaultCache);
+        }
+        return defaultCache;
+    }
+
+    // Cached RoutePlanner.plan; null if the destination cannot be reached. A null departure ignores opening hours.
+    public RoutePlan plan(ReachabilityGraph graph, double startLat, double startLon, double endLat, double endLon,
+                          VehicleProfile vehicle, RoutePlanner.Objective objective, LocalDateTime departure) {
+        Key key = key(graph, startLat, startLon, endLat, endLon, vehicle, objective, departure);
+        List<RoutePlan> plans = lookup(key);
+        if (plans == null) {
+            RoutePlan plan = new RoutePlanner(graph).plan(startLat, startLon, endLat, endLon, vehicle, objective,
+                1.0, slotStart(key));
+            plans = plan == null ? Collections.emptyList() : Collections.singletonList(plan);
+            store(key, plans);
+        }
+        return plans.isEmpty() ? null : plans.get(0);
+    }
+
+    // Cached RoutePlanner.paretoFront
+    public List<RoutePlan> paretoFront(ReachabilityGraph graph, double startLat, double startLon,
+                                       double endLat, double endLon, VehicleProfile vehicle,
+                                       LocalDateTime departure) {
+        Key key = key(graph, startLat, startLon, endLat, endLon, vehicle, null, departure);
+        List<RoutePlan> plans = lookup(key);
+        if (plans == null) {
+            plans = Collections.unmodifiableList(new RoutePlanner(graph).paretoFront(startLat, startLon,
+                endLat, endLon, vehicle, slotStart(key)));
+            store(key, plans);
+        }
+        return plans;
+    }
+
+    @Override
+    public void stationChanged(String stationId, StationJournal.ChangeType type) {
+        if (stationId == null || type == null || PLAN_CHANGES.contains(type)) {
+            invalidate();
+        }
+    }
+
+    public synchronized void invalidate() {
+        stationVersion++;
+        if (!entries.isEmpty()) {
+            invalidations += entries.size();
+            entries.clear();
+            weight = 0;
+        }
+    }
+
+    public synchronized Stats getStats() {
+        return new Stats(hits, misses, evictions, invalidations, entries.size(), weight);
+    }
+
+    private synchronized List<RoutePlan> lookup(Key key) {
+        List<RoutePlan> plans = entries.get(key);
+        if (plans != null) {
+            hits++;
+        } else {
+            misses++;
+        }
+        return plans;
+    }
+
+    private synchronized void store(Key key, List<RoutePlan> plans) {
+        if (key.stationVersion != stationVersion) {
+            // Planned over stations that changed during the search
+            return;
+        }
+        List<RoutePlan> previous = entries.put(key, plans);
+        if (previous != null) {
+            weight -= weigh(previous);
+        }
+        weight += weigh(plans);
+        Iterator<List<RoutePlan>> eldest = entries.values().iterator();
+        while (weight > maxWeight && eldest.hasNext()) {
+            List<RoutePlan> evicted = eldest.next();
+            if (evicted == plans) {
+                break;
+            }
+            weight -= weigh(evicted);
+            eldest.remove();
+            evictions++;
+        }
+    }
+
+    private static int weigh(List<RoutePlan> plans) {
+        int total = 1;
+        for (RoutePlan plan : plans) {
+            total += 1 + plan.getStops().size();
+        }
+        return total;
+    }
+
+    private synchronized Key key(ReachabilityGraph graph, double startLat, double startLon, double endLat,
+                                 double endLon, VehicleProfile vehicle, RoutePlanner.Objective objective,
+                                 LocalDateTime departure) {
+        return new Key(cell(startLat), cell(startLon), cell(endLat), cell(endLon),
+            vehicle.getBatteryCapacity(), vehicle.getEfficiency(), vehicle.getRange(),
+            ChargingCurve.forVehicle(vehicle), graph.getRangeKm(), objective,
+            departure != null ? Math.floorDiv(departure.toEpochSecond(ZoneOffset.UTC), SLOT_MINUTES * 60L) : NO_SLOT,
+            stationVersion);
+    }
+
+    // Plans are made for the start of the slot, so a cached plan does not depend on which trip came first
+    private static LocalDateTime slotStart(Key key) {
+        return key.departureSlot == NO_SLOT ? null
+            : LocalDateTime.ofEpochSecond(key.departureSlot * SLOT_MINUTES * 60L, 0, ZoneOffset.UTC);
+    }
+
+    private long cell(double degrees) {
+        return Math.round(degrees / gridDegrees);
+    }
+
+    private static final class Key {
+        private final long startLat;
+        private final long startLon;
+        private final long endLat;
+        private final long endLon;
+        private final double batteryCapacity;
+        private final double efficiency;
+        private final double range;
+        private final ChargingCurve chargingCurve;
+        private final double graphRangeKm;
+        private final RoutePlanner.Objective objective; // null for the Pareto front
+        private final long departureSlot;
+        private final long stationVersion;
+
+        Key(long startLat, long startLon, long endLat, long endLon, double batteryCapacity, double efficiency,
+            double range, ChargingCurve chargingCurve, double graphRangeKm, RoutePlanner.Objective objective,
+            long departureSlot, long stationVersion) {
+            this.startLat = startLat;
+            this.startLon = startLon;
+            this.endLat = endLat;
+            this.endLon = endLon;
+            this.batteryCapacity = batteryCapacity;
+            this.efficiency = efficiency;
+            this.range = range;
+            this.chargingCurve = chargingCurve;
+            this.graphRangeKm = graphRangeKm;
+            this.objective = objective;
+            this.departureSlot = departureSlot;
+            this.stationVersion = stationVersion;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key key = (Key) o;
+            return startLat == key.startLat && startLon == key.startLon
+                && endLat == key.endLat && endLon == key.endLon
+                && Double.compare(batteryCapacity, key.batteryCapacity) == 0
+                && Double.compare(efficiency, key.efficiency) == 0
+                && Double.compare(range, key.range) == 0 && chargingCurve.equals(key.chargingCurve)
+                && Double.compare(graphRangeKm, key.graphRangeKm) == 0
+                && objective == key.objective && departureSlot == key.departureSlot
+                && stationVersion == key.stationVersion;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(startLat, startLon, endLat, endLon, batteryCapacity, efficiency, range,
+                chargingCurve, graphRangeKm, objective, departureSlot, stationVersion);
+        }
+    }
+
+    public static class Stats {
+        private final long hits;
+        private final long misses;
+        private final long evictions;
+        private final long invalidations;
+        private final int entries;
+        private final int weight;
+
+        Stats(long hits, long misses, long evictions, long invalidations, int entries, int weight) {
+            this.hits = hits;
+            this.misses = misses;
+            this.evictions = evictions;
+            this.invalidations = invalidations;
+            this.entries = entries;
+            this.weight = weight;
+        }
+
+        public double getHitRate() {
+            return hits + misses == 0 ? 0.0 : (double) hits / (hits + misses);
+        }
+
+        // Getters
+        public long getHits() { return hits; }
+        public long getMisses() { return misses; }
+        public long getEvictions() { return evictions; }
+        public long getInvalidations() { return invalidations; }
+        public int getEntries() { return entries; }
+        public int getWeight() { return weight; }
+
+        @Override
+        public String toString() {
+            return String.format("%d hits, %d misses (%.0f%% hit rate), %d evicted, %d invalidated, %d entries, weight %d",
+                hits, misses, getHitRate() * 100, evictions, invalidations, entries, weight);
+        }
+    }
+}
@@ -0,0 +1,747 @@
+package com.evmanagement.routing;
+
+import com.evmanagement.model.ChargingCurve;
+import com.evmanagement.model.ChargingStation;
+import com.evmanagement.model.VehicleProfile;
+import com.evmanagement.util.GeoMath;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+
+/**
+ * Finds charging plans between two positions: the fastest or cheapest one,
+ * or every plan that is not beaten on both time and cost.
+ *
+ * Both searches run over (node, state of charge, charged here yet) states,
+ * where nodes are the stations of a {@link ReachabilityGraph} plus the start
+ * and destination. State of charge is tracked in buckets and rounded down on
+ * arrival, so every plan found can actually be driven. From a state the car
+ * either charges one more bucket at the current station or, once it has
+ * charged there, drives to any station or the destination within its
+ * remaining range. Charging a bucket at a time lets the search choose how much
+ * to charge at each stop without trying every amount against every neighbour.
+ * Each bucket takes as long as the vehicle's {@link ChargingCurve} says at that
+ * charge level, so the search is free to stop early where charging slows down.
+ *
+ * The lower bounds used to guide both searches are the straight-line driving
+ * time to the destination plus the missing energy charged at the fastest rate,
+ * and the missing energy at the lowest price. Neither can overestimate, and
+ * neither drops by more than the cost of any single move, so the single-
+ * objective search is optimal for the bucketed model the first time it reaches
+ * the destination.
+ *
+ * Given a departure time, a station is only charged at while it is open and
+ * not under maintenance: a car that arrives outside those times waits until
+ * it can charge, and a station that never opens is not used. Waiting never
+ * lets a car leave earlier than one that arrived earlier, so fastest plans and
+ * trade-offs stay exact; a cheapest plan may miss a cheaper one that needs a
+ * slower arrival somewhere to wait less.
+ *
+ * A search whose thread is interrupted stops with a CancellationException,
+ * so callers can drop a plan they no longer need.
+ */
+public class RoutePlanner {
+    public enum Objective {
+        TIME,
+        COST
+    }
+
+    public static final double AVERAGE_SPEED_KMH = 60.0;
+    private static final int SOC_BUCKETS = Integer.getInteger("evm.routing.socBuckets", 20);
+    // Weight of the other criterion, so plans equal on the objective prefer the faster or cheaper one
+    private static final double TIE_BREAK = 1e-6;
+    // Labels and plans this close are equal; charging times looked up from another charge level differ by rounding
+    private static final double LABEL_EPSILON = 1e-9;
+
+    private final ReachabilityGraph graph;
+    private final int buckets;
+
+    public RoutePlanner(ReachabilityGraph graph) {
+        this(graph, SOC_BUCKETS);
+    }
+
+    public RoutePlanner(ReachabilityGraph graph, int socBuckets) {
+        this.graph = graph;
+        this.buckets = socBuckets;
+    }
+
+    // Best plan starting fully charged, or null if the destination cannot be reached
+    public RoutePlan plan(double startLat, double startLon, double endLat, double endLon,
+                          VehicleProfile vehicle, Objective objective) {
+        return plan(startLat, startLon, endLat, endLon, vehicle, objective, 1.0);
+    }
+
+    // As above, starting with the given fraction of the battery's capacity
+    public RoutePlan plan(double startLat, double startLon, double endLat, double endLon,
+                          VehicleProfile vehicle, Objective objective, double startSoc) {
+        return plan(startLat, startLon, endLat, endLon, vehicle, objective, startSoc, null);
+    }
+
+    // As above, leaving at the given time; null ignores opening hours and maintenance
+    public RoutePlan plan(double startLat, double startLon, double endLat, double endLon,
+                          VehicleProfile vehicle, Objective objective, double startSoc, LocalDateTime departure) {
+        return plan(startLat, startLon, endLat, endLon, vehicle, objective, startSoc, departure, null);
+    }
+
+    // As above, with every station's distance to the destination already known (null computes them)
+    RoutePlan plan(double startLat, double startLon, double endLat, double endLon, VehicleProfile vehicle,
+                   Objective objective, double startSoc, LocalDateTime departure, double[] distanceToEnd) {
+        Problem problem = new Problem(startLat, startLon, endLat, endLon, vehicle, startSoc, departure,
+            distanceToEnd, true);
+        return new Search(problem, objective, true).run();
+    }
+
+    // As above, without the lower bounds guiding the search and driving on from every charge level:
+    // Dijkstra over every state the plan could pass
+    RoutePlan planExhaustively(double startLat, double startLon, double endLat, double endLon,
+                               VehicleProfile vehicle, Objective objective, LocalDateTime departure) {
+        Problem problem = new Problem(startLat, startLon, endLat, endLon, vehicle, 1.0, departure, null, false);
+        return new Search(problem, objective, false).run();
+    }
+
+    /**
+     * Every plan no other plan beats on both total time and charging cost,
+     * fastest first (and so most expensive first), from a single search. Empty
+     * if the destination cannot be reached.
+     */
+    public List<RoutePlan> paretoFront(double startLat, double startLon, double endLat, double endLon,
+                                       VehicleProfile vehicle) {
+        return paretoFront(startLat, startLon, endLat, endLon, vehicle, null);
+    }
+
+    // As above, leaving at the given time; null ignores opening hours and maintenance
+    public List<RoutePlan> paretoFront(double startLat, double startLon, double endLat, double endLon,
+                                       VehicleProfile vehicle, LocalDateTime departure) {
+        // Every place from every charge level: between the amounts a single objective settles
+        // on, each split of a charge between two stops can be a trade-off of its own
+        Problem problem = new Problem(startLat, startLon, endLat, endLon, vehicle, 1.0, departure, null, false);
+        return new ParetoSearch(problem, true).run();
+    }
+
+    // As above, by label-correcting: labels in the order they were made, with neither bounds nor pruning
+    List<RoutePlan> paretoFrontExhaustively(double startLat, double startLon, double endLat, double endLon,
+                                            VehicleProfile vehicle, LocalDateTime departure) {
+        Problem problem = new Problem(startLat, startLon, endLat, endLon, vehicle, 1.0, departure, null, false);
+        return new ParetoSearch(problem, false).run();
+    }
+
+    private interface MoveVisitor {
+        void move(int to, double hours, double money);
+    }
+
+    // The state space of one query, shared by both searches
+    private class Problem {
+        private final int n = graph.size();
+        private final int start = n;
+        private final int end = n + 1;
+        private final double[] startLatLon;
+        private final double[] endLatLon;
+        private final double rangeKm;
+        private final double capacity;
+        private final double bucketKWh;
+        private final double startSoc;
+
+        private final double[] distanceToEnd;
+        private final double startToEnd;
+        private final ReachabilityGraph.Edges startEdges;
+        private final ChargingCurve.Table[] chargingTimes;
+        private final double[][] bucketHours; // hours to charge each bucket, shared by stations of equal power
+        private final boolean[][] rateChanges; // whether the bucket charges at another rate than the one before
+        private final boolean pruned;
+        private final double[] pricePerKWh;
+        private final boolean timed;
+        private final long departureSecond;
+        private final ChargingStation.OperatingHours[] openingHours;
+        private final ChargingStation.MaintenanceSchedule[] maintenance;
+        private double fastestHoursPerKWh = Double.POSITIVE_INFINITY;
+        private double lowestPrice = Double.POSITIVE_INFINITY;
+
+        Problem(double startLat, double startLon, double endLat, double endLon, VehicleProfile vehicle,
+                double startSoc, LocalDateTime departure, double[] distanceToEnd, boolean pruned) {
+            this.startLatLon = new double[] {startLat, startLon};
+            this.endLatLon = new double[] {endLat, endLon};
+            // Edges longer than the graph's range are not known, so never plan beyond it
+            this.rangeKm = Math.min(vehicle.getUsableRange(), graph.getRangeKm());
+            this.capacity = vehicle.getBatteryCapacity();
+            this.bucketKWh = capacity / buckets;
+            this.startSoc = Math.max(0.0, Math.min(1.0, startSoc));
+            this.pruned = pruned;
+
+            this.distanceToEnd = distanceToEnd != null ? distanceToEnd : graph.distancesFrom(endLat, endLon);
+            startToEnd = GeoMath.distanceKm(startLat, startLon, endLat, endLon);
+            startEdges = graph.edgesFrom(startLat, startLon);
+            ChargingCurve curve = ChargingCurve.forVehicle(vehicle);
+            chargingTimes = new ChargingCurve.Table[n];
+            bucketHours = new double[n][];
+            rateChanges = new boolean[n][];
+            Map<ChargingCurve.Table, Integer> tables = new IdentityHashMap<>();
+            pricePerKWh = new double[n];
+            timed = departure != null;
+            departureSecond = timed ? ChargingStation.MaintenanceSchedule.epochSecond(departure) : 0;
+            openingHours = new ChargingStation.OperatingHours[timed ? n : 0];
+            maintenance = new ChargingStation.MaintenanceSchedule[timed ? n : 0];
+            for (int i = 0; i < n; i++) {
+                chargingTimes[i] = curve.table(graph.getMaxChargingPower(i));
+                Integer same = tables.putIfAbsent(chargingTimes[i], i);
+                if (same != null) {
+                    bucketHours[i] = bucketHours[same];
+                    rateChanges[i] = rateChanges[same];
+                } else {
+                    bucketBreakdown(i);
+                }
+                pricePerKWh[i] = graph.getPricePerKWh(i);
+                if (timed) {
+                    openingHours[i] = graph.getOperatingHours(i);
+                    maintenance[i] = graph.getMaintenance(i);
+                }
+                if (graph.isAvailable(i)) {
+                    fastestHoursPerKWh = Math.min(fastestHoursPerKWh, chargingTimes[i].getFastestHoursPerKWh());
+                    lowestPrice = Math.min(lowestPrice, pricePerKWh[i]);
+                }
+            }
+        }
+
+        private void bucketBreakdown(int node) {
+            bucketHours[node] = new double[buckets];
+            rateChanges[node] = new boolean[buckets + 1];
+            for (int b = 0; b < buckets; b++) {
+                bucketHours[node][b] = chargingTimes[node].hours((double) b / buckets, (double) (b + 1) / buckets);
+                rateChanges[node][b] = b > 0 && Math.abs(bucketHours[node][b] - bucketHours[node][b - 1])
+                    > 1e-6 * bucketHours[node][b - 1];
+            }
+        }
+
+        boolean hasRange() {
+            return rangeKm > 0;
+        }
+
+        // Without range the only plan is not to move
+        RoutePlan withoutRange() {
+            return startToEnd == 0 ? buildPlan(new ArrayList<>(), new ArrayList<>(), 0) : null;
+        }
+
+        int stateCount() {
+            return (n + 2) * (buckets + 1) * 2;
+        }
+
+        int initialState() {
+            // Rounded down like any arrival, so the plan never assumes more charge
+            return state(start, (int) Math.floor(startSoc * buckets + 1e-9), true);
+        }
+
+        boolean isEnd(int s) {
+            return node(s) == end;
+        }
+
+        // Moves from a state reached after the given hours on the way
+        void expand(int s, double elapsedHours, MoveVisitor visitor) {
+            int node = node(s);
+            int bucket = bucket(s);
+            if (node < n && bucket < buckets) {
+                // Charge one more bucket here, first waiting for the station if just arrived.
+                // Charging goes on only while the station stays open and out of maintenance.
+                double wait = charged(s) ? (clearFor(node, elapsedHours, bucketHours[node][bucket]) ? 0.0
+                    : Double.POSITIVE_INFINITY) : waitHours(node, elapsedHours, bucketHours[node][bucket]);
+                if (wait < Double.POSITIVE_INFINITY) {
+                    visitor.move(state(node, bucket + 1, true),
+                        wait + bucketHours[node][bucket],
+                        bucketKWh * pricePerKWh[node]);
+                }
+            }
+            if (charged(s)) {
+                drive(node, bucket, visitor);
+            }
+        }
+
+        // Where charging runs at one rate a stop either goes on to where the rate changes
+        // or takes just enough to reach the next place (the usual refuelling exchange
+        // argument), so in between only the places the last bucket made reachable are
+        // tried. Where the rate changes, as all along a tapering curve, every place is:
+        // there the best split of a charge between two stops can fall anywhere. This only
+        // holds for one objective at a time, so problems for the Pareto front are not pruned.
+        private void drive(int node, int bucket, MoveVisitor visitor) {
+            double reachKm = rangeKm * bucket / buckets + 1e-6;
+            double minKm = !pruned || node == start || bucket == buckets || rateChanges[node][bucket]
+                ? -1.0 : rangeKm * (bucket - 1) / buckets + 1e-6;
+            double toEnd = node == start ? startToEnd : distanceToEnd[node];
+            if (toEnd <= reachKm && toEnd > minKm) {
+                visitor.move(state(end, 0, false), toEnd / AVERAGE_SPEED_KMH, 0.0);
+            }
+            ReachabilityGraph.Edges edges = node == start ? startEdges : graph.neighbours(node);
+            for (int k = edges.firstBeyond(minKm); k < edges.getTo() && edges.distanceKm(k) <= reachKm; k++) {
+                int target = edges.target(k);
+                // Stations added while this search runs are not part of it
+                if (target >= n || !graph.isAvailable(target)) {
+                    continue;
+                }
+                int arrival = (int) Math.floor(bucket - edges.distanceKm(k) * buckets / rangeKm + 1e-9);
+                visitor.move(state(target, Math.max(0, arrival), false),
+                    edges.distanceKm(k) / AVERAGE_SPEED_KMH, 0.0);
+            }
+        }
+
+        // Hours from arriving at a station after the given hours on the way until it is
+        // open and not under maintenance for long enough to charge the given hours;
+        // infinite if it never is. Capping the wait would let an earlier arrival lose a
+        // station a later one can use.
+        double waitHours(int node, double elapsedHours, double chargingHours) {
+            if (!timed) {
+                return 0.0;
+            }
+            long arrival = departureSecond + (long) Math.ceil(elapsedHours * 3600 - 1e-6);
+            long seconds = (long) Math.ceil(chargingHours * 3600 - 1e-6);
+            long time = arrival;
+            long giveUp = Long.MAX_VALUE;
+            while (true) {
+                if (maintenance[node] != null) {
+                    time += maintenance[node].secondsUntilClear(time);
+                }
+                int opensIn = openingHours[node] != null ? openingHours[node].minutesUntilOpen(minuteOfWeek(time)) : 0;
+                if (opensIn < 0) {
+                    return Double.POSITIVE_INFINITY;
+                }
+                if (opensIn == 0) {
+                    long blocked = blockedAfter(node, time, seconds);
+                    if (blocked < 0) {
+                        return (time - arrival) / 3600.0;
+                    }
+                    // Closes or goes into maintenance too soon; try its next opening
+                    time = blocked;
+                    if (giveUp == Long.MAX_VALUE && (maintenance[node] == null
+                            || maintenance[node].secondsUntilNextWindow(time) < 0)) {
+                        // Without maintenance to come, a week shows every opening there is
+                        giveUp = time + ChargingStation.OperatingHours.MINUTES_PER_WEEK * 60L;
+                    }
+                    if (time > giveUp) {
+                        return Double.POSITIVE_INFINITY;
+                    }
+                    continue;
+                }
+                // Opening may fall in a maintenance window, so check again from there
+                time = (Math.floorDiv(time, 60) + opensIn) * 60;
+            }
+        }
+
+        // Whether a station open after the given hours on the way stays open and out of
+        // maintenance for the given charging hours
+        private boolean clearFor(int node, double elapsedHours, double chargingHours) {
+            if (!timed) {
+                return true;
+            }
+            long time = departureSecond + (long) Math.ceil(elapsedHours * 3600 - 1e-6);
+            return blockedAfter(node, time, (long) Math.ceil(chargingHours * 3600 - 1e-6)) < 0;
+        }
+
+        // First second within the given seconds from an open, clear time at which the
+        // station is closed or under maintenance, or -1 if there is none
+        private long blockedAfter(int node, long time, long seconds) {
+            long blocked = -1;
+            if (maintenance[node] != null) {
+                long next = maintenance[node].secondsUntilNextWindow(time);
+                if (next >= 0 && next < seconds) {
+                    blocked = time + next;
+                }
+            }
+            if (openingHours[node] != null) {
+                // Minutes are open or closed as a whole
+                int open = openingHours[node].minutesUntilClosed(minuteOfWeek(time));
+                long closes = (Math.floorDiv(time, 60) + open) * 60;
+                if (open >= 0 && closes < time + seconds && (blocked < 0 || closes < blocked)) {
+                    blocked = closes;
+                }
+            }
+            return blocked;
+        }
+
+        // Lower bound on the hours still needed from a state
+        double hoursBound(int s) {
+            double missingKWh = missingKWh(s);
+            return toEnd(s) / AVERAGE_SPEED_KMH + (missingKWh > 0 ? missingKWh * fastestHoursPerKWh : 0.0);
+        }
+
+        // Lower bound on the charging cost still to pay from a state
+        double moneyBound(int s) {
+            double missingKWh = missingKWh(s);
+            return missingKWh > 0 ? missingKWh * lowestPrice : 0.0;
+        }
+
+        private double toEnd(int s) {
+            int node = node(s);
+            return node == end ? 0.0 : node == start ? startToEnd : distanceToEnd[node];
+        }
+
+        private double missingKWh(int s) {
+            return Math.max(0.0, toEnd(s) / rangeKm - (double) bucket(s) / buckets) * capacity;
+        }
+
+        // Waits are taken at the times the search arrived, which is when it found the stations open
+        RoutePlan buildPlan(List<Integer> path, List<Double> elapsedHours, int expanded) {
+            List<RoutePlan.Stop> stops = new ArrayList<>();
+            double drivingKm = 0.0;
+            double chargingHours = 0.0;
+            double chargingCost = 0.0;
+            double waitingHours = 0.0;
+            double[] previous = startLatLon;
+            double soc = startSoc;
+            for (int k = 0; k < path.size(); k++) {
+                int node = node(path.get(k));
+                if (k > 0 && node == node(path.get(k - 1))) {
+                    continue;
+                }
+                double[] position = node == end ? endLatLon
+                    : node == start ? startLatLon : new double[] {graph.getLatitude(node), graph.getLongitude(node)};
+                double legKm = GeoMath.distanceKm(previous[0], previous[1], position[0], position[1]);
+                drivingKm += legKm;
+                soc -= legKm / rangeKm;
+                previous = position;
+                if (node < n) {
+                    // Consecutive states at one station are its charging steps. The search
+                    // rounded the arrival charge down; the energy is what the real one needs.
+                    int last = k;
+                    while (last + 1 < path.size() && node(path.get(last + 1)) == node) last++;
+                    double departure = (double) bucket(path.get(last)) / buckets;
+                    double energy = Math.max(0.0, departure - soc) * capacity;
+                    double hours = chargingTimes[node].hours(soc, departure);
+                    double wait = waitHours(node, elapsedHours.get(k), bucketHours[node][bucket(path.get(k))]);
+                    stops.add(new RoutePlan.Stop(graph.getStation(node), soc, departure, energy, hours, wait));
+                    soc = Math.max(soc, departure);
+                    chargingHours += hours;
+                    chargingCost += energy * pricePerKWh[node];
+                    waitingHours += wait;
+                }
+            }
+            return new RoutePlan(stops, drivingKm, drivingKm / AVERAGE_SPEED_KMH,
+                chargingHours, waitingHours, chargingCost, expanded);
+        }
+
+        private int minuteOfWeek(long epochSecond) {
+            // 1970-01-01 was a Thursday, three days after minute 0 of the week
+            return (int) Math.floorMod(Math.floorDiv(epochSecond, 60) + 3 * 24 * 60,
+                (long) ChargingStation.OperatingHours.MINUTES_PER_WEEK);
+        }
+
+        private int state(int node, int bucket, boolean charged) {
+            return ((node * (buckets + 1)) + bucket) * 2 + (charged ? 1 : 0);
+        }
+
+        private int node(int state) {
+            return (state >> 1) / (buckets + 1);
+        }
+
+        private int bucket(int state) {
+            return (state >> 1) % (buckets + 1);
+        }
+
+        private boolean charged(int state) {
+            return (state & 1) != 0;
+        }
+    }
+
+    // A* on one objective, with the other as a tie-break
+    private class Search implements MoveVisitor {
+        private final Problem problem;
+        private final Objective objective;
+        private final boolean informed; // whether to use the lower bounds
+        private final double[] cost;
+        private final double[] elapsed; // hours on the way, whatever the objective
+        private final int[] parent;
+        private final BitSet closed;
+        private final StateQueue open = new StateQueue();
+        private int current;
+        private int expanded;
+
+        Search(Problem problem, Objective objective, boolean informed) {
+            this.problem = problem;
+            this.objective = objective;
+            this.informed = informed;
+            cost = new double[problem.stateCount()];
+            Arrays.fill(cost, Double.POSITIVE_INFINITY);
+            elapsed = new double[problem.stateCount()];
+            parent = new int[problem.stateCount()];
+            closed = new BitSet(problem.stateCount());
+        }
+
+        RoutePlan run() {
+            if (!problem.hasRange()) {
+                return problem.withoutRange();
+            }
+            int initial = problem.initialState();
+            cost[initial] = 0.0;
+            parent[initial] = -1;
+            open.add(heuristic(initial), 0.0, initial);
+
+            while (!open.isEmpty()) {
+                int s = open.poll();
+                if (closed.get(s)) {
+                    continue;
+                }
+                closed.set(s);
+                checkCancelled(++expanded);
+                if (problem.isEnd(s)) {
+                    List<Integer> path = new ArrayList<>();
+                    List<Double> pathHours = new ArrayList<>();
+                    for (int p = s; p >= 0; p = parent[p]) {
+                        path.add(0, p);
+                        pathHours.add(0, elapsed[p]);
+                    }
+                    return problem.buildPlan(path, pathHours, expanded);
+                }
+                current = s;
+                problem.expand(s, elapsed[s], this);
+            }
+            return null;
+        }
+
+        @Override
+        public void move(int to, double hours, double money) {
+            if (closed.get(to)) {
+                return;
+            }
+            double candidate = cost[current] + weight(hours, money);
+            if (candidate < cost[to]) {
+                cost[to] = candidate;
+                elapsed[to] = elapsed[current] + hours;
+                parent[to] = current;
+                open.add(candidate + heuristic(to), 0.0, to);
+            }
+        }
+
+        private double weight(double hours, double money) {
+            return objective == Objective.TIME ? hours + TIE_BREAK * money : money + TIE_BREAK * hours;
+        }
+
+        private double heuristic(int s) {
+            return informed ? weight(problem.hoursBound(s), problem.moneyBound(s)) : 0.0;
+        }
+    }
+
+    /**
+     * Multi-objective label-setting search (NAMOA*). Each state keeps every
+     * (hours, cost) label no other label there beats on both; labels are
+     * expanded in order of their lower bounds, fastest first. Every plan found
+     * so far is then at least as fast as anything still open, so a label is
+     * dropped as soon as its cost bound is no better than the cheapest plan.
+     *
+     * Where charging runs at one rate the fill-up-or-just-enough moves report
+     * a pair of stops that could split a charge differently by its two
+     * extremes; splits in between trade time for cost linearly between them.
+     */
+    private class ParetoSearch implements MoveVisitor {
+        private final Problem problem;
+        private final boolean informed; // whether to use the lower bounds
+        private final int[] stateHead; // first live label of each state, -1 if none
+
+        private double[] hours = new double[1024];
+        private double[] money = new double[1024];
+        private int[] labelState = new int[1024];
+        private int[] labelParent = new int[1024];
+        private int[] nextAtState = new int[1024];
+        private boolean[] dead = new boolean[1024];
+        private int labels;
+
+        private final List<Integer> goals = new ArrayList<>();
+        private double cheapestGoal = Double.POSITIVE_INFINITY;
+        private final StateQueue open = new StateQueue();
+        private int current;
+        private int expanded;
+
+        ParetoSearch(Problem problem, boolean informed) {
+            this.problem = problem;
+            this.informed = informed;
+            stateHead = new int[problem.stateCount()];
+            Arrays.fill(stateHead, -1);
+        }
+
+        List<RoutePlan> run() {
+            List<RoutePlan> front = new ArrayList<>();
+            if (!problem.hasRange()) {
+                RoutePlan plan = problem.withoutRange();
+                if (plan != null) front.add(plan);
+                return front;
+            }
+            addLabel(problem.initialState(), -1, 0.0, 0.0);
+
+            while (!open.isEmpty()) {
+                int label = open.poll();
+                if (dead[label]) {
+                    continue;
+                }
+                int s = labelState[label];
+                if (outdone(money[label], s)) {
+                    continue;
+                }
+                checkCancelled(++expanded);
+                if (problem.isEnd(s)) {
+                    goals.add(label);
+                    if (informed) cheapestGoal = money[label];
+                    continue;
+                }
+                current = label;
+                problem.expand(s, hours[label], this);
+            }
+
+            for (int goal : goals) {
+                if (dead[goal]) {
+                    continue; // beaten by a later plan, which only happens without the bounds
+                }
+                List<Integer> path = new ArrayList<>();
+                List<Double> pathHours = new ArrayList<>();
+                for (int l = goal; l >= 0; l = labelParent[l]) {
+                    path.add(0, labelState[l]);
+                    pathHours.add(0, hours[l]);
+                }
+                front.add(problem.buildPlan(path, pathHours, expanded));
+            }
+            // Charging only what the real arrival charge needs can make a plan beat
+            // another one on both counts once the rounding is gone
+            List<RoutePlan> kept = new ArrayList<>();
+            for (RoutePlan plan : front) {
+                boolean dominated = false;
+                for (RoutePlan other : front) {
+                    if (other != plan && dominates(other, plan)
+                        && (!dominates(plan, other) || front.indexOf(other) < front.indexOf(plan))) {
+                        dominated = true;
+                        break;
+                    }
+                }
+                if (!dominated) kept.add(plan);
+            }
+            kept.sort(Comparator.comparingDouble(RoutePlan::getTotalHours));
+            return kept;
+        }
+
+        @Override
+        public void move(int to, double moveHours, double moveMoney) {
+            double h = hours[current] + moveHours;
+            double m = money[current] + moveMoney;
+            if (outdone(m, to)) {
+                return;
+            }
+            // Drop the new label if a label here is as good on both counts; retire
+            // the labels it beats on both
+            int previous = -1;
+            for (int l = stateHead[to]; l >= 0; l = nextAtState[l]) {
+                if (hours[l] <= h + LABEL_EPSILON && money[l] <= m + LABEL_EPSILON) {
+                    return;
+                }
+                if (h <= hours[l] && m <= money[l]) {
+                    dead[l] = true;
+                    if (previous < 0) {
+                        stateHead[to] = nextAtState[l];
+                    } else {
+                        nextAtState[previous] = nextAtState[l];
+                    }
+                } else {
+                    previous = l;
+                }
+            }
+            addLabel(to, current, h, m);
+        }
+
+        private void addLabel(int s, int parent, double h, double m) {
+            if (labels == hours.length) {
+                int size = labels * 2;
+                hours = Arrays.copyOf(hours, size);
+                money = Arrays.copyOf(money, size);
+                labelState = Arrays.copyOf(labelState, size);
+                labelParent = Arrays.copyOf(labelParent, size);
+                nextAtState = Arrays.copyOf(nextAtState, size);
+                dead = Arrays.copyOf(dead, size);
+            }
+            int label = labels++;
+            hours[label] = h;
+            money[label] = m;
+            labelState[label] = s;
+            labelParent[label] = parent;
+            nextAtState[label] = stateHead[s];
+            stateHead[s] = label;
+            if (informed) {
+                open.add(h + problem.hoursBound(s), m + problem.moneyBound(s), label);
+            } else {
+                open.add(label, 0.0, label);
+            }
+        }
+
+        // Whether a label with this cost at a state can no longer beat the cheapest plan
+        private boolean outdone(double m, int s) {
+            return informed && m + problem.moneyBound(s) >= cheapestGoal;
+        }
+
+        private boolean dominates(RoutePlan a, RoutePlan b) {
+            return a.getTotalHours() <= b.getTotalHours() + LABEL_EPSILON
+                && a.getChargingCost() <= b.getChargingCost() + LABEL_EPSILON;
+        }
+    }
+
+    private static void checkCancelled(int expanded) {
+        if ((expanded & 1023) == 0 && Thread.currentThread().isInterrupted()) {
+            throw new CancellationException("Route planning cancelled");
+        }
+    }
+
+    // Binary min-heap of values ordered by (key, tie key), without boxing; stale entries are skipped on poll
+    private static class StateQueue {
+        private double[] keys = new double[64];
+        private double[] tieKeys = new double[64];
+        private int[] values = new int[64];
+        private int size;
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        void add(double key, double tieKey, int value) {
+            if (size == keys.length) {
+                keys = Arrays.copyOf(keys, size * 2);
+                tieKeys = Arrays.copyOf(tieKeys, size * 2);
+                values = Arrays.copyOf(values, size * 2);
+            }
+            int i = size++;
+            while (i > 0) {
+                int up = (i - 1) >>> 1;
+                if (!less(key, tieKey, keys[up], tieKeys[up])) break;
+                keys[i] = keys[up];
+                tieKeys[i] = tieKeys[up];
+                values[i] = values[up];
+                i = up;
+            }
+            keys[i] = key;
+            tieKeys[i] = tieKey;
+            values[i] = value;
+        }
+
+        int poll() {
+            int result = values[0];
+            size--;
+            double key = keys[size];
+            double tieKey = tieKeys[size];
+            int value = values[size];
+            int i = 0;
+            while (true) {
+                int child = 2 * i + 1;
+                if (child >= size) break;
+                if (child + 1 < size && less(keys[child + 1], tieKeys[child + 1], keys[child], tieKeys[child])) child++;
+                if (!less(keys[child], tieKeys[child], key, tieKey)) break;
+                keys[i] = keys[child];
+                tieKeys[i] = tieKeys[child];
+                values[i] = values[child];
+                i = child;
+            }
+            keys[i] = key;
+            tieKeys[i] = tieKey;
+            values[i] = value;
+            return result;
+        }
+
+        private static boolean less(double key, double tieKey, double otherKey, double otherTieKey) {
+            return key < otherKey || (key == otherKey && tieKey < otherTieKey);
+        }
+    }
+}
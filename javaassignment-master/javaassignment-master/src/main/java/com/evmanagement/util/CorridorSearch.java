@@ -0,0 +1,163 @@
+package com.evmanagement.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.function.ToDoubleFunction;
+import org.jxmapviewer.viewer.GeoPosition;
+
+/**
+ * Finds the points within a given distance of a route polyline. For each
+ * segment the spatial index is asked for candidates inside the segment's
+ * bounding box, buffered by the corridor width and widened to include any
+ * poleward bulge of the great circle; candidates are then kept only if their
+ * great-circle distance to the segment (cross-track distance, or the distance
+ * to the nearer endpoint when they lie beyond it) is within the width. Most
+ * candidates are settled first by comparing squared chords to the endpoints:
+ * one within the width of an endpoint is inside, and one further than the
+ * segment length plus the width from the start cannot be.
+ */
+public class CorridorSearch<T> {
+    private final KdTree<T> index;
+    private final ToDoubleFunction<? super T> latitude;
+    private final ToDoubleFunction<? super T> longitude;
+
+    public CorridorSearch(KdTree<T> index, ToDoubleFunction<? super T> latitude,
+                          ToDoubleFunction<? super T> longitude) {
+        this.index = index;
+        this.latitude = latitude;
+        this.longitude = longitude;
+    }
+
+    public List<T> find(List<GeoPosition> polyline, double widthKm) {
+        double[] lats = new double[polyline.size()];
+        double[] lons = new double[polyline.size()];
+        for (int i = 0; i < polyline.size(); i++) {
+            lats[i] = polyline.get(i).getLatitude();
+            lons[i] = polyline.get(i).getLongitude();
+        }
+        return find(lats, lons, widthKm);
+    }
+
+    // Points within widthKm of the polyline through (lats[i], lons[i]), each reported once
+    public List<T> find(double[] lats, double[] lons, double widthKm) {
+        if (lats.length == 0) {
+            return Collections.emptyList();
+        }
+        if (lats.length == 1) {
+            return index.withinRadius(lats[0], lons[0], widthKm);
+        }
+        List<T> result = new ArrayList<>();
+        Set<T> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+        double widthChord = GeoMath.kmToChordSquared(widthKm);
+        for (int i = 0; i + 1 < lats.length; i++) {
+            Segment segment = new Segment(lats[i], lons[i], lats[i + 1], lons[i + 1]);
+            double reachChord = GeoMath.kmToChordSquared(segment.length * GeoMath.EARTH_RADIUS_KM + widthKm);
+            for (T candidate : segment.candidates(widthKm)) {
+                if (seen.contains(candidate)) {
+                    continue;
+                }
+                if (segment.within(latitude.applyAsDouble(candidate), longitude.applyAsDouble(candidate),
+                        widthKm, widthChord, reachChord)) {
+                    seen.add(candidate);
+                    result.add(candidate);
+                }
+            }
+        }
+        return result;
+    }
+
+    private class Segment {
+        private final double latA, lonA, latB, lonB; // degrees
+        private final double phiA, lambdaA, cosPhiA, phiB, lambdaB, cosPhiB;
+        private final double bearing; // initial bearing A -> B, radians
+        private final double length; // angular length, radians
+
+        Segment(double latA, double lonA, double latB, double lonB) {
+            this.latA = latA;
+            this.lonA = lonA;
+            this.latB = latB;
+            this.lonB = lonB;
+            this.phiA = Math.toRadians(latA);
+            this.lambdaA = Math.toRadians(lonA);
+            this.cosPhiA = Math.cos(phiA);
+            this.phiB = Math.toRadians(latB);
+            this.lambdaB = Math.toRadians(lonB);
+            this.cosPhiB = Math.cos(phiB);
+            this.bearing = bearing(phiA, lambdaA, phiB, lambdaB);
+            this.length = GeoMath.angularDistance(phiA, lambdaA, cosPhiA, phiB, lambdaB, cosPhiB);
+        }
+
+        List<T> candidates(double widthKm) {
+            double minLat = Math.min(latA, latB);
+            double maxLat = Math.max(latA, latB);
+
+            // A great circle can bulge past its endpoints' latitudes; the
+            // vertex lies on the segment when both ends head the same way towards it
+            double backBearing = bearing(phiB, lambdaB, phiA, lambdaA);
+            double vertex = Math.toDegrees(Math.acos(Math.abs(Math.sin(bearing) * cosPhiA)));
+            if (Math.cos(bearing) > 0 && Math.cos(backBearing) > 0) {
+                maxLat = Math.max(maxLat, vertex);
+            } else if (Math.cos(bearing) < 0 && Math.cos(backBearing) < 0) {
+                minLat = Math.min(minLat, -vertex);
+            }
+
+            double latBuffer = widthKm / GeoMath.KM_PER_DEGREE;
+            minLat = Math.max(-90.0, minLat - latBuffer);
+            maxLat = Math.min(90.0, maxLat + latBuffer);
+            // A point dLon east or west of the segment is at least asin(cos(lat) * sin(dLon))
+            // from it, which is smallest at the box's most poleward latitude
+            double cosMax = Math.cos(Math.toRadians(Math.max(Math.abs(minLat), Math.abs(maxLat))));
+            double sinBuffer = Math.sin(widthKm / GeoMath.EARTH_RADIUS_KM) / cosMax;
+            double lonBuffer = sinBuffer < 1.0 ? Math.toDegrees(Math.asin(sinBuffer)) : 180.0;
+            double minLon = Math.min(lonA, lonB) - lonBuffer;
+            double maxLon = Math.max(lonA, lonB) + lonBuffer;
+            return index.withinBox(minLat, maxLat, minLon, maxLon);
+        }
+
+        // Whether a point is within widthKm of the segment; the chord arguments
+        // are the squared chords of widthKm and of the segment length plus widthKm
+        boolean within(double lat, double lon, double widthKm, double widthChord, double reachChord) {
+            double phi = Math.toRadians(lat);
+            double lambda = Math.toRadians(lon);
+            double cosPhi = Math.cos(phi);
+            double chordA = GeoMath.chordSquared(phiA, lambdaA, cosPhiA, phi, lambda, cosPhi);
+            if (chordA <= widthChord) {
+                return true;
+            }
+            if (chordA > reachChord) {
+                return false;
+            }
+            if (GeoMath.chordSquared(phiB, lambdaB, cosPhiB, phi, lambda, cosPhi) <= widthChord) {
+                return true;
+            }
+            return distanceTo(phi, lambda, cosPhi) <= widthKm;
+        }
+
+        // Great-circle distance from a point to this segment, in km
+        private double distanceTo(double phi, double lambda, double cosPhi) {
+            double toPoint = GeoMath.angularDistance(phiA, lambdaA, cosPhiA, phi, lambda, cosPhi);
+            double bearingToPoint = bearing(phiA, lambdaA, phi, lambda);
+            double crossTrack = Math.asin(Math.sin(toPoint) * Math.sin(bearingToPoint - bearing));
+            double alongTrack = Math.acos(Math.max(-1.0, Math.min(1.0,
+                Math.cos(toPoint) / Math.cos(crossTrack))));
+            if (Math.cos(bearingToPoint - bearing) < 0) {
+                // Behind the start of the segment
+                return toPoint * GeoMath.EARTH_RADIUS_KM;
+            }
+            if (alongTrack > length) {
+                return GeoMath.angularDistance(phiB, lambdaB, cosPhiB, phi, lambda, cosPhi) * GeoMath.EARTH_RADIUS_KM;
+            }
+            return Math.abs(crossTrack) * GeoMath.EARTH_RADIUS_KM;
+        }
+
+        private double bearing(double phi1, double lambda1, double phi2, double lambda2) {
+            double dLambda = lambda2 - lambda1;
+            double y = Math.sin(dLambda) * Math.cos(phi2);
+            double x = Math.cos(phi1) * Math.sin(phi2) - Math.sin(phi1) * Math.cos(phi2) * Math.cos(dLambda);
+            return Math.atan2(y, x);
+        }
+    }
+}
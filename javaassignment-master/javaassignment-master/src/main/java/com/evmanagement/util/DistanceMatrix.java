@@ -0,0 +1,140 @@
+package com.evmanagement.util;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Distances in km from every origin to every destination, stored row-major
+ * as floats (one row per origin). Float keeps a 10,000 x 10,000 matrix at
+ * 400 MB and is accurate to a few metres at continental scale.
+ *
+ * The matrix is filled in blocks: each task takes a range of origins and
+ * walks the destinations a block at a time, so one block of destination
+ * coordinates stays in cache while every origin in the range is measured
+ * against it. Matrices above the parallel threshold are split by origin
+ * range across the common fork/join pool.
+ */
+public class DistanceMatrix {
+    public enum Mode {
+        HAVERSINE,
+        EQUIRECTANGULAR // see GeoMath for its error bound
+    }
+
+    private static final int BLOCK_SIZE = Integer.getInteger("evm.distance.blockSize", 512);
+    private static final int PARALLEL_THRESHOLD = Integer.getInteger("evm.distance.parallelThreshold", 1 << 16);
+
+    private final int rows;
+    private final int columns;
+    private final float[] values;
+
+    private DistanceMatrix(int rows, int columns) {
+        if ((long) rows * columns > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Distance matrix too large: " + rows + " x " + columns);
+        }
+        this.rows = rows;
+        this.columns = columns;
+        this.values = new float[rows * columns];
+    }
+
+    public static DistanceMatrix compute(GeoMath.Points origins, GeoMath.Points destinations) {
+        return compute(origins, destinations, Mode.HAVERSINE);
+    }
+
+    public static DistanceMatrix compute(GeoMath.Points origins, GeoMath.Points destinations, Mode mode) {
+        DistanceMatrix matrix = new DistanceMatrix(origins.size(), destinations.size());
+        FillTask task = new FillTask(matrix, origins, destinations, mode, 0, origins.size());
+        if ((long) matrix.rows * matrix.columns <= PARALLEL_THRESHOLD) {
+            task.compute();
+        } else {
+            ForkJoinPool.commonPool().invoke(task);
+        }
+        return matrix;
+    }
+
+    public float get(int origin, int destination) {
+        return values[origin * columns + destination];
+    }
+
+    // Copy of one origin's distances into out, which must hold columns() values
+    public void row(int origin, float[] out) {
+        System.arraycopy(values, origin * columns, out, 0, columns);
+    }
+
+    // Index of the closest destination for an origin, or -1 if there are none
+    public int nearest(int origin) {
+        int best = -1;
+        float bestDistance = Float.POSITIVE_INFINITY;
+        int offset = origin * columns;
+        for (int j = 0; j < columns; j++) {
+            if (values[offset + j] < bestDistance) {
+                bestDistance = values[offset + j];
+                best = j;
+            }
+        }
+        return best;
+    }
+
+    // Getters
+    public int rows() { return rows; }
+    public int columns() { return columns; }
+
+    private static class FillTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final DistanceMatrix matrix;
+        private final GeoMath.Points origins;
+        private final GeoMath.Points destinations;
+        private final Mode mode;
+        private final int from;
+        private final int to;
+
+        FillTask(DistanceMatrix matrix, GeoMath.Points origins, GeoMath.Points destinations,
+                 Mode mode, int from, int to) {
+            this.matrix = matrix;
+            this.origins = origins;
+            this.destinations = destinations;
+            this.mode = mode;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > 1 && (long) (to - from) * matrix.columns > PARALLEL_THRESHOLD) {
+                int mid = (from + to) >>> 1;
+                invokeAll(new FillTask(matrix, origins, destinations, mode, from, mid),
+                          new FillTask(matrix, origins, destinations, mode, mid, to));
+                return;
+            }
+            fill();
+        }
+
+        private void fill() {
+            double[] originLat = origins.latRadians();
+            double[] originLon = origins.lonRadians();
+            double[] originCos = origins.cosLatitudes();
+            double[] destLat = destinations.latRadians();
+            double[] destLon = destinations.lonRadians();
+            double[] destCos = destinations.cosLatitudes();
+            float[] values = matrix.values;
+            int columns = matrix.columns;
+            boolean exact = mode == Mode.HAVERSINE;
+
+            for (int blockStart = 0; blockStart < columns; blockStart += BLOCK_SIZE) {
+                int blockEnd = Math.min(columns, blockStart + BLOCK_SIZE);
+                for (int i = from; i < to; i++) {
+                    double phi = originLat[i];
+                    double lambda = originLon[i];
+                    double cosPhi = originCos[i];
+                    int offset = i * columns;
+                    for (int j = blockStart; j < blockEnd; j++) {
+                        double distance = exact
+                            ? GeoMath.haversineKm(phi, lambda, cosPhi, destLat[j], destLon[j], destCos[j])
+                            : GeoMath.equirectangularKm(phi, lambda, cosPhi, destLat[j], destLon[j], destCos[j]);
+                        values[offset + j] = (float) distance;
+                    }
+                }
+            }
+        }
+    }
+}
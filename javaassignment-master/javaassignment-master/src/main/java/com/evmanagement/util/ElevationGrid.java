@@ -0,0 +1,232 @@
+package com.evmanagement.util;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Local digital elevation model: heights in whole metres on a regular
+ * latitude/longitude grid, read through a memory-mapped file so only the
+ * parts a route crosses are paged in.
+ *
+ * Layout: a fixed header (magic, version, rows, columns, south-west corner
+ * and cell size in degrees), then rows * columns signed 16-bit heights, row by
+ * row from the south and west to east within a row. Heights between grid
+ * points are interpolated bilinearly from the surrounding points that have
+ * data; where none of them has, the height is unknown (NaN). Points outside
+ * the grid take the nearest edge. Run {@link #main} to
+ * convert an ESRI ASCII grid (.asc), the usual export format of SRTM tiles.
+ */
+public class ElevationGrid implements Closeable {
+    public static final String DEFAULT_FILE = "elevation.dem";
+    public static final short NO_DATA = Short.MIN_VALUE;
+
+    private static final int MAGIC = 0x4556444D; // "EVDM"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 64;
+
+    // Header offsets
+    private static final int H_MAGIC = 0;
+    private static final int H_VERSION = 4;
+    private static final int H_ROWS = 8;
+    private static final int H_COLUMNS = 12;
+    private static final int H_SOUTH = 16;
+    private static final int H_WEST = 24;
+    private static final int H_CELL_DEGREES = 32;
+
+    private static ElevationGrid defaultGrid;
+    private static boolean defaultOpened;
+
+    private final RandomAccessFile raf;
+    private final MappedByteBuffer buffer;
+    private final int rows;
+    private final int columns;
+    private final double south;
+    private final double west;
+    private final double cellDegrees;
+
+    private ElevationGrid(File file) throws IOException {
+        raf = new RandomAccessFile(file, "r");
+        try {
+            if (raf.length() > Integer.MAX_VALUE) {
+                throw new IOException("Elevation grid too large to map: " + file);
+            }
+            buffer = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+            if (raf.length() < HEADER_SIZE || buffer.getInt(H_MAGIC) != MAGIC) {
+                throw new IOException("Not an elevation grid: " + file);
+            }
+            if (buffer.getInt(H_VERSION) != VERSION) {
+                throw new IOException("Unsupported elevation grid version " + buffer.getInt(H_VERSION));
+            }
+            rows = buffer.getInt(H_ROWS);
+            columns = buffer.getInt(H_COLUMNS);
+            south = buffer.getDouble(H_SOUTH);
+            west = buffer.getDouble(H_WEST);
+            cellDegrees = buffer.getDouble(H_CELL_DEGREES);
+            if (rows < 2 || columns < 2 || HEADER_SIZE + 2L * rows * columns > raf.length()) {
+                throw new IOException("Truncated elevation grid: " + file);
+            }
+        } catch (IOException e) {
+            raf.close();
+            throw e;
+        }
+    }
+
+    public static ElevationGrid open(File file) throws IOException {
+        return new ElevationGrid(file);
+    }
+
+    // The grid in evm.elevation.grid (default elevation.dem), or null if there is none
+    public static synchronized ElevationGrid getDefault() {
+        if (!defaultOpened) {
+            defaultOpened = true;
+            File file = new File(System.getProperty("evm.elevation.grid", DEFAULT_FILE));
+            if (file.exists()) {
+                try {
+                    defaultGrid = open(file);
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+        return defaultGrid;
+    }
+
+    // Height in metres at a point, interpolated between those of the four surrounding grid points
+    // that have data, or NaN if none has
+    public double elevation(double lat, double lon) {
+        double y = Math.max(0.0, Math.min(rows - 1, (lat - south) / cellDegrees));
+        double x = Math.max(0.0, Math.min(columns - 1, (lon - west) / cellDegrees));
+        int row = Math.min((int) y, rows - 2);
+        int column = Math.min((int) x, columns - 2);
+        double fy = y - row;
+        double fx = x - column;
+
+        short southWest = height(row, column);
+        short southEast = height(row, column + 1);
+        short northWest = height(row + 1, column);
+        short northEast = height(row + 1, column + 1);
+        if (southWest != NO_DATA && southEast != NO_DATA && northWest != NO_DATA && northEast != NO_DATA) {
+            double southEdge = southWest + (southEast - southWest) * fx;
+            double northEdge = northWest + (northEast - northWest) * fx;
+            return southEdge + (northEdge - southEdge) * fy;
+        }
+        // Bilinear weights over the corners with data only
+        double sum = 0.0;
+        double weights = 0.0;
+        if (southWest != NO_DATA) {
+            sum += (1 - fx) * (1 - fy) * southWest;
+            weights += (1 - fx) * (1 - fy);
+        }
+        if (southEast != NO_DATA) {
+            sum += fx * (1 - fy) * southEast;
+            weights += fx * (1 - fy);
+        }
+        if (northWest != NO_DATA) {
+            sum += (1 - fx) * fy * northWest;
+            weights += (1 - fx) * fy;
+        }
+        if (northEast != NO_DATA) {
+            sum += fx * fy * northEast;
+            weights += fx * fy;
+        }
+        return weights > 0 ? sum / weights : Double.NaN;
+    }
+
+    private short height(int row, int column) {
+        return buffer.getShort(HEADER_SIZE + 2 * (row * columns + column));
+    }
+
+    // Getters
+    public int getRows() { return rows; }
+    public int getColumns() { return columns; }
+    public double getSouth() { return south; }
+    public double getWest() { return west; }
+    public double getCellDegrees() { return cellDegrees; }
+
+    @Override
+    public void close() throws IOException {
+        raf.close();
+    }
+
+    // Heights row by row from the south, each row from the west
+    public static void write(File file, int rows, int columns, double south, double west, double cellDegrees,
+                             short[] heights) throws IOException {
+        if (rows < 2 || columns < 2 || heights.length != rows * columns) {
+            throw new IllegalArgumentException("A " + rows + " x " + columns + " grid cannot hold "
+                + heights.length + " heights; grids are at least 2 x 2");
+        }
+        long size = HEADER_SIZE + 2L * heights.length;
+        try (RandomAccessFile out = new RandomAccessFile(file, "rw")) {
+            out.setLength(size);
+            MappedByteBuffer map = out.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+            map.putInt(H_MAGIC, MAGIC);
+            map.putInt(H_VERSION, VERSION);
+            map.putInt(H_ROWS, rows);
+            map.putInt(H_COLUMNS, columns);
+            map.putDouble(H_SOUTH, south);
+            map.putDouble(H_WEST, west);
+            map.putDouble(H_CELL_DEGREES, cellDegrees);
+            map.position(HEADER_SIZE);
+            map.asShortBuffer().put(heights);
+            map.force();
+        }
+    }
+
+    // Converts an ESRI ASCII grid: ElevationGrid <input.asc> [output.dem]
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.out.println("Usage: ElevationGrid <input.asc> [output.dem]");
+            return;
+        }
+        File output = new File(args.length > 1 ? args[1] : DEFAULT_FILE);
+        try (BufferedReader in = new BufferedReader(new FileReader(args[0]), 1 << 16)) {
+            Map<String, String> header = new HashMap<>();
+            String line;
+            while ((line = in.readLine()) != null) {
+                String[] fields = line.trim().split("\\s+");
+                if (fields.length != 2 || !Character.isLetter(fields[0].charAt(0))) {
+                    break;
+                }
+                header.put(fields[0].toLowerCase(), fields[1]);
+            }
+            int columns = Integer.parseInt(header.get("ncols"));
+            int rows = Integer.parseInt(header.get("nrows"));
+            double cellDegrees = Double.parseDouble(header.get("cellsize"));
+            // Corner coordinates are the outer edge of the cells, centre coordinates the first grid point
+            double west = header.containsKey("xllcenter") ? Double.parseDouble(header.get("xllcenter"))
+                : Double.parseDouble(header.get("xllcorner")) + cellDegrees / 2;
+            double south = header.containsKey("yllcenter") ? Double.parseDouble(header.get("yllcenter"))
+                : Double.parseDouble(header.get("yllcorner")) + cellDegrees / 2;
+            double noData = header.containsKey("nodata_value")
+                ? Double.parseDouble(header.get("nodata_value")) : Double.NaN;
+
+            // The file lists rows from the north
+            short[] heights = new short[rows * columns];
+            int read = 0;
+            while (line != null && read < heights.length) {
+                for (String field : line.trim().split("\\s+")) {
+                    if (field.isEmpty() || read == heights.length) continue;
+                    double value = Double.parseDouble(field);
+                    int row = rows - 1 - read / columns;
+                    heights[row * columns + read % columns] = value == noData ? NO_DATA
+                        : (short) Math.max(Short.MIN_VALUE + 1, Math.min(Short.MAX_VALUE, Math.round(value)));
+                    read++;
+                }
+                line = in.readLine();
+            }
+            if (read < heights.length) {
+                throw new IOException("Expected " + heights.length + " heights, found " + read);
+            }
+            write(output, rows, columns, south, west, cellDegrees, heights);
+            System.out.printf("%d x %d grid, %.4f degree cells, written to %s%n", rows, columns, cellDegrees, output);
+        }
+    }
+}
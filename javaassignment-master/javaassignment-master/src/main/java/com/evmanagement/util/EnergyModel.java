@@ -0,0 +1,131 @@
+package com.evmanagement.util;
+
+/**
+ * Battery energy for driving along a polyline, integrated over short segments
+ * with heights from an {@link ElevationGrid}. Legs are sampled every
+ * {@code evm.energy.sampleMeters} (default 250 m). A climb costs its potential
+ * energy through the drivetrain. On a descent gravity first covers the flat
+ * road consumption, and only the rest reaches the brakes, where regenerative
+ * braking recovers {@code evm.energy.regenEfficiency} (default 0.6) of it.
+ * Profiles carry no mass, so every car weighs {@code evm.energy.vehicleMassKg}
+ * (default 1800 kg).
+ *
+ * The integration runs over the coordinate arrays directly and allocates
+ * nothing per sample.
+ */
+public class EnergyModel {
+    private static final double GRAVITY = 9.81;
+    private static final double JOULES_PER_KWH = 3.6e6;
+    private static final double DRIVETRAIN_EFFICIENCY = 0.9;
+    private static final int SAMPLE_METERS = Integer.getInteger("evm.energy.sampleMeters", 250);
+    private static final int VEHICLE_MASS_KG = Integer.getInteger("evm.energy.vehicleMassKg", 1800);
+    private static final double REGEN_EFFICIENCY =
+        Double.parseDouble(System.getProperty("evm.energy.regenEfficiency", "0.6"));
+
+    private static EnergyModel defaultModel;
+
+    private final ElevationGrid grid;
+    private final double kWhPerMetreClimbed;
+    private final double regenEfficiency;
+    private final double sampleKm;
+
+    public EnergyModel(ElevationGrid grid) {
+        this(grid, VEHICLE_MASS_KG, REGEN_EFFICIENCY, SAMPLE_METERS);
+    }
+
+    public EnergyModel(ElevationGrid grid, double massKg, double regenEfficiency, double sampleMeters) {
+        this.grid = grid;
+        this.kWhPerMetreClimbed = massKg * GRAVITY / JOULES_PER_KWH;
+        this.regenEfficiency = regenEfficiency;
+        this.sampleKm = sampleMeters / 1000.0;
+    }
+
+    // A model over the default elevation grid, or null if there is no grid
+    public static synchronized EnergyModel getDefault() {
+        if (defaultModel == null && ElevationGrid.getDefault() != null) {
+            defaultModel = new EnergyModel(ElevationGrid.getDefault());
+        }
+        return defaultModel;
+    }
+
+    /**
+     * Energy to drive through the first {@code points} positions in order,
+     * using kWhPerKm on flat road (weather included) between them.
+     */
+    public Energy integrate(double[] lat, double[] lon, int points, double kWhPerKm) {
+        double km = 0.0;
+        double flatKWh = 0.0;
+        double climbingKWh = 0.0;
+        double savedKWh = 0.0;
+        double ascent = 0.0;
+        double descent = 0.0;
+        double height = points > 0 ? grid.elevation(lat[0], lon[0]) : 0.0;
+        for (int i = 1; i < points; i++) {
+            double legKm = GeoMath.distanceKm(lat[i - 1], lon[i - 1], lat[i], lon[i]);
+            int steps = Math.max(1, (int) Math.ceil(legKm / sampleKm));
+            double stepKWh = legKm / steps * kWhPerKm;
+            double stepLat = (lat[i] - lat[i - 1]) / steps;
+            double stepLon = (lon[i] - lon[i - 1]) / steps;
+            for (int k = 1; k <= steps; k++) {
+                double next = grid.elevation(lat[i - 1] + stepLat * k, lon[i - 1] + stepLon * k);
+                if (Double.isNaN(next) || Double.isNaN(height)) {
+                    // No data here: keep the last known height, so the gap counts as flat
+                    height = Double.isNaN(next) ? height : next;
+                    continue;
+                }
+                double rise = next - height;
+                height = next;
+                if (rise >= 0) {
+                    ascent += rise;
+                    climbingKWh += rise * kWhPerMetreClimbed / DRIVETRAIN_EFFICIENCY;
+                } else {
+                    descent -= rise;
+                    double released = -rise * kWhPerMetreClimbed;
+                    // Gravity pays for the step before anything is left to brake away
+                    double assist = Math.min(released, stepKWh);
+                    savedKWh += assist + (released - assist) * regenEfficiency;
+                }
+            }
+            flatKWh += legKm * kWhPerKm;
+            km += legKm;
+        }
+        return new Energy(km, flatKWh, climbingKWh, savedKWh, ascent, descent);
+    }
+
+    public static class Energy {
+        private final double km;
+        private final double flatKWh;
+        private final double climbingKWh;
+        private final double savedKWh; // on descents, by gravity and regenerative braking
+        private final double ascentMeters;
+        private final double descentMeters;
+
+        Energy(double km, double flatKWh, double climbingKWh, double savedKWh, double ascentMeters,
+               double descentMeters) {
+            this.km = km;
+            this.flatKWh = flatKWh;
+            this.climbingKWh = climbingKWh;
+            this.savedKWh = savedKWh;
+            this.ascentMeters = ascentMeters;
+            this.descentMeters = descentMeters;
+        }
+
+        public double getTotalKWh() {
+            return flatKWh + climbingKWh - savedKWh;
+        }
+
+        // Getters
+        public double getKm() { return km; }
+        public double getFlatKWh() { return flatKWh; }
+        public double getClimbingKWh() { return climbingKWh; }
+        public double getSavedKWh() { return savedKWh; }
+        public double getAscentMeters() { return ascentMeters; }
+        public double getDescentMeters() { return descentMeters; }
+
+        @Override
+        public String toString() {
+            return String.format("%.1f km, %.2f kWh (%.2f flat, +%.2f climbing, -%.2f descending), %.0f m up, %.0f m down",
+                km, getTotalKWh(), flatKWh, climbingKWh, savedKWh, ascentMeters, descentMeters);
+        }
+    }
+}
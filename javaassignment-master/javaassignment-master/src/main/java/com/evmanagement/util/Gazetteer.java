@@ -0,0 +1,314 @@
+package com.evmanagement.util;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+/**
+ * Place names with coordinates, for resolving route start and destination
+ * names without a geocoding service. Places are read from a tab-separated
+ * file of name, latitude, longitude, population and comma-separated alternate
+ * names: {@code evm.gazetteer} if set, otherwise the bundled gazetteer.tsv.
+ * Names match ignoring case, accents and punctuation.
+ *
+ * Names are kept in a trie stored in flat arrays, with children in name order.
+ * Every node also holds the range of sorted names below it, so an exact lookup
+ * is a walk down the name and completing a prefix is a walk down the prefix
+ * plus a pass over that range. Nodes with more than a few hundred names below
+ * them keep their most populous places instead, so short prefixes do not scan
+ * a large part of the gazetteer.
+ */
+public class Gazetteer {
+    private static final String DEFAULT_FILE = "src/main/resources/gazetteer.tsv";
+    private static final String RESOURCE = "/gazetteer.tsv";
+    private static final int SCAN_LIMIT = 256;
+    private static final int TOP_PLACES = 16;
+
+    private static Gazetteer defaultGazetteer;
+
+    private final Place[] places;
+    private final int[] keyPlace; // place of each name, names sorted
+
+    // Trie nodes; node 0 is the root
+    private char[] label = new char[256];
+    private int[] firstChild = new int[256];
+    private int[] nextSibling = new int[256];
+    private int[] ending = new int[256]; // first name ending at the node, -1 if none
+    private int[] from = new int[256]; // names below the node are from..to-1
+    private int[] to = new int[256];
+    private int nodes;
+    private final Map<Integer, int[]> topPlaces = new HashMap<>(); // for nodes above SCAN_LIMIT names
+
+    public Gazetteer(List<Place> places) {
+        this.places = places.toArray(new Place[0]);
+
+        List<Name> names = new ArrayList<>();
+        for (int i = 0; i < this.places.length; i++) {
+            names.add(new Name(normalize(this.places[i].name), i));
+            for (String alternate : this.places[i].alternateNames) {
+                names.add(new Name(normalize(alternate), i));
+            }
+        }
+        names.removeIf(name -> name.key.isEmpty());
+        // Among equal names the most populous place comes first
+        names.sort((a, b) -> {
+            int byKey = a.key.compareTo(b.key);
+            return byKey != 0 ? byKey : Long.compare(this.places[b.place].population, this.places[a.place].population);
+        });
+
+        keyPlace = new int[names.size()];
+        newNode('\0');
+        for (int k = 0; k < names.size(); k++) {
+            keyPlace[k] = names.get(k).place;
+            insert(names.get(k).key, k);
+        }
+        for (int node = 0; node < nodes; node++) {
+            if (to[node] - from[node] > SCAN_LIMIT) {
+                topPlaces.put(node, mostPopulous(from[node], to[node], TOP_PLACES));
+            }
+        }
+    }
+
+    public static synchronized Gazetteer getDefault() {
+        if (defaultGazetteer == null) {
+            try {
+                defaultGazetteer = read();
+            } catch (IOException e) {
+                e.printStackTrace();
+                defaultGazetteer = new Gazetteer(Collections.emptyList());
+            }
+        }
+        return defaultGazetteer;
+    }
+
+    private static Gazetteer read() throws IOException {
+        File file = new File(System.getProperty("evm.gazetteer", DEFAULT_FILE));
+        if (file.exists()) {
+            try (InputStream in = new FileInputStream(file)) {
+                return read(in);
+            }
+        }
+        try (InputStream in = Gazetteer.class.getResourceAsStream(RESOURCE)) {
+            if (in == null) {
+                throw new IOException("No gazetteer at " + file + " or on the classpath");
+            }
+            return read(in);
+        }
+    }
+
+    public static Gazetteer read(InputStream in) throws IOException {
+        List<Place> places = new ArrayList<>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        String line;
+        int lineNumber = 0;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            if (line.trim().isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            String[] fields = line.split("\t", -1);
+            try {
+                long population = fields.length > 3 && !fields[3].trim().isEmpty() ? Long.parseLong(fields[3].trim()) : 0;
+                List<String> alternates = new ArrayList<>();
+                if (fields.length > 4) {
+                    for (String alternate : fields[4].split(",")) {
+                        if (!alternate.trim().isEmpty()) alternates.add(alternate.trim());
+                    }
+                }
+                places.add(new Place(fields[0].trim(), Double.parseDouble(fields[1].trim()),
+                    Double.parseDouble(fields[2].trim()), population, alternates));
+            } catch (RuntimeException e) {
+                throw new IOException("Bad gazetteer line " + lineNumber + ": " + line, e);
+            }
+        }
+        return new Gazetteer(places);
+    }
+
+    // The place a name stands for, preferring the most populous; null if none has it
+    public Place lookup(String name) {
+        String key = normalize(name);
+        int node = find(key);
+        return node > 0 && ending[node] >= 0 ? places[keyPlace[ending[node]]] : null;
+    }
+
+    // Up to limit places with a name starting with the prefix, most populous first
+    public List<Place> complete(String prefix, int limit) {
+        List<Place> result = new ArrayList<>();
+        int node = find(normalize(prefix));
+        if (node < 0 || limit <= 0) {
+            return result;
+        }
+        int[] top = topPlaces.get(node);
+        if (top == null || limit > top.length) {
+            top = mostPopulous(from[node], to[node], limit);
+        }
+        for (int i = 0; i < top.length && i < limit; i++) {
+            result.add(places[top[i]]);
+        }
+        return result;
+    }
+
+    // The most populous distinct places of the sorted names from..to-1, most populous first
+    private int[] mostPopulous(int from, int to, int limit) {
+        PriorityQueue<Integer> best = new PriorityQueue<>(
+            (a, b) -> Long.compare(places[a].population, places[b].population));
+        Set<Integer> seen = new HashSet<>();
+        for (int k = from; k < to; k++) {
+            int place = keyPlace[k];
+            if (!seen.add(place)) {
+                continue;
+            }
+            best.add(place);
+            if (best.size() > limit) {
+                best.poll();
+            }
+        }
+        int[] result = new int[best.size()];
+        for (int i = result.length - 1; i >= 0; i--) {
+            result[i] = best.poll();
+        }
+        return result;
+    }
+
+    public int size() {
+        return places.length;
+    }
+
+    public int getNodeCount() {
+        return nodes;
+    }
+
+    // Lower case letters and digits, words separated by single spaces
+    public static String normalize(String name) {
+        if (name == null) {
+            return "";
+        }
+        String decomposed = Normalizer.normalize(name, Normalizer.Form.NFD);
+        StringBuilder key = new StringBuilder(decomposed.length());
+        boolean gap = false;
+        for (int i = 0; i < decomposed.length(); i++) {
+            char c = decomposed.charAt(i);
+            if (Character.isLetterOrDigit(c)) {
+                if (gap && key.length() > 0) key.append(' ');
+                key.append(Character.toLowerCase(c));
+                gap = false;
+            } else if (Character.getType(c) != Character.NON_SPACING_MARK) {
+                gap = true;
+            }
+        }
+        return key.toString();
+    }
+
+    private int find(String key) {
+        int node = 0;
+        for (int i = 0; i < key.length() && node >= 0; i++) {
+            node = child(node, key.charAt(i));
+        }
+        return node;
+    }
+
+    private int child(int node, char c) {
+        for (int child = firstChild[node]; child > 0; child = nextSibling[child]) {
+            if (label[child] == c) return child;
+            if (label[child] > c) break;
+        }
+        return -1;
+    }
+
+    // Names arrive sorted, so a new child always goes after its siblings
+    private void insert(String key, int index) {
+        int node = 0;
+        to[0] = index + 1;
+        for (int i = 0; i < key.length(); i++) {
+            char c = key.charAt(i);
+            int last = -1;
+            int next = firstChild[node];
+            while (next > 0 && label[next] != c) {
+                last = next;
+                next = nextSibling[next];
+            }
+            if (next <= 0) {
+                next = newNode(c);
+                from[next] = index;
+                if (last < 0) {
+                    firstChild[node] = next;
+                } else {
+                    nextSibling[last] = next;
+                }
+            }
+            to[next] = index + 1;
+            node = next;
+        }
+        if (node > 0 && ending[node] < 0) {
+            ending[node] = index;
+        }
+    }
+
+    private int newNode(char c) {
+        if (nodes == label.length) {
+            int size = nodes * 2;
+            label = Arrays.copyOf(label, size);
+            firstChild = Arrays.copyOf(firstChild, size);
+            nextSibling = Arrays.copyOf(nextSibling, size);
+            ending = Arrays.copyOf(ending, size);
+            from = Arrays.copyOf(from, size);
+            to = Arrays.copyOf(to, size);
+        }
+        int node = nodes++;
+        label[node] = c;
+        ending[node] = -1;
+        return node;
+    }
+
+    private static class Name {
+        private final String key;
+        private final int place;
+
+        Name(String key, int place) {
+            this.key = key;
+            this.place = place;
+        }
+    }
+
+    public static class Place {
+        private final String name;
+        private final double latitude;
+        private final double longitude;
+        private final long population;
+        private final List<String> alternateNames;
+
+        public Place(String name, double latitude, double longitude, long population, List<String> alternateNames) {
+            this.name = name;
+            this.latitude = latitude;
+            this.longitude = longitude;
+            this.population = population;
+            this.alternateNames = Collections.unmodifiableList(new ArrayList<>(alternateNames));
+        }
+
+        // Getters
+        public String getName() { return name; }
+        public double getLatitude() { return latitude; }
+        public double getLongitude() { return longitude; }
+        public long getPopulation() { return population; }
+        public List<String> getAlternateNames() { return alternateNames; }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+}
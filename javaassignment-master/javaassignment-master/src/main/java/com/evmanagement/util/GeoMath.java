@@ -0,0 +1,156 @@
+package com.evmanagement.util;
+
+import java.util.Collection;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Great-circle distances on a spherical Earth, in kilometres.
+ *
+ * Three modes are offered. {@link #distanceKm} and {@link #haversineKm} are
+ * exact Haversine. The equirectangular methods project onto a plane at the
+ * mean latitude and need no trigonometry per call when cosines are cached;
+ * for points up to 100 km apart between 60 degrees south and north they are
+ * within 0.01% of Haversine (0.1% up to 500 km), but they grow inaccurate over
+ * long distances and near the poles. {@link #chordSquared} is the squared
+ * straight-line distance through the sphere: it ranks points in exactly the
+ * same order as the great-circle distance and needs no square root or inverse
+ * trigonometry, so use it when only comparisons matter.
+ *
+ * The radian overloads take each point's latitude, longitude and cosine of
+ * latitude so callers can compute them once per point; {@link Points} does
+ * that for a whole array.
+ */
+public final class GeoMath {
+    public static final double EARTH_RADIUS_KM = 6371.0;
+    public static final double KM_PER_DEGREE = EARTH_RADIUS_KM * Math.PI / 180.0;
+
+    private GeoMath() {
+    }
+
+    // Exact distance between two points given in degrees
+    public static double distanceKm(double lat1, double lon1, double lat2, double lon2) {
+        double phi1 = Math.toRadians(lat1);
+        double phi2 = Math.toRadians(lat2);
+        return haversineKm(phi1, Math.toRadians(lon1), Math.cos(phi1),
+                           phi2, Math.toRadians(lon2), Math.cos(phi2));
+    }
+
+    public static double haversineKm(double phi1, double lambda1, double cosPhi1,
+                                     double phi2, double lambda2, double cosPhi2) {
+        return EARTH_RADIUS_KM * angle(haversineTerm(phi1, lambda1, cosPhi1, phi2, lambda2, cosPhi2));
+    }
+
+    // Central angle in radians between two points
+    public static double angularDistance(double phi1, double lambda1, double cosPhi1,
+                                         double phi2, double lambda2, double cosPhi2) {
+        return angle(haversineTerm(phi1, lambda1, cosPhi1, phi2, lambda2, cosPhi2));
+    }
+
+    // The average of the two cosines stands in for the cosine of the mean latitude
+    public static double equirectangularKm(double phi1, double lambda1, double cosPhi1,
+                                           double phi2, double lambda2, double cosPhi2) {
+        double x = (lambda2 - lambda1) * 0.5 * (cosPhi1 + cosPhi2);
+        double y = phi2 - phi1;
+        return EARTH_RADIUS_KM * Math.sqrt(x * x + y * y);
+    }
+
+    // Squared chord length on the unit sphere; monotonic in the great-circle distance
+    public static double chordSquared(double phi1, double lambda1, double cosPhi1,
+                                      double phi2, double lambda2, double cosPhi2) {
+        return 4 * haversineTerm(phi1, lambda1, cosPhi1, phi2, lambda2, cosPhi2);
+    }
+
+    public static double chordSquaredToKm(double chordSquared) {
+        return EARTH_RADIUS_KM * angle(chordSquared / 4);
+    }
+
+    // Threshold to compare chordSquared values against, for a distance in km
+    public static double kmToChordSquared(double km) {
+        double half = Math.sin(Math.min(km / EARTH_RADIUS_KM, Math.PI) / 2);
+        return 4 * half * half;
+    }
+
+    private static double haversineTerm(double phi1, double lambda1, double cosPhi1,
+                                        double phi2, double lambda2, double cosPhi2) {
+        double sinLat = Math.sin((phi2 - phi1) / 2);
+        double sinLon = Math.sin((lambda2 - lambda1) / 2);
+        return sinLat * sinLat + cosPhi1 * cosPhi2 * sinLon * sinLon;
+    }
+
+    private static double angle(double haversineTerm) {
+        return 2 * Math.asin(Math.min(1.0, Math.sqrt(haversineTerm)));
+    }
+
+    /**
+     * A fixed set of points held as primitive arrays, with radians and
+     * cosines of latitude computed once when the set is built.
+     */
+    public static final class Points {
+        private final double[] latitudes; // degrees
+        private final double[] longitudes; // degrees
+        private final double[] latRadians;
+        private final double[] lonRadians;
+        private final double[] cosLatitudes;
+
+        public Points(double[] latitudes, double[] longitudes) {
+            if (latitudes.length != longitudes.length) {
+                throw new IllegalArgumentException("Latitude and longitude counts differ");
+            }
+            int n = latitudes.length;
+            this.latitudes = latitudes.clone();
+            this.longitudes = longitudes.clone();
+            this.latRadians = new double[n];
+            this.lonRadians = new double[n];
+            this.cosLatitudes = new double[n];
+            for (int i = 0; i < n; i++) {
+                latRadians[i] = Math.toRadians(latitudes[i]);
+                lonRadians[i] = Math.toRadians(longitudes[i]);
+                cosLatitudes[i] = Math.cos(latRadians[i]);
+            }
+        }
+
+        public static <T> Points of(Collection<? extends T> items, ToDoubleFunction<? super T> latitude,
+                                    ToDoubleFunction<? super T> longitude) {
+            double[] lats = new double[items.size()];
+            double[] lons = new double[items.size()];
+            int i = 0;
+            for (T item : items) {
+                lats[i] = latitude.applyAsDouble(item);
+                lons[i] = longitude.applyAsDouble(item);
+                i++;
+            }
+            return new Points(lats, lons);
+        }
+
+        public int size() {
+            return latitudes.length;
+        }
+
+        public double distanceKm(int i, int j) {
+            return haversineKm(latRadians[i], lonRadians[i], cosLatitudes[i],
+                               latRadians[j], lonRadians[j], cosLatitudes[j]);
+        }
+
+        // Distances in km from one position to every point
+        public void distancesFrom(double lat, double lon, double[] out) {
+            double phi = Math.toRadians(lat);
+            double lambda = Math.toRadians(lon);
+            double cosPhi = Math.cos(phi);
+            for (int i = 0; i < out.length; i++) {
+                out[i] = haversineKm(phi, lambda, cosPhi, latRadians[i], lonRadians[i], cosLatitudes[i]);
+            }
+        }
+
+        // Backing arrays for bulk loops in this package; never modified
+        double[] latRadians() { return latRadians; }
+        double[] lonRadians() { return lonRadians; }
+        double[] cosLatitudes() { return cosLatitudes; }
+
+        // Getters
+        public double getLatitude(int i) { return latitudes[i]; }
+        public double getLongitude(int i) { return longitudes[i]; }
+        public double getLatRadians(int i) { return latRadians[i]; }
+        public double getLonRadians(int i) { return lonRadians[i]; }
+        public double getCosLatitude(int i) { return cosLatitudes[i]; }
+    }
+}
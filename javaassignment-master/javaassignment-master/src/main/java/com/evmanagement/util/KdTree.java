@@ -0,0 +1,274 @@
+package com.evmanagement.util;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.function.Predicate;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Static two-dimensional k-d tree over latitude/longitude points, answering
+ * nearest, k-nearest and radius queries in great-circle kilometres, and
+ * plain latitude/longitude box queries.
+ *
+ * The tree is implicit: points are stored in arrays ordered so that the median
+ * of every range is its node, splitting alternately on latitude and longitude.
+ * Subtrees are pruned with exact lower bounds on the distance to the far side
+ * of a split: a parallel is an angle |dLat| away, a meridian asin(cos(lat) *
+ * sin|dLon|) for |dLon| < 90 degrees. Searches only compare distances, so they
+ * work in squared chord lengths ({@link GeoMath#chordSquared}), which order
+ * points exactly like great-circle distance without the square root and
+ * arcsine per point. Longitudes are assumed not to wrap around the antimeridian.
+ */
+public class KdTree<T> {
+    private final Object[] items;
+    private final GeoMath.Points coordinates;
+
+    public KdTree(Collection<? extends T> points, ToDoubleFunction<? super T> latitude,
+                  ToDoubleFunction<? super T> longitude) {
+        int n = points.size();
+        Object[] source = points.toArray();
+        double[] lat = new double[n];
+        double[] lon = new double[n];
+        for (int i = 0; i < n; i++) {
+            @SuppressWarnings("unchecked")
+            T point = (T) source[i];
+            lat[i] = latitude.applyAsDouble(point);
+            lon[i] = longitude.applyAsDouble(point);
+        }
+
+        int[] order = new int[n];
+        for (int i = 0; i < n; i++) order[i] = i;
+        build(order, lat, lon, 0, n, 0);
+
+        items = new Object[n];
+        double[] sortedLat = new double[n];
+        double[] sortedLon = new double[n];
+        for (int i = 0; i < n; i++) {
+            items[i] = source[order[i]];
+            sortedLat[i] = lat[order[i]];
+            sortedLon[i] = lon[order[i]];
+        }
+        coordinates = new GeoMath.Points(sortedLat, sortedLon);
+    }
+
+    public int size() {
+        return items.length;
+    }
+
+    public T nearest(double lat, double lon) {
+        return nearest(lat, lon, null);
+    }
+
+    // Closest point accepted by the filter, or null if there is none
+    public T nearest(double lat, double lon, Predicate<? super T> filter) {
+        List<T> result = kNearest(lat, lon, 1, filter);
+        return result.isEmpty() ? null : result.get(0);
+    }
+
+    public List<T> kNearest(double lat, double lon, int k) {
+        return kNearest(lat, lon, k, null);
+    }
+
+    // Up to k points accepted by the filter, closest first
+    public List<T> kNearest(double lat, double lon, int k, Predicate<? super T> filter) {
+        if (k <= 0 || items.length == 0) {
+            return new ArrayList<>();
+        }
+        Query query = new Query(lat, lon);
+        PriorityQueue<Candidate> best = new PriorityQueue<>(k + 1, (a, b) -> Double.compare(b.distance, a.distance));
+        searchNearest(0, items.length, 0, query, k, filter, best);
+
+        List<Candidate> sorted = new ArrayList<>(best);
+        sorted.sort((a, b) -> Double.compare(a.distance, b.distance));
+        List<T> result = new ArrayList<>(sorted.size());
+        for (Candidate candidate : sorted) {
+            result.add(item(candidate.index));
+        }
+        return result;
+    }
+
+    // Every point within radiusKm, in no particular order
+    public List<T> withinRadius(double lat, double lon, double radiusKm) {
+        if (items.length == 0 || radiusKm < 0) {
+            return Collections.emptyList();
+        }
+        List<T> result = new ArrayList<>();
+        searchRadius(0, items.length, 0, new Query(lat, lon), GeoMath.kmToChordSquared(radiusKm), result);
+        return result;
+    }
+
+    // Every point inside a latitude/longitude box, in no particular order
+    public List<T> withinBox(double minLat, double maxLat, double minLon, double maxLon) {
+        List<T> result = new ArrayList<>();
+        searchBox(0, items.length, 0, minLat, maxLat, minLon, maxLon, result);
+        return result;
+    }
+
+    private void searchNearest(int lo, int hi, int depth, Query query, int k,
+                               Predicate<? super T> filter, PriorityQueue<Candidate> best) {
+        if (lo >= hi) {
+            return;
+        }
+        int mid = (lo + hi) >>> 1;
+        boolean latAxis = (depth & 1) == 0;
+        double delta = latAxis ? query.lat - coordinates.getLatitude(mid) : query.lon - coordinates.getLongitude(mid);
+
+        if (filter == null || filter.test(item(mid))) {
+            double distance = chordSquared(query, mid);
+            if (best.size() < k) {
+                best.add(new Candidate(mid, distance));
+            } else if (distance < best.peek().distance) {
+                best.poll();
+                best.add(new Candidate(mid, distance));
+            }
+        }
+
+        // Near side first, then the far side only if it could still hold something closer
+        int nearLo = delta < 0 ? lo : mid + 1;
+        int nearHi = delta < 0 ? mid : hi;
+        int farLo = delta < 0 ? mid + 1 : lo;
+        int farHi = delta < 0 ? hi : mid;
+        searchNearest(nearLo, nearHi, depth + 1, query, k, filter, best);
+        if (best.size() < k || splitChordSquared(query, mid, latAxis) < best.peek().distance) {
+            searchNearest(farLo, farHi, depth + 1, query, k, filter, best);
+        }
+    }
+
+    private void searchRadius(int lo, int hi, int depth, Query query, double radiusChord, List<T> result) {
+        if (lo >= hi) {
+            return;
+        }
+        int mid = (lo + hi) >>> 1;
+        boolean latAxis = (depth & 1) == 0;
+        double delta = latAxis ? query.lat - coordinates.getLatitude(mid) : query.lon - coordinates.getLongitude(mid);
+
+        if (chordSquared(query, mid) <= radiusChord) {
+            result.add(item(mid));
+        }
+
+        boolean farReachable = splitChordSquared(query, mid, latAxis) <= radiusChord;
+        if (delta < 0 || farReachable) {
+            searchRadius(lo, mid, depth + 1, query, radiusChord, result);
+        }
+        if (delta >= 0 || farReachable) {
+            searchRadius(mid + 1, hi, depth + 1, query, radiusChord, result);
+        }
+    }
+
+    private void searchBox(int lo, int hi, int depth, double minLat, double maxLat,
+                           double minLon, double maxLon, List<T> result) {
+        if (lo >= hi) {
+            return;
+        }
+        int mid = (lo + hi) >>> 1;
+        double lat = coordinates.getLatitude(mid);
+        double lon = coordinates.getLongitude(mid);
+        if (lat >= minLat && lat <= maxLat && lon >= minLon && lon <= maxLon) {
+            result.add(item(mid));
+        }
+        boolean latAxis = (depth & 1) == 0;
+        double split = latAxis ? lat : lon;
+        double min = latAxis ? minLat : minLon;
+        double max = latAxis ? maxLat : maxLon;
+        if (min <= split) {
+            searchBox(lo, mid, depth + 1, minLat, maxLat, minLon, maxLon, result);
+        }
+        if (max >= split) {
+            searchBox(mid + 1, hi, depth + 1, minLat, maxLat, minLon, maxLon, result);
+        }
+    }
+
+    // Lower bound on the squared chord from the query to anything across the split at node i
+    private double splitChordSquared(Query query, int i, boolean latAxis) {
+        if (latAxis) {
+            double half = Math.sin((query.latRad - coordinates.getLatRadians(i)) / 2);
+            return 4 * half * half;
+        }
+        double dLon = Math.abs(query.lonRad - coordinates.getLonRadians(i));
+        if (dLon >= Math.PI / 2) {
+            return 0.0;
+        }
+        // For the angle asin(s) the squared chord is 2(1 - cos) = 2s^2 / (1 + sqrt(1 - s^2))
+        double s = query.cosLat * Math.sin(dLon);
+        return 2 * s * s / (1 + Math.sqrt(1 - s * s));
+    }
+
+    // Reusing the cached radians and cosines
+    private double chordSquared(Query query, int i) {
+        return GeoMath.chordSquared(query.latRad, query.lonRad, query.cosLat,
+            coordinates.getLatRadians(i), coordinates.getLonRadians(i), coordinates.getCosLatitude(i));
+    }
+
+    @SuppressWarnings("unchecked")
+    private T item(int i) {
+        return (T) items[i];
+    }
+
+    // Arrange order[lo, hi) so that each range's median splits it on the depth's axis
+    private static void build(int[] order, double[] lat, double[] lon, int lo, int hi, int depth) {
+        if (hi - lo <= 1) {
+            return;
+        }
+        int mid = (lo + hi) >>> 1;
+        double[] key = (depth & 1) == 0 ? lat : lon;
+        select(order, key, lo, hi - 1, mid);
+        build(order, lat, lon, lo, mid, depth + 1);
+        build(order, lat, lon, mid + 1, hi, depth + 1);
+    }
+
+    // Quickselect: put the k-th smallest key of order[left..right] at position k
+    private static void select(int[] order, double[] key, int left, int right, int k) {
+        while (left < right) {
+            double pivot = key[order[(left + right) >>> 1]];
+            int i = left;
+            int j = right;
+            while (i <= j) {
+                while (key[order[i]] < pivot) i++;
+                while (key[order[j]] > pivot) j--;
+                if (i <= j) {
+                    int tmp = order[i];
+                    order[i] = order[j];
+                    order[j] = tmp;
+                    i++;
+                    j--;
+                }
+            }
+            if (k <= j) {
+                right = j;
+            } else if (k >= i) {
+                left = i;
+            } else {
+                return;
+            }
+        }
+    }
+
+    private static class Query {
+        private final double lat;
+        private final double lon;
+        private final double latRad;
+        private final double lonRad;
+        private final double cosLat;
+
+        Query(double lat, double lon) {
+            this.lat = lat;
+            this.lon = lon;
+            this.latRad = Math.toRadians(lat);
+            this.lonRad = Math.toRadians(lon);
+            this.cosLat = Math.cos(latRad);
+        }
+    }
+
+    private static class Candidate {
+        private final int index;
+        private final double distance; // squared chord
+
+        Candidate(int index, double distance) {
+            this.index = index;
+            this.distance = distance;
+        }
+    }
+}
@@ -0,0 +1,247 @@
+package com.evmanagement.dao;
+
+import com.evmanagement.model.ChargingStation;
+import com.evmanagement.model.ChargingStop;
+import com.evmanagement.model.Route;
+import com.evmanagement.model.User;
+import com.evmanagement.model.Vehicle;
+import com.evmanagement.model.VehicleProfile;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Every model type decodes to what was encoded, and its copy encodes to the
+ * same bytes each time; FileDAO keeps its records across saves, appends, a torn append
+ * and a file written with Java serialization.
+ */
+public class BinaryCodecsTest {
+    private File directory;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("codecs").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    @Test
+    public void vehicleRoundTrip() throws IOException {
+        Vehicle vehicle = vehicle("V1");
+        Vehicle copy = roundTrip(BinaryCodecs.VEHICLE, vehicle);
+        assertEquals("V1", copy.getVehicleId());
+        assertEquals("Model 3", copy.getModel());
+        assertEquals("Tesla", copy.getManufacturer());
+        assertEquals(2021, copy.getYear());
+        assertEquals("AB-123-C", copy.getLicensePlate());
+        assertEquals(75.0, copy.getBatteryCapacity(), 0.0);
+        assertEquals(64.5, copy.getCurrentCharge(), 0.0);
+        assertEquals(vehicle.getRange(), copy.getRange(), 0.0);
+        assertEquals(LocalDate.of(2024, 2, 29), copy.getLastServiceDate());
+        assertEquals(12345, copy.getTotalMileage());
+        assertEquals("U1", copy.getOwnerUserId());
+    }
+
+    @Test
+    public void chargingStationRoundTrip() throws IOException {
+        ChargingStation station = new ChargingStation("S1", "Station \u00e9\u00e8", "Main St", 52.1, 8.2, 50.0, 0.25);
+        // Replayed rather than made, so the test writes no journal
+        station.applyJournalEntry(1, StationJournal.Entry.pricing(0.31));
+        station.applyJournalEntry(2, StationJournal.Entry.availability(false));
+        station.applyJournalEntry(3, StationJournal.Entry.addPort(
+            new ChargingStation.ChargingPort("P3", ChargingStation.ChargingType.DC_FAST, 150.0)));
+        station.applyJournalEntry(4, StationJournal.Entry.review("Quick and clean", 5));
+        ChargingStation.OperatingHours hours = new ChargingStation.OperatingHours();
+        hours.setHours(DayOfWeek.MONDAY, LocalTime.of(7, 0), LocalTime.of(21, 30));
+        station.applyJournalEntry(5, StationJournal.Entry.operatingHours(hours));
+        LocalDateTime maintenance = LocalDateTime.of(2024, 5, 6, 10, 0);
+        station.applyJournalEntry(6, StationJournal.Entry.maintenanceWindow(maintenance, maintenance.plusHours(2)));
+
+        ChargingStation copy = roundTrip(BinaryCodecs.CHARGING_STATION, station);
+        assertEquals("S1", copy.getStationId());
+        assertEquals("Station \u00e9\u00e8", copy.getName());
+        assertEquals(52.1, copy.getLatitude(), 0.0);
+        assertEquals(8.2, copy.getLongitude(), 0.0);
+        assertEquals(0.31, copy.getPricePerKWh(), 0.0);
+        assertFalse(copy.isAvailable());
+        assertEquals(3, copy.getChargingPorts().size());
+        assertEquals(150.0, copy.getMaxChargingPower(), 0.0);
+        assertEquals(Arrays.asList("Quick and clean"), copy.getReviews());
+        assertEquals(Arrays.asList(5), copy.getRatings());
+        assertTrue(copy.getOperatingHours().isOpen(LocalDateTime.of(2024, 5, 6, 21, 30)));
+        assertFalse(copy.getOperatingHours().isOpen(LocalDateTime.of(2024, 5, 7, 12, 0)));
+        assertTrue(copy.getMaintenance().isUnderMaintenance(maintenance.plusHours(1)));
+        assertEquals(6, copy.getJournalSequence());
+    }
+
+    @Test
+    public void routeRoundTrip() throws IOException {
+        Route route = route("R1");
+        Route copy = roundTrip(BinaryCodecs.ROUTE, route);
+        assertEquals("R1", copy.getRouteId());
+        assertEquals("Berlin", copy.getStartLocation());
+        assertEquals("Hamburg", copy.getEndLocation());
+        assertEquals("V1", copy.getVehicleId());
+        assertEquals(75.0, copy.getVehicleProfile().getBatteryCapacity(), 0.0);
+        assertEquals(Route.RouteStatus.COMPLETED, copy.getStatus());
+        assertEquals(2, copy.getDrivingEvents().size());
+        assertEquals(Route.DrivingEventType.HARSH_BRAKING, copy.getDrivingEvents().get(0).getType());
+        assertEquals(0.8, copy.getDrivingEvents().get(0).getParameters().get("deceleration"), 0.0);
+        assertEquals(1, copy.getHarshBrakingEvents());
+        assertEquals(3.25, copy.getDuration(), 0.0);
+        assertEquals(route.getMetrics(), copy.getMetrics());
+        assertEquals(route.getCostBreakdown(), copy.getCostBreakdown());
+    }
+
+    @Test
+    public void chargingStopRoundTrip() throws IOException {
+        ChargingStop stop = new ChargingStop("S1", "Station", "Main St", 52.1, 8.2, 0.31, 150.0, 40.0, 12.4, 0.4);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        stop.writeTo(new DataOutputStream(bytes));
+        ChargingStop copy = ChargingStop.readFrom(
+            new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())), BinaryCodecs.SCHEMA_VERSION);
+        assertEquals("S1", copy.getStationId());
+        assertEquals(150.0, copy.getChargingRate(), 0.0);
+        assertEquals(40.0, copy.getEnergyKWh(), 0.0);
+        assertEquals(12.4, copy.getCost(), 0.0);
+        assertEquals(0.4, copy.getChargingTime(), 0.0);
+    }
+
+    @Test
+    public void userRoundTrip() throws IOException {
+        User user = new User("U1", "alice", "Alice Example", "alice@example.com", "+49 123");
+        User copy = roundTrip(BinaryCodecs.USER, user);
+        assertEquals("U1", copy.getUserId());
+        assertEquals("alice", copy.getUsername());
+        assertEquals("Alice Example", copy.getFullName());
+        assertEquals("alice@example.com", copy.getEmail());
+        assertEquals("+49 123", copy.getPhoneNumber());
+        assertEquals(user.getRegistrationDate(), copy.getRegistrationDate());
+        assertEquals(0, copy.getTripCount());
+        assertEquals(user.getAnalytics().getUsageStats(), copy.getAnalytics().getUsageStats());
+        assertEquals(user.getAnalytics().getEnvironmentalImpact(), copy.getAnalytics().getEnvironmentalImpact());
+    }
+
+    @Test
+    public void saveAppendAndLoad() throws IOException, ClassNotFoundException {
+        FileDAO<Vehicle> dao = dao("vehicles.dat");
+        dao.saveAll(Arrays.asList(vehicle("V1"), vehicle("V2"), vehicle("V3")));
+        dao.appendAll(Arrays.asList(vehicle("V4"), vehicle("V5")));
+        assertEquals(5, dao.count());
+        assertEquals(Arrays.asList("V1", "V2", "V3", "V4", "V5"), ids(dao.loadFromFile()));
+        try (Stream<Vehicle> vehicles = dao.stream()) {
+            assertEquals(Arrays.asList("V1", "V2", "V3", "V4", "V5"), ids(vehicles.collect(Collectors.toList())));
+        }
+    }
+
+    @Test
+    public void appendCutsOffTornAppend() throws IOException, ClassNotFoundException {
+        FileDAO<Vehicle> dao = dao("vehicles.dat");
+        dao.saveAll(Arrays.asList(vehicle("V1"), vehicle("V2")));
+        // Records an interrupted append wrote without committing them
+        Files.write(new File(dao.getFilePath()).toPath(), new byte[] {1, 2, 3, 4, 5}, StandardOpenOption.APPEND);
+        assertEquals(Arrays.asList("V1", "V2"), ids(dao.loadFromFile()));
+        dao.appendAll(Arrays.asList(vehicle("V3")));
+        assertEquals(3, dao.count());
+        assertEquals(Arrays.asList("V1", "V2", "V3"), ids(dao.loadFromFile()));
+    }
+
+    @Test
+    public void serializedFileIsReadAndReencodedOnAppend() throws IOException, ClassNotFoundException {
+        String path = new File(directory, "legacy.dat").getPath();
+        new FileDAO<Vehicle>(path).saveToFile(new ArrayList<>(Arrays.asList(vehicle("V1"), vehicle("V2"))));
+
+        FileDAO<Vehicle> dao = new FileDAO<>(path, BinaryCodecs.VEHICLE, Durability.NONE);
+        assertEquals(Arrays.asList("V1", "V2"), ids(dao.loadFromFile()));
+        dao.appendAll(Arrays.asList(vehicle("V3")));
+        assertEquals(3, dao.count());
+        List<Vehicle> loaded = dao.loadFromFile();
+        assertEquals(Arrays.asList("V1", "V2", "V3"), ids(loaded));
+        assertEquals(64.5, loaded.get(0).getCurrentCharge(), 0.0);
+    }
+
+    // Decodes what the codec wrote and checks that decoding the copy again
+    // changes nothing; maps come back in their own hash order, so the copy's
+    // bytes are compared rather than the original's
+    private static <T> T roundTrip(Codec<T> codec, T value) throws IOException {
+        T copy = decode(codec, encode(codec, value));
+        byte[] encoded = encode(codec, copy);
+        assertArrayEquals(encoded, encode(codec, decode(codec, encoded)));
+        return copy;
+    }
+
+    private static <T> T decode(Codec<T> codec, byte[] encoded) throws IOException {
+        return codec.decode(new DataInputStream(new ByteArrayInputStream(encoded)), codec.getSchemaVersion());
+    }
+
+    private static <T> byte[] encode(Codec<T> codec, T value) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        codec.encode(value, out);
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    private FileDAO<Vehicle> dao(String name) {
+        return new FileDAO<>(new File(directory, name).getPath(), BinaryCodecs.VEHICLE, Durability.NONE);
+    }
+
+    private static Vehicle vehicle(String vehicleId) {
+        Vehicle vehicle = new Vehicle(vehicleId, "Model 3", "Tesla", 2021, "AB-123-C", "Red", 75.0, 15.0);
+        vehicle.setCurrentCharge(64.5);
+        vehicle.setLastServiceDate(LocalDate.of(2024, 2, 29));
+        vehicle.setTotalMileage(12345);
+        vehicle.setOwnerUserId("U1");
+        return vehicle;
+    }
+
+    private static Route route(String routeId) {
+        Route route = new Route(routeId, "Berlin", "Hamburg",
+            new VehicleProfile("V1", "Tesla Model 3", 75.0, 15.0, 500.0));
+        route.setWeather(new Route.Weather("rainy", 8.5, 20.0));
+        route.setElevation(120.0);
+        Route.DrivingEvent braking = new Route.DrivingEvent(Route.DrivingEventType.HARSH_BRAKING, 600.0);
+        braking.addParameter("deceleration", 0.8);
+        route.addDrivingEvent(braking);
+        route.addDrivingEvent(new Route.DrivingEvent(Route.DrivingEventType.SHARP_TURN, 900.0));
+        route.setDuration(3.25);
+        route.setStatus(Route.RouteStatus.COMPLETED);
+        return route;
+    }
+
+    private static List<String> ids(List<Vehicle> vehicles) {
+        return vehicles.stream().map(Vehicle::getVehicleId).collect(Collectors.toList());
+    }
+}
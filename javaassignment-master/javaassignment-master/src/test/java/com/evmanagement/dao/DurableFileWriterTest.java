@@ -0,0 +1,176 @@
+package com.evmanagement.dao;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Whole-file writes replace the target or leave it as it was, group commits
+ * share their fsyncs, and a write that started earlier never lands over one
+ * that started later.
+ */
+public class DurableFileWriterTest {
+    private File directory;
+    private DurableFileWriter writer;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("durable").toFile();
+        writer = new DurableFileWriter(20);
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    @Test
+    public void everyLevelReplacesTheTarget() throws IOException {
+        for (Durability durability : Durability.values()) {
+            File target = new File(directory, durability + ".dat");
+            write(target, durability, "first");
+            write(target, durability, "second");
+            assertEquals("second", read(target));
+        }
+        assertEquals(0, writer.getTrackedTargets());
+        assertOnlyTargets(Durability.values().length);
+    }
+
+    @Test
+    public void failedWriteLeavesTheTargetAlone() throws IOException {
+        File target = new File(directory, "target.dat");
+        write(target, Durability.GROUP, "intact");
+        for (Durability durability : Durability.values()) {
+            try {
+                writer.write(target, durability, out -> {
+                    out.write("half".getBytes(StandardCharsets.UTF_8));
+                    throw new IOException("disk full");
+                });
+                fail("write went through");
+            } catch (IOException expected) {
+                assertEquals("disk full", expected.getMessage());
+            }
+            assertEquals("intact", read(target));
+        }
+        // No temp file left behind either
+        assertOnlyTargets(1);
+        assertEquals(0, writer.getTrackedTargets());
+    }
+
+    @Test
+    public void concurrentWritesShareCommits() throws Exception {
+        int files = 16;
+        ExecutorService threads = Executors.newFixedThreadPool(files);
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            List<Future<?>> done = new ArrayList<>();
+            for (int i = 0; i < files; i++) {
+                File target = new File(directory, "file" + i + ".dat");
+                String contents = "contents " + i;
+                done.add(threads.submit(() -> {
+                    start.await();
+                    write(target, Durability.GROUP, contents);
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : done) {
+                future.get(10, TimeUnit.SECONDS);
+            }
+        } finally {
+            threads.shutdownNow();
+        }
+        for (int i = 0; i < files; i++) {
+            assertEquals("contents " + i, read(new File(directory, "file" + i + ".dat")));
+        }
+        assertTrue(writer.getCommitBatches() + " batches", writer.getCommitBatches() < files);
+        assertEquals(0, writer.getTrackedTargets());
+    }
+
+    @Test
+    public void olderWriteFinishingLastIsDropped() throws Exception {
+        File target = new File(directory, "target.dat");
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService thread = Executors.newSingleThreadExecutor();
+        try {
+            Future<?> older = thread.submit(() -> {
+                writer.write(target, Durability.GROUP, out -> {
+                    started.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        throw new IOException(e);
+                    }
+                    out.write("older".getBytes(StandardCharsets.UTF_8));
+                });
+                return null;
+            });
+            assertTrue(started.await(10, TimeUnit.SECONDS));
+            write(target, Durability.GROUP, "newer");
+            assertEquals("newer", read(target));
+            // Still running, so the newer write's sequence is remembered
+            assertEquals(1, writer.getTrackedTargets());
+
+            release.countDown();
+            older.get(10, TimeUnit.SECONDS);
+            assertEquals("newer", read(target));
+            assertEquals(0, writer.getTrackedTargets());
+        } finally {
+            thread.shutdownNow();
+        }
+        assertOnlyTargets(1);
+    }
+
+    @Test
+    public void syncActionsRunOnTheCommitter() throws IOException {
+        File target = new File(directory, "appended.dat");
+        write(target, Durability.GROUP, "log");
+        AtomicInteger synced = new AtomicInteger();
+        writer.sync(target, Durability.NONE, synced::incrementAndGet);
+        assertEquals(0, synced.get());
+        writer.sync(target, Durability.GROUP, synced::incrementAndGet);
+        writer.sync(target, Durability.SYNC, synced::incrementAndGet);
+        assertEquals(2, synced.get());
+    }
+
+    private void write(File target, Durability durability, String contents) throws IOException {
+        writer.write(target, durability, out -> out.write(contents.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static String read(File file) throws IOException {
+        return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+    }
+
+    private void assertOnlyTargets(int count) {
+        String[] names = directory.list();
+        assertEquals(String.join(", ", names), count, names.length);
+        for (String name : names) {
+            assertTrue(name, name.endsWith(".dat"));
+        }
+    }
+}
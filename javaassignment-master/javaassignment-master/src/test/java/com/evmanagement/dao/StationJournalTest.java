@@ -0,0 +1,218 @@
+package com.evmanagement.dao;
+
+import com.evmanagement.model.ChargingStation;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Recovery from a journal whose last append was cut short: replay keeps the
+ * intact records, and the next append trims the tail rather than writing
+ * after it. Text of any length is journaled, and records written before text
+ * lengths were ints still replay. Listeners only hear of durable changes.
+ */
+public class StationJournalTest {
+    private final List<String> stationIds = new ArrayList<>();
+
+    @After
+    public void tearDown() throws IOException {
+        for (String stationId : stationIds) {
+            Files.deleteIfExists(journalFile(stationId).toPath());
+        }
+        // Only removed if no other journals live there
+        new File(StationJournal.STATIONS_DIR).delete();
+    }
+
+    @Test
+    public void replayStopsAtTornTail() throws IOException {
+        ChargingStation station = station();
+        station.updatePricing(0.30);
+        station.updatePricing(0.35);
+        station.updatePricing(0.40);
+        truncate(journalFile(station.getStationId()), 3);
+
+        ChargingStation recovered = fresh(station);
+        assertEquals(2, StationJournal.forStation(station.getStationId()).replay(recovered));
+        assertEquals(0.35, recovered.getPricePerKWh(), 0.0);
+        assertEquals(2, recovered.getJournalSequence());
+    }
+
+    @Test
+    public void replayStopsAtCorruptRecord() throws IOException {
+        ChargingStation station = station();
+        station.updatePricing(0.30);
+        long firstRecord = journalFile(station.getStationId()).length();
+        station.updatePricing(0.35);
+        station.updatePricing(0.40);
+        // Flip the last byte of the second record's payload, so its checksum fails
+        File journal = journalFile(station.getStationId());
+        long secondRecordEnd = 2 * firstRecord;
+        try (RandomAccessFile raf = new RandomAccessFile(journal, "rw")) {
+            raf.seek(secondRecordEnd - 1);
+            int last = raf.read();
+            raf.seek(secondRecordEnd - 1);
+            raf.write(last ^ 0xFF);
+        }
+
+        ChargingStation recovered = fresh(station);
+        assertEquals(1, StationJournal.forStation(station.getStationId()).replay(recovered));
+        assertEquals(0.30, recovered.getPricePerKWh(), 0.0);
+    }
+
+    @Test
+    public void replayIgnoresGarbageTail() throws IOException {
+        ChargingStation station = station();
+        station.updatePricing(0.30);
+        station.updateAvailability(false);
+        // A length far beyond the file, then nothing
+        Files.write(journalFile(station.getStationId()).toPath(), new byte[] {0x7F, 0, 0, 0, 1, 2},
+            StandardOpenOption.APPEND);
+
+        ChargingStation recovered = fresh(station);
+        assertEquals(2, StationJournal.forStation(station.getStationId()).replay(recovered));
+        assertEquals(0.30, recovered.getPricePerKWh(), 0.0);
+        assertFalse(recovered.isAvailable());
+    }
+
+    @Test
+    public void appendAfterTornTailIsReplayed() throws IOException {
+        ChargingStation original = station();
+        original.updatePricing(0.30);
+        original.updatePricing(0.35);
+        original.updatePricing(0.40);
+
+        // The torn journal as another process would find it on start-up: its
+        // first append to the journal must land after the intact records
+        ChargingStation restarted = station();
+        File journal = journalFile(restarted.getStationId());
+        Files.copy(journalFile(original.getStationId()).toPath(), journal.toPath());
+        truncate(journal, 5);
+        StationJournal.forStation(restarted.getStationId()).replay(restarted);
+        assertEquals(2, restarted.getJournalSequence());
+        restarted.updatePricing(0.45);
+
+        ChargingStation recovered = fresh(restarted);
+        assertEquals(3, StationJournal.forStation(restarted.getStationId()).replay(recovered));
+        assertEquals(0.45, recovered.getPricePerKWh(), 0.0);
+        assertEquals(3, recovered.getJournalSequence());
+    }
+
+    @Test
+    public void longReviewIsReplayed() throws IOException {
+        ChargingStation station = station();
+        StringBuilder review = new StringBuilder();
+        while (review.length() < 70000) {
+            // Three bytes each in modified UTF-8, well past writeUTF's 64 KB
+            review.append("\u20ac\u00e9 ");
+        }
+        station.addReview(review.toString(), 4);
+        station.removeChargingPort("P2");
+
+        ChargingStation recovered = fresh(station);
+        assertEquals(2, StationJournal.forStation(station.getStationId()).replay(recovered));
+        assertEquals(Arrays.asList(review.toString()), recovered.getReviews());
+        assertEquals(1, recovered.getChargingPorts().size());
+    }
+
+    @Test
+    public void recordsWithShortTextAreReplayed() throws IOException {
+        ChargingStation station = station();
+        // As journals were written before text lengths were ints
+        Files.createDirectories(journalFile(station.getStationId()).getParentFile().toPath());
+        Files.write(journalFile(station.getStationId()).toPath(), shortTextReview(1, "Quick and cheap", 5),
+            StandardOpenOption.CREATE_NEW);
+        StationJournal.forStation(station.getStationId()).replay(station);
+        station.addReview("Busy at lunchtime", 3);
+
+        ChargingStation recovered = fresh(station);
+        assertEquals(2, StationJournal.forStation(station.getStationId()).replay(recovered));
+        assertEquals(Arrays.asList("Quick and cheap", "Busy at lunchtime"), recovered.getReviews());
+    }
+
+    @Test
+    public void failedAppendIsNotAnnounced() throws IOException {
+        ChargingStation station = station();
+        File journal = journalFile(station.getStationId());
+        List<String> announced = new ArrayList<>();
+        StationChangeListener listener = (stationId, type) -> {
+            if (stationId.equals(station.getStationId())) {
+                announced.add(type.name());
+            }
+        };
+        StationJournal.addChangeListener(listener);
+        try {
+            station.updatePricing(0.30);
+            assertEquals(Arrays.asList("PRICING"), announced);
+
+            // A directory where the journal should be makes the next append fail
+            Files.delete(journal.toPath());
+            assertTrue(journal.mkdir());
+            try {
+                StationJournal.forStation(station.getStationId()).append(station, 2,
+                    StationJournal.Entry.availability(false));
+                fail("append into a directory succeeded");
+            } catch (IOException expected) {
+                // Reported to the caller
+            }
+            assertEquals(Arrays.asList("PRICING"), announced);
+        } finally {
+            StationJournal.removeChangeListener(listener);
+            journal.delete();
+        }
+    }
+
+    private static byte[] shortTextReview(long sequence, String review, int rating) throws IOException {
+        ByteArrayOutputStream payload = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(payload);
+        out.writeLong(sequence);
+        out.writeByte(StationJournal.ChangeType.REVIEW.ordinal());
+        out.writeUTF(review);
+        out.writeInt(rating);
+        CRC32 crc = new CRC32();
+        crc.update(payload.toByteArray());
+        ByteArrayOutputStream record = new ByteArrayOutputStream();
+        DataOutputStream recordOut = new DataOutputStream(record);
+        recordOut.writeInt(payload.size());
+        recordOut.writeInt((int) crc.getValue());
+        payload.writeTo(recordOut);
+        return record.toByteArray();
+    }
+
+    // A station no other test shares a journal with
+    private ChargingStation station() {
+        String stationId = "journal-test-" + System.nanoTime();
+        stationIds.add(stationId);
+        return new ChargingStation(stationId, "Test station", "Somewhere", 52.0, 8.0, 50.0, 0.25);
+    }
+
+    // The station as its snapshot was before any journaled change
+    private static ChargingStation fresh(ChargingStation station) {
+        return new ChargingStation(station.getStationId(), "Test station", "Somewhere", 52.0, 8.0, 50.0, 0.25);
+    }
+
+    private static File journalFile(String stationId) {
+        return new File(StationJournal.STATIONS_DIR, stationId + StationJournal.JOURNAL_SUFFIX);
+    }
+
+    private static void truncate(File file, int bytes) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(raf.length() - bytes);
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package com.evmanagement.dao;
+
+import com.evmanagement.model.ChargingStation;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Every live station is delivered exactly once, up to date with its journal,
+ * in chunks handed over on the calling thread in whatever order the workers
+ * finish them; within a chunk stations keep their store order.
+ */
+public class StationLoaderTest {
+    private File directory;
+    private StationStore store;
+    private final List<String> journaled = new ArrayList<>();
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("loader").toFile();
+        store = StationStore.open(new File(directory, StationStore.DEFAULT_STORE_FILE));
+        store.setDurability(Durability.NONE);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        store.close();
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+        for (String stationId : journaled) {
+            Files.deleteIfExists(new File(StationJournal.STATIONS_DIR,
+                stationId + StationJournal.JOURNAL_SUFFIX).toPath());
+        }
+        // Only removed if no other journals live there
+        new File(StationJournal.STATIONS_DIR).delete();
+    }
+
+    @Test
+    public void everyStationArrivesOnceInChunks() throws IOException {
+        List<String> stored = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            ChargingStation station = station("L" + i);
+            store.put(station);
+            stored.add(station.getStationId());
+        }
+        for (int i = 0; i < 200; i += 3) {
+            store.remove("L" + i);
+            stored.remove("L" + i);
+        }
+
+        Thread caller = Thread.currentThread();
+        List<List<String>> chunks = new ArrayList<>();
+        StationLoader.LoadStats stats = new StationLoader(store, 3, 7).load(chunk -> {
+            assertSame(caller, Thread.currentThread());
+            List<String> ids = new ArrayList<>();
+            for (ChargingStation station : chunk) {
+                ids.add(station.getStationId());
+            }
+            chunks.add(ids);
+        });
+
+        assertEquals(stored.size(), stats.getStations());
+        assertEquals((stored.size() + 6) / 7, stats.getChunks());
+        assertEquals(stats.getChunks(), chunks.size());
+        Map<String, Integer> position = new HashMap<>();
+        for (int i = 0; i < stored.size(); i++) {
+            position.put(stored.get(i), i);
+        }
+        Set<String> seen = new HashSet<>();
+        for (List<String> chunk : chunks) {
+            assertTrue(chunk.size() <= 7);
+            // A run of consecutive live stations
+            int first = position.get(chunk.get(0));
+            assertEquals(0, first % 7);
+            for (int i = 0; i < chunk.size(); i++) {
+                assertEquals(stored.get(first + i), chunk.get(i));
+                assertTrue(seen.add(chunk.get(i)));
+            }
+        }
+        assertEquals(new HashSet<>(stored), seen);
+    }
+
+    @Test
+    public void journaledChangesAreReplayed() throws IOException {
+        for (int i = 0; i < 20; i++) {
+            store.put(station("J" + i));
+        }
+        ChargingStation changed = station("loader-test-" + System.nanoTime());
+        store.put(changed);
+        journaled.add(changed.getStationId());
+        // Journaled after its snapshot was stored
+        changed.updatePricing(0.55);
+        changed.updateAvailability(false);
+
+        List<ChargingStation> loaded = new ArrayList<>();
+        new StationLoader(store, 2, 4).load(loaded::addAll);
+        assertEquals(21, loaded.size());
+        for (ChargingStation station : loaded) {
+            if (station.getStationId().equals(changed.getStationId())) {
+                assertEquals(0.55, station.getPricePerKWh(), 0.0);
+                assertFalse(station.isAvailable());
+                assertEquals(2, station.getJournalSequence());
+            } else {
+                assertEquals(0.30, station.getPricePerKWh(), 0.0);
+            }
+        }
+    }
+
+    @Test
+    public void emptyStoreLoadsNothing() throws IOException {
+        List<ChargingStation> loaded = new ArrayList<>();
+        StationLoader.LoadStats stats = new StationLoader(store, 4, 64).load(loaded::addAll);
+        assertEquals(0, stats.getStations());
+        assertEquals(0, stats.getChunks());
+        assertTrue(loaded.isEmpty());
+    }
+
+    private static ChargingStation station(String stationId) {
+        return new ChargingStation(stationId, "Station " + stationId, "Somewhere", 52.0, 8.0, 50.0, 0.30);
+    }
+}
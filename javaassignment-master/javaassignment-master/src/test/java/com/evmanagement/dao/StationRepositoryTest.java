@@ -0,0 +1,148 @@
+package com.evmanagement.dao;
+
+import com.evmanagement.model.ChargingStation;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The repository holds what the store holds after a load, and its version
+ * moves on for every change: loads, changes made in this process, and
+ * journal records another process appended.
+ */
+public class StationRepositoryTest {
+    private final String prefix = "repository-test-" + System.nanoTime() + "-";
+    private final List<String> events = new ArrayList<>();
+    private File directory;
+    private StationStore store;
+    private StationRepository repository;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("repository").toFile();
+        store = StationStore.open(new File(directory, StationStore.DEFAULT_STORE_FILE));
+        store.setDurability(Durability.NONE);
+        for (int i = 0; i < 30; i++) {
+            store.put(new ChargingStation(prefix + i, "Station " + i, "Somewhere",
+                52.0 + i / 100.0, 8.0, 50.0, 0.30));
+        }
+        // Journals live in the working directory's stations directory, so that is what is watched
+        repository = new StationRepository(new File(StationJournal.STATIONS_DIR), store);
+        repository.addChangeListener((stationId, type) -> {
+            synchronized (events) {
+                events.add(stationId + " " + type);
+            }
+        });
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        repository.close();
+        store.close();
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+        File[] journals = new File(StationJournal.STATIONS_DIR).listFiles(
+            (dir, name) -> name.startsWith(prefix));
+        if (journals != null) {
+            for (File journal : journals) {
+                journal.delete();
+            }
+        }
+        // Only removed if no other journals live there
+        new File(StationJournal.STATIONS_DIR).delete();
+    }
+
+    @Test
+    public void loadHoldsWhatTheStoreHolds() throws IOException {
+        assertEquals(0, repository.size());
+        long before = repository.getVersion();
+        StationLoader.LoadStats stats = repository.load();
+        assertTrue(repository.isLoaded());
+        assertEquals(30, stats.getStations());
+        assertEquals(30, repository.size());
+        assertTrue(repository.getVersion() > before);
+        assertEquals(prefix + 7, repository.findByName("Station 7").getStationId());
+        assertEquals(30, repository.getSpatialIndex().size());
+        assertEquals(prefix + 29, repository.getSpatialIndex().nearest(52.5, 8.0).getStationId());
+    }
+
+    @Test
+    public void reloadDropsStationsRemovedFromTheStore() throws IOException {
+        repository.load();
+        ChargingStation kept = repository.get(prefix + 1);
+        store.remove(prefix + 0);
+        long before = repository.getVersion();
+        repository.load();
+        assertEquals(29, repository.size());
+        assertNull(repository.get(prefix + 0));
+        assertNotSame(kept, repository.get(prefix + 1));
+        assertTrue(repository.getVersion() > before);
+        assertEquals(29, repository.getSpatialIndex().size());
+    }
+
+    @Test
+    public void localChangesBumpTheVersion() throws IOException {
+        repository.load();
+        repository.startWatching();
+        ChargingStation station = repository.get(prefix + 3);
+        long before = repository.getVersion();
+        station.updatePricing(0.45);
+        assertEquals(before + 1, repository.getVersion());
+        synchronized (events) {
+            assertTrue(events.toString(), events.contains(prefix + 3 + " PRICING"));
+        }
+
+        // A station the repository does not hold changes nothing
+        new ChargingStation(prefix + "elsewhere", "Elsewhere", "Somewhere", 50.0, 5.0, 50.0, 0.30)
+            .updatePricing(0.50);
+        assertEquals(before + 1, repository.getVersion());
+    }
+
+    @Test
+    public void foreignJournalRecordsAreApplied() throws Exception {
+        repository.load();
+        repository.startWatching();
+        ChargingStation station = repository.get(prefix + 5);
+
+        // A record as another process would append it: the first change of a station
+        ChargingStation other = new ChargingStation(prefix + "other", "Other", "Somewhere", 50.0, 5.0, 50.0, 0.30);
+        other.updatePricing(0.99);
+        byte[] record = Files.readAllBytes(journal(other.getStationId()).toPath());
+        long before = repository.getVersion();
+        Files.write(journal(station.getStationId()).toPath(), record,
+            StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (station.getPricePerKWh() != 0.99 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        assertEquals(0.99, station.getPricePerKWh(), 0.0);
+        assertSame(station, repository.get(prefix + 5));
+        while (repository.getVersion() == before && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        assertTrue(repository.getVersion() > before);
+    }
+
+    private static File journal(String stationId) {
+        return new File(StationJournal.STATIONS_DIR, stationId + StationJournal.JOURNAL_SUFFIX);
+    }
+}
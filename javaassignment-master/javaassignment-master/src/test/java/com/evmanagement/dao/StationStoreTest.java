@@ -0,0 +1,151 @@
+package com.evmanagement.dao;
+
+import com.evmanagement.model.ChargingStation;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Stations survive every way the store changes its file: puts in place,
+ * growing the blob heap, rebuilding for more records or to drop garbage, and
+ * closing and opening again.
+ */
+public class StationStoreTest {
+    private File directory;
+    private File file;
+    private StationStore store;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("store").toFile();
+        file = new File(directory, StationStore.DEFAULT_STORE_FILE);
+        store = open();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        store.close();
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File each : files) {
+                each.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    @Test
+    public void putStationsAreReadBackAfterReopening() throws IOException {
+        List<ChargingStation> stations = stations(0, 20);
+        for (ChargingStation station : stations) {
+            store.put(station);
+        }
+        assertStored(stations);
+        reopen();
+        assertStored(stations);
+    }
+
+    @Test
+    public void moreStationsThanRecordsRebuildTheStore() throws IOException {
+        int capacity = store.capacity();
+        List<ChargingStation> stations = stations(0, 2 * capacity + 1);
+        for (ChargingStation station : stations) {
+            store.put(station);
+        }
+        assertTrue(store.capacity() > 2 * capacity);
+        assertStored(stations);
+        reopen();
+        assertStored(stations);
+    }
+
+    @Test
+    public void largeStationGrowsTheBlobHeap() throws IOException {
+        List<ChargingStation> stations = stations(0, 10);
+        for (ChargingStation station : stations) {
+            store.put(station);
+        }
+        long length = file.length();
+        ChargingStation large = stations.get(3);
+        StringBuilder text = new StringBuilder();
+        while (text.length() < length) {
+            text.append("Plenty of chargers, and a long story about each of them. ");
+        }
+        large.applyJournalEntry(1, StationJournal.Entry.review(text.toString(), 5));
+        store.put(large);
+        assertTrue(file.length() > length);
+        assertEquals(Collections.singletonList(text.toString()), store.get(large.getStationId()).getReviews());
+        assertStored(stations);
+        reopen();
+        assertStored(stations);
+    }
+
+    @Test
+    public void updatesAndRemovesAreCompactedAway() throws IOException {
+        List<ChargingStation> stations = stations(0, 50);
+        for (int round = 1; round <= 30; round++) {
+            for (ChargingStation station : stations) {
+                station.applyJournalEntry(round, StationJournal.Entry.pricing(0.10 + round / 100.0));
+                store.put(station);
+            }
+        }
+        List<ChargingStation> removed = stations.subList(0, 10);
+        for (ChargingStation station : removed) {
+            assertTrue(store.remove(station.getStationId()));
+        }
+        assertFalse(store.remove(removed.get(0).getStationId()));
+        List<ChargingStation> kept = new ArrayList<>(stations.subList(10, 50));
+        removed.clear();
+        store.compact();
+        assertEquals(0, store.garbageBytes());
+        assertEquals(kept.size(), store.size());
+        assertStored(kept);
+        reopen();
+        assertStored(kept);
+        assertNull(store.get("S0"));
+    }
+
+    private void assertStored(List<ChargingStation> stations) throws IOException {
+        assertEquals(stations.size(), store.getStationIds().size());
+        for (ChargingStation station : stations) {
+            ChargingStation stored = store.get(station.getStationId());
+            int index = store.indexOf(station.getStationId());
+            assertEquals(station.getName(), stored.getName());
+            assertEquals(station.getPricePerKWh(), stored.getPricePerKWh(), 0.0);
+            assertEquals(station.getReviews(), stored.getReviews());
+            assertEquals(station.getLatitude(), store.getLatitude(index), 0.0);
+            assertEquals(station.getPricePerKWh(), store.getPricePerKWh(index), 0.0);
+        }
+    }
+
+    private void reopen() throws IOException {
+        store.close();
+        store = open();
+    }
+
+    private StationStore open() throws IOException {
+        StationStore opened = StationStore.open(file);
+        opened.setDurability(Durability.NONE);
+        return opened;
+    }
+
+    private static List<ChargingStation> stations(int from, int to) {
+        List<ChargingStation> stations = new ArrayList<>();
+        for (int i = from; i < to; i++) {
+            stations.add(new ChargingStation("S" + i, "Station " + i, "Somewhere",
+                50.0 + i / 1000.0, 8.0 + i / 1000.0, 50.0, 0.30));
+        }
+        return stations;
+    }
+}
@@ -0,0 +1,144 @@
+package com.evmanagement.dao;
+
+import com.evmanagement.model.Route;
+import com.evmanagement.model.VehicleProfile;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Trip segments roll over at their size, and a segment whose last append was
+ * cut short loses only that trip: readers skip it and the next append, from
+ * this or a restarted process, trims it first.
+ */
+public class TripHistoryStoreTest {
+    private File directory;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("trips").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    @Test
+    public void segmentsRollOver() throws IOException {
+        TripHistoryStore store = new TripHistoryStore(directory, 3);
+        store.appendAll(trips(0, 5));
+        store.append(trip(5));
+        store.append(trip(6));
+        assertEquals(3, store.getSegmentCount());
+        assertEquals(7, store.countTrips());
+        assertEquals(ids(0, 7), ids(store.loadAll()));
+        assertEquals(ids(3, 7), ids(store.loadRecent(4)));
+    }
+
+    @Test
+    public void tornRecordIsSkippedAndTrimmed() throws IOException {
+        new TripHistoryStore(directory, 10).appendAll(trips(0, 4));
+        truncate(segment(0), 5);
+
+        // As found by a restarted process
+        TripHistoryStore store = new TripHistoryStore(directory, 10);
+        assertEquals(3, store.countTrips());
+        assertEquals(ids(0, 3), ids(store.loadAll()));
+        store.append(trip(4));
+        assertEquals(Arrays.asList("R0", "R1", "R2", "R4"), ids(store.loadAll()));
+        assertEquals(4, new TripHistoryStore(directory, 10).countTrips());
+    }
+
+    @Test
+    public void tornLengthIsSkippedAndTrimmed() throws IOException {
+        new TripHistoryStore(directory, 10).appendAll(trips(0, 2));
+        // A record length written without its record
+        try (RandomAccessFile raf = new RandomAccessFile(segment(0), "rw")) {
+            raf.seek(raf.length());
+            raf.writeInt(1000);
+        }
+
+        TripHistoryStore store = new TripHistoryStore(directory, 10);
+        assertEquals(ids(0, 2), ids(store.loadAll()));
+        store.append(trip(2));
+        assertEquals(ids(0, 3), ids(store.loadAll()));
+    }
+
+    @Test
+    public void tornSegmentHeaderIsRewritten() throws IOException {
+        new TripHistoryStore(directory, 2).appendAll(trips(0, 2));
+        // An append that started a new segment and got no further than part of its header
+        Files.write(segment(1).toPath(), new byte[] {0x45, 0x56, 0x54});
+
+        TripHistoryStore store = new TripHistoryStore(directory, 2);
+        assertEquals(ids(0, 2), ids(store.loadAll()));
+        store.append(trip(2));
+        assertEquals(2, store.getSegmentCount());
+        assertEquals(ids(0, 3), ids(new TripHistoryStore(directory, 2).loadAll()));
+    }
+
+    @Test
+    public void migrationIsNotRepeated() throws IOException {
+        TripHistoryStore store = new TripHistoryStore(directory, 4);
+        assertEquals(6, store.migrate(trips(0, 6)));
+        assertEquals(6, new TripHistoryStore(directory, 4).migrate(trips(0, 6)));
+        assertEquals(ids(0, 6), ids(store.loadAll()));
+    }
+
+    @Test
+    public void interruptedMigrationResumes() throws IOException {
+        TripHistoryStore store = new TripHistoryStore(directory, 4);
+        // Stopped after three of the five legacy trips were appended
+        store.migrate(trips(0, 3));
+        assertEquals(5, new TripHistoryStore(directory, 4).migrate(trips(0, 5)));
+        assertEquals(ids(0, 5), ids(store.loadAll()));
+    }
+
+    private File segment(int index) {
+        return new File(directory, String.format("segment-%06d.seg", index));
+    }
+
+    private static void truncate(File file, int bytes) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(raf.length() - bytes);
+        }
+    }
+
+    private static Route trip(int index) {
+        return new Route("R" + index, "Berlin", "Hamburg", (VehicleProfile) null);
+    }
+
+    private static List<Route> trips(int from, int to) {
+        List<Route> trips = new ArrayList<>();
+        for (int i = from; i < to; i++) {
+            trips.add(trip(i));
+        }
+        return trips;
+    }
+
+    private static List<String> ids(int from, int to) {
+        return trips(from, to).stream().map(Route::getRouteId).collect(Collectors.toList());
+    }
+
+    private static List<String> ids(List<Route> trips) {
+        return trips.stream().map(Route::getRouteId).collect(Collectors.toList());
+    }
+}
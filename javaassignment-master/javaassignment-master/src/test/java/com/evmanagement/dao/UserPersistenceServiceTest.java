@@ -0,0 +1,113 @@
+package com.evmanagement.dao;
+
+import com.evmanagement.model.User;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Dirty users are written once per flush however often they changed, an
+ * immediate flush takes the user's pending mutations with it, and shutting
+ * down writes whatever is still dirty.
+ */
+public class UserPersistenceServiceTest {
+    private final List<String> usernames = new ArrayList<>();
+    private UserPersistenceService service;
+
+    @After
+    public void tearDown() {
+        if (service != null) {
+            service.shutdown();
+        }
+        for (String username : usernames) {
+            new File(username + ".dat").delete();
+        }
+    }
+
+    @Test
+    public void mutationsOfADirtyUserAreCoalesced() throws IOException {
+        service = new UserPersistenceService(60_000, 100);
+        User user = user("Ada");
+        service.markDirty(user);
+        service.markDirty(user);
+        service.markDirty(user);
+        assertTrue(service.isDirty(user));
+
+        service.flushAll();
+        assertFalse(service.isDirty(user));
+        assertEquals(1, service.getWritesPerformed());
+        assertEquals(2, service.getWritesAvoided());
+        assertEquals("Ada", load(user).getFullName());
+    }
+
+    @Test
+    public void thresholdFlushesEveryDirtyUser() throws IOException {
+        service = new UserPersistenceService(60_000, 3);
+        User first = user("First");
+        User second = user("Second");
+        service.markDirty(first);
+        service.markDirty(second);
+        service.markDirty(first);
+        // Queued behind the flush the threshold started
+        service.flush(user("Other"));
+        assertFalse(service.isDirty(first));
+        assertFalse(service.isDirty(second));
+        assertEquals("First", load(first).getFullName());
+        assertEquals("Second", load(second).getFullName());
+    }
+
+    @Test
+    public void flushTakesTheUsersPendingMutations() throws IOException {
+        service = new UserPersistenceService(60_000, 3);
+        User flushed = user("Flushed");
+        User waiting = user("Waiting");
+        service.markDirty(flushed);
+        service.markDirty(flushed);
+        service.flush(flushed);
+        assertFalse(service.isDirty(flushed));
+        assertEquals("Flushed", load(flushed).getFullName());
+
+        // Only one mutation left pending, well below the threshold
+        service.markDirty(waiting);
+        service.flush(user("Other"));
+        assertTrue(service.isDirty(waiting));
+        assertFalse(new File(waiting.getUsername() + ".dat").exists());
+    }
+
+    @Test
+    public void shutdownWritesDirtyUsers() throws IOException {
+        service = new UserPersistenceService(60_000, 100);
+        User user = user("Late");
+        service.markDirty(user);
+        service.shutdown();
+        assertFalse(service.isDirty(user));
+        assertEquals("Late", load(user).getFullName());
+
+        // Writes still go through, on the caller, once the flusher has stopped
+        User after = user("After");
+        service.flush(after);
+        assertEquals("After", load(after).getFullName());
+    }
+
+    private User user(String fullName) {
+        String username = "persistence-test-" + fullName + "-" + System.nanoTime();
+        usernames.add(username);
+        return new User("U" + usernames.size(), username, fullName, fullName + "@example.com", "555");
+    }
+
+    private User load(User user) throws IOException {
+        try {
+            return service.loadUser(user.getUsername());
+        } catch (ClassNotFoundException e) {
+            throw new IOException(e);
+        }
+    }
+}
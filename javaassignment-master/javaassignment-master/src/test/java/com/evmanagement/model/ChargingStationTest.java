@@ -0,0 +1,238 @@
+package com.evmanagement.model;
+
+import org.junit.Test;
+
+import java.time.DayOfWeek;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the compiled opening-hours bitmap and maintenance intervals against
+ * the predicates they replaced, which look every range and window up again
+ * per query.
+ */
+public class ChargingStationTest {
+    private static final LocalDateTime MONDAY = LocalDateTime.of(2024, 3, 4, 0, 0);
+
+    private final Random random = new Random(3);
+
+    @Test
+    public void openingHoursMatchScheduleLookup() {
+        for (int trial = 0; trial < 200; trial++) {
+            Map<DayOfWeek, LocalTime[]> schedule = randomSchedule();
+            ChargingStation.OperatingHours hours = hours(schedule);
+            // The bitmap is to the minute, so every minute of a week is compared
+            for (int minute = 0; minute < ChargingStation.OperatingHours.MINUTES_PER_WEEK; minute++) {
+                LocalDateTime time = MONDAY.plusMinutes(minute);
+                boolean open = wasOpen(schedule, time);
+                assertEquals(time + " in trial " + trial, open, hours.isOpen(time));
+                assertEquals(open, hours.isOpenAt(minute));
+            }
+        }
+    }
+
+    @Test
+    public void openingHoursMatchScheduleLookupWithinAMinute() {
+        for (int trial = 0; trial < 200; trial++) {
+            Map<DayOfWeek, LocalTime[]> schedule = randomSchedule();
+            ChargingStation.OperatingHours hours = hours(schedule);
+            // Around each opening and closing time, where a minute is only partly open
+            for (LocalTime[] range : schedule.values()) {
+                for (LocalTime edge : range) {
+                    for (int day = 0; day < 7; day++) {
+                        for (int second = -61; second <= 61; second++) {
+                            LocalDateTime time = MONDAY.plusDays(day).with(edge).plusSeconds(second);
+                            assertEquals(time + " in trial " + trial, wasOpen(schedule, time), hours.isOpen(time));
+                            time = time.plusNanos(1);
+                            assertEquals(time + " in trial " + trial, wasOpen(schedule, time), hours.isOpen(time));
+                        }
+                    }
+                }
+            }
+            for (int query = 0; query < 2000; query++) {
+                LocalDateTime time = MONDAY.plusSeconds(random.nextInt(7 * 86400));
+                assertEquals(time + " in trial " + trial, wasOpen(schedule, time), hours.isOpen(time));
+            }
+        }
+    }
+
+    @Test
+    public void minutesUntilOpenAndClosedMatchScan() {
+        for (int trial = 0; trial < 50; trial++) {
+            Map<DayOfWeek, LocalTime[]> schedule = randomSchedule();
+            ChargingStation.OperatingHours hours = hours(schedule);
+            for (int query = 0; query < 200; query++) {
+                int minute = random.nextInt(ChargingStation.OperatingHours.MINUTES_PER_WEEK);
+                assertEquals("open from " + minute, scan(schedule, minute, true), hours.minutesUntilOpen(minute));
+                assertEquals("closed from " + minute, scan(schedule, minute, false),
+                    hours.minutesUntilClosed(minute));
+            }
+        }
+    }
+
+    @Test
+    public void alwaysAndNeverOpen() {
+        ChargingStation.OperatingHours never = new ChargingStation.OperatingHours();
+        assertEquals(-1, never.minutesUntilOpen(0));
+        assertEquals(0, never.minutesUntilClosed(0));
+
+        ChargingStation.OperatingHours always = new ChargingStation.OperatingHours();
+        for (DayOfWeek day : DayOfWeek.values()) {
+            always.setHours(day, LocalTime.MIN, LocalTime.MAX);
+        }
+        assertEquals(0, always.minutesUntilOpen(1234));
+        assertEquals(-1, always.minutesUntilClosed(1234));
+    }
+
+    @Test
+    public void changedHoursAreRecompiled() {
+        ChargingStation.OperatingHours hours = new ChargingStation.OperatingHours();
+        hours.setHours(DayOfWeek.MONDAY, LocalTime.of(8, 0), LocalTime.of(18, 0));
+        ChargingStation.OperatingHours copy = hours.copy();
+        assertTrue(hours.isOpen(MONDAY.plusHours(9)));
+        hours.setHours(DayOfWeek.MONDAY, LocalTime.of(10, 0), LocalTime.of(18, 0));
+        assertFalse(hours.isOpen(MONDAY.plusHours(9)));
+        assertTrue(copy.isOpen(MONDAY.plusHours(9)));
+        // Closed from the first moment after closing, not from the next minute
+        assertTrue(hours.isOpen(MONDAY.plusHours(18)));
+        assertFalse(hours.isOpen(MONDAY.plusHours(18).plusSeconds(30)));
+        assertFalse(hours.isOpen(MONDAY.plusHours(18).plusNanos(1)));
+        assertTrue(hours.isOpen(MONDAY.plusHours(17).plusMinutes(59).plusSeconds(59)));
+    }
+
+    @Test
+    public void maintenanceMatchesWindowLookup() {
+        for (int trial = 0; trial < 200; trial++) {
+            List<LocalDateTime[]> windows = randomWindows();
+            ChargingStation.MaintenanceSchedule schedule = new ChargingStation.MaintenanceSchedule();
+            for (LocalDateTime[] window : windows) {
+                schedule.addMaintenanceWindow(window[0], window[1]);
+            }
+            for (int query = 0; query < 500; query++) {
+                LocalDateTime time = near(windows);
+                long second = ChargingStation.MaintenanceSchedule.epochSecond(time);
+                assertEquals(time + " in trial " + trial, underMaintenance(windows, time),
+                    schedule.isUnderMaintenance(time));
+                long clear = 0;
+                while (underMaintenance(windows, time.plusSeconds(clear))) {
+                    clear = latestEnd(windows, time.plusSeconds(clear)) - second + 1;
+                }
+                assertEquals(time + " in trial " + trial, clear, schedule.secondsUntilClear(second));
+                assertEquals(time + " in trial " + trial, untilNextWindow(windows, time),
+                    schedule.secondsUntilNextWindow(second));
+            }
+        }
+    }
+
+    @Test
+    public void windowsAddedLaterAreRecompiled() {
+        ChargingStation.MaintenanceSchedule schedule = new ChargingStation.MaintenanceSchedule();
+        assertFalse(schedule.isUnderMaintenance(MONDAY));
+        ChargingStation.MaintenanceSchedule copy = schedule.copy();
+        schedule.addMaintenanceWindow(MONDAY.minusHours(1), MONDAY.plusHours(1));
+        assertTrue(schedule.isUnderMaintenance(MONDAY));
+        assertFalse(copy.isUnderMaintenance(MONDAY));
+    }
+
+    // Opening and closing times on some days, to the second, sometimes closing before they open
+    private Map<DayOfWeek, LocalTime[]> randomSchedule() {
+        Map<DayOfWeek, LocalTime[]> schedule = new EnumMap<>(DayOfWeek.class);
+        for (DayOfWeek day : DayOfWeek.values()) {
+            switch (random.nextInt(5)) {
+                case 0:
+                    break;
+                case 1:
+                    schedule.put(day, new LocalTime[] {LocalTime.MIN, LocalTime.MAX});
+                    break;
+                default:
+                    schedule.put(day, new LocalTime[] {
+                        LocalTime.ofSecondOfDay(random.nextInt(86400)),
+                        LocalTime.ofSecondOfDay(random.nextInt(86400))});
+            }
+        }
+        return schedule;
+    }
+
+    private static ChargingStation.OperatingHours hours(Map<DayOfWeek, LocalTime[]> schedule) {
+        ChargingStation.OperatingHours hours = new ChargingStation.OperatingHours();
+        for (Map.Entry<DayOfWeek, LocalTime[]> day : schedule.entrySet()) {
+            hours.setHours(day.getKey(), day.getValue()[0], day.getValue()[1]);
+        }
+        return hours;
+    }
+
+    // OperatingHours.isOpen before the bitmap
+    private static boolean wasOpen(Map<DayOfWeek, LocalTime[]> schedule, LocalDateTime dateTime) {
+        LocalTime[] range = schedule.get(dateTime.getDayOfWeek());
+        if (range == null) return false;
+        LocalTime time = dateTime.toLocalTime();
+        return !time.isBefore(range[0]) && !time.isAfter(range[1]);
+    }
+
+    // Minutes until the station is open (or closed), a week round at most; -1 if never
+    private static int scan(Map<DayOfWeek, LocalTime[]> schedule, int minute, boolean open) {
+        for (int k = 0; k < ChargingStation.OperatingHours.MINUTES_PER_WEEK; k++) {
+            int at = (minute + k) % ChargingStation.OperatingHours.MINUTES_PER_WEEK;
+            if (wasOpen(schedule, MONDAY.plusMinutes(at)) == open) {
+                return k;
+            }
+        }
+        return -1;
+    }
+
+    // Overlapping, touching and backwards windows over three weeks, to the second
+    private List<LocalDateTime[]> randomWindows() {
+        List<LocalDateTime[]> windows = new ArrayList<>();
+        int count = random.nextInt(12);
+        for (int i = 0; i < count; i++) {
+            LocalDateTime start = MONDAY.plusSeconds(random.nextInt(21 * 86400));
+            LocalDateTime end = start.plusSeconds(random.nextInt(8 * 3600) - 600);
+            windows.add(new LocalDateTime[] {start, end});
+            if (random.nextInt(4) == 0) {
+                windows.add(new LocalDateTime[] {end.plusSeconds(1), end.plusSeconds(1 + random.nextInt(3600))});
+            }
+        }
+        return windows;
+    }
+
+    // A time on or near a window's edge, or anywhere in the span
+    private LocalDateTime near(List<LocalDateTime[]> windows) {
+        if (windows.isEmpty() || random.nextInt(3) == 0) {
+            return MONDAY.plusSeconds(random.nextInt(22 * 86400) - 86400);
+        }
+        LocalDateTime[] window = windows.get(random.nextInt(windows.size()));
+        return window[random.nextInt(2)].plusSeconds(random.nextInt(5) - 2);
+    }
+
+    // MaintenanceSchedule.isUnderMaintenance before the intervals
+    private static boolean underMaintenance(List<LocalDateTime[]> windows, LocalDateTime time) {
+        return windows.stream().anyMatch(window -> !time.isBefore(window[0]) && !time.isAfter(window[1]));
+    }
+
+    private static long latestEnd(List<LocalDateTime[]> windows, LocalDateTime time) {
+        return windows.stream()
+            .filter(window -> !time.isBefore(window[0]) && !time.isAfter(window[1]))
+            .mapToLong(window -> ChargingStation.MaintenanceSchedule.epochSecond(window[1]))
+            .max().getAsLong();
+    }
+
+    private static long untilNextWindow(List<LocalDateTime[]> windows, LocalDateTime time) {
+        if (underMaintenance(windows, time)) {
+            return 0;
+        }
+        long second = ChargingStation.MaintenanceSchedule.epochSecond(time);
+        return windows.stream()
+            .filter(window -> window[0].isAfter(time) && !window[1].isBefore(window[0]))
+            .mapToLong(window -> ChargingStation.MaintenanceSchedule.epochSecond(window[0]) - second)
+            .min().orElse(-1);
+    }
+}
@@ -0,0 +1,88 @@
+package com.evmanagement.model;
+
+import com.evmanagement.dao.StationJournal;
+import com.evmanagement.routing.ReachabilityGraph;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * A planned route keeps its stations by ID with the few values the trip
+ * needs, so later changes to the stations do not reach it and its size does
+ * not grow with theirs.
+ */
+public class RouteTest {
+    private static final VehicleProfile VEHICLE = new VehicleProfile("V1", "Test car", 30.0, 18.0, 150.0);
+
+    @Test
+    public void stopsAreSnapshotsOfTheirStations() {
+        List<ChargingStation> stations = stations();
+        Route route = new Route("R1", "52.0, 5.0", "52.0, 11.0", VEHICLE);
+        route.calculateRoute(new ReachabilityGraph(stations, VEHICLE.getUsableRange()), true);
+        assertFalse(route.getChargingStops().isEmpty());
+        assertEquals("V1", route.getVehicleId());
+
+        ChargingStop stop = route.getChargingStops().get(0);
+        ChargingStation station = find(stations, stop.getStationId());
+        assertEquals(station.getName(), stop.getStationName());
+        assertEquals(station.getLatitude(), stop.getLatitude(), 0.0);
+        assertEquals(0.40, stop.getPricePerKWh(), 0.0);
+        assertEquals(stop.getEnergyKWh() * 0.40, stop.getCost(), 1e-9);
+
+        station.applyJournalEntry(1, StationJournal.Entry.pricing(0.90));
+        station.applyJournalEntry(2, StationJournal.Entry.review("Slow today", 2));
+        assertEquals(0.40, route.getChargingStops().get(0).getPricePerKWh(), 0.0);
+    }
+
+    @Test
+    public void routeSizeDoesNotFollowStationHistory() throws IOException {
+        List<ChargingStation> stations = stations();
+        Route route = new Route("R1", "52.0, 5.0", "52.0, 11.0", VEHICLE);
+        route.calculateRoute(new ReachabilityGraph(stations, VEHICLE.getUsableRange()), true);
+        int before = serializedSize(route);
+
+        LocalDateTime time = LocalDateTime.of(2024, 3, 4, 0, 0);
+        for (ChargingStation station : stations) {
+            for (int i = 1; i <= 500; i++) {
+                station.applyJournalEntry(i, StationJournal.Entry.occupancy(time.plusMinutes(i), i % 4));
+            }
+        }
+        assertTrue(serializedSize(stations.get(0)) > before);
+        assertEquals(before, serializedSize(route));
+    }
+
+    private static int serializedSize(Object object) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(object);
+        }
+        return bytes.size();
+    }
+
+    private static List<ChargingStation> stations() {
+        List<ChargingStation> stations = new ArrayList<>();
+        for (int i = 0; i <= 10; i++) {
+            stations.add(new ChargingStation("S" + i, "Station " + i, "On the way",
+                52.0 + (i % 2 == 0 ? 0.05 : -0.05), 5.5 + 0.5 * i, 50.0, 0.40));
+        }
+        return stations;
+    }
+
+    private static ChargingStation find(List<ChargingStation> stations, String stationId) {
+        for (ChargingStation station : stations) {
+            if (station.getStationId().equals(stationId)) {
+                return station;
+            }
+        }
+        throw new AssertionError("no station " + stationId);
+    }
+}
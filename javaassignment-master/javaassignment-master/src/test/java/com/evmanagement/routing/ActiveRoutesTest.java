@@ -0,0 +1,194 @@
+package com.evmanagement.routing;
+
+import com.evmanagement.dao.Durability;
+import com.evmanagement.dao.StationJournal;
+import com.evmanagement.dao.StationRepository;
+import com.evmanagement.dao.StationStore;
+import com.evmanagement.model.ChargingStation;
+import com.evmanagement.model.ChargingStop;
+import com.evmanagement.model.Route;
+import com.evmanagement.model.VehicleProfile;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Availability and price changes re-plan the routes that stop at the station,
+ * from that stop on, keeping the stops before it; other changes, and changes
+ * to stations no route stops at, leave every route alone.
+ */
+public class ActiveRoutesTest {
+    private static final VehicleProfile VEHICLE = new VehicleProfile("V1", "Test car", 30.0, 18.0, 150.0);
+
+    private final BlockingQueue<Replanned> replans = new LinkedBlockingQueue<>();
+    private File directory;
+    private StationStore store;
+    private StationRepository repository;
+    private ReachabilityGraphs graphs;
+    private ActiveRoutes routes;
+    private Route route;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("active").toFile();
+        store = StationStore.open(new File(directory, StationStore.DEFAULT_STORE_FILE));
+        store.setDurability(Durability.NONE);
+        for (int i = 0; i <= 10; i++) {
+            store.put(new ChargingStation("S" + i, "Station " + i, "On the way",
+                52.0 + (i % 2 == 0 ? 0.05 : -0.05), 5.5 + 0.5 * i, 50.0, 0.40));
+        }
+        store.put(new ChargingStation("CHEAP", "Cheap station", "Just off the way", 52.1, 8.0, 50.0, 0.10));
+        repository = new StationRepository(directory, store);
+        repository.load();
+        graphs = new ReachabilityGraphs(repository, directory);
+        routes = new ActiveRoutes(graphs);
+        routes.addReplanListener((replannedRoute, fromStop, plan) ->
+            replans.add(new Replanned(fromStop, plan)));
+
+        route = new Route("R1", "52.0, 5.0", "52.0, 11.0", VEHICLE);
+        route.calculateRoute(graphs.forVehicle(VEHICLE), false);
+        routes.track(route, RoutePlanner.Objective.COST);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        repository.close();
+        store.close();
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    @Test
+    public void routesAreFoundByTheirStops() {
+        assertTrue(stationIds(route).contains("CHEAP"));
+        for (String stationId : stationIds(route)) {
+            assertTrue(stationId, routes.routesUsing(stationId).contains("R1"));
+        }
+        assertTrue(routes.routesUsing("S0").isEmpty());
+        assertEquals(1, routes.size());
+
+        routes.untrack("R1");
+        assertEquals(0, routes.size());
+        assertTrue(routes.routesUsing("CHEAP").isEmpty());
+    }
+
+    @Test
+    public void repricedStopIsReplannedFromThere() throws Exception {
+        List<ChargingStop> before = route.getChargingStops();
+        int cheapStop = stationIds(route).indexOf("CHEAP");
+        // Beyond the range from the start, so there is a stop to keep
+        assertTrue(cheapStop > 0);
+        change("CHEAP", StationJournal.Entry.pricing(0.90), StationJournal.ChangeType.PRICING);
+
+        Replanned replanned = next();
+        assertEquals(cheapStop, replanned.fromStop);
+        assertNotNull(replanned.plan);
+        List<ChargingStop> after = route.getChargingStops();
+        for (int i = 0; i < cheapStop; i++) {
+            assertEquals(before.get(i).getStationId(), after.get(i).getStationId());
+            assertEquals(before.get(i).getEnergyKWh(), after.get(i).getEnergyKWh(), 0.0);
+        }
+        assertFalse(stationIds(route).contains("CHEAP"));
+        assertTrue(routes.routesUsing("CHEAP").isEmpty());
+        for (String stationId : stationIds(route)) {
+            assertTrue(stationId, routes.routesUsing(stationId).contains("R1"));
+        }
+        assertEquals(1, routes.getReplannedCount());
+    }
+
+    @Test
+    public void otherChangesLeaveRoutesAlone() throws Exception {
+        String firstStop = stationIds(route).get(0);
+        routes.stationChanged("CHEAP", StationJournal.ChangeType.REVIEW);
+        routes.stationChanged("CHEAP", StationJournal.ChangeType.OCCUPANCY);
+        routes.stationChanged("S0", StationJournal.ChangeType.PRICING);
+        routes.stationChanged(null, null);
+        // The replanner takes changes in order, so this one comes out first if the others queued nothing
+        change(firstStop, StationJournal.Entry.availability(false), StationJournal.ChangeType.AVAILABILITY);
+
+        Replanned replanned = next();
+        assertEquals(0, replanned.fromStop);
+        assertFalse(stationIds(route).contains(firstStop));
+        assertNull(replans.poll(200, TimeUnit.MILLISECONDS));
+        assertEquals(1, routes.getReplannedCount());
+    }
+
+    @Test
+    public void unreachableDestinationKeepsTheRoute() throws Exception {
+        List<String> stops = stationIds(route);
+        for (ChargingStation station : repository.getAll()) {
+            station.applyJournalEntry(station.getJournalSequence() + 1, StationJournal.Entry.availability(false));
+            graphs.stationChanged(station.getStationId(), StationJournal.ChangeType.AVAILABILITY);
+        }
+        routes.stationChanged(stops.get(0), StationJournal.ChangeType.AVAILABILITY);
+
+        Replanned replanned = next();
+        assertNull(replanned.plan);
+        assertEquals(stops, stationIds(route));
+        assertEquals(1, routes.getUnreachableCount());
+        assertEquals(0, routes.getReplannedCount());
+    }
+
+    @Test
+    public void finishedRoutesAreDropped() throws Exception {
+        route.setStatus(Route.RouteStatus.COMPLETED);
+        routes.stationChanged("CHEAP", StationJournal.ChangeType.PRICING);
+
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (routes.size() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        assertEquals(0, routes.size());
+        assertNull(replans.poll(200, TimeUnit.MILLISECONDS));
+    }
+
+    // Change a station the way its repository would announce it to both listeners
+    private void change(String stationId, StationJournal.Entry entry, StationJournal.ChangeType type) {
+        ChargingStation station = repository.get(stationId);
+        station.applyJournalEntry(station.getJournalSequence() + 1, entry);
+        graphs.stationChanged(stationId, type);
+        routes.stationChanged(stationId, type);
+    }
+
+    private Replanned next() throws InterruptedException {
+        Replanned replanned = replans.poll(10, TimeUnit.SECONDS);
+        assertNotNull("route was not re-planned", replanned);
+        return replanned;
+    }
+
+    private static List<String> stationIds(Route route) {
+        return route.getChargingStops().stream()
+            .map(ChargingStop::getStationId)
+            .collect(Collectors.toList());
+    }
+
+    private static class Replanned {
+        private final int fromStop;
+        private final RoutePlan plan;
+
+        Replanned(int fromStop, RoutePlan plan) {
+            this.fromStop = fromStop;
+            this.plan = plan;
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package com.evmanagement.routing;
+
+import com.evmanagement.dao.Durability;
+import com.evmanagement.dao.StationJournal;
+import com.evmanagement.dao.StationRepository;
+import com.evmanagement.dao.StationStore;
+import com.evmanagement.model.ChargingStation;
+import com.evmanagement.model.VehicleProfile;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Every request of a batch gets its result, with the plan a planner on its
+ * own would find; unreachable and failing requests are reported in their
+ * results, and changes made once the batch is submitted do not reach it.
+ */
+public class FleetPlannerTest {
+    private static final VehicleProfile VEHICLE = new VehicleProfile("V1", "Test car", 30.0, 18.0, 150.0);
+
+    private File directory;
+    private StationStore store;
+    private StationRepository repository;
+    private ReachabilityGraphs graphs;
+    private FleetPlanner planner;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("fleet").toFile();
+        store = StationStore.open(new File(directory, StationStore.DEFAULT_STORE_FILE));
+        store.setDurability(Durability.NONE);
+        for (int i = 0; i <= 10; i++) {
+            store.put(new ChargingStation("S" + i, "Station " + i, "On the way",
+                52.0 + (i % 2 == 0 ? 0.05 : -0.05), 5.5 + 0.5 * i, 50.0, 0.40));
+        }
+        store.put(new ChargingStation("CHEAP", "Cheap station", "Just off the way", 52.1, 8.0, 50.0, 0.10));
+        repository = new StationRepository(directory, store);
+        repository.load();
+        graphs = new ReachabilityGraphs(repository, directory);
+        planner = new FleetPlanner(graphs, 4);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        planner.close();
+        repository.close();
+        store.close();
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    @Test
+    public void everyRequestGetsThePlanOfASinglePlanner() throws IOException {
+        List<FleetPlanner.Request> requests = new ArrayList<>();
+        for (int i = 0; i < 24; i++) {
+            RoutePlanner.Objective objective = i % 2 == 0 ? RoutePlanner.Objective.TIME : RoutePlanner.Objective.COST;
+            // A few destinations shared by several requests
+            requests.add(new FleetPlanner.Request(VEHICLE, 52.0 + 0.01 * (i % 3), 5.0, 52.0, 10.0 + 0.5 * (i % 4),
+                objective));
+        }
+        Map<FleetPlanner.Request, FleetPlanner.Result> results = planAll(requests);
+
+        assertEquals(requests.size(), results.size());
+        ReachabilityGraph graph = graphs.forVehicle(VEHICLE);
+        for (FleetPlanner.Request request : requests) {
+            FleetPlanner.Result result = results.get(request);
+            assertNotNull(result);
+            assertNull(result.getError());
+            assertTrue(result.isReachable());
+            RoutePlan alone = new RoutePlanner(graph).plan(request.getStartLat(), request.getStartLon(),
+                request.getEndLat(), request.getEndLon(), request.getVehicle(), request.getObjective());
+            assertEquals(stationIds(alone), stationIds(result.getPlan()));
+            assertEquals(alone.getTotalHours(), result.getPlan().getTotalHours(), 1e-6);
+            assertEquals(alone.getChargingCost(), result.getPlan().getChargingCost(), 1e-6);
+        }
+
+        FleetPlanner.Stats stats = planner.getStats();
+        assertEquals(requests.size(), stats.getPlanned());
+        assertEquals(0, stats.getUnreachable());
+        assertEquals(0, stats.getFailed());
+        assertEquals(4, stats.getThreads());
+    }
+
+    @Test
+    public void unreachableAndFailedRequestsAreReported() throws IOException {
+        FleetPlanner.Request planned = new FleetPlanner.Request(VEHICLE, 52.0, 5.0, 52.0, 10.0,
+            RoutePlanner.Objective.TIME);
+        // Far beyond the last station
+        FleetPlanner.Request unreachable = new FleetPlanner.Request(VEHICLE, 52.0, 5.0, 52.0, 20.0,
+            RoutePlanner.Objective.TIME);
+        // A battery of unknown size has no charging curve to plan with
+        VehicleProfile unknown = new VehicleProfile("V2", "Unknown car", Double.NaN, 18.0, 150.0);
+        FleetPlanner.Request failed = new FleetPlanner.Request(unknown, 52.0, 5.0, 52.0, 10.0,
+            RoutePlanner.Objective.TIME);
+        Map<FleetPlanner.Request, FleetPlanner.Result> results = planAll(Arrays.asList(planned, unreachable, failed));
+
+        assertTrue(results.get(planned).isReachable());
+        assertFalse(results.get(unreachable).isReachable());
+        assertNull(results.get(unreachable).getError());
+        assertFalse(results.get(failed).isReachable());
+        assertNotNull(results.get(failed).getError());
+
+        FleetPlanner.Stats stats = planner.getStats();
+        assertEquals(3, stats.getRequests());
+        assertEquals(1, stats.getPlanned());
+        assertEquals(1, stats.getUnreachable());
+        assertEquals(1, stats.getFailed());
+    }
+
+    @Test
+    public void changesAfterSubmittingDoNotReachTheBatch() throws IOException {
+        FleetPlanner.Request request = new FleetPlanner.Request(VEHICLE, 52.0, 5.0, 52.0, 11.0,
+            RoutePlanner.Objective.COST);
+        ChargingStation cheap = repository.get("CHEAP");
+        List<FleetPlanner.Result> results = new ArrayList<>();
+        planner.plan(Arrays.asList(request, request, request)).forEach(result -> {
+            // The batch was submitted before the stream is consumed
+            if (results.isEmpty()) {
+                cheap.applyJournalEntry(1, StationJournal.Entry.pricing(0.90));
+                graphs.stationChanged(cheap.getStationId(), StationJournal.ChangeType.PRICING);
+            }
+            results.add(result);
+        });
+        for (FleetPlanner.Result result : results) {
+            assertTrue(stationIds(result.getPlan()).contains("CHEAP"));
+        }
+
+        FleetPlanner.Result after = planAll(Collections.singletonList(request)).get(request);
+        assertFalse(stationIds(after.getPlan()).contains("CHEAP"));
+    }
+
+    private Map<FleetPlanner.Request, FleetPlanner.Result> planAll(List<FleetPlanner.Request> requests)
+            throws IOException {
+        Map<FleetPlanner.Request, FleetPlanner.Result> results = new IdentityHashMap<>();
+        planner.plan(requests).forEach(result -> results.put(result.getRequest(), result));
+        return results;
+    }
+
+    private static List<String> stationIds(RoutePlan plan) {
+        return plan.getStops().stream()
+            .map(stop -> stop.getStation().getStationId())
+            .collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,123 @@
+package com.evmanagement.routing;
+
+import com.evmanagement.model.ChargingStation;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Stations added to a built graph, one at a time or in batches, leave it with
+ * the same edges as a graph built from all of them at once, and a graph read
+ * back from its persisted form has the edges it was written with.
+ */
+public class ReachabilityGraphTest {
+    private static final double RANGE_KM = 60.0;
+
+    private List<ChargingStation> stations;
+
+    @Before
+    public void setUp() {
+        stations = new ArrayList<>();
+        for (int i = 0; i < 120; i++) {
+            // A loose grid, so rows hold a mix of near and far neighbours
+            stations.add(new ChargingStation("S" + i, "Station " + i, "Somewhere",
+                51.0 + (i % 12) * 0.15, 6.0 + (i / 12) * 0.2, 50.0, 0.30 + i / 1000.0));
+        }
+    }
+
+    @Test
+    public void addedStationsGetTheEdgesOfAFullBuild() {
+        ReachabilityGraph full = new ReachabilityGraph(stations, RANGE_KM);
+        ReachabilityGraph grown = new ReachabilityGraph(stations.subList(0, 50), RANGE_KM);
+        grown.addStations(stations.subList(50, 90));
+        for (ChargingStation station : stations.subList(90, 120)) {
+            grown.addStation(station);
+        }
+        // Known stations are skipped
+        grown.addStations(stations.subList(0, 10));
+
+        assertTrue(grown.getPatchedRowCount() > 0);
+        assertSameEdges(full, grown);
+    }
+
+    @Test
+    public void writtenGraphIsReadBack() throws IOException {
+        ReachabilityGraph graph = new ReachabilityGraph(stations.subList(0, 80), RANGE_KM);
+        graph.addStations(stations.subList(80, 120));
+        ReachabilityGraph read = ReachabilityGraph.readFrom(input(graph), RANGE_KM, current(stations));
+
+        assertEquals(0, read.getPatchedRowCount());
+        assertSameEdges(graph, read);
+        assertEquals(stations.get(7).getPricePerKWh(), read.getPricePerKWh(read.indexOf("S7")), 0.0);
+    }
+
+    @Test
+    public void stationsAddedSinceWritingAreAttached() throws IOException {
+        ReachabilityGraph written = new ReachabilityGraph(stations.subList(0, 100), RANGE_KM);
+        ReachabilityGraph read = ReachabilityGraph.readFrom(input(written), RANGE_KM, current(stations));
+        assertSameEdges(new ReachabilityGraph(stations, RANGE_KM), read);
+    }
+
+    @Test
+    public void staleGraphIsNotRead() throws IOException {
+        ReachabilityGraph graph = new ReachabilityGraph(stations, RANGE_KM);
+        assertNull(ReachabilityGraph.readFrom(input(graph), RANGE_KM + 1, current(stations)));
+
+        Map<String, ChargingStation> removed = current(stations);
+        removed.remove("S3");
+        assertNull(ReachabilityGraph.readFrom(input(graph), RANGE_KM, removed));
+
+        Map<String, ChargingStation> moved = current(stations);
+        moved.put("S3", new ChargingStation("S3", "Station 3", "Elsewhere", 48.0, 2.0, 50.0, 0.30));
+        assertNull(ReachabilityGraph.readFrom(input(graph), RANGE_KM, moved));
+    }
+
+    // Rows may order equally distant stations differently, as that follows their indices
+    private static void assertSameEdges(ReachabilityGraph expected, ReachabilityGraph actual) {
+        assertEquals(expected.size(), actual.size());
+        assertEquals(expected.getEdgeCount(), actual.getEdgeCount());
+        for (int i = 0; i < expected.size(); i++) {
+            String stationId = expected.getStation(i).getStationId();
+            ReachabilityGraph.Edges row = actual.neighbours(actual.indexOf(stationId));
+            for (int k = row.getFrom() + 1; k < row.getTo(); k++) {
+                assertTrue(stationId, row.distanceKm(k - 1) <= row.distanceKm(k));
+            }
+            assertEquals(stationId, edges(expected, expected.neighbours(i)), edges(actual, row));
+        }
+    }
+
+    private static Map<String, Double> edges(ReachabilityGraph graph, ReachabilityGraph.Edges row) {
+        Map<String, Double> distances = new HashMap<>();
+        for (int k = row.getFrom(); k < row.getTo(); k++) {
+            distances.put(graph.getStation(row.target(k)).getStationId(), row.distanceKm(k));
+        }
+        return distances;
+    }
+
+    private static DataInputStream input(ReachabilityGraph graph) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        graph.writeTo(new DataOutputStream(bytes));
+        return new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+    }
+
+    private static Map<String, ChargingStation> current(List<ChargingStation> stations) {
+        Map<String, ChargingStation> byId = new HashMap<>();
+        for (ChargingStation station : stations) {
+            byId.put(station.getStationId(), station);
+        }
+        return byId;
+    }
+}
@@ -0,0 +1,140 @@
+package com.evmanagement.routing;
+
+import com.evmanagement.dao.StationJournal;
+import com.evmanagement.model.ChargingStation;
+import com.evmanagement.model.VehicleProfile;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Repeated trips are answered from the cache until a change that can alter a
+ * plan drops every entry; the plan found then reflects the change.
+ */
+public class RoutePlanCacheTest {
+    private static final VehicleProfile VEHICLE = new VehicleProfile("V1", "Test car", 30.0, 18.0, 150.0);
+    private static final double START_LAT = 52.0;
+    private static final double START_LON = 5.0;
+    private static final double END_LAT = 52.0;
+    private static final double END_LON = 11.0;
+
+    private ChargingStation cheap;
+    private ReachabilityGraph graph;
+    private RoutePlanCache cache;
+
+    @Before
+    public void setUp() {
+        List<ChargingStation> stations = new ArrayList<>();
+        for (int i = 0; i <= 10; i++) {
+            stations.add(new ChargingStation("S" + i, "Station " + i, "On the way",
+                52.0 + (i % 2 == 0 ? 0.05 : -0.05), 5.5 + 0.5 * i, 50.0, 0.40));
+        }
+        cheap = new ChargingStation("CHEAP", "Cheap station", "Just off the way", 52.1, 8.0, 50.0, 0.10);
+        stations.add(cheap);
+        graph = new ReachabilityGraph(stations, ReachabilityGraphs.rangeClass(VEHICLE));
+        cache = new RoutePlanCache(100, 20000);
+    }
+
+    @Test
+    public void repeatedTripIsAHit() {
+        RoutePlan first = plan(START_LAT, START_LON, RoutePlanner.Objective.TIME, null);
+        assertNotNull(first);
+        assertSame(first, plan(START_LAT, START_LON, RoutePlanner.Objective.TIME, null));
+        // Within the same 100 m cell
+        assertSame(first, plan(START_LAT + 0.0001, START_LON, RoutePlanner.Objective.TIME, null));
+        assertNotSame(first, plan(START_LAT + 0.01, START_LON, RoutePlanner.Objective.TIME, null));
+        assertNotSame(first, plan(START_LAT, START_LON, RoutePlanner.Objective.COST, null));
+        assertEquals(2, cache.getStats().getHits());
+        assertEquals(3, cache.getStats().getMisses());
+    }
+
+    @Test
+    public void departuresShareTheirSlot() {
+        LocalDateTime departure = LocalDateTime.of(2024, 3, 4, 9, 0);
+        RoutePlan first = plan(START_LAT, START_LON, RoutePlanner.Objective.TIME, departure);
+        assertSame(first, plan(START_LAT, START_LON, RoutePlanner.Objective.TIME, departure.plusMinutes(14)));
+        assertNotSame(first, plan(START_LAT, START_LON, RoutePlanner.Objective.TIME, departure.plusMinutes(15)));
+        assertNotSame(first, plan(START_LAT, START_LON, RoutePlanner.Objective.TIME, null));
+    }
+
+    @Test
+    public void planningChangesInvalidate() {
+        for (StationJournal.ChangeType type : new StationJournal.ChangeType[] {
+                StationJournal.ChangeType.AVAILABILITY, StationJournal.ChangeType.PRICING,
+                StationJournal.ChangeType.ADD_PORT, StationJournal.ChangeType.REMOVE_PORT,
+                StationJournal.ChangeType.OPERATING_HOURS, StationJournal.ChangeType.MAINTENANCE_WINDOW, null}) {
+            RoutePlan before = plan(START_LAT, START_LON, RoutePlanner.Objective.TIME, null);
+            List<RoutePlan> front = cache.paretoFront(graph, START_LAT, START_LON, END_LAT, END_LON, VEHICLE, null);
+            cache.stationChanged("S3", type);
+            assertEquals("after " + type, 0, cache.getStats().getEntries());
+            assertNotSame("after " + type, before, plan(START_LAT, START_LON, RoutePlanner.Objective.TIME, null));
+            assertNotSame("after " + type, front,
+                cache.paretoFront(graph, START_LAT, START_LON, END_LAT, END_LON, VEHICLE, null));
+        }
+    }
+
+    @Test
+    public void otherChangesKeepEntries() {
+        RoutePlan before = plan(START_LAT, START_LON, RoutePlanner.Objective.TIME, null);
+        for (StationJournal.ChangeType type : new StationJournal.ChangeType[] {
+                StationJournal.ChangeType.OCCUPANCY, StationJournal.ChangeType.REVIEW,
+                StationJournal.ChangeType.PAYMENT_OPTIONS, StationJournal.ChangeType.EMERGENCY_CONTACT}) {
+            cache.stationChanged("S3", type);
+            assertSame("after " + type, before, plan(START_LAT, START_LON, RoutePlanner.Objective.TIME, null));
+        }
+        assertEquals(0, cache.getStats().getInvalidations());
+    }
+
+    @Test
+    public void planAfterRepricingReflectsIt() {
+        RoutePlan before = plan(START_LAT, START_LON, RoutePlanner.Objective.COST, null);
+        assertTrue("plan should charge at the cheap station", usesCheapStation(before));
+
+        cheap.applyJournalEntry(1, StationJournal.Entry.pricing(0.90));
+        graph.updateStation(cheap);
+        // Still the old plan until the cache hears of the change
+        assertSame(before, plan(START_LAT, START_LON, RoutePlanner.Objective.COST, null));
+        cache.stationChanged(cheap.getStationId(), StationJournal.ChangeType.PRICING);
+
+        RoutePlan after = plan(START_LAT, START_LON, RoutePlanner.Objective.COST, null);
+        RoutePlan fresh = new RoutePlanner(graph).plan(START_LAT, START_LON, END_LAT, END_LON, VEHICLE,
+            RoutePlanner.Objective.COST);
+        assertEquals(fresh.getChargingCost(), after.getChargingCost(), 1e-9);
+        assertTrue(after.getChargingCost() > before.getChargingCost());
+        assertFalse("plan should avoid the repriced station", usesCheapStation(after));
+    }
+
+    @Test
+    public void leastRecentlyUsedEntriesAreEvicted() {
+        RoutePlanCache small = new RoutePlanCache(100, 10);
+        RoutePlan first = small.plan(graph, START_LAT, START_LON, END_LAT, END_LON, VEHICLE,
+            RoutePlanner.Objective.TIME, null);
+        for (int i = 1; i <= 5; i++) {
+            small.plan(graph, START_LAT + 0.01 * i, START_LON, END_LAT, END_LON, VEHICLE,
+                RoutePlanner.Objective.TIME, null);
+        }
+        assertTrue(small.getStats().getWeight() <= 10);
+        assertTrue(small.getStats().getEvictions() > 0);
+        assertNotSame(first, small.plan(graph, START_LAT, START_LON, END_LAT, END_LON, VEHICLE,
+            RoutePlanner.Objective.TIME, null));
+    }
+
+    private RoutePlan plan(double startLat, double startLon, RoutePlanner.Objective objective,
+                           LocalDateTime departure) {
+        return cache.plan(graph, startLat, startLon, END_LAT, END_LON, VEHICLE, objective, departure);
+    }
+
+    private boolean usesCheapStation(RoutePlan plan) {
+        return plan.getStops().stream().anyMatch(stop -> stop.getStation().getStationId().equals("CHEAP"));
+    }
+}
@@ -0,0 +1,172 @@
+package com.evmanagement.routing;
+
+import com.evmanagement.dao.StationJournal;
+import com.evmanagement.model.ChargingStation;
+import com.evmanagement.model.VehicleProfile;
+import com.evmanagement.util.GeoMath;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.time.DayOfWeek;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the searches against exhaustive ones over the same states: A*
+ * against Dijkstra, and the Pareto front against label-correcting, both
+ * driving on to every place in range from every charge level. Neither the
+ * lower bounds nor the places left untried may change a plan's time or cost.
+ */
+public class RoutePlannerTest {
+    private static final VehicleProfile VEHICLE = new VehicleProfile("V1", "Test car", 30.0, 18.0, 150.0);
+    private static final double[] POWERS = {7.2, 22.0, 50.0, 150.0, 350.0};
+
+    private final Random random = new Random(42);
+    private ReachabilityGraph graph;
+
+    @Before
+    public void setUp() {
+        List<ChargingStation> stations = new ArrayList<>();
+        for (int i = 0; i < 150; i++) {
+            ChargingStation station = new ChargingStation("S" + i, "Station " + i, "Somewhere",
+                50.0 + 4.0 * random.nextDouble(), 5.0 + 6.0 * random.nextDouble(),
+                50.0, 0.20 + 0.40 * random.nextDouble());
+            // Replayed rather than made, so the test writes no journal
+            station.applyJournalEntry(1, StationJournal.Entry.addPort(new ChargingStation.ChargingPort("P3",
+                ChargingStation.ChargingType.DC_FAST, POWERS[random.nextInt(POWERS.length)])));
+            if (i % 3 == 0) {
+                station.applyJournalEntry(2, StationJournal.Entry.operatingHours(dayTime()));
+            }
+            stations.add(station);
+        }
+        graph = new ReachabilityGraph(stations, ReachabilityGraphs.rangeClass(VEHICLE));
+    }
+
+    @Test
+    public void fastestPlanMatchesDijkstra() {
+        comparePlans(RoutePlanner.Objective.TIME, null);
+    }
+
+    @Test
+    public void cheapestPlanMatchesDijkstra() {
+        comparePlans(RoutePlanner.Objective.COST, null);
+    }
+
+    @Test
+    public void fastestPlanWithOpeningHoursMatchesDijkstra() {
+        comparePlans(RoutePlanner.Objective.TIME, LocalDateTime.of(2024, 3, 4, 18, 30));
+    }
+
+    @Test
+    public void paretoFrontMatchesLabelCorrecting() {
+        compareFronts(null);
+    }
+
+    @Test
+    public void paretoFrontWithOpeningHoursMatchesLabelCorrecting() {
+        compareFronts(LocalDateTime.of(2024, 3, 4, 18, 30));
+    }
+
+    @Test
+    public void fastestPlanChargesIntoTheTaper() {
+        // A fast station, then a slow one 58 km on, with 138 km to go from there: charging at
+        // the fast one is quicker until its taper drops below the slow one's 7.2 kW at about
+        // 96%, well past both where the taper starts and what reaching the slow one needs
+        double kmPerDegree = GeoMath.distanceKm(52.0, 5.0, 52.0, 6.0);
+        ChargingStation fast = new ChargingStation("FAST", "Fast", "Somewhere",
+            52.0, 5.0 + 100.0 / kmPerDegree, 50.0, 0.30);
+        ChargingStation slow = new ChargingStation("SLOW", "Slow", "Somewhere",
+            52.0, 5.0 + 158.0 / kmPerDegree, 50.0, 0.30);
+        slow.applyJournalEntry(1, StationJournal.Entry.removePort("P1"));
+        RoutePlanner planner = new RoutePlanner(
+            new ReachabilityGraph(Arrays.asList(fast, slow), ReachabilityGraphs.rangeClass(VEHICLE)));
+        double endLon = 5.0 + 296.0 / kmPerDegree;
+
+        RoutePlan plan = planner.plan(52.0, 5.0, 52.0, endLon, VEHICLE, RoutePlanner.Objective.TIME);
+        RoutePlan best = planner.planExhaustively(52.0, 5.0, 52.0, endLon, VEHICLE, RoutePlanner.Objective.TIME,
+            null);
+        assertEquals(best.getTotalHours(), plan.getTotalHours(), 1e-6);
+        assertEquals(2, plan.getStops().size());
+        assertEquals(0.95, plan.getStops().get(0).getDepartureSoc(), 1e-6);
+    }
+
+    @Test
+    public void unreachableDestinationHasNoPlan() {
+        RoutePlanner planner = new RoutePlanner(graph);
+        // Far out to sea, beyond any station's range
+        assertNull(planner.plan(52.0, 8.0, 52.0, -20.0, VEHICLE, RoutePlanner.Objective.TIME));
+        assertNull(planner.planExhaustively(52.0, 8.0, 52.0, -20.0, VEHICLE, RoutePlanner.Objective.TIME, null));
+    }
+
+    private void comparePlans(RoutePlanner.Objective objective, LocalDateTime departure) {
+        RoutePlanner planner = new RoutePlanner(graph);
+        long informed = 0;
+        long exhaustive = 0;
+        int stops = 0;
+        for (int query = 0; query < 12; query++) {
+            // Across the stations' area, so most plans need a stop or two
+            double startLat = 50.0 + 4.0 * random.nextDouble();
+            double startLon = 5.0 + random.nextDouble();
+            double endLat = 50.0 + 4.0 * random.nextDouble();
+            double endLon = 10.0 + random.nextDouble();
+            RoutePlan plan = planner.plan(startLat, startLon, endLat, endLon, VEHICLE, objective, 1.0, departure);
+            RoutePlan best = planner.planExhaustively(startLat, startLon, endLat, endLon, VEHICLE, objective,
+                departure);
+            if (best == null) {
+                assertNull("query " + query, plan);
+                continue;
+            }
+            assertNotNull("query " + query, plan);
+            if (objective == RoutePlanner.Objective.TIME) {
+                assertEquals("query " + query, best.getTotalHours(), plan.getTotalHours(), 1e-6);
+            } else {
+                assertEquals("query " + query, best.getChargingCost(), plan.getChargingCost(), 1e-6);
+            }
+            stops += plan.getStops().size();
+            informed += plan.getExpandedStates();
+            exhaustive += best.getExpandedStates();
+        }
+        assertTrue("no plan charged", stops > 0);
+        assertTrue("A* expanded " + informed + " states, Dijkstra " + exhaustive, informed <= exhaustive);
+    }
+
+    private void compareFronts(LocalDateTime departure) {
+        RoutePlanner planner = new RoutePlanner(graph);
+        int tradeOffs = 0;
+        for (int query = 0; query < 6; query++) {
+            double startLat = 50.0 + 4.0 * random.nextDouble();
+            double startLon = 5.0 + random.nextDouble();
+            double endLat = 50.0 + 4.0 * random.nextDouble();
+            double endLon = 10.0 + random.nextDouble();
+            List<RoutePlan> front = planner.paretoFront(startLat, startLon, endLat, endLon, VEHICLE, departure);
+            List<RoutePlan> exhaustive = planner.paretoFrontExhaustively(startLat, startLon, endLat, endLon,
+                VEHICLE, departure);
+            assertEquals("query " + query, exhaustive.size(), front.size());
+            for (int i = 0; i < front.size(); i++) {
+                assertEquals("query " + query + " plan " + i,
+                    exhaustive.get(i).getTotalHours(), front.get(i).getTotalHours(), 1e-6);
+                assertEquals("query " + query + " plan " + i,
+                    exhaustive.get(i).getChargingCost(), front.get(i).getChargingCost(), 1e-6);
+            }
+            tradeOffs += front.size();
+        }
+        assertTrue("no trade-offs", tradeOffs > 6);
+    }
+
+    private static ChargingStation.OperatingHours dayTime() {
+        ChargingStation.OperatingHours hours = new ChargingStation.OperatingHours();
+        for (DayOfWeek day : DayOfWeek.values()) {
+            hours.setHours(day, LocalTime.of(7, 0), LocalTime.of(21, 0));
+        }
+        return hours;
+    }
+}
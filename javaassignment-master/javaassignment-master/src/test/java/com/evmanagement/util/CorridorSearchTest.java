@@ -0,0 +1,146 @@
+package com.evmanagement.util;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.jxmapviewer.viewer.GeoPosition;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks corridors against a scan of every point, measuring the distance to
+ * each segment with unit vectors rather than bearings: a point is nearest the
+ * segment's great circle at its projection onto that circle's plane, or
+ * otherwise at one of the ends.
+ */
+public class CorridorSearchTest {
+    // Distances this close to the width may land either side of it
+    private static final double TOLERANCE_KM = 1e-6;
+
+    private final Random random = new Random(11);
+    private final List<double[]> points = new ArrayList<>();
+    private CorridorSearch<double[]> search;
+
+    @Before
+    public void setUp() {
+        for (int i = 0; i < 5000; i++) {
+            points.add(new double[] {35.0 + 35.0 * random.nextDouble(), -10.0 + 50.0 * random.nextDouble()});
+        }
+        KdTree<double[]> tree = new KdTree<>(points, p -> p[0], p -> p[1]);
+        search = new CorridorSearch<>(tree, p -> p[0], p -> p[1]);
+    }
+
+    @Test
+    public void shortRoutesMatchScan() {
+        for (int query = 0; query < 100; query++) {
+            double[] lats = new double[2 + random.nextInt(6)];
+            double[] lons = new double[lats.length];
+            lats[0] = 40.0 + 25.0 * random.nextDouble();
+            lons[0] = -5.0 + 40.0 * random.nextDouble();
+            for (int i = 1; i < lats.length; i++) {
+                lats[i] = lats[i - 1] + 2.0 * random.nextGaussian();
+                lons[i] = lons[i - 1] + 3.0 * random.nextGaussian();
+            }
+            compare(lats, lons, 50.0 * random.nextDouble());
+        }
+    }
+
+    @Test
+    public void longSegmentsMatchScan() {
+        // Long east-west legs at high latitude bulge well north of their ends
+        for (int query = 0; query < 50; query++) {
+            double lat = 50.0 + 15.0 * random.nextDouble();
+            compare(new double[] {lat, lat + random.nextGaussian()}, new double[] {-10.0, 40.0},
+                100.0 * random.nextDouble());
+        }
+    }
+
+    @Test
+    public void singlePointIsARadius() {
+        compare(new double[] {52.0}, new double[] {8.0}, 75.0);
+    }
+
+    @Test
+    public void polylineOfPositionsMatchesArrays() {
+        List<GeoPosition> route = new ArrayList<>();
+        route.add(new GeoPosition(48.1, 11.6));
+        route.add(new GeoPosition(50.1, 8.7));
+        route.add(new GeoPosition(53.6, 10.0));
+        Set<double[]> fromPositions = identitySet(search.find(route, 30.0));
+        Set<double[]> fromArrays = identitySet(search.find(new double[] {48.1, 50.1, 53.6},
+            new double[] {11.6, 8.7, 10.0}, 30.0));
+        assertEquals(fromArrays, fromPositions);
+        assertTrue(search.find(new ArrayList<>(), 30.0).isEmpty());
+    }
+
+    private void compare(double[] lats, double[] lons, double widthKm) {
+        List<double[]> found = search.find(lats, lons, widthKm);
+        Set<double[]> inside = identitySet(found);
+        assertEquals("reported twice", found.size(), inside.size());
+        for (double[] point : points) {
+            double distance = Double.POSITIVE_INFINITY;
+            for (int i = 0; i + 1 < lats.length; i++) {
+                distance = Math.min(distance, segmentDistanceKm(lats[i], lons[i], lats[i + 1], lons[i + 1], point));
+            }
+            if (lats.length == 1) {
+                distance = GeoMath.distanceKm(lats[0], lons[0], point[0], point[1]);
+            }
+            if (Math.abs(distance - widthKm) > TOLERANCE_KM) {
+                assertEquals("point " + point[0] + "," + point[1] + " at " + distance + " km of " + widthKm,
+                    distance < widthKm, inside.contains(point));
+            }
+        }
+    }
+
+    private static double segmentDistanceKm(double latA, double lonA, double latB, double lonB, double[] point) {
+        double[] a = unit(latA, lonA);
+        double[] b = unit(latB, lonB);
+        double[] p = unit(point[0], point[1]);
+        double[] normal = cross(a, b);
+        double norm = Math.sqrt(dot(normal, normal));
+        double toEnds = Math.min(angle(a, p), angle(b, p));
+        if (norm < 1e-15) {
+            return toEnds * GeoMath.EARTH_RADIUS_KM;
+        }
+        for (int k = 0; k < 3; k++) normal[k] /= norm;
+        double offPlane = dot(p, normal);
+        double[] projection = new double[3];
+        for (int k = 0; k < 3; k++) projection[k] = p[k] - offPlane * normal[k];
+        // On the segment when it is on the circle between a and b, turning the same way as a to b
+        boolean between = dot(cross(a, projection), normal) >= 0 && dot(cross(projection, b), normal) >= 0;
+        double distance = between ? Math.asin(Math.min(1.0, Math.abs(offPlane))) : toEnds;
+        return distance * GeoMath.EARTH_RADIUS_KM;
+    }
+
+    private static double[] unit(double lat, double lon) {
+        double phi = Math.toRadians(lat);
+        double lambda = Math.toRadians(lon);
+        return new double[] {Math.cos(phi) * Math.cos(lambda), Math.cos(phi) * Math.sin(lambda), Math.sin(phi)};
+    }
+
+    private static double[] cross(double[] u, double[] v) {
+        return new double[] {u[1] * v[2] - u[2] * v[1], u[2] * v[0] - u[0] * v[2], u[0] * v[1] - u[1] * v[0]};
+    }
+
+    private static double dot(double[] u, double[] v) {
+        return u[0] * v[0] + u[1] * v[1] + u[2] * v[2];
+    }
+
+    private static double angle(double[] u, double[] v) {
+        double[] c = cross(u, v);
+        return Math.atan2(Math.sqrt(dot(c, c)), dot(u, v));
+    }
+
+    private static Set<double[]> identitySet(List<double[]> points) {
+        Set<double[]> set = Collections.newSetFromMap(new IdentityHashMap<>());
+        set.addAll(points);
+        return set;
+    }
+}
@@ -0,0 +1,96 @@
+package com.evmanagement.util;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Every cell holds the distance between its origin and destination, whether
+ * the matrix is filled on the caller or split across the pool and whatever
+ * the block boundaries; rows and nearest destinations read back from it.
+ */
+public class DistanceMatrixTest {
+    private final Random random = new Random(14);
+
+    @Test
+    public void smallMatrixHoldsEveryDistance() {
+        GeoMath.Points origins = randomPoints(20);
+        GeoMath.Points destinations = randomPoints(30);
+        DistanceMatrix matrix = DistanceMatrix.compute(origins, destinations);
+        assertEquals(20, matrix.rows());
+        assertEquals(30, matrix.columns());
+        assertMatches(origins, destinations, matrix);
+    }
+
+    @Test
+    public void largeMatrixIsFilledAcrossBlocksAndThreads() {
+        // More cells than the parallel threshold, more columns than a block
+        GeoMath.Points origins = randomPoints(130);
+        GeoMath.Points destinations = randomPoints(1100);
+        assertMatches(origins, destinations, DistanceMatrix.compute(origins, destinations));
+    }
+
+    @Test
+    public void rowsAndNearestReadBack() {
+        GeoMath.Points origins = randomPoints(50);
+        GeoMath.Points destinations = randomPoints(80);
+        DistanceMatrix matrix = DistanceMatrix.compute(origins, destinations);
+        float[] row = new float[matrix.columns()];
+        for (int i = 0; i < matrix.rows(); i++) {
+            matrix.row(i, row);
+            int nearest = 0;
+            for (int j = 0; j < row.length; j++) {
+                assertEquals(matrix.get(i, j), row[j], 0.0f);
+                if (row[j] < row[nearest]) {
+                    nearest = j;
+                }
+            }
+            assertEquals(nearest, matrix.nearest(i));
+        }
+
+        DistanceMatrix empty = DistanceMatrix.compute(origins, new GeoMath.Points(new double[0], new double[0]));
+        assertEquals(-1, empty.nearest(0));
+    }
+
+    @Test
+    public void equirectangularModeIsCloseOverShortDistances() {
+        // Within about 100 km of each other, away from the poles
+        GeoMath.Points origins = randomPoints(40, 0.5);
+        GeoMath.Points destinations = randomPoints(40, 0.5);
+        DistanceMatrix exact = DistanceMatrix.compute(origins, destinations);
+        DistanceMatrix fast = DistanceMatrix.compute(origins, destinations, DistanceMatrix.Mode.EQUIRECTANGULAR);
+        for (int i = 0; i < exact.rows(); i++) {
+            for (int j = 0; j < exact.columns(); j++) {
+                assertTrue(Math.abs(fast.get(i, j) - exact.get(i, j)) <= 1e-4 * exact.get(i, j) + 1e-3);
+            }
+        }
+    }
+
+    private static void assertMatches(GeoMath.Points origins, GeoMath.Points destinations, DistanceMatrix matrix) {
+        for (int i = 0; i < origins.size(); i++) {
+            for (int j = 0; j < destinations.size(); j++) {
+                double km = GeoMath.distanceKm(origins.getLatitude(i), origins.getLongitude(i),
+                    destinations.getLatitude(j), destinations.getLongitude(j));
+                // Float precision
+                assertEquals(km, matrix.get(i, j), 1e-6 * km + 1e-6);
+            }
+        }
+    }
+
+    private GeoMath.Points randomPoints(int n) {
+        return randomPoints(n, 10.0);
+    }
+
+    private GeoMath.Points randomPoints(int n, double spanDegrees) {
+        double[] lats = new double[n];
+        double[] lons = new double[n];
+        for (int i = 0; i < n; i++) {
+            lats[i] = 45.0 + spanDegrees * random.nextDouble();
+            lons[i] = 5.0 + spanDegrees * random.nextDouble();
+        }
+        return new GeoMath.Points(lats, lons);
+    }
+}
@@ -0,0 +1,128 @@
+package com.evmanagement.util;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Heights come back at the grid points they were written for and are
+ * interpolated between them, clamped to the edges outside the grid. Points
+ * without data are left out, and with none around the height is unknown.
+ */
+public class ElevationGridTest {
+    private static final double SOUTH = 47.0;
+    private static final double WEST = 8.0;
+    private static final double CELL = 0.01;
+
+    private File directory;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("elevation").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    @Test
+    public void heightsAreInterpolatedBetweenGridPoints() throws IOException {
+        // A plane, which bilinear interpolation reproduces exactly
+        short[] heights = new short[3 * 4];
+        for (int row = 0; row < 3; row++) {
+            for (int column = 0; column < 4; column++) {
+                heights[row * 4 + column] = (short) (100 * row + 10 * column);
+            }
+        }
+        try (ElevationGrid grid = write(3, 4, heights)) {
+            assertEquals(3, grid.getRows());
+            assertEquals(4, grid.getColumns());
+            assertEquals(0.0, grid.elevation(SOUTH, WEST), 1e-9);
+            assertEquals(230.0, grid.elevation(SOUTH + 2 * CELL, WEST + 3 * CELL), 1e-6);
+            assertEquals(130.0, grid.elevation(SOUTH + 1.25 * CELL, WEST + 0.5 * CELL), 1e-6);
+            assertEquals(57.0, grid.elevation(SOUTH + 0.5 * CELL, WEST + 0.7 * CELL), 1e-6);
+            // Outside, the nearest edge
+            assertEquals(30.0, grid.elevation(SOUTH - 1.0, WEST + 5.0), 1e-9);
+            assertEquals(215.0, grid.elevation(SOUTH + 1.0, WEST + 1.5 * CELL), 1e-6);
+        }
+    }
+
+    @Test
+    public void pointsWithoutDataAreLeftOut() throws IOException {
+        short[] heights = {100, ElevationGrid.NO_DATA, 300, ElevationGrid.NO_DATA};
+        try (ElevationGrid grid = write(2, 2, heights)) {
+            // Only the western points have data, so only their heights count
+            assertEquals(200.0, grid.elevation(SOUTH + 0.5 * CELL, WEST + 0.5 * CELL), 1e-6);
+            assertEquals(150.0, grid.elevation(SOUTH + 0.25 * CELL, WEST + 0.9 * CELL), 1e-6);
+        }
+        short[] none = new short[4];
+        Arrays.fill(none, ElevationGrid.NO_DATA);
+        try (ElevationGrid grid = write(2, 2, none)) {
+            assertTrue(Double.isNaN(grid.elevation(SOUTH + 0.5 * CELL, WEST + 0.5 * CELL)));
+        }
+    }
+
+    @Test
+    public void asciiGridIsConverted() throws IOException {
+        File input = new File(directory, "tile.asc");
+        // Rows listed from the north; corner coordinates are half a cell outside the first point
+        Files.write(input.toPath(), Arrays.asList(
+            "ncols 3",
+            "nrows 2",
+            "xllcorner " + (WEST - CELL / 2),
+            "yllcorner " + (SOUTH - CELL / 2),
+            "cellsize " + CELL,
+            "NODATA_value -9999",
+            "40 50.4 -9999",
+            "10 20 30"), StandardCharsets.US_ASCII);
+        File output = new File(directory, "tile.dem");
+        ElevationGrid.main(new String[] {input.getPath(), output.getPath()});
+
+        try (ElevationGrid grid = ElevationGrid.open(output)) {
+            assertEquals(2, grid.getRows());
+            assertEquals(3, grid.getColumns());
+            assertEquals(SOUTH, grid.getSouth(), 1e-9);
+            assertEquals(WEST, grid.getWest(), 1e-9);
+            assertEquals(10.0, grid.elevation(SOUTH, WEST), 1e-6);
+            assertEquals(30.0, grid.elevation(SOUTH, WEST + 2 * CELL), 1e-6);
+            assertEquals(40.0, grid.elevation(SOUTH + CELL, WEST), 1e-6);
+            assertEquals(50.0, grid.elevation(SOUTH + CELL, WEST + CELL), 1e-6);
+            // Halfway to the missing north-east point, only the point with data counts
+            assertEquals(30.0, grid.elevation(SOUTH + 0.5 * CELL, WEST + 2 * CELL), 1e-6);
+        }
+    }
+
+    @Test
+    public void otherFilesAreRejected() throws IOException {
+        File file = new File(directory, "not-a-grid.dem");
+        Files.write(file.toPath(), new byte[128]);
+        try (ElevationGrid grid = ElevationGrid.open(file)) {
+            fail("opened " + grid.getRows() + " x " + grid.getColumns() + " grid");
+        } catch (IOException expected) {
+            assertTrue(expected.getMessage(), expected.getMessage().startsWith("Not an elevation grid"));
+        }
+    }
+
+    private ElevationGrid write(int rows, int columns, short[] heights) throws IOException {
+        File file = new File(directory, "grid" + directory.list().length + ".dem");
+        ElevationGrid.write(file, rows, columns, SOUTH, WEST, CELL, heights);
+        return ElevationGrid.open(file);
+    }
+}
@@ -0,0 +1,126 @@
+package com.evmanagement.util;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Climbs cost their potential energy through the drivetrain; gentle descents
+ * give all of theirs back by covering the flat consumption, steep ones only
+ * the regenerated share of what is left over. Gaps in the grid count as flat.
+ */
+public class EnergyModelTest {
+    private static final double MASS_KG = 1800.0;
+    private static final double REGEN = 0.6;
+    private static final double KWH_PER_KM = 0.18;
+    private static final double KWH_PER_METRE = MASS_KG * 9.81 / 3.6e6;
+    // Along one parallel, over a grid rising to the east
+    private static final double[] LAT = {47.0, 47.0, 47.0};
+    private static final double[] EAST = {8.0, 8.3};
+    private static final double[] WEST = {8.3, 8.0};
+    private static final double[] THERE_AND_BACK = {8.0, 8.3, 8.0};
+
+    private File directory;
+    private ElevationGrid grid;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("energy").toFile();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        if (grid != null) {
+            grid.close();
+        }
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    @Test
+    public void climbCostsItsPotentialEnergy() throws IOException {
+        EnergyModel model = model(100);
+        EnergyModel.Energy energy = model.integrate(LAT, EAST, 2, KWH_PER_KM);
+        double km = GeoMath.distanceKm(47.0, 8.0, 47.0, 8.3);
+        assertEquals(km, energy.getKm(), 1e-9);
+        assertEquals(km * KWH_PER_KM, energy.getFlatKWh(), 1e-9);
+        assertEquals(3000.0, energy.getAscentMeters(), 1e-6);
+        assertEquals(0.0, energy.getDescentMeters(), 0.0);
+        assertEquals(3000.0 * KWH_PER_METRE / 0.9, energy.getClimbingKWh(), 1e-6);
+        assertEquals(0.0, energy.getSavedKWh(), 0.0);
+        assertEquals(energy.getFlatKWh() + energy.getClimbingKWh(), energy.getTotalKWh(), 1e-9);
+    }
+
+    @Test
+    public void gentleDescentGivesEverythingBack() throws IOException {
+        EnergyModel model = model(1);
+        EnergyModel.Energy energy = model.integrate(LAT, WEST, 2, KWH_PER_KM);
+        assertEquals(30.0, energy.getDescentMeters(), 1e-6);
+        assertEquals(30.0 * KWH_PER_METRE, energy.getSavedKWh(), 1e-6);
+        assertEquals(0.0, energy.getClimbingKWh(), 0.0);
+    }
+
+    @Test
+    public void steepDescentRegeneratesWhatGravityLeavesOver() throws IOException {
+        EnergyModel model = model(100);
+        EnergyModel.Energy energy = model.integrate(LAT, WEST, 2, KWH_PER_KM);
+        // Every step releases more than the flat road takes, so the flat part is all covered
+        double expected = energy.getFlatKWh() + REGEN * (3000.0 * KWH_PER_METRE - energy.getFlatKWh());
+        assertEquals(3000.0, energy.getDescentMeters(), 1e-6);
+        assertEquals(expected, energy.getSavedKWh(), 1e-6);
+
+        EnergyModel.Energy roundTrip = model.integrate(LAT, THERE_AND_BACK, 3, KWH_PER_KM);
+        assertEquals(2 * energy.getKm(), roundTrip.getKm(), 1e-9);
+        assertEquals(roundTrip.getAscentMeters(), roundTrip.getDescentMeters(), 1e-6);
+        assertEquals(roundTrip.getFlatKWh() + roundTrip.getClimbingKWh() - roundTrip.getSavedKWh(),
+            roundTrip.getTotalKWh(), 1e-9);
+        // Braking loses energy, so going there and back costs more than the flat road
+        assertTrue(roundTrip.getTotalKWh() > roundTrip.getFlatKWh());
+    }
+
+    @Test
+    public void gridWithoutDataIsFlat() throws IOException {
+        short[] heights = new short[3 * 31];
+        Arrays.fill(heights, ElevationGrid.NO_DATA);
+        EnergyModel model = model(heights);
+        EnergyModel.Energy energy = model.integrate(LAT, THERE_AND_BACK, 3, KWH_PER_KM);
+        assertEquals(energy.getFlatKWh(), energy.getTotalKWh(), 0.0);
+        assertEquals(0.0, energy.getAscentMeters(), 0.0);
+        assertEquals(0.0, energy.getDescentMeters(), 0.0);
+
+        EnergyModel.Energy nowhere = model.integrate(LAT, THERE_AND_BACK, 1, KWH_PER_KM);
+        assertEquals(0.0, nowhere.getKm(), 0.0);
+        assertEquals(0.0, nowhere.getTotalKWh(), 0.0);
+    }
+
+    // Rising metresPerColumn with every 0.01 degrees east of 8.0
+    private EnergyModel model(int metresPerColumn) throws IOException {
+        short[] heights = new short[3 * 31];
+        for (int row = 0; row < 3; row++) {
+            for (int column = 0; column < 31; column++) {
+                heights[row * 31 + column] = (short) (metresPerColumn * column);
+            }
+        }
+        return model(heights);
+    }
+
+    private EnergyModel model(short[] heights) throws IOException {
+        File file = new File(directory, "grid.dem");
+        ElevationGrid.write(file, 3, 31, 46.99, 8.0, 0.01, heights);
+        grid = ElevationGrid.open(file);
+        return new EnergyModel(grid, MASS_KG, REGEN, 250);
+    }
+}
@@ -0,0 +1,125 @@
+package com.evmanagement.util;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks lookups and completions against a scan of every place's names, on a
+ * gazetteer large enough that short prefixes answer from their kept most
+ * populous places.
+ */
+public class GazetteerTest {
+    // Few letters, so names share long prefixes; accents and punctuation normalize away
+    private static final String[] SYLLABLES = {"ka", "k\u00e4", "ma", "m\u00e2", "na", "ta", "pur", "-", " ", "'", "ri"};
+
+    private final Random random = new Random(5);
+    private final List<Gazetteer.Place> places = new ArrayList<>();
+    private final Map<Gazetteer.Place, List<String>> keys = new IdentityHashMap<>(); // normalized names
+    private Gazetteer gazetteer;
+
+    @Before
+    public void setUp() {
+        for (int i = 0; i < 5000; i++) {
+            List<String> alternates = new ArrayList<>();
+            for (int a = random.nextInt(3); a > 0; a--) {
+                alternates.add(randomName());
+            }
+            // Populations are distinct, so the most populous places are too
+            places.add(new Gazetteer.Place(randomName(), 27.0 + random.nextDouble(), 85.0 + random.nextDouble(),
+                i * 7919L % 5003, alternates));
+        }
+        for (Gazetteer.Place place : places) {
+            List<String> names = new ArrayList<>(Collections.singletonList(Gazetteer.normalize(place.getName())));
+            for (String alternate : place.getAlternateNames()) {
+                names.add(Gazetteer.normalize(alternate));
+            }
+            keys.put(place, names);
+        }
+        gazetteer = new Gazetteer(places);
+    }
+
+    @Test
+    public void completionMatchesScan() {
+        List<String> prefixes = new ArrayList<>(Arrays.asList("", "k", "K", "ka", "KA-", "k\u00e4 ma", "zz"));
+        for (int i = 0; i < 200; i++) {
+            String name = randomName();
+            prefixes.add(name.substring(0, random.nextInt(name.length() + 1)));
+        }
+        for (String prefix : prefixes) {
+            List<Gazetteer.Place> all = scan(prefix);
+            for (int limit : new int[] {1, 5, 16, 17, 100}) {
+                assertEquals("'" + prefix + "' limit " + limit, all.subList(0, Math.min(limit, all.size())),
+                    gazetteer.complete(prefix, limit));
+            }
+        }
+        assertTrue(gazetteer.complete("ka", 0).isEmpty());
+    }
+
+    @Test
+    public void lookupMatchesScan() {
+        for (int i = 0; i < 500; i++) {
+            String name = i % 2 == 0 ? places.get(random.nextInt(places.size())).getName() : randomName();
+            String key = Gazetteer.normalize(name);
+            Gazetteer.Place expected = key.isEmpty() ? null : places.stream()
+                .filter(place -> keys.get(place).contains(key))
+                .max(Comparator.comparingLong(Gazetteer.Place::getPopulation))
+                .orElse(null);
+            assertSame("'" + name + "'", expected, gazetteer.lookup(name));
+        }
+    }
+
+    @Test
+    public void normalizeIgnoresCaseAccentsAndPunctuation() {
+        assertEquals("sao paulo", Gazetteer.normalize("  S\u00e3o-Paulo! "));
+        assertEquals("kathmandu", Gazetteer.normalize("KATHMANDU"));
+        assertEquals("", Gazetteer.normalize("--"));
+        assertEquals("", Gazetteer.normalize(null));
+    }
+
+    @Test
+    public void bundledGazetteerResolvesAlternateNames() throws IOException {
+        Gazetteer bundled;
+        try (InputStream in = Gazetteer.class.getResourceAsStream("/gazetteer.tsv")) {
+            bundled = Gazetteer.read(in);
+        }
+        assertTrue(bundled.size() > 0);
+        assertEquals("Kathmandu", bundled.lookup("ktm").getName());
+        assertEquals("Lalitpur", bundled.lookup("Patan").getName());
+        assertEquals("Kathmandu", bundled.complete("kat", 1).get(0).getName());
+        assertNull(bundled.lookup("Atlantis"));
+    }
+
+    // Places with a name starting with the prefix, most populous first
+    private List<Gazetteer.Place> scan(String prefix) {
+        String key = Gazetteer.normalize(prefix);
+        return places.stream()
+            .filter(place -> keys.get(place).stream().anyMatch(name -> !name.isEmpty() && name.startsWith(key)))
+            .sorted(Comparator.comparingLong(Gazetteer.Place::getPopulation).reversed())
+            .collect(Collectors.toList());
+    }
+
+    private String randomName() {
+        StringBuilder name = new StringBuilder();
+        for (int n = 1 + random.nextInt(6); n > 0; n--) {
+            name.append(SYLLABLES[random.nextInt(SYLLABLES.length)]);
+        }
+        return name.toString();
+    }
+}
@@ -0,0 +1,89 @@
+package com.evmanagement.util;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the exact distance on known arcs, and the faster modes against it:
+ * the equirectangular one within its documented error bounds, and the chord
+ * in the order and thresholds it stands in for.
+ */
+public class GeoMathTest {
+    private final Random random = new Random(13);
+
+    @Test
+    public void knownArcs() {
+        assertEquals(0.0, GeoMath.distanceKm(52.0, 8.0, 52.0, 8.0), 0.0);
+        assertEquals(GeoMath.KM_PER_DEGREE, GeoMath.distanceKm(47.0, 8.0, 48.0, 8.0), 1e-9);
+        assertEquals(GeoMath.KM_PER_DEGREE, GeoMath.distanceKm(0.0, 179.5, 0.0, -179.5), 1e-9);
+        assertEquals(GeoMath.EARTH_RADIUS_KM * Math.PI / 2, GeoMath.distanceKm(0.0, 30.0, 90.0, 0.0), 1e-9);
+        // Within a metre at the antipode, where the arcsine is least precise
+        assertEquals(GeoMath.EARTH_RADIUS_KM * Math.PI, GeoMath.distanceKm(10.0, 20.0, -10.0, -160.0), 1e-3);
+        // A degree of longitude shrinks with the cosine of the latitude
+        assertEquals(GeoMath.KM_PER_DEGREE * Math.cos(Math.toRadians(60.0)),
+            GeoMath.distanceKm(60.0, 8.0, 60.0, 9.0), 0.01);
+    }
+
+    @Test
+    public void equirectangularStaysWithinItsBounds() {
+        for (int i = 0; i < 10000; i++) {
+            double lat = -60.0 + 120.0 * random.nextDouble();
+            double lon = -180.0 + 360.0 * random.nextDouble();
+            double bearing = 2 * Math.PI * random.nextDouble();
+            double km = 500.0 * random.nextDouble();
+            // Move roughly km along the bearing, clamped to the latitudes the bounds hold for
+            double otherLat = Math.max(-60.0, Math.min(60.0, lat + km * Math.cos(bearing) / GeoMath.KM_PER_DEGREE));
+            double otherLon = lon + km * Math.sin(bearing)
+                / (GeoMath.KM_PER_DEGREE * Math.cos(Math.toRadians(lat)));
+
+            double exact = GeoMath.distanceKm(lat, lon, otherLat, otherLon);
+            double phi1 = Math.toRadians(lat);
+            double phi2 = Math.toRadians(otherLat);
+            double approximate = GeoMath.equirectangularKm(phi1, Math.toRadians(lon), Math.cos(phi1),
+                phi2, Math.toRadians(otherLon), Math.cos(phi2));
+            double bound = exact <= 100.0 ? 1e-4 : exact <= 500.0 ? 1e-3 : Double.POSITIVE_INFINITY;
+            assertTrue(exact + " km off by " + (approximate - exact),
+                Math.abs(approximate - exact) <= bound * exact + 1e-9);
+        }
+    }
+
+    @Test
+    public void chordRanksAndThresholdsLikeTheDistance() {
+        GeoMath.Points points = randomPoints(500);
+        double[] distances = new double[points.size()];
+        points.distancesFrom(points.getLatitude(0), points.getLongitude(0), distances);
+        for (int i = 1; i < points.size(); i++) {
+            assertEquals(points.distanceKm(0, i), distances[i], 0.0);
+            double chord = chord(points, 0, i);
+            assertEquals(distances[i], GeoMath.chordSquaredToKm(chord), 1e-6);
+            for (int j = 1; j < i; j++) {
+                if (Math.abs(distances[i] - distances[j]) > 1e-6) {
+                    assertEquals(distances[i] < distances[j], chord < chord(points, 0, j));
+                }
+            }
+            double threshold = GeoMath.kmToChordSquared(1000.0);
+            if (Math.abs(distances[i] - 1000.0) > 1e-6) {
+                assertEquals(distances[i] <= 1000.0, chord <= threshold);
+            }
+        }
+    }
+
+    private static double chord(GeoMath.Points points, int i, int j) {
+        return GeoMath.chordSquared(points.getLatRadians(i), points.getLonRadians(i), points.getCosLatitude(i),
+            points.getLatRadians(j), points.getLonRadians(j), points.getCosLatitude(j));
+    }
+
+    private GeoMath.Points randomPoints(int n) {
+        double[] lats = new double[n];
+        double[] lons = new double[n];
+        for (int i = 0; i < n; i++) {
+            lats[i] = 40.0 + 20.0 * random.nextDouble();
+            lons[i] = -10.0 + 40.0 * random.nextDouble();
+        }
+        return new GeoMath.Points(lats, lons);
+    }
+}
@@ -0,0 +1,143 @@
+package com.evmanagement.util;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks every kind of query against a scan of all points.
+ */
+public class KdTreeTest {
+    // Distances this close to a query's radius may land either side of it
+    private static final double TOLERANCE_KM = 1e-6;
+
+    private final Random random = new Random(7);
+    private final List<double[]> points = new ArrayList<>();
+    private KdTree<double[]> tree;
+
+    @Before
+    public void setUp() {
+        for (int i = 0; i < 3000; i++) {
+            points.add(new double[] {35.0 + 35.0 * random.nextDouble(), -10.0 + 50.0 * random.nextDouble(), i});
+        }
+        // Repeated positions split like any other
+        for (int i = 0; i < 50; i++) {
+            double[] point = points.get(random.nextInt(points.size()));
+            points.add(new double[] {point[0], point[1], points.size()});
+        }
+        tree = new KdTree<>(points, p -> p[0], p -> p[1]);
+    }
+
+    @Test
+    public void nearestMatchesScan() {
+        for (int query = 0; query < 500; query++) {
+            double lat = 30.0 + 45.0 * random.nextDouble();
+            double lon = -20.0 + 70.0 * random.nextDouble();
+            double[] nearest = tree.nearest(lat, lon);
+            assertEquals(distances(lat, lon).get(0), distance(lat, lon, nearest), TOLERANCE_KM);
+        }
+    }
+
+    @Test
+    public void kNearestMatchesScan() {
+        for (int query = 0; query < 200; query++) {
+            double lat = 30.0 + 45.0 * random.nextDouble();
+            double lon = -20.0 + 70.0 * random.nextDouble();
+            int k = 1 + random.nextInt(40);
+            List<double[]> found = tree.kNearest(lat, lon, k);
+            List<Double> expected = distances(lat, lon).subList(0, k);
+            assertEquals(k, found.size());
+            for (int i = 0; i < k; i++) {
+                assertEquals("rank " + i, expected.get(i), distance(lat, lon, found.get(i)), TOLERANCE_KM);
+            }
+        }
+        assertEquals(points.size(), tree.kNearest(50.0, 10.0, points.size() + 10).size());
+    }
+
+    @Test
+    public void filteredNearestMatchesScan() {
+        for (int query = 0; query < 200; query++) {
+            double lat = 30.0 + 45.0 * random.nextDouble();
+            double lon = -20.0 + 70.0 * random.nextDouble();
+            int modulus = 2 + random.nextInt(50);
+            double[] nearest = tree.nearest(lat, lon, p -> (int) p[2] % modulus == 0);
+            double expected = points.stream()
+                .filter(p -> (int) p[2] % modulus == 0)
+                .mapToDouble(p -> distance(lat, lon, p))
+                .min().getAsDouble();
+            assertEquals(0, (int) nearest[2] % modulus);
+            assertEquals(expected, distance(lat, lon, nearest), TOLERANCE_KM);
+        }
+        assertNull(tree.nearest(50.0, 10.0, p -> false));
+    }
+
+    @Test
+    public void withinRadiusMatchesScan() {
+        for (int query = 0; query < 200; query++) {
+            double lat = 30.0 + 45.0 * random.nextDouble();
+            double lon = -20.0 + 70.0 * random.nextDouble();
+            double radiusKm = 400.0 * random.nextDouble();
+            Set<double[]> found = identitySet(tree.withinRadius(lat, lon, radiusKm));
+            assertEquals("duplicates", tree.withinRadius(lat, lon, radiusKm).size(), found.size());
+            for (double[] point : points) {
+                double distance = distance(lat, lon, point);
+                if (Math.abs(distance - radiusKm) > TOLERANCE_KM) {
+                    assertEquals("point at " + distance + " km of " + radiusKm, distance < radiusKm,
+                        found.contains(point));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void withinBoxMatchesScan() {
+        for (int query = 0; query < 200; query++) {
+            double minLat = 30.0 + 45.0 * random.nextDouble();
+            double maxLat = minLat + 10.0 * random.nextDouble();
+            double minLon = -20.0 + 70.0 * random.nextDouble();
+            double maxLon = minLon + 15.0 * random.nextDouble();
+            Set<double[]> expected = identitySet(points.stream()
+                .filter(p -> p[0] >= minLat && p[0] <= maxLat && p[1] >= minLon && p[1] <= maxLon)
+                .collect(Collectors.toList()));
+            List<double[]> found = tree.withinBox(minLat, maxLat, minLon, maxLon);
+            assertEquals(expected.size(), found.size());
+            assertTrue(expected.containsAll(found));
+        }
+    }
+
+    @Test
+    public void emptyTreeFindsNothing() {
+        KdTree<double[]> empty = new KdTree<>(new ArrayList<double[]>(), p -> p[0], p -> p[1]);
+        assertNull(empty.nearest(50.0, 10.0));
+        assertTrue(empty.withinRadius(50.0, 10.0, 100.0).isEmpty());
+        assertTrue(empty.withinBox(-90.0, 90.0, -180.0, 180.0).isEmpty());
+    }
+
+    // Every point's distance from the query, nearest first
+    private List<Double> distances(double lat, double lon) {
+        return points.stream().map(p -> distance(lat, lon, p)).sorted(Comparator.naturalOrder())
+            .collect(Collectors.toList());
+    }
+
+    private static double distance(double lat, double lon, double[] point) {
+        return GeoMath.distanceKm(lat, lon, point[0], point[1]);
+    }
+
+    private static Set<double[]> identitySet(List<double[]> points) {
+        Set<double[]> set = Collections.newSetFromMap(new IdentityHashMap<>());
+        set.addAll(points);
+        return set;
+    }
+}